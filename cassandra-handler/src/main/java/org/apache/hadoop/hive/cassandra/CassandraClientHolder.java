@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hive.cassandra;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.cassandra.thrift.Cassandra;
 import org.apache.cassandra.thrift.InvalidRequestException;
 import org.apache.commons.lang.StringUtils;
@@ -36,16 +38,33 @@ public class CassandraClientHolder
     private final TTransport transport;
     private String keyspace;
 
+    private final String host;
+    private final int port;
+    private volatile long lastUsed;
+    private final AtomicBoolean borrowed = new AtomicBoolean(false);
+
     public CassandraClientHolder(TTransport transport) throws CassandraException
     {
         this(transport, null);
     }
 
     public CassandraClientHolder(TTransport transport, String keyspace) throws CassandraException
+    {
+        this(null, 0, transport, keyspace);
+    }
 
+    public CassandraClientHolder(String host, int port, TTransport transport) throws CassandraException
     {
+        this(host, port, transport, null);
+    }
+
+    public CassandraClientHolder(String host, int port, TTransport transport, String keyspace) throws CassandraException
+    {
+        this.host = host;
+        this.port = port;
         this.transport = transport;
         this.keyspace = keyspace;
+        this.lastUsed = System.currentTimeMillis();
         initClient();
     }
 
@@ -59,6 +78,45 @@ public class CassandraClientHolder
         return keyspace;
     }
 
+    public String getHost()
+    {
+        return host;
+    }
+
+    public int getPort()
+    {
+        return port;
+    }
+
+    /**
+     * @return time in millis this connection was last borrowed or returned
+     */
+    public long getLastUsed()
+    {
+        return lastUsed;
+    }
+
+    /**
+     * Record a keyspace that was set on the connection by calling set_keyspace on the client directly,
+     * so that a later {@link #setKeyspace(String)} does not skip switching back.
+     */
+    void keyspaceChanged(String ks)
+    {
+        this.keyspace = ks;
+    }
+
+    boolean markBorrowed()
+    {
+        lastUsed = System.currentTimeMillis();
+        return borrowed.compareAndSet(false, true);
+    }
+
+    boolean markReturned()
+    {
+        lastUsed = System.currentTimeMillis();
+        return borrowed.compareAndSet(true, false);
+    }
+
     private void initClient() throws CassandraException
     {
         try
@@ -70,6 +128,7 @@ public class CassandraClientHolder
         }
 
         client = new Cassandra.Client(new TBinaryProtocol(transport));
+        ClientMetrics.getInstance().recordConnectionOpened(host);
 
         // connect to last known keyspace
         setKeyspace(keyspace);
@@ -93,8 +152,8 @@ public class CassandraClientHolder
         {
             try
             {
+                client.set_keyspace(ks);
                 this.keyspace = ks;
-                client.set_keyspace(keyspace);
             } catch (InvalidRequestException e)
             {
                 throw new CassandraException(e);
@@ -118,6 +177,7 @@ public class CassandraClientHolder
         {
             return;
         }
+        ClientMetrics.getInstance().recordConnectionClosed(host);
         try
         {
             transport.flush();
@@ -139,7 +199,9 @@ public class CassandraClientHolder
         }
     }
 
-
-
-
+    @Override
+    public String toString()
+    {
+        return "CassandraClientHolder(" + host + ":" + port + ", keyspace=" + keyspace + ")";
+    }
 }
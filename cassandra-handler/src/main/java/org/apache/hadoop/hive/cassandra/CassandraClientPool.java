@@ -0,0 +1,356 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JVM wide pool of thrift connections, kept per cassandra host.
+ *
+ * Connections are borrowed with {@link #borrow(String, int)} and must be handed back with
+ * {@link #release(CassandraClientHolder)} once the caller is done with them, or with
+ * {@link #invalidate(CassandraClientHolder)} if the connection failed and should not be reused.
+ * The number of connections open against a single host is bounded, idle connections are closed
+ * by a background sweeper, and connections that sat idle for a while are validated before they
+ * are handed out again.
+ */
+public class CassandraClientPool {
+
+  private static final Logger logger = LoggerFactory.getLogger(CassandraClientPool.class);
+
+  /**
+   * Creates the underlying connections. Only replaced in tests.
+   */
+  interface ConnectionFactory {
+    CassandraClientHolder create(String host, int port) throws CassandraException;
+  }
+
+  private static final ConnectionFactory FRAMED_CONNECTION_FACTORY = new ConnectionFactory() {
+    public CassandraClientHolder create(String host, int port) throws CassandraException {
+      return new CassandraClientHolder(host, port, new TFramedTransport(new TSocket(host, port)));
+    }
+  };
+
+  // after the factory it uses
+  private static final CassandraClientPool instance = new CassandraClientPool();
+
+  private final ConnectionFactory factory;
+  private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+
+  private volatile int maxPerHost = AbstractCassandraSerDe.DEFAULT_POOL_MAX_PER_HOST;
+  private volatile long idleTimeout = AbstractCassandraSerDe.DEFAULT_POOL_IDLE_TIMEOUT;
+  private volatile long borrowTimeout = AbstractCassandraSerDe.DEFAULT_POOL_BORROW_TIMEOUT;
+  private volatile long validationInterval = AbstractCassandraSerDe.DEFAULT_POOL_VALIDATION_INTERVAL;
+
+  private ScheduledExecutorService evictor;
+
+  CassandraClientPool(ConnectionFactory factory) {
+    this.factory = factory;
+  }
+
+  private CassandraClientPool() {
+    this(FRAMED_CONNECTION_FACTORY);
+  }
+
+  /**
+   * @return the pool shared by every client in this JVM
+   */
+  public static CassandraClientPool getInstance() {
+    return instance;
+  }
+
+  /**
+   * Apply the pool settings found in the given configuration. Settings that are not present keep
+   * their current value. The per host limit only applies to hosts that have not been connected to yet.
+   *
+   * @param conf job or session configuration
+   */
+  public void configure(Configuration conf) {
+    if (conf == null) {
+      return;
+    }
+
+    maxPerHost = conf.getInt(AbstractCassandraSerDe.CASSANDRA_POOL_MAX_PER_HOST, maxPerHost);
+    idleTimeout = conf.getLong(AbstractCassandraSerDe.CASSANDRA_POOL_IDLE_TIMEOUT, idleTimeout);
+    borrowTimeout = conf.getLong(AbstractCassandraSerDe.CASSANDRA_POOL_BORROW_TIMEOUT, borrowTimeout);
+    validationInterval = conf.getLong(AbstractCassandraSerDe.CASSANDRA_POOL_VALIDATION_INTERVAL, validationInterval);
+  }
+
+  /**
+   * Borrow a connection to the given host.
+   *
+   * @param host cassandra host
+   * @param port cassandra rpc port
+   * @return an open connection
+   * @throws CassandraException if the host is at its connection limit for longer than the borrow
+   *                            timeout, or a new connection cannot be opened
+   */
+  public CassandraClientHolder borrow(String host, int port) throws CassandraException {
+    return borrow(host, port, null);
+  }
+
+  /**
+   * Borrow a connection to the given host, with the given keyspace set on it.
+   *
+   * @param host     cassandra host
+   * @param port     cassandra rpc port
+   * @param keyspace keyspace to set, or null to leave the connection as it is
+   * @return an open connection
+   * @throws CassandraException if no connection can be handed out
+   */
+  public CassandraClientHolder borrow(String host, int port, String keyspace) throws CassandraException {
+    HostPool pool = getHostPool(host, port);
+
+    try {
+      if (!pool.permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+        throw new CassandraException("Timed out waiting for a connection to " + pool.address
+                + ", " + pool.maxSize + " connections are in use");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CassandraException("Interrupted waiting for a connection to " + pool.address, e);
+    }
+
+    CassandraClientHolder holder = null;
+    try {
+      holder = pool.idle.pollFirst();
+      while (holder != null && !isHealthy(holder)) {
+        holder.close();
+        holder = pool.idle.pollFirst();
+      }
+
+      if (holder == null) {
+        holder = factory.create(host, port);
+      }
+
+      holder.setKeyspace(keyspace);
+    } catch (CassandraException e) {
+      if (holder != null) {
+        holder.close();
+      }
+      pool.permits.release();
+      throw e;
+    } catch (RuntimeException e) {
+      if (holder != null) {
+        holder.close();
+      }
+      pool.permits.release();
+      throw e;
+    }
+
+    holder.markBorrowed();
+    return holder;
+  }
+
+  /**
+   * Return a healthy connection to the pool. Connections that are no longer open are closed
+   * instead. Calling this on a connection that was already released or invalidated does nothing.
+   *
+   * @param holder the borrowed connection, may be null
+   */
+  public void release(CassandraClientHolder holder) {
+    if (holder == null || !holder.markReturned()) {
+      return;
+    }
+
+    HostPool pool = pools.get(poolKey(holder.getHost(), holder.getPort()));
+    if (pool == null) {
+      holder.close();
+      return;
+    }
+
+    if (holder.isOpen()) {
+      pool.idle.offerFirst(holder);
+    } else {
+      holder.close();
+    }
+    pool.permits.release();
+  }
+
+  /**
+   * Close a borrowed connection that failed and free its slot in the pool.
+   * Calling this on a connection that was already released or invalidated only closes it.
+   *
+   * @param holder the borrowed connection, may be null
+   */
+  public void invalidate(CassandraClientHolder holder) {
+    if (holder == null) {
+      return;
+    }
+
+    holder.close();
+
+    if (holder.markReturned()) {
+      HostPool pool = pools.get(poolKey(holder.getHost(), holder.getPort()));
+      if (pool != null) {
+        pool.permits.release();
+      }
+    }
+  }
+
+  /**
+   * Close every idle connection. Borrowed connections are closed as they are released.
+   */
+  public void closeIdle() {
+    for (HostPool pool : pools.values()) {
+      CassandraClientHolder holder;
+      while ((holder = pool.idle.pollFirst()) != null) {
+        holder.close();
+      }
+    }
+  }
+
+  /**
+   * @return number of idle connections kept for the host
+   */
+  int getIdleCount(String host, int port) {
+    HostPool pool = pools.get(poolKey(host, port));
+    return pool == null ? 0 : pool.idle.size();
+  }
+
+  /**
+   * @return number of connections currently borrowed from the host
+   */
+  int getActiveCount(String host, int port) {
+    HostPool pool = pools.get(poolKey(host, port));
+    return pool == null ? 0 : pool.maxSize - pool.permits.availablePermits();
+  }
+
+  /**
+   * Close idle connections that have not been used within the idle timeout. The most recently
+   * used connections are at the head of each queue, so the sweep starts from the tail.
+   */
+  void evictIdle() {
+    long now = System.currentTimeMillis();
+
+    for (HostPool pool : pools.values()) {
+      Iterator<CassandraClientHolder> it = pool.idle.descendingIterator();
+      while (it.hasNext()) {
+        CassandraClientHolder holder = it.next();
+        if (now - holder.getLastUsed() >= idleTimeout || !holder.isOpen()) {
+          if (pool.idle.removeFirstOccurrence(holder)) {
+            if (logger.isDebugEnabled()) {
+              logger.debug("Closing idle connection to " + pool.address);
+            }
+            holder.close();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A connection is handed out as is if it was used recently. Otherwise it is asked for the
+   * cluster name first, which is answered by the node itself without touching any data.
+   */
+  private boolean isHealthy(CassandraClientHolder holder) {
+    if (!holder.isOpen()) {
+      return false;
+    }
+
+    if (System.currentTimeMillis() - holder.getLastUsed() < validationInterval) {
+      return true;
+    }
+
+    try {
+      holder.getClient().describe_cluster_name();
+      return true;
+    } catch (Exception e) {
+      logger.info("Discarding pooled connection to " + holder.getHost() + ":" + holder.getPort()
+              + " which failed validation: " + e.getMessage());
+      return false;
+    }
+  }
+
+  private HostPool getHostPool(String host, int port) {
+    String key = poolKey(host, port);
+    HostPool pool = pools.get(key);
+
+    if (pool == null) {
+      HostPool newPool = new HostPool(key, maxPerHost);
+      pool = pools.putIfAbsent(key, newPool);
+      if (pool == null) {
+        pool = newPool;
+        startEvictor();
+      }
+    }
+
+    return pool;
+  }
+
+  private synchronized void startEvictor() {
+    if (evictor != null) {
+      return;
+    }
+
+    evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "cassandra-client-pool-evictor");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    long period = Math.max(1000L, idleTimeout / 2);
+    evictor.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        try {
+          evictIdle();
+        } catch (Exception e) {
+          logger.warn("Error evicting idle cassandra connections", e);
+        }
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private static String poolKey(String host, int port) {
+    return host + ":" + port;
+  }
+
+  /**
+   * Connections to a single host.
+   */
+  private static class HostPool {
+    final String address;
+    final int maxSize;
+    final Semaphore permits;
+    final LinkedBlockingDeque<CassandraClientHolder> idle = new LinkedBlockingDeque<CassandraClientHolder>();
+
+    HostPool(String address, int maxSize) {
+      this.address = address;
+      this.maxSize = maxSize;
+      this.permits = new Semaphore(maxSize, true);
+    }
+  }
+}
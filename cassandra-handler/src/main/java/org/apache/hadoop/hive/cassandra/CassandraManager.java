@@ -101,7 +101,8 @@ public class CassandraManager {
    */
   public void openConnection() throws MetaException {
     try {
-      clientHolder =  new CassandraProxyClient(host, port, framedConnection, true);
+      clientHolder =  new CassandraProxyClient(host, port, framedConnection,
+          CassandraProxyClient.ConnectionStrategy.LATENCY_AWARE.newPolicy());
     } catch (CassandraException e) {
       throw new MetaException("Unable to connect to the server " + e.getMessage());
     }
@@ -19,40 +19,41 @@
 package org.apache.hadoop.hive.cassandra;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.thrift.Cassandra;
-import org.apache.cassandra.thrift.CfDef;
-import org.apache.cassandra.thrift.InvalidRequestException;
-import org.apache.cassandra.thrift.KsDef;
-import org.apache.cassandra.thrift.SchemaDisagreementException;
 import org.apache.cassandra.thrift.TimedOutException;
 import org.apache.cassandra.thrift.TokenRange;
-import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.util.ReflectionUtils;
 import org.apache.log4j.Logger;
-import org.apache.thrift.TException;
-import org.apache.thrift.transport.TFramedTransport;
-import org.apache.thrift.transport.TSocket;
-import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
 
 /**
  * A proxy client connects to cassandra backend server.
+ * <p/>
+ * The first connection goes to the server the {@link HostSelectionPolicy} prefers once the ring
+ * of the cluster is known in this JVM; the first client of a seed connects to the seed itself.
  */
-public class CassandraProxyClient implements java.lang.reflect.InvocationHandler {
+public class CassandraProxyClient {
 
   public enum ConnectionStrategy {
 
     RANDOM(true),
     ROUND_ROBIN(false),
-    STICKY(false);
+    STICKY(false),
+    LATENCY_AWARE(false);
 
     private final Boolean value;
 
@@ -64,6 +65,77 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
       return this.value;
     }
 
+    /**
+     * @return a new host selection policy implementing this strategy
+     */
+    public HostSelectionPolicy newPolicy() {
+      switch (this) {
+        case RANDOM:
+          return new RandomizerOption();
+        case ROUND_ROBIN:
+          return new RoundRobinOption();
+        case STICKY:
+          return new StickyOption();
+        default:
+          return new LatencyAwareOption();
+      }
+    }
+  }
+
+  /**
+   * Create the host selection policy configured with cassandra.connection.strategy, either one of
+   * the {@link ConnectionStrategy} names or the class name of a {@link HostSelectionPolicy}.
+   * Defaults to {@link ConnectionStrategy#LATENCY_AWARE}. The built in policies prefer the
+   * data center and rack set with cassandra.local.dc and cassandra.local.rack.
+   *
+   * @param conf job or session configuration
+   * @return a new policy
+   * @throws CassandraException if the strategy is neither a known name nor a policy class
+   */
+  public static HostSelectionPolicy getPolicy(Configuration conf) throws CassandraException {
+    String strategy = conf.get(AbstractCassandraSerDe.CASSANDRA_CONNECTION_STRATEGY,
+            AbstractCassandraSerDe.DEFAULT_CONNECTION_STRATEGY);
+
+    HostSelectionPolicy policy = null;
+    for (ConnectionStrategy s : ConnectionStrategy.values()) {
+      if (s.name().equalsIgnoreCase(strategy)) {
+        policy = s.newPolicy();
+        break;
+      }
+    }
+
+    if (policy == null) {
+      try {
+        policy = ReflectionUtils.newInstance(conf.getClassByName(strategy).asSubclass(HostSelectionPolicy.class), conf);
+      } catch (Exception e) {
+        throw new CassandraException("Unknown " + AbstractCassandraSerDe.CASSANDRA_CONNECTION_STRATEGY
+                + " " + strategy, e);
+      }
+    }
+
+    if (policy instanceof RingConnOption) {
+      ((RingConnOption) policy).setLocality(ReplicaLocality.fromConf(conf));
+    }
+    return policy;
+  }
+
+  /**
+   * Create the retry policy configured with cassandra.retry.policy, an
+   * {@link ExponentialBackoffRetryPolicy} by default, tuned with the other cassandra.retry settings.
+   *
+   * @param conf job or session configuration
+   * @return a new policy
+   * @throws CassandraException if the class is not a retry policy
+   */
+  public static RetryPolicy getRetryPolicy(Configuration conf) throws CassandraException {
+    try {
+      Class<? extends RetryPolicy> policyClass = conf.getClass(AbstractCassandraSerDe.CASSANDRA_RETRY_POLICY,
+              ExponentialBackoffRetryPolicy.class, RetryPolicy.class);
+      return ReflectionUtils.newInstance(policyClass, conf);
+    } catch (RuntimeException e) {
+      throw new CassandraException("Unknown " + AbstractCassandraSerDe.CASSANDRA_RETRY_POLICY
+              + " " + conf.get(AbstractCassandraSerDe.CASSANDRA_RETRY_POLICY), e);
+    }
   }
 
   private static final Logger logger = Logger.getLogger(CassandraProxyClient.class);
@@ -79,9 +151,9 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
    */
   private String lastUsedHost;
   /**
-   * Last time the ring was checked.
+   * Snapshot of the ring the servers to fail over to were taken from.
    */
-  private long lastPoolCheck;
+  private RingTopology ring;
 
   /**
    * Cassandra thrift client.
@@ -89,20 +161,51 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
   private CassandraClientHolder clientHolder;
 
   /**
-   * The key space to get the ring information from.
+   * The last keyspace set, set again on new connections.
+   */
+  private String lastKeyspace;
+
+  /**
+   * Option to choose the next server from the ring.
+   */
+  private final HostSelectionPolicy nextServerGen;
+
+  /**
+   * Decides how often and how fast failed calls are tried again.
+   */
+  private RetryPolicy retryPolicy = new ExponentialBackoffRetryPolicy();
+
+  /**
+   * When the first attempt of the call being retried failed.
+   */
+  private long firstFailure;
+
+  /**
+   * The client handed out by {@link #getProxyConnection()}.
    */
-  private String ringKs;
+  private final ProxyConnector proxyConnector = new ProxyConnector();
+  private final Cassandra.Iface retryingClient = new RetryingCassandraClient(proxyConnector);
 
   /**
-   * Option to choose the next server from the ring. Default is RoundRobin unless
-   * specified by the client to choose randomizer.
+   * Maps row keys to their replicas when token aware routing is enabled, null otherwise.
    */
-  private RingConnOption nextServerGen;
+  private TokenRouter router;
 
   /**
-   * Maximum number of attempts when connection is lost.
+   * The keyspace whose replica placement the router follows, and the snapshot it was built from.
    */
-  private final int maxAttempts = 10;
+  private String routingKs;
+  private RingTopology routingRing;
+
+  /**
+   * Connections pinned to single replicas, by endpoint.
+   */
+  private final Map<String, EndpointConnector> endpointConnectors = new HashMap<String, EndpointConnector>();
+
+  /**
+   * How long a replica that could not be reached is skipped by token aware routing.
+   */
+  private static final long ENDPOINT_RETRY_DELAY = 30 * 1000L;
 
   /**
    * Construct a proxy connection.
@@ -117,29 +220,117 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
    */
   public CassandraProxyClient(String host, int port, boolean framed, boolean randomizeConnections)
           throws CassandraException {
+    this(host, port, framed, randomizeConnections ? new RandomizerOption() : new RoundRobinOption());
+  }
+
+  /**
+   * Construct a proxy connection.
+   *
+   * @param host   cassandra host
+   * @param port   cassandra port
+   * @param framed true to used framed connection
+   * @param policy chooses the server to connect to when the connection fails, and the replica
+   *               token aware requests go to
+   * @throws CassandraException
+   */
+  public CassandraProxyClient(String host, int port, boolean framed, HostSelectionPolicy policy)
+          throws CassandraException {
     this.host = host;
     this.port = port;
     this.lastUsedHost = host;
-    this.lastPoolCheck = 0;
+    this.nextServerGen = policy;
 
-    // If randomized to choose a connection, initialize the random generator.
-    if (randomizeConnections) {
-      nextServerGen = new RandomizerOption();
-    } else {
-      nextServerGen = new RoundRobinOption();
+    try {
+      initializeConnection();
+    } catch (CassandraException e) {
+      CassandraClientPool.getInstance().invalidate(clientHolder);
+      clientHolder = null;
+      throw e;
     }
+  }
 
-    initializeConnection();
+  /**
+   * Replace the policy deciding how failed calls are retried, an
+   * {@link ExponentialBackoffRetryPolicy} with the default settings until then.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
   }
 
   /**
-   * Return a handle to the proxied connection
+   * Return a handle to the connection that retries on another server of the ring
+   * when the current one fails. The same instance is returned on every call.
    *
    * @return
    */
   public Cassandra.Iface getProxyConnection() {
-    return (Cassandra.Iface) java.lang.reflect.Proxy.newProxyInstance(Cassandra.Client.class
-            .getClassLoader(), Cassandra.Client.class.getInterfaces(), this);
+    return retryingClient;
+  }
+
+  /**
+   * Return a handle to a connection to a replica of the given row key, so that requests
+   * for that key skip the extra coordinator hop. Falls back to {@link #getProxyConnection()}
+   * when token aware routing is not enabled, the ring is unknown, or no replica is reachable.
+   *
+   * @param key row key, or the serialized partition key of a CQL row
+   * @return a connection that retries like the one returned by {@link #getProxyConnection()}
+   */
+  public Cassandra.Iface getProxyConnection(ByteBuffer key) {
+    if (router == null || key == null) {
+      return retryingClient;
+    }
+
+    try {
+      checkRoutingRing();
+    } catch (CassandraException e) {
+      logger.warn("Unable to refresh the ring of " + routingKs + ", routing on the previous one", e);
+    }
+
+    long now = System.currentTimeMillis();
+    for (String endpoint : nextServerGen.orderReplicas(router.getReplicas(key))) {
+      EndpointConnector connector = endpointConnectors.get(endpoint);
+      if (connector == null) {
+        connector = new EndpointConnector(endpoint);
+        endpointConnectors.put(endpoint, connector);
+      }
+      if (connector.isAvailable(now) && HostStats.getInstance().tryAcquireProbe(endpoint)) {
+        return connector.client;
+      }
+    }
+
+    return retryingClient;
+  }
+
+  /**
+   * Route requests made through {@link #getProxyConnection(ByteBuffer)} to the replicas of
+   * their row key.
+   *
+   * @param keyspace         keyspace the requests are made against, replica placement depends on it
+   * @param partitionerClass partitioner of the cluster, e.g. org.apache.cassandra.dht.Murmur3Partitioner
+   * @throws CassandraException if the partitioner is unknown or the ring cannot be described
+   */
+  public void enableTokenAwareRouting(String keyspace, String partitionerClass) throws CassandraException {
+    IPartitioner<?> partitioner;
+    try {
+      partitioner = FBUtilities.newPartitioner(partitionerClass);
+    } catch (ConfigurationException e) {
+      throw new CassandraException("Unknown partitioner " + partitionerClass, e);
+    }
+
+    routingRing = RingTopologyService.getInstance().getTopology(host, port, keyspace);
+    routingKs = keyspace;
+    router = new TokenRouter(partitioner, routingRing.getRanges());
+  }
+
+  /**
+   * Rebuild the router if the topology service published a new ring for the routing keyspace.
+   */
+  private void checkRoutingRing() throws CassandraException {
+    RingTopology current = RingTopologyService.getInstance().getTopology(host, port, routingKs);
+    if (current != routingRing) {
+      routingRing = current;
+      router = new TokenRouter(router.getPartitioner(), current.getRanges());
+    }
   }
 
   public CassandraClientHolder getClientHolder() {
@@ -147,126 +338,110 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
   }
 
   /**
-   * Delegates to close of {@link CassandraClientHolder#close()}
+   * Hands the connection back to the shared {@link CassandraClientPool}.
    */
   public void close() {
     if (clientHolder != null) {
-      clientHolder.close();
+      CassandraClientPool.getInstance().release(clientHolder);
+      clientHolder = null;
     }
+
+    for (EndpointConnector connector : endpointConnectors.values()) {
+      connector.close();
+    }
+    endpointConnectors.clear();
   }
 
   /**
-   * Create connection to a given host.
+   * Borrow a connection to a given host from the shared pool.
    *
    * @param host cassandra host
    * @return cassandra thrift client
    * @throws CassandraException error
    */
   private CassandraClientHolder createConnection(String host) throws CassandraException {
-    TSocket socket = new TSocket(host, port);
-    TTransport trans = new TFramedTransport(socket);
-
-    CassandraClientHolder ch = new CassandraClientHolder(trans);
-
-    return ch;
+    return CassandraClientPool.getInstance().borrow(host, port);
   }
 
-
   /**
-   * Initialize the cassandra connection with the initial given cassandra host.
-   * Create a temporary keyspace if no one exists. Otherwise, choose the first non-system
-   * keyspace to describe the ring.
-   * Initialize the ring.
+   * Connect to the server the policy prefers among the given host and the nodes of the ring.
+   * The ring is only known once a client of this JVM read it through the same host, in the
+   * background: until then the given host takes the connection, unless a local data center is
+   * set with cassandra.local.dc, which needs the ring right away to move off a seed in another
+   * data center. The given host is tried again if the preferred server cannot be reached.
    *
-   * @throws IOException
+   * @throws CassandraException if no server can be reached
    */
   private void initializeConnection() throws CassandraException {
-    clientHolder = createConnection(host);
-
-    if (logger.isDebugEnabled()) {
-      logger.debug("Connected to cassandra at " + host + ":" + port);
+    RingTopologyService topologies = RingTopologyService.getInstance();
+    RingTopology known = topologies.getKnownTopology(host, port, null);
+    if (known == null && nextServerGen instanceof RingConnOption
+            && ((RingConnOption) nextServerGen).getLocality().isEnabled()) {
+      known = topologies.getTopology(host, port, null);
     }
 
-    assert clientHolder.isOpen();
-
-    // Find the first keyspace that's not system and assign it to the lastly used keyspace.
-    try {
-      List<KsDef> allKs = clientHolder.getClient().describe_keyspaces();
-
-      if (allKs.isEmpty() || (allKs.size() == 1 && allKs.get(0).name.equalsIgnoreCase("system"))) {
-        allKs.add(createTmpKs());
-      }
-
-      for (KsDef ks : allKs) {
-        if (!ks.name.equalsIgnoreCase("system")) {
-          ringKs = ks.name;
-          break;
+    if (known == null) {
+      clientHolder = createConnection(host);
+      topologies.prefetch(host, port, null);
+    } else {
+      ring = known;
+      nextServerGen.resetRing(known.getRanges());
+      String preferred = chooseInitialHost(host, known, nextServerGen);
+      HostStats.getInstance().tryAcquireProbe(preferred);
+      try {
+        clientHolder = createConnection(preferred);
+        lastUsedHost = preferred;
+      } catch (CassandraException e) {
+        if (preferred.equals(host)) {
+          throw e;
         }
+        logger.warn("Unable to connect to " + preferred + ", connecting to " + host, e);
+        clientHolder = createConnection(host);
       }
-
-      // Set the ring keyspace for initialization purpose. This value
-      // should be overwritten later by set_keyspace
-      clientHolder.setKeyspace(ringKs);
-    } catch (InvalidRequestException e) {
-      throw new CassandraException(e);
-    } catch (TException e) {
-      throw new CassandraException(e);
-    } catch (SchemaDisagreementException e) {
-      throw new CassandraException(e);
     }
 
-    checkRing();
+    if (logger.isDebugEnabled()) {
+      logger.debug("Connected to cassandra at " + lastUsedHost + ":" + port);
+    }
   }
 
   /**
-   * Create a temporary keyspace. This will only be called when there is no keyspace except system
-   * defined on (new cluster).
-   * However we need a keyspace to call describe_ring to get all servers from the ring.
+   * Pick the server a new client connects to first, the way the policy orders replicas: close
+   * and healthy ones first and, for {@link LatencyAwareOption}, the fastest of those. The seed
+   * wins ties so that the policies that do not score servers keep connecting to it.
    *
-   * @return the temporary keyspace
-   * @throws InvalidRequestException     error
-   * @throws TException                  error
-   * @throws SchemaDisagreementException
-   * @throws InterruptedException        error
+   * @param seed   the host the client was created with
+   * @param ring   the known nodes of the cluster
+   * @param policy policy already reset with the ring
+   * @return the server to connect to
    */
-  private KsDef createTmpKs() throws InvalidRequestException, TException, SchemaDisagreementException {
-
-    Map<String, String> stratOpts = new HashMap<String, String>();
-    stratOpts.put("replication_factor", "1");
-
-    KsDef tmpKs = new KsDef("proxy_client_ks", "org.apache.cassandra.locator.SimpleStrategy",
-            Arrays.asList(new CfDef[]{})).setStrategy_options(stratOpts);
-
-    clientHolder.getClient().system_add_keyspace(tmpKs);
-
-    return tmpKs;
+  static String chooseInitialHost(String seed, RingTopology ring, HostSelectionPolicy policy) {
+    List<String> candidates = new ArrayList<String>(ring.getEndpoints().size() + 1);
+    candidates.add(seed);
+    for (String endpoint : ring.getEndpoints()) {
+      if (!endpoint.equals(seed)) {
+        candidates.add(endpoint);
+      }
+    }
+    return policy.orderReplicas(candidates).get(0);
   }
 
   /**
-   * Refresh the server in the ring.
+   * Refresh the servers in the ring from the latest snapshot of the shared topology service,
+   * which reads the ring in the background.
    *
-   * @throws TException
-   * @throws InvalidRequestException
-   * @throws IOException
+   * @throws CassandraException if the ring was never read and cannot be read now
    */
   private void checkRing() throws CassandraException {
-    assert clientHolder != null;
-
-    long now = System.currentTimeMillis();
-
-    if ((now - lastPoolCheck) > 60 * 1000) {
-      List<TokenRange> ring;
-      try {
-        ring = clientHolder.getClient().describe_ring(ringKs);
-      } catch (InvalidRequestException e) {
-        throw new CassandraException(e);
-      } catch (TException e) {
-        throw new CassandraException(e);
-      }
-      lastPoolCheck = now;
-      nextServerGen.resetRing(ring);
+    RingTopology current = RingTopologyService.getInstance().getTopology(host, port, null);
+    if (current != ring) {
+      ring = current;
+      nextServerGen.resetRing(current.getRanges());
     }
 
+    if (router != null) {
+      checkRoutingRing();
+    }
   }
 
   /**
@@ -279,85 +454,290 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
    * @throws CassandraException error when there is no server to connect from the ring.
    */
   private void attemptReconnect() throws CassandraException {
+    try {
+      checkRing(); // Refresh the servers in the ring.
+    } catch (CassandraException e) {
+      // keep the servers known so far
+      logger.warn("Unable to read the ring through " + host + " or the nodes known so far", e);
+    }
+
     String endpoint = nextServerGen.getNextServer(lastUsedHost);
 
     if (endpoint != null) {
+      HostStats.getInstance().tryAcquireProbe(endpoint);
       clientHolder = createConnection(endpoint);
+      if (!endpoint.equals(lastUsedHost)) {
+        ClientMetrics.getInstance().recordFailover(lastUsedHost);
+      }
       lastUsedHost = endpoint; // Assign the last successfully connected server.
-      checkRing(); // Refresh the servers in the ring.
       logger.info("Connected to cassandra at " + endpoint + ":" + port);
     } else {
       clientHolder = createConnection(lastUsedHost);
     }
+    ClientMetrics.getInstance().recordReconnect(lastUsedHost);
+
+    try {
+      // Pooled connections may have been left on another keyspace.
+      clientHolder.setKeyspace(lastKeyspace);
+    } catch (CassandraException e) {
+      CassandraClientPool.getInstance().invalidate(clientHolder);
+      clientHolder = null;
+      throw e;
+    }
   }
 
-  public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
-    Object result = null;
+  /**
+   * Timeouts and broken connections count against the health of the host. Unavailable errors
+   * only say that other replicas are down.
+   */
+  private static boolean isHostError(Exception e) {
+    return e instanceof TTransportException || e instanceof TimedOutException;
+  }
 
-    int tries = 0;
+  /**
+   * Wait as long as the retry policy asks before the next attempt of a failed call.
+   *
+   * @return false if the call should give up
+   */
+  private boolean backOff(Exception e, int attempt) {
+    long now = System.currentTimeMillis();
+    if (attempt == 1) {
+      firstFailure = now;
+    }
+
+    long delay = retryPolicy.getRetryDelay(e, attempt, now - firstFailure);
+    if (delay < 0) {
+      return false;
+    }
 
-    while (result == null && tries++ < maxAttempts) {
+    if (delay > 0) {
       try {
-        if (clientHolder == null) {
-          // Let's try to connect to the next server.
+        Thread.sleep(delay);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean recordFailure(String host, String method, Exception e, boolean retry) {
+    ClientMetrics.getInstance().recordFailure(host, method, e);
+    if (retry) {
+      ClientMetrics.getInstance().recordRetry(host);
+    }
+    return retry;
+  }
+
+  /**
+   * Hands out the current connection to the {@link RetryingCassandraClient} and applies the
+   * failover rules when a call on it fails.
+   */
+  private class ProxyConnector implements RetryingCassandraClient.Connector {
+
+    public Cassandra.Iface getClient() throws TTransportException {
+      if (clientHolder != null && !clientHolder.isOpen()) {
+        CassandraClientPool.getInstance().invalidate(clientHolder);
+        clientHolder = null;
+      }
+
+      if (clientHolder == null) {
+        // Let's try to connect to the next server.
+        try {
           attemptReconnect();
+        } catch (CassandraException e) {
+          throw new TTransportException("Not able to connect to any server in the ring " + lastUsedHost, e);
         }
+      }
 
-        if (clientHolder != null && clientHolder.isOpen()) {
-          result = m.invoke(clientHolder.getClient(), args);
+      return clientHolder.getClient();
+    }
 
-          if (m.getName().equalsIgnoreCase("set_keyspace") && args != null && args.length == 1) {
-            // Keep last known keyspace when set_keyspace is successfully invoked.
+    public boolean retry(String method, Exception e, int attempt) {
+      String failedHost = clientHolder == null ? null : clientHolder.getHost();
+      if (isHostError(e)) {
+        HostStats.getInstance().recordError(failedHost);
+      }
 
-            ringKs = (String) args[0];
-          }
+      if (e instanceof TTransportException) {
+        // The connection is broken, drop it from the pool so the next try reconnects.
+        CassandraClientPool.getInstance().invalidate(clientHolder);
+        clientHolder = null;
+      }
 
-          return result;
-        }
-      } catch (CassandraException e) {
-        // We are unable to connect to any server in the ring, let's continue trying
-        // until we hit the maximum number of attempts.
-        if (tries >= maxAttempts) {
-          throw e.getCause();
+      // These errors seem due to not being able to connect the cassandra server.
+      // If this is last try give up; otherwise keep trying.
+      return recordFailure(failedHost, method, e, backOff(e, attempt));
+    }
+
+    public void callSucceeded(String method, long latencyNanos) {
+      if (clientHolder != null) {
+        HostStats.getInstance().recordLatency(clientHolder.getHost(), latencyNanos);
+        ClientMetrics.getInstance().recordCall(clientHolder.getHost(), method, latencyNanos);
+      }
+    }
+
+    public String getKeyspace() {
+      return clientHolder == null ? null : clientHolder.getKeyspace();
+    }
+
+    public void keyspaceChanged(String keyspace) {
+      // Keep last known keyspace when set_keyspace is successfully invoked.
+      lastKeyspace = keyspace;
+      clientHolder.keyspaceChanged(keyspace);
+    }
+  }
+
+  /**
+   * A connection pinned to one replica. If the replica cannot be reached it is skipped by
+   * {@link #getProxyConnection(ByteBuffer)} for a while, and calls already routed to it
+   * continue on the regular connection.
+   */
+  private class EndpointConnector implements RetryingCassandraClient.Connector {
+    private final String endpoint;
+    private final Cassandra.Iface client = new RetryingCassandraClient(this);
+    private CassandraClientHolder holder;
+    private String keyspace;
+    private long downUntil;
+    private boolean fallback;
+
+    EndpointConnector(String endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    boolean isAvailable(long now) {
+      return (holder != null || now >= downUntil) && HostStats.getInstance().isAvailable(endpoint);
+    }
+
+    public Cassandra.Iface getClient() throws TTransportException {
+      if (holder != null && !holder.isOpen()) {
+        markDown();
+      }
+
+      if (holder == null && System.currentTimeMillis() >= downUntil) {
+        try {
+          holder = CassandraClientPool.getInstance().borrow(endpoint, port, keyspace);
+        } catch (CassandraException e) {
+          logger.info("Unable to connect to replica " + endpoint + ":" + port + ", " + e.getMessage());
+          markDown();
         }
-      } catch (InvocationTargetException e) {
-        // Error is from cassandra thrift server
-        if (e.getTargetException() instanceof UnavailableException ||
-                e.getTargetException() instanceof TimedOutException ||
-                e.getTargetException() instanceof TTransportException) {
-          // These errors seem due to not being able to connect the cassandra server.
-          // If this is last try quit the program; otherwise keep trying.
-          if (tries >= maxAttempts) {
-            throw e.getCause();
-          }
-        } else {
-          String argsList = "";
-          for (Object arg : args) {
-            argsList = arg.toString() + "\n";
-          }
-          //logger.info("SOME UNKNOWN EXCEPTION EXECUTING: \n " + m + " on " + proxy + " with " + argsList);
-          //logger.error(e.getMessage(), e);
-          // The other errors, we should not keep trying.
-          throw e.getCause();
+      }
+
+      fallback = holder == null;
+      if (!fallback) {
+        return holder.getClient();
+      }
+
+      Cassandra.Iface fallbackClient = proxyConnector.getClient();
+      if (keyspace != null) {
+        try {
+          clientHolder.setKeyspace(keyspace);
+        } catch (CassandraException e) {
+          throw new TTransportException(e);
         }
       }
+      return fallbackClient;
     }
 
-    throw new CassandraException("Not able to connect to any server in the ring " + lastUsedHost);
+    public boolean retry(String method, Exception e, int attempt) {
+      if (fallback) {
+        return proxyConnector.retry(method, e, attempt);
+      }
+
+      if (isHostError(e)) {
+        HostStats.getInstance().recordError(endpoint);
+      }
+      if (e instanceof TTransportException) {
+        markDown();
+      }
+      return recordFailure(endpoint, method, e, backOff(e, attempt));
+    }
+
+    public void callSucceeded(String method, long latencyNanos) {
+      if (fallback) {
+        proxyConnector.callSucceeded(method, latencyNanos);
+      } else {
+        HostStats.getInstance().recordLatency(endpoint, latencyNanos);
+        ClientMetrics.getInstance().recordCall(endpoint, method, latencyNanos);
+      }
+    }
+
+    public String getKeyspace() {
+      if (holder != null) {
+        return holder.getKeyspace();
+      }
+      return fallback ? proxyConnector.getKeyspace() : null;
+    }
+
+    public void keyspaceChanged(String keyspace) {
+      this.keyspace = keyspace;
+      if (holder != null) {
+        holder.keyspaceChanged(keyspace);
+      } else if (fallback) {
+        proxyConnector.keyspaceChanged(keyspace);
+      }
+    }
+
+    private void markDown() {
+      CassandraClientPool.getInstance().invalidate(holder);
+      holder = null;
+      downUntil = System.currentTimeMillis() + ENDPOINT_RETRY_DELAY;
+    }
+
+    void close() {
+      CassandraClientPool.getInstance().release(holder);
+      holder = null;
+    }
   }
 
   /**
    * A class to implement the method of getting the next servers from the ring.
    */
-  public abstract class RingConnOption {
+  public abstract static class RingConnOption implements HostSelectionPolicy {
+    /**
+     * The servers {@link #getServerFromRing(String)} chooses from: the closest ones that are
+     * still worth trying.
+     */
     protected List<String> servers;
 
+    private List<String> allServers;
+
+    /**
+     * All servers split by {@link ReplicaLocality} distance, closest first.
+     */
+    private List<List<String>> tiers;
+
+    private ReplicaLocality locality = ReplicaLocality.ANY;
+    private RingTopology topology;
+
     protected RingConnOption() {
 
     }
 
     protected RingConnOption(List<TokenRange> servers) {
-      this.servers = getAllServers(servers);
+      resetRing(servers);
+    }
+
+    /**
+     * Prefer the servers of the local data center, and rack, over the others.
+     */
+    public void setLocality(ReplicaLocality locality) {
+      this.locality = locality;
+      if (topology != null) {
+        resetRing(topology.getRanges());
+      }
+    }
+
+    public ReplicaLocality getLocality() {
+      return locality;
+    }
+
+    /**
+     * @param host cassandra host
+     * @return false if the host is outside the local data center
+     */
+    public boolean isLocal(String host) {
+      return locality.getDistance(host, topology) < ReplicaLocality.REMOTE;
     }
 
     /**
@@ -376,6 +756,8 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
         throw new CassandraException("No server is available from the ring.");
       }
 
+      servers = chooseTier(host);
+
       if (servers.size() == 1) {
         if (servers.get(0).equals(host)) {
           return null;
@@ -403,13 +785,77 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
      * Reset the servers in the ring.
      */
     public void resetRing(List<TokenRange> servers) {
-      this.servers = getAllServers(servers);
+      topology = new RingTopology(null, 0, servers);
+      allServers = getAllServers(servers);
+
+      tiers = new ArrayList<List<String>>(ReplicaLocality.REMOTE + 1);
+      for (int i = 0; i <= ReplicaLocality.REMOTE; i++) {
+        tiers.add(new ArrayList<String>());
+      }
+      for (String server : allServers) {
+        tiers.get(locality.getDistance(server, topology)).add(server);
+      }
+
+      this.servers = allServers;
+    }
+
+    /**
+     * Pick the closest servers with a healthy one besides the given host; remote servers are
+     * only used when every closer one is down.
+     */
+    private List<String> chooseTier(String host) {
+      HostStats stats = HostStats.getInstance();
+      for (List<String> tier : tiers) {
+        for (String server : tier) {
+          if (!server.equals(host) && stats.isAvailable(server)) {
+            return tier;
+          }
+        }
+      }
+
+      for (List<String> tier : tiers) {
+        for (String server : tier) {
+          if (!server.equals(host)) {
+            return tier;
+          }
+        }
+      }
+      return allServers;
+    }
+
+    /**
+     * Replicas whose circuit breaker is open go last, the others closest first.
+     * Otherwise the ring order is kept.
+     */
+    public List<String> orderReplicas(List<String> replicas) {
+      HostStats stats = HostStats.getInstance();
+      final Map<String, Integer> ranks = new HashMap<String, Integer>(replicas.size());
+      for (String replica : replicas) {
+        int distance = locality.getDistance(replica, topology);
+        ranks.put(replica, stats.isAvailable(replica) ? distance : ReplicaLocality.REMOTE + 1 + distance);
+      }
+
+      List<String> ordered = new ArrayList<String>(replicas);
+      Collections.sort(ordered, new Comparator<String>() {
+        public int compare(String h1, String h2) {
+          int cmp = ranks.get(h1) - ranks.get(h2);
+          return cmp != 0 ? cmp : compareReplicas(h1, h2);
+        }
+      });
+      return ordered;
+    }
+
+    /**
+     * Order replicas that are equally close and healthy; keeps the ring order by default.
+     */
+    protected int compareReplicas(String h1, String h2) {
+      return 0;
     }
 
     private List<String> getAllServers(List<TokenRange> input) {
       HashMap<String, Integer> map = new HashMap<String, Integer>(input.size());
       for (TokenRange thisRange : input) {
-        List<String> servers = thisRange.rpc_endpoints;
+        List<String> servers = TokenRouter.getEndpoints(thisRange);
         for (String newServer : servers) {
           map.put(newServer, new Integer(1));
         }
@@ -424,7 +870,7 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
      * @return If there is no server in the ring, return false; Otherwise return true.
      */
     private boolean checkServerHealth() {
-      if (servers == null || servers.size() == 0) {
+      if (allServers == null || allServers.size() == 0) {
         logger.warn("No cassandra ring information found, no node is available to connect to");
         return false;
       }
@@ -436,7 +882,7 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
   /**
    * Randomly choose a server from the ring to connect.
    */
-  public class RandomizerOption extends RingConnOption {
+  public static class RandomizerOption extends RingConnOption {
 
     private final Random generator;
 
@@ -452,12 +898,12 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
 
     @Override
     protected String getServerFromRing(String thisHost) {
-      String endpoint = thisHost;
+      String endpoint;
 
-      while (!endpoint.equals(thisHost)) {
+      do {
         int index = generator.nextInt(servers.size());
         endpoint = servers.get(index);
-      }
+      } while (endpoint.equals(thisHost));
 
       return endpoint;
     }
@@ -466,7 +912,7 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
   /**
    * Choose a server using round-robin mechanism.
    */
-  public class RoundRobinOption extends RingConnOption {
+  public static class RoundRobinOption extends RingConnOption {
     private int lastUsedIndex;
 
     public RoundRobinOption() {
@@ -480,19 +926,100 @@ public class CassandraProxyClient implements java.lang.reflect.InvocationHandler
 
     @Override
     protected String getServerFromRing(String thisHost) {
-      String endpoint = thisHost;
+      String endpoint;
 
-      while (!endpoint.equals(thisHost)) {
+      do {
         lastUsedIndex++;
         // Start from beginning if reaches to the last server in the ring.
-        if (lastUsedIndex == servers.size()) {
+        if (lastUsedIndex >= servers.size()) {
           lastUsedIndex = 0;
         }
 
         endpoint = servers.get(lastUsedIndex);
+      } while (endpoint.equals(thisHost));
+
+      return endpoint;
+    }
+  }
+
+  /**
+   * Keep reconnecting to the same server.
+   */
+  public static class StickyOption extends RingConnOption {
+
+    @Override
+    public String getNextServer(String host) {
+      return null;
+    }
+
+    @Override
+    protected String getServerFromRing(String thisHost) {
+      return null;
+    }
+  }
+
+  /**
+   * Choose the healthy server with the lowest latency, as recorded in {@link HostStats}.
+   * Servers whose circuit breaker is open are only chosen when no other server is left.
+   */
+  public static class LatencyAwareOption extends RingConnOption {
+
+    private final Random generator = new Random();
+
+    public LatencyAwareOption() {
+      super();
+    }
+
+    public LatencyAwareOption(List<TokenRange> rings) {
+      super(rings);
+    }
+
+    @Override
+    protected String getServerFromRing(String thisHost) {
+      HostStats stats = HostStats.getInstance();
+      String best = null;
+      double bestScore = 0;
+      int ties = 0;
+
+      for (String server : servers) {
+        if (server.equals(thisHost) || !stats.isAvailable(server)) {
+          continue;
+        }
+
+        double score = stats.getScore(server);
+        if (best == null || score < bestScore) {
+          best = server;
+          bestScore = score;
+          ties = 1;
+        } else if (score == bestScore && generator.nextInt(++ties) == 0) {
+          // spread the load over servers that look the same, e.g. the ones never used yet
+          best = server;
+        }
       }
 
+      if (best != null) {
+        return best;
+      }
+
+      if (stats.isAvailable(thisHost)) {
+        // every other server is out, try the same one again
+        return null;
+      }
+
+      String endpoint;
+      do {
+        endpoint = servers.get(generator.nextInt(servers.size()));
+      } while (endpoint.equals(thisHost));
       return endpoint;
     }
+
+    /**
+     * Equally close replicas fastest first.
+     */
+    @Override
+    protected int compareReplicas(String h1, String h2) {
+      HostStats stats = HostStats.getInstance();
+      return Double.compare(stats.getScore(h1), stats.getScore(h2));
+    }
   }
 }
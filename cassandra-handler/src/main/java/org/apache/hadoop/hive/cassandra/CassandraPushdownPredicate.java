@@ -69,10 +69,11 @@ public class CassandraPushdownPredicate {
    */
   public static Set<ColumnDef> getIndexedColumns(String host, int port, String ksName, String cfName) throws CassandraException
   {
-    final CassandraProxyClient client = new CassandraProxyClient(host, port, true, true);
+    final CassandraClientPool pool = CassandraClientPool.getInstance();
+    final CassandraClientHolder client = pool.borrow(host, port);
     Set<ColumnDef> indexedColumns = new HashSet<ColumnDef>();
     try {
-      KsDef ks = client.getProxyConnection().describe_keyspace(ksName);
+      KsDef ks = client.getClient().describe_keyspace(ksName);
       List<CfDef> cfs = ks.getCf_defs();
       CfDef cfDef = null;
       for (CfDef thisCf : cfs) {
@@ -92,15 +93,51 @@ public class CassandraPushdownPredicate {
         }
       }
     } catch (TException e) {
+      pool.invalidate(client);
       throw new CassandraException(e);
     } catch (InvalidRequestException e) {
       throw new CassandraException(e);
     } catch (NotFoundException e) {
       throw new CassandraException(e);
+    } finally {
+      pool.release(client);
     }
     return indexedColumns;
   }
 
+  /**
+   * Get the comparator of the column names of a column family
+   * @param host
+   * @param port
+   * @param ksName keyspace name
+   * @param cfName column family name
+   * @return the comparator type, as TypeParser reads it, or null if there is no such column family
+   * @throws CassandraException if a problem is encountered communicating with Cassandra
+   */
+  public static String getComparator(String host, int port, String ksName, String cfName) throws CassandraException
+  {
+    final CassandraClientPool pool = CassandraClientPool.getInstance();
+    final CassandraClientHolder client = pool.borrow(host, port);
+    try {
+      KsDef ks = client.getClient().describe_keyspace(ksName);
+      for (CfDef cfDef : ks.getCf_defs()) {
+        if (cfDef.getName().equalsIgnoreCase(cfName)) {
+          return cfDef.getComparator_type();
+        }
+      }
+      return null;
+    } catch (TException e) {
+      pool.invalidate(client);
+      throw new CassandraException(e);
+    } catch (InvalidRequestException e) {
+      throw new CassandraException(e);
+    } catch (NotFoundException e) {
+      throw new CassandraException(e);
+    } finally {
+      pool.release(client);
+    }
+  }
+
   /**
    * Serialize a set of ColumnDefs for indexed columns, so that
    * it can be written to Job configuration
@@ -24,10 +24,12 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
+import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.thrift.ColumnDef;
 import org.apache.cassandra.thrift.KsDef;
 import org.apache.cassandra.thrift.NotFoundException;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.cql.CqlPushdownPredicate;
 import org.apache.hadoop.hive.cassandra.input.HiveCassandraStandardColumnInputFormat;
 import org.apache.hadoop.hive.cassandra.output.HiveCassandraOutputFormat;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
@@ -108,7 +110,7 @@ public class CassandraStorageHandler
     {
       jobProperties.put(AbstractCassandraSerDe.CASSANDRA_PARTITIONER,
           tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_PARTITIONER,
-          "org.apache.cassandra.dht.Murmur3Partitioner"));
+          AbstractCassandraSerDe.DEFAULT_CASSANDRA_PARTITIONER));
     }
     else
     {
@@ -212,6 +214,39 @@ public class CassandraStorageHandler
           configuration.get(AbstractCassandraSerDe.CASSANDRA_SLICE_PREDICATE_RANGE_REVERSED));
     }
 
+    for (String property : AbstractCassandraSerDe.CASSANDRA_SPLIT_PROPERTIES)
+    {
+      String value = configuration.get(property, tableProperties.getProperty(property));
+      if (value != null)
+      {
+        jobProperties.put(property, value);
+      }
+    }
+
+    for (String property : AbstractCassandraSerDe.CASSANDRA_READER_PROPERTIES)
+    {
+      String value = configuration.get(property, tableProperties.getProperty(property));
+      if (value != null)
+      {
+        jobProperties.put(property, value);
+      }
+    }
+
+    for (String property : AbstractCassandraSerDe.CASSANDRA_RETRY_PROPERTIES)
+    {
+      String value = configuration.get(property, tableProperties.getProperty(property));
+      if (value != null)
+      {
+        jobProperties.put(property, value);
+      }
+    }
+
+    String validatorTypes = tableProperties.getProperty(CassandraColumnSerDe.CASSANDRA_VALIDATOR_TYPE);
+    if (validatorTypes != null)
+    {
+      jobProperties.put(CassandraColumnSerDe.CASSANDRA_VALIDATOR_TYPE, validatorTypes);
+    }
+
     //Set the indexed column names - leave unset if we have problems determining them
     String indexedColumns = tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_INDEXED_COLUMNS);
     if (indexedColumns != null)
@@ -229,6 +264,22 @@ public class CassandraStorageHandler
       }
     }
 
+    //Set the comparator wide rows are read with, so that the readers do not each ask for it
+    String comparator = tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_CF_COMPARATOR);
+    if (comparator == null && CassandraColumnSerDe.isTransposed(CassandraColumnSerDe.parseColumnMapping(columnInfo)))
+    {
+      try {
+        comparator = CassandraPushdownPredicate.getComparator(host, Integer.parseInt(port), keyspace, columnFamily);
+      } catch (CassandraException e) {
+        // the readers look the comparator up themselves
+        logger.info("Error determining the cassandra comparator, will not include in JobConf", e);
+      }
+    }
+    if (comparator != null)
+    {
+      jobProperties.put(AbstractCassandraSerDe.CASSANDRA_CF_COMPARATOR, comparator);
+    }
+
   }
 
   @Override
@@ -259,6 +310,8 @@ public class CassandraStorageHandler
   @Override
   public void setConf(Configuration arg0) {
     this.configuration = arg0;
+    CassandraClientPool.getInstance().configure(arg0);
+    RingTopologyService.getInstance().configure(arg0);
   }
 
   @Override
@@ -357,15 +410,49 @@ public class CassandraStorageHandler
    * matches the indexed columns. If there is no matching, we can't push down the predicate. For any matching column that
    * is found, we need to verify that there is at least one equal operator. If there is no equal operator, we can't push
    * down the predicate.
+   *
+   * A condition restricting the row key to a few values is pushed down instead of the indexed columns when there is
+   * one, the input format then looks the keys up rather than scanning the ring. The keys are encoded with the
+   * validator cassandra.cf.validatorType sets for the row key or, failing that, the key validator of the column family.
+   * Failing that, bounds on cassandra_token() of the row key are pushed down, and only the splits of that part of
+   * the ring are scanned.
    */
   @Override
   public DecomposedPredicate decomposePredicate( JobConf jobConf, Deserializer deserializer, ExprNodeDesc predicate) {
+    CassandraColumnSerDe cassandraSerde = (CassandraColumnSerDe) deserializer;
+    String keyColumn = cassandraSerde.getHiveColumnName(CassandraColumnSerDe.CASSANDRA_KEY_COLUMN);
+    String host = jobConf.get(AbstractCassandraSerDe.CASSANDRA_HOST, AbstractCassandraSerDe.DEFAULT_CASSANDRA_HOST);
+    int port = jobConf.getInt(AbstractCassandraSerDe.CASSANDRA_PORT, Integer.parseInt(AbstractCassandraSerDe.DEFAULT_CASSANDRA_PORT));
+    String ksName = cassandraSerde.getCassandraKeyspace();
+    String cfName = cassandraSerde.getCassandraColumnFamily();
+
+    RowKeyPredicate keyPredicate = null;
+    try {
+      AbstractType<?> keyValidator = cassandraSerde.getKeyValidator();
+      if (keyValidator == null) {
+        keyValidator = CqlPushdownPredicate.getKeyValidator(host, port, ksName, cfName);
+      }
+      keyPredicate = RowKeyPredicate.analyze(predicate, keyColumn, keyValidator);
+    } catch (CassandraException e) {
+      logger.info("Unable to read the key validator of " + ksName + "." + cfName + ", row keys will not be looked up", e);
+    }
+    if (keyPredicate != null) {
+      DecomposedPredicate decomposedPredicate = new DecomposedPredicate();
+      decomposedPredicate.pushedPredicate = keyPredicate.getPushedPredicate();
+      decomposedPredicate.residualPredicate = keyPredicate.getResidualPredicate();
+      return decomposedPredicate;
+    }
+
+    TokenRangePredicate tokenRange = TokenRangePredicate.analyze(predicate, keyColumn,
+        jobConf.get(AbstractCassandraSerDe.CASSANDRA_PARTITIONER, cassandraSerde.getCassandraPartitioner()));
+    if (tokenRange != null) {
+      DecomposedPredicate decomposedPredicate = new DecomposedPredicate();
+      decomposedPredicate.pushedPredicate = tokenRange.getPushedPredicate();
+      decomposedPredicate.residualPredicate = tokenRange.getResidualPredicate();
+      return decomposedPredicate;
+    }
+
     try {
-      CassandraColumnSerDe cassandraSerde = (CassandraColumnSerDe) deserializer;
-      String host = jobConf.get(AbstractCassandraSerDe.CASSANDRA_HOST, AbstractCassandraSerDe.DEFAULT_CASSANDRA_HOST);
-      int port = jobConf.getInt(AbstractCassandraSerDe.CASSANDRA_PORT, Integer.parseInt(AbstractCassandraSerDe.DEFAULT_CASSANDRA_PORT));
-      String ksName = cassandraSerde.getCassandraKeyspace();
-      String cfName = cassandraSerde.getCassandraColumnFamily();
       Set<ColumnDef> indexedColumns = CassandraPushdownPredicate.getIndexedColumns(host, port, ksName, cfName);
       if (indexedColumns.isEmpty()) {
         return null;
@@ -0,0 +1,445 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.Progressable;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * What the cassandra clients in this JVM are doing, per host and per thrift method: call counts
+ * and latency histograms, failures, retries, and the connections opened, closed and failed over.
+ *
+ * Every host and every method of a host is registered as an MXBean under
+ * org.apache.hadoop.hive.cassandra:type=CassandraClient, so a long running HiveServer can be
+ * watched with any JMX console. Tasks publish the totals of all hosts as Hadoop counters through
+ * a {@link Snapshot}. The calls and time per host stay out of the job counters, whose number
+ * Hadoop limits, and go to the debug log instead.
+ */
+public class ClientMetrics {
+
+  private static final Logger logger = LoggerFactory.getLogger(ClientMetrics.class);
+
+  private static final ClientMetrics instance = new ClientMetrics(ManagementFactory.getPlatformMBeanServer());
+
+  static final String DOMAIN = "org.apache.hadoop.hive.cassandra";
+
+  /**
+   * Group of the Hadoop counters with the totals of all hosts.
+   */
+  public static final String COUNTER_GROUP = "Cassandra Client";
+
+  /**
+   * Hadoop counter with the time spent in the calls to all hosts.
+   */
+  public static final String CALL_MILLIS = "Call millis";
+
+  /**
+   * Events counted for every host.
+   */
+  public enum Counter {
+    CALLS("Calls"),
+    ERRORS("Failed calls"),
+    TIMEOUTS("Timeouts"),
+    UNAVAILABLE("Unavailable errors"),
+    TRANSPORT_ERRORS("Transport errors"),
+    RETRIES("Retries"),
+    CONNECTIONS_OPENED("Connections opened"),
+    CONNECTIONS_CLOSED("Connections closed"),
+    RECONNECTS("Reconnects"),
+    FAILOVERS("Failovers to another host");
+
+    private final String displayName;
+
+    private Counter(String displayName) {
+      this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+      return displayName;
+    }
+  }
+
+  /**
+   * Statistics of one host.
+   */
+  public interface HostMXBean {
+    long getCalls();
+
+    long getErrors();
+
+    long getTimeouts();
+
+    long getUnavailableErrors();
+
+    long getTransportErrors();
+
+    long getRetries();
+
+    long getConnectionsOpened();
+
+    long getConnectionsClosed();
+
+    long getReconnects();
+
+    long getFailovers();
+
+    double getMeanLatencyMillis();
+
+    double get99thPercentileMillis();
+  }
+
+  /**
+   * Statistics of one thrift method on one host.
+   */
+  public interface MethodMXBean {
+    long getCalls();
+
+    long getErrors();
+
+    double getMeanLatencyMillis();
+
+    double get50thPercentileMillis();
+
+    double get95thPercentileMillis();
+
+    double get99thPercentileMillis();
+
+    double getMaxLatencyMillis();
+  }
+
+  private final MBeanServer server;
+  private final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<String, HostMetrics>();
+
+  /**
+   * @param server where to register the MXBeans, null not to register them
+   */
+  ClientMetrics(MBeanServer server) {
+    this.server = server;
+  }
+
+  /**
+   * @return the metrics shared by every client in this JVM
+   */
+  public static ClientMetrics getInstance() {
+    return instance;
+  }
+
+  /**
+   * Record a call that returned.
+   */
+  public void recordCall(String host, String method, long latencyNanos) {
+    if (host != null) {
+      HostMetrics metrics = getHost(host);
+      metrics.increment(Counter.CALLS);
+      metrics.latency.record(latencyNanos);
+      metrics.getMethod(method).latency.record(latencyNanos);
+    }
+  }
+
+  /**
+   * Record a call that failed, counting the error by its kind.
+   */
+  public void recordFailure(String host, String method, Exception e) {
+    if (host == null) {
+      return;
+    }
+
+    HostMetrics metrics = getHost(host);
+    metrics.increment(Counter.ERRORS);
+    metrics.getMethod(method).errors.incrementAndGet();
+    if (e instanceof TimedOutException) {
+      metrics.increment(Counter.TIMEOUTS);
+    } else if (e instanceof UnavailableException) {
+      metrics.increment(Counter.UNAVAILABLE);
+    } else if (e instanceof TTransportException) {
+      metrics.increment(Counter.TRANSPORT_ERRORS);
+    }
+  }
+
+  public void recordRetry(String host) {
+    increment(host, Counter.RETRIES);
+  }
+
+  public void recordConnectionOpened(String host) {
+    increment(host, Counter.CONNECTIONS_OPENED);
+  }
+
+  public void recordConnectionClosed(String host) {
+    increment(host, Counter.CONNECTIONS_CLOSED);
+  }
+
+  /**
+   * Record a client connecting again after its connection failed.
+   *
+   * @param host the host connected to
+   */
+  public void recordReconnect(String host) {
+    increment(host, Counter.RECONNECTS);
+  }
+
+  /**
+   * Record a client leaving a host for another one.
+   *
+   * @param host the host that was left
+   */
+  public void recordFailover(String host) {
+    increment(host, Counter.FAILOVERS);
+  }
+
+  /**
+   * @return the number of the given events on the host so far
+   */
+  public long getCount(String host, Counter counter) {
+    HostMetrics metrics = hosts.get(host);
+    return metrics == null ? 0 : metrics.counts.get(counter.ordinal());
+  }
+
+  /**
+   * @return latencies of the calls of the given method on the host, null if it was never called
+   */
+  public LatencyHistogram getLatency(String host, String method) {
+    HostMetrics metrics = hosts.get(host);
+    MethodMetrics methodMetrics = metrics == null ? null : metrics.methods.get(method);
+    return methodMetrics == null ? null : methodMetrics.latency;
+  }
+
+  /**
+   * @return the counts so far, to publish what happens from now on as Hadoop counters
+   */
+  public Snapshot snapshot() {
+    return new Snapshot();
+  }
+
+  private void increment(String host, Counter counter) {
+    if (host != null) {
+      getHost(host).increment(counter);
+    }
+  }
+
+  private HostMetrics getHost(String host) {
+    HostMetrics metrics = hosts.get(host);
+    if (metrics == null) {
+      HostMetrics newMetrics = new HostMetrics(host);
+      metrics = hosts.putIfAbsent(host, newMetrics);
+      if (metrics == null) {
+        metrics = newMetrics;
+        register(newMetrics, HostMXBean.class, "host=" + ObjectName.quote(host));
+      }
+    }
+    return metrics;
+  }
+
+  private <T> void register(T bean, Class<T> type, String properties) {
+    if (server == null) {
+      return;
+    }
+
+    try {
+      ObjectName name = new ObjectName(DOMAIN + ":type=CassandraClient," + properties);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new StandardMBean(bean, type, true), name);
+      }
+    } catch (JMException e) {
+      logger.warn("Unable to register the cassandra client metrics " + properties, e);
+    } catch (SecurityException e) {
+      logger.warn("Unable to register the cassandra client metrics " + properties, e);
+    }
+  }
+
+  /**
+   * The counts at some point. Each {@link #publishChanges(Progressable)} adds what changed since
+   * the previous one, or since the snapshot was taken, to the counters of the task. Clients of
+   * other tasks running in the same JVM are counted too.
+   */
+  public class Snapshot {
+    private final long[] totals = new long[Counter.values().length];
+    private final Map<String, long[]> perHost = new HashMap<String, long[]>();
+
+    private Snapshot() {
+      update(null);
+    }
+
+    /**
+     * @param progress the reporter of the task; anything else only moves the snapshot forward
+     */
+    public synchronized void publishChanges(Progressable progress) {
+      update(progress instanceof Reporter ? (Reporter) progress : null);
+    }
+
+    private void update(Reporter reporter) {
+      long[] current = new long[totals.length];
+      long nanos = 0;
+
+      for (HostMetrics metrics : hosts.values()) {
+        for (int i = 0; i < current.length; i++) {
+          current[i] += metrics.counts.get(i);
+        }
+
+        long[] hostCurrent = new long[]{metrics.latency.getCount(), metrics.latency.getTotalNanos()};
+        long[] hostPrevious = perHost.put(metrics.host, hostCurrent);
+        long calls = hostCurrent[0] - (hostPrevious == null ? 0 : hostPrevious[0]);
+        long hostNanos = hostCurrent[1] - (hostPrevious == null ? 0 : hostPrevious[1]);
+        nanos += hostNanos;
+        if (reporter != null && calls != 0 && logger.isDebugEnabled()) {
+          logger.debug(calls + " calls to " + metrics.host + " in " + hostNanos / 1000000 + " ms");
+        }
+      }
+
+      if (reporter != null && nanos / 1000000 != 0) {
+        reporter.incrCounter(COUNTER_GROUP, CALL_MILLIS, nanos / 1000000);
+      }
+
+      for (Counter counter : Counter.values()) {
+        int i = counter.ordinal();
+        if (reporter != null && current[i] != totals[i]) {
+          reporter.incrCounter(COUNTER_GROUP, counter.getDisplayName(), current[i] - totals[i]);
+        }
+        totals[i] = current[i];
+      }
+    }
+  }
+
+  private class HostMetrics implements HostMXBean {
+    final String host;
+    final AtomicLongArray counts = new AtomicLongArray(Counter.values().length);
+    final LatencyHistogram latency = new LatencyHistogram();
+    final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+
+    HostMetrics(String host) {
+      this.host = host;
+    }
+
+    void increment(Counter counter) {
+      counts.incrementAndGet(counter.ordinal());
+    }
+
+    MethodMetrics getMethod(String method) {
+      MethodMetrics metrics = methods.get(method);
+      if (metrics == null) {
+        MethodMetrics newMetrics = new MethodMetrics();
+        metrics = methods.putIfAbsent(method, newMetrics);
+        if (metrics == null) {
+          metrics = newMetrics;
+          register(newMetrics, MethodMXBean.class, "host=" + ObjectName.quote(host) + ",method=" + method);
+        }
+      }
+      return metrics;
+    }
+
+    public long getCalls() {
+      return counts.get(Counter.CALLS.ordinal());
+    }
+
+    public long getErrors() {
+      return counts.get(Counter.ERRORS.ordinal());
+    }
+
+    public long getTimeouts() {
+      return counts.get(Counter.TIMEOUTS.ordinal());
+    }
+
+    public long getUnavailableErrors() {
+      return counts.get(Counter.UNAVAILABLE.ordinal());
+    }
+
+    public long getTransportErrors() {
+      return counts.get(Counter.TRANSPORT_ERRORS.ordinal());
+    }
+
+    public long getRetries() {
+      return counts.get(Counter.RETRIES.ordinal());
+    }
+
+    public long getConnectionsOpened() {
+      return counts.get(Counter.CONNECTIONS_OPENED.ordinal());
+    }
+
+    public long getConnectionsClosed() {
+      return counts.get(Counter.CONNECTIONS_CLOSED.ordinal());
+    }
+
+    public long getReconnects() {
+      return counts.get(Counter.RECONNECTS.ordinal());
+    }
+
+    public long getFailovers() {
+      return counts.get(Counter.FAILOVERS.ordinal());
+    }
+
+    public double getMeanLatencyMillis() {
+      return latency.getMeanMillis();
+    }
+
+    public double get99thPercentileMillis() {
+      return latency.getPercentileMillis(99);
+    }
+  }
+
+  private static class MethodMetrics implements MethodMXBean {
+    final LatencyHistogram latency = new LatencyHistogram();
+    final AtomicLong errors = new AtomicLong();
+
+    public long getCalls() {
+      return latency.getCount();
+    }
+
+    public long getErrors() {
+      return errors.get();
+    }
+
+    public double getMeanLatencyMillis() {
+      return latency.getMeanMillis();
+    }
+
+    public double get50thPercentileMillis() {
+      return latency.getPercentileMillis(50);
+    }
+
+    public double get95thPercentileMillis() {
+      return latency.getPercentileMillis(95);
+    }
+
+    public double get99thPercentileMillis() {
+      return latency.getPercentileMillis(99);
+    }
+
+    public double getMaxLatencyMillis() {
+      return latency.getMaxMillis();
+    }
+  }
+}
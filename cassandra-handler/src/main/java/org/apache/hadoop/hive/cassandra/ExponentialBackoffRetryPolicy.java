@@ -0,0 +1,109 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * The default {@link RetryPolicy}: the wait before each retry doubles, from
+ * cassandra.retry.base.delay up to cassandra.retry.max.delay, and is spread with random jitter
+ * over the upper half of that range, so that the clients of a job do not retry against a struggling
+ * node in lockstep. A call gives up after cassandra.retry.max.attempts attempts, or when the next
+ * wait would take it past cassandra.retry.max.time.
+ *
+ * A broken connection is retried at once the first time, because the client has already failed
+ * over to another host. Timeouts and unavailable errors mean the cluster is overloaded or
+ * missing replicas, so they always wait.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy, Configurable {
+
+  private final Random random;
+  private Configuration conf;
+  private int maxAttempts;
+  private long baseDelay;
+  private long maxDelay;
+  private long maxRetryTime;
+
+  public ExponentialBackoffRetryPolicy() {
+    this(AbstractCassandraSerDe.DEFAULT_RETRY_MAX_ATTEMPTS, AbstractCassandraSerDe.DEFAULT_RETRY_BASE_DELAY,
+            AbstractCassandraSerDe.DEFAULT_RETRY_MAX_DELAY, AbstractCassandraSerDe.DEFAULT_RETRY_MAX_TIME);
+  }
+
+  /**
+   * @param maxAttempts  attempts per call, including the first one
+   * @param baseDelay    millis before the first retry
+   * @param maxDelay     longest millis between two attempts
+   * @param maxRetryTime millis a call may spend retrying
+   */
+  public ExponentialBackoffRetryPolicy(int maxAttempts, long baseDelay, long maxDelay, long maxRetryTime) {
+    this(maxAttempts, baseDelay, maxDelay, maxRetryTime, new Random());
+  }
+
+  ExponentialBackoffRetryPolicy(int maxAttempts, long baseDelay, long maxDelay, long maxRetryTime, Random random) {
+    this.maxAttempts = maxAttempts;
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+    this.maxRetryTime = maxRetryTime;
+    this.random = random;
+  }
+
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    if (conf != null) {
+      maxAttempts = conf.getInt(AbstractCassandraSerDe.CASSANDRA_RETRY_MAX_ATTEMPTS, maxAttempts);
+      baseDelay = conf.getLong(AbstractCassandraSerDe.CASSANDRA_RETRY_BASE_DELAY, baseDelay);
+      maxDelay = conf.getLong(AbstractCassandraSerDe.CASSANDRA_RETRY_MAX_DELAY, maxDelay);
+      maxRetryTime = conf.getLong(AbstractCassandraSerDe.CASSANDRA_RETRY_MAX_TIME, maxRetryTime);
+    }
+  }
+
+  public Configuration getConf() {
+    return conf;
+  }
+
+  public long getRetryDelay(Exception e, int attempt, long elapsedMillis) {
+    if (attempt >= maxAttempts) {
+      return NO_RETRY;
+    }
+
+    long delay;
+    if (e instanceof TTransportException && attempt == 1) {
+      delay = 0;
+    } else {
+      int backoffs = e instanceof TTransportException ? attempt - 1 : attempt;
+      long ceiling = Math.min(maxDelay, baseDelay << Math.min(backoffs - 1, 30));
+      long half = ceiling / 2;
+      delay = half + (long) (random.nextDouble() * (ceiling - half));
+    }
+
+    return elapsedMillis + delay > maxRetryTime ? NO_RETRY : delay;
+  }
+
+  @Override
+  public String toString() {
+    return "ExponentialBackoffRetryPolicy(maxAttempts=" + maxAttempts + ", baseDelay=" + baseDelay
+            + ", maxDelay=" + maxDelay + ", maxRetryTime=" + maxRetryTime + ")";
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.util.List;
+
+import org.apache.cassandra.thrift.TokenRange;
+
+/**
+ * Decides which cassandra host a {@link CassandraProxyClient} connects to.
+ *
+ * Implementations configured by class name through cassandra.connection.strategy need a public
+ * no-argument constructor. A policy instance is used by a single client.
+ */
+public interface HostSelectionPolicy {
+
+  /**
+   * Replace the known servers with the ones found in the ring.
+   *
+   * @param ring result of describe_ring
+   */
+  void resetRing(List<TokenRange> ring);
+
+  /**
+   * Choose the server to reconnect to after the connection to the given host failed.
+   *
+   * @param host the last host used for connection
+   * @return the server to connect to, or null to try the same host again
+   * @throws CassandraException if there is no server in the ring
+   */
+  String getNextServer(String host) throws CassandraException;
+
+  /**
+   * Order the replicas of a row key by preference.
+   *
+   * @param replicas replicas in ring order
+   * @return the replicas worth trying, best first
+   */
+  List<String> orderReplicas(List<String> replicas);
+}
@@ -0,0 +1,221 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency and error statistics of the cassandra hosts this JVM talks to, shared by all clients.
+ *
+ * Latencies and error rates are exponentially weighted moving averages, so recent calls count
+ * the most. Each host also has a circuit breaker: after a few consecutive failures the host is
+ * reported unavailable for a cool down period, after which a single call is let through to probe
+ * it. A successful probe closes the breaker, a failed one opens it again for twice as long.
+ * Choosing between hosts only looks at {@link #isAvailable(String)}; the probe is taken with
+ * {@link #tryAcquireProbe(String)} once a connection to the chosen host is used.
+ */
+public class HostStats {
+
+  private static final Logger logger = LoggerFactory.getLogger(HostStats.class);
+
+  private static final HostStats instance = new HostStats();
+
+  /**
+   * Weight of the latest sample in the moving averages.
+   */
+  static final double ALPHA = 0.2;
+
+  /**
+   * Consecutive failures that open the circuit breaker.
+   */
+  static final int FAILURE_THRESHOLD = 3;
+
+  static final long MIN_OPEN_MILLIS = 5 * 1000L;
+  static final long MAX_OPEN_MILLIS = 5 * 60 * 1000L;
+
+  private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+  /**
+   * @return the statistics shared by every client in this JVM
+   */
+  public static HostStats getInstance() {
+    return instance;
+  }
+
+  /**
+   * Record a call that completed.
+   *
+   * @param host         cassandra host
+   * @param latencyNanos time the call took
+   */
+  public void recordLatency(String host, long latencyNanos) {
+    if (host != null) {
+      getStats(host).success(latencyNanos / 1000000.0);
+    }
+  }
+
+  /**
+   * Record a call that failed because of the host, a timeout or a broken connection.
+   *
+   * @param host cassandra host
+   */
+  public void recordError(String host) {
+    recordError(host, System.currentTimeMillis());
+  }
+
+  void recordError(String host, long now) {
+    if (host != null) {
+      getStats(host).failure(host, now);
+    }
+  }
+
+  /**
+   * Check the circuit breaker without changing it, so it can be asked any number of times
+   * while choosing a host.
+   *
+   * @param host cassandra host
+   * @return false while the circuit breaker of the host is open or its probe is in flight
+   */
+  public boolean isAvailable(String host) {
+    Stats s = stats.get(host);
+    return s == null || s.isAvailable(System.currentTimeMillis());
+  }
+
+  /**
+   * Claim the call that probes a host whose circuit breaker cool down is over. Call it only
+   * right before a connection to the host is used.
+   *
+   * @param host cassandra host
+   * @return true if the host can be used: its breaker is closed, or this caller probes it
+   */
+  public boolean tryAcquireProbe(String host) {
+    Stats s = stats.get(host);
+    return s == null || s.tryAcquireProbe(System.currentTimeMillis());
+  }
+
+  /**
+   * Lower is better. The average latency in milliseconds, inflated by the recent error rate.
+   * Hosts without samples score 0, so they are tried and get measured.
+   *
+   * @param host cassandra host
+   * @return score of the host
+   */
+  public double getScore(String host) {
+    Stats s = stats.get(host);
+    return s == null ? 0 : s.score();
+  }
+
+  /**
+   * @return average latency of the host in milliseconds, 0 if unknown
+   */
+  public double getLatency(String host) {
+    Stats s = stats.get(host);
+    return s == null ? 0 : s.latency;
+  }
+
+  /**
+   * @return recent fraction of failed calls to the host, between 0 and 1
+   */
+  public double getErrorRate(String host) {
+    Stats s = stats.get(host);
+    return s == null ? 0 : s.errorRate;
+  }
+
+  /**
+   * Forget everything that was recorded.
+   */
+  void clear() {
+    stats.clear();
+  }
+
+  private Stats getStats(String host) {
+    Stats s = stats.get(host);
+    if (s == null) {
+      Stats newStats = new Stats();
+      s = stats.putIfAbsent(host, newStats);
+      if (s == null) {
+        s = newStats;
+      }
+    }
+    return s;
+  }
+
+  private static class Stats {
+    private volatile double latency;
+    private volatile double errorRate;
+    private boolean sampled;
+    private int consecutiveFailures;
+    private long openUntil;
+    private long openMillis = MIN_OPEN_MILLIS;
+    private boolean probing;
+    private long probeUntil;
+
+    synchronized void success(double latencyMillis) {
+      latency = sampled ? latency + ALPHA * (latencyMillis - latency) : latencyMillis;
+      sampled = true;
+      errorRate -= ALPHA * errorRate;
+      consecutiveFailures = 0;
+      openUntil = 0;
+      openMillis = MIN_OPEN_MILLIS;
+      probing = false;
+    }
+
+    synchronized void failure(String host, long now) {
+      errorRate += ALPHA * (1 - errorRate);
+      consecutiveFailures++;
+
+      if (probing) {
+        // the probe failed, keep the host out for longer
+        openMillis = Math.min(openMillis * 2, MAX_OPEN_MILLIS);
+        openUntil = now + openMillis;
+        probing = false;
+        logger.info("Circuit breaker for " + host + " opened again for " + openMillis + "ms");
+      } else if (consecutiveFailures >= FAILURE_THRESHOLD && openUntil == 0) {
+        openUntil = now + openMillis;
+        logger.info("Circuit breaker for " + host + " opened for " + openMillis + "ms after "
+                + consecutiveFailures + " failures");
+      }
+    }
+
+    synchronized boolean isAvailable(long now) {
+      return openUntil == 0 || (now >= openUntil && !(probing && now < probeUntil));
+    }
+
+    synchronized boolean tryAcquireProbe(long now) {
+      if (openUntil == 0) {
+        return true;
+      }
+      if (!isAvailable(now)) {
+        return false;
+      }
+      // half open, let one call through; if it never reports back, let another one through later
+      probing = true;
+      probeUntil = now + MIN_OPEN_MILLIS;
+      return true;
+    }
+
+    synchronized double score() {
+      return latency * (1 + 10 * errorRate);
+    }
+  }
+}
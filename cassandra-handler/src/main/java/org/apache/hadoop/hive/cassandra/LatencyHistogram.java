@@ -0,0 +1,93 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets whose bounds double, from one microsecond to about two minutes,
+ * so percentiles are known within a factor of two at a constant cost per sample. Safe to record
+ * into from several threads.
+ */
+public class LatencyHistogram {
+
+  /**
+   * Bucket i counts latencies below 2^i microseconds, the last one everything above.
+   */
+  static final int BUCKETS = 28;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    long micros = Math.max(nanos, 0) / 1000;
+    int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+    buckets.incrementAndGet(bucket);
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  public double getMeanMillis() {
+    long n = count.get();
+    return n == 0 ? 0 : totalNanos.get() / 1000000.0 / n;
+  }
+
+  public double getMaxMillis() {
+    return maxNanos.get() / 1000000.0;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return upper bound of the bucket holding the given percentile, capped by the largest
+   *         latency recorded, in milliseconds; 0 without samples
+   */
+  public double getPercentileMillis(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(n * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS - 1; i++) {
+      seen += buckets.get(i);
+      if (seen >= rank) {
+        return Math.min((1L << i) / 1000.0, getMaxMillis());
+      }
+    }
+    return getMaxMillis();
+  }
+}
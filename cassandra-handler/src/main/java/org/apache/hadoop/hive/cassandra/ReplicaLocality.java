@@ -0,0 +1,144 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+
+/**
+ * Ranks cassandra nodes by their distance to the data center, and optionally the rack, configured
+ * with cassandra.local.dc and cassandra.local.rack. The data center and rack of a node are taken
+ * from the endpoint details of the ring.
+ *
+ * Nodes whose data center is unknown count as remote. Without a local data center every node
+ * counts as local.
+ */
+public class ReplicaLocality {
+
+  public static final int LOCAL_RACK = 0;
+  public static final int LOCAL_DC = 1;
+  public static final int REMOTE = 2;
+
+  /**
+   * Every node is local.
+   */
+  public static final ReplicaLocality ANY = new ReplicaLocality(null, null);
+
+  private final String localDc;
+  private final String localRack;
+
+  /**
+   * @param localDc   data center to prefer, null to prefer none
+   * @param localRack rack to prefer within the data center, null to prefer none
+   */
+  public ReplicaLocality(String localDc, String localRack) {
+    this.localDc = localDc == null || localDc.trim().isEmpty() ? null : localDc.trim();
+    this.localRack = localRack == null || localRack.trim().isEmpty() ? null : localRack.trim();
+  }
+
+  /**
+   * @param conf job or session configuration
+   * @return the locality configured with cassandra.local.dc and cassandra.local.rack
+   */
+  public static ReplicaLocality fromConf(Configuration conf) {
+    return new ReplicaLocality(conf.get(AbstractCassandraSerDe.CASSANDRA_LOCAL_DC),
+            conf.get(AbstractCassandraSerDe.CASSANDRA_LOCAL_RACK));
+  }
+
+  /**
+   * @return true if a local data center is configured
+   */
+  public boolean isEnabled() {
+    return localDc != null;
+  }
+
+  public String getLocalDc() {
+    return localDc;
+  }
+
+  public String getLocalRack() {
+    return localRack;
+  }
+
+  /**
+   * @param endpoint rpc or gossip address of a node
+   * @param ring     ring the node is part of
+   * @return {@link #LOCAL_RACK}, {@link #LOCAL_DC} or {@link #REMOTE}
+   */
+  public int getDistance(String endpoint, RingTopology ring) {
+    if (localDc == null) {
+      return LOCAL_DC;
+    }
+
+    if (ring == null || !localDc.equals(ring.getDatacenter(endpoint))) {
+      return REMOTE;
+    }
+
+    return localRack != null && localRack.equals(ring.getRack(endpoint)) ? LOCAL_RACK : LOCAL_DC;
+  }
+
+  /**
+   * Order split locations closest first, dropping the remote ones unless there is no local one.
+   * Locations may be host names, they are resolved when the ring does not know them.
+   *
+   * @param locations locations of a split
+   * @param ring      ring of the keyspace the split reads
+   * @return the locations to schedule the split on and read it from, best first
+   */
+  public String[] orderLocations(String[] locations, RingTopology ring) {
+    if (localDc == null || locations == null) {
+      return locations;
+    }
+
+    List<List<String>> byDistance = new ArrayList<List<String>>(REMOTE + 1);
+    for (int i = 0; i <= REMOTE; i++) {
+      byDistance.add(new ArrayList<String>());
+    }
+
+    for (String location : locations) {
+      String endpoint = location;
+      if (ring.getDatacenter(location) == null) {
+        try {
+          endpoint = InetAddress.getByName(location).getHostAddress();
+        } catch (UnknownHostException e) {
+          // unknown, counts as remote
+        }
+      }
+      byDistance.get(getDistance(endpoint, ring)).add(location);
+    }
+
+    List<String> ordered = new ArrayList<String>(locations.length);
+    ordered.addAll(byDistance.get(LOCAL_RACK));
+    ordered.addAll(byDistance.get(LOCAL_DC));
+    if (ordered.isEmpty()) {
+      ordered.addAll(byDistance.get(REMOTE));
+    }
+    return ordered.toArray(new String[ordered.size()]);
+  }
+
+  @Override
+  public String toString() {
+    return localDc == null ? "any" : localRack == null ? localDc : localDc + ":" + localRack;
+  }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.hadoop.hive.cassandra;
+
+/**
+ * Decides whether, and after how long, a {@link CassandraProxyClient} tries a failed call again.
+ * Only calls failing with a TimedOutException, an UnavailableException or a TTransportException
+ * are offered for retry; any other error is rethrown right away.
+ *
+ * Implementations configured by class name through cassandra.retry.policy need a public
+ * no-argument constructor, and get the job configuration if they implement
+ * {@link org.apache.hadoop.conf.Configurable}. A policy instance may be shared by several clients.
+ */
+public interface RetryPolicy {
+
+  /**
+   * Returned by {@link #getRetryDelay(Exception, int, long)} to give up.
+   */
+  long NO_RETRY = -1;
+
+  /**
+   * @param e             the error the last attempt failed with
+   * @param attempt       number of attempts made so far, starting at 1
+   * @param elapsedMillis time since the first attempt of the call failed
+   * @return milliseconds to wait before the next attempt, or {@link #NO_RETRY} to rethrow the error
+   */
+  long getRetryDelay(Exception e, int attempt, long elapsedMillis);
+}
@@ -0,0 +1,1010 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.AuthenticationException;
+import org.apache.cassandra.thrift.AuthenticationRequest;
+import org.apache.cassandra.thrift.AuthorizationException;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.CfSplit;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ColumnPath;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CounterColumn;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.IndexClause;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.KeyRange;
+import org.apache.cassandra.thrift.KeySlice;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.NotFoundException;
+import org.apache.cassandra.thrift.SchemaDisagreementException;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * A {@link Cassandra.Iface} that retries calls failing with {@link UnavailableException},
+ * {@link TimedOutException} or {@link TTransportException}, the same failover rules the reflective
+ * proxy in {@link CassandraProxyClient} used to apply. Every method calls straight through to the
+ * current client of its {@link Connector}, which decides whether to try again and reconnects after
+ * transport errors, so a call costs no reflection and no allocation. The time each call took is
+ * reported back to the connector, which uses it to choose between servers.
+ */
+public class RetryingCassandraClient implements Cassandra.Iface {
+
+  /**
+   * Supplies the connection the calls go to.
+   */
+  public interface Connector {
+
+    /**
+     * @return the client of an open connection, reconnecting first if the last one failed
+     * @throws TTransportException if no server can be connected to
+     */
+    Cassandra.Iface getClient() throws TTransportException;
+
+    /**
+     * Called when a call failed with a retryable error.
+     *
+     * @param method  name of the thrift method called
+     * @param e       the error
+     * @param attempt number of attempts made so far, starting at 1
+     * @return true to try the call again, false to give up and rethrow the error
+     */
+    boolean retry(String method, Exception e, int attempt);
+
+    /**
+     * Called after a call of the given thrift method returned, with the time it took.
+     */
+    void callSucceeded(String method, long latencyNanos);
+
+    /**
+     * @return the keyspace currently set on the connection, or null
+     */
+    String getKeyspace();
+
+    /**
+     * Called after set_keyspace succeeded.
+     */
+    void keyspaceChanged(String keyspace);
+  }
+
+  private final Connector connector;
+
+  public RetryingCassandraClient(Connector connector) {
+    this.connector = connector;
+  }
+
+  @Override
+  public void login(AuthenticationRequest auth_request)
+          throws AuthenticationException, AuthorizationException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.login(auth_request);
+        connector.callSucceeded("login", System.nanoTime() - start);
+        return;
+      } catch (TTransportException e) {
+        if (!connector.retry("login", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void set_keyspace(String keyspace) throws InvalidRequestException, TException {
+    if (keyspace.equals(connector.getKeyspace())) {
+      return;
+    }
+
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.set_keyspace(keyspace);
+        connector.callSucceeded("set_keyspace", System.nanoTime() - start);
+        connector.keyspaceChanged(keyspace);
+        return;
+      } catch (TTransportException e) {
+        if (!connector.retry("set_keyspace", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public ColumnOrSuperColumn get(ByteBuffer key, ColumnPath column_path, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, NotFoundException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        ColumnOrSuperColumn result = client.get(key, column_path, consistency_level);
+        connector.callSucceeded("get", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("get", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("get", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("get", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<ColumnOrSuperColumn> get_slice(ByteBuffer key, ColumnParent column_parent, SlicePredicate predicate, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        List<ColumnOrSuperColumn> result = client.get_slice(key, column_parent, predicate, consistency_level);
+        connector.callSucceeded("get_slice", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("get_slice", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("get_slice", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("get_slice", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public int get_count(ByteBuffer key, ColumnParent column_parent, SlicePredicate predicate, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        int result = client.get_count(key, column_parent, predicate, consistency_level);
+        connector.callSucceeded("get_count", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("get_count", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("get_count", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("get_count", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public Map<ByteBuffer, List<ColumnOrSuperColumn>> multiget_slice(List<ByteBuffer> keys, ColumnParent column_parent, SlicePredicate predicate, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        Map<ByteBuffer, List<ColumnOrSuperColumn>> result = client.multiget_slice(keys, column_parent, predicate, consistency_level);
+        connector.callSucceeded("multiget_slice", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("multiget_slice", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("multiget_slice", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("multiget_slice", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public Map<ByteBuffer, Integer> multiget_count(List<ByteBuffer> keys, ColumnParent column_parent, SlicePredicate predicate, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        Map<ByteBuffer, Integer> result = client.multiget_count(keys, column_parent, predicate, consistency_level);
+        connector.callSucceeded("multiget_count", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("multiget_count", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("multiget_count", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("multiget_count", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<KeySlice> get_range_slices(ColumnParent column_parent, SlicePredicate predicate, KeyRange range, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        List<KeySlice> result = client.get_range_slices(column_parent, predicate, range, consistency_level);
+        connector.callSucceeded("get_range_slices", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("get_range_slices", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("get_range_slices", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("get_range_slices", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<KeySlice> get_paged_slice(String column_family, KeyRange range, ByteBuffer start_column, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        List<KeySlice> result = client.get_paged_slice(column_family, range, start_column, consistency_level);
+        connector.callSucceeded("get_paged_slice", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("get_paged_slice", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("get_paged_slice", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("get_paged_slice", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<KeySlice> get_indexed_slices(ColumnParent column_parent, IndexClause index_clause, SlicePredicate column_predicate, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        List<KeySlice> result = client.get_indexed_slices(column_parent, index_clause, column_predicate, consistency_level);
+        connector.callSucceeded("get_indexed_slices", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("get_indexed_slices", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("get_indexed_slices", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("get_indexed_slices", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void insert(ByteBuffer key, ColumnParent column_parent, Column column, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.insert(key, column_parent, column, consistency_level);
+        connector.callSucceeded("insert", System.nanoTime() - start);
+        return;
+      } catch (UnavailableException e) {
+        if (!connector.retry("insert", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("insert", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("insert", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void add(ByteBuffer key, ColumnParent column_parent, CounterColumn column, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.add(key, column_parent, column, consistency_level);
+        connector.callSucceeded("add", System.nanoTime() - start);
+        return;
+      } catch (UnavailableException e) {
+        if (!connector.retry("add", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("add", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("add", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void remove(ByteBuffer key, ColumnPath column_path, long timestamp, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.remove(key, column_path, timestamp, consistency_level);
+        connector.callSucceeded("remove", System.nanoTime() - start);
+        return;
+      } catch (UnavailableException e) {
+        if (!connector.retry("remove", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("remove", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("remove", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void remove_counter(ByteBuffer key, ColumnPath path, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.remove_counter(key, path, consistency_level);
+        connector.callSucceeded("remove_counter", System.nanoTime() - start);
+        return;
+      } catch (UnavailableException e) {
+        if (!connector.retry("remove_counter", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("remove_counter", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("remove_counter", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void batch_mutate(Map<ByteBuffer, Map<String, List<Mutation>>> mutation_map, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.batch_mutate(mutation_map, consistency_level);
+        connector.callSucceeded("batch_mutate", System.nanoTime() - start);
+        return;
+      } catch (UnavailableException e) {
+        if (!connector.retry("batch_mutate", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("batch_mutate", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("batch_mutate", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void atomic_batch_mutate(Map<ByteBuffer, Map<String, List<Mutation>>> mutation_map, ConsistencyLevel consistency_level)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.atomic_batch_mutate(mutation_map, consistency_level);
+        connector.callSucceeded("atomic_batch_mutate", System.nanoTime() - start);
+        return;
+      } catch (UnavailableException e) {
+        if (!connector.retry("atomic_batch_mutate", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("atomic_batch_mutate", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("atomic_batch_mutate", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void truncate(String cfname)
+          throws InvalidRequestException, UnavailableException, TimedOutException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.truncate(cfname);
+        connector.callSucceeded("truncate", System.nanoTime() - start);
+        return;
+      } catch (UnavailableException e) {
+        if (!connector.retry("truncate", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("truncate", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("truncate", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public Map<String, List<String>> describe_schema_versions() throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        Map<String, List<String>> result = client.describe_schema_versions();
+        connector.callSucceeded("describe_schema_versions", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_schema_versions", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<KsDef> describe_keyspaces() throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        List<KsDef> result = client.describe_keyspaces();
+        connector.callSucceeded("describe_keyspaces", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_keyspaces", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String describe_cluster_name() throws TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.describe_cluster_name();
+        connector.callSucceeded("describe_cluster_name", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_cluster_name", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String describe_version() throws TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.describe_version();
+        connector.callSucceeded("describe_version", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_version", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<TokenRange> describe_ring(String keyspace) throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        List<TokenRange> result = client.describe_ring(keyspace);
+        connector.callSucceeded("describe_ring", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_ring", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public Map<String, String> describe_token_map() throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        Map<String, String> result = client.describe_token_map();
+        connector.callSucceeded("describe_token_map", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_token_map", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String describe_partitioner() throws TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.describe_partitioner();
+        connector.callSucceeded("describe_partitioner", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_partitioner", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String describe_snitch() throws TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.describe_snitch();
+        connector.callSucceeded("describe_snitch", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_snitch", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public KsDef describe_keyspace(String keyspace)
+          throws NotFoundException, InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        KsDef result = client.describe_keyspace(keyspace);
+        connector.callSucceeded("describe_keyspace", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_keyspace", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<String> describe_splits(String cfName, String start_token, String end_token, int keys_per_split)
+          throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        List<String> result = client.describe_splits(cfName, start_token, end_token, keys_per_split);
+        connector.callSucceeded("describe_splits", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_splits", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public ByteBuffer trace_next_query() throws TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        ByteBuffer result = client.trace_next_query();
+        connector.callSucceeded("trace_next_query", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("trace_next_query", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<CfSplit> describe_splits_ex(String cfName, String start_token, String end_token, int keys_per_split)
+          throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        List<CfSplit> result = client.describe_splits_ex(cfName, start_token, end_token, keys_per_split);
+        connector.callSucceeded("describe_splits_ex", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("describe_splits_ex", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String system_add_column_family(CfDef cf_def)
+          throws InvalidRequestException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.system_add_column_family(cf_def);
+        connector.callSucceeded("system_add_column_family", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("system_add_column_family", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String system_drop_column_family(String column_family)
+          throws InvalidRequestException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.system_drop_column_family(column_family);
+        connector.callSucceeded("system_drop_column_family", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("system_drop_column_family", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String system_add_keyspace(KsDef ks_def)
+          throws InvalidRequestException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.system_add_keyspace(ks_def);
+        connector.callSucceeded("system_add_keyspace", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("system_add_keyspace", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String system_drop_keyspace(String keyspace)
+          throws InvalidRequestException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.system_drop_keyspace(keyspace);
+        connector.callSucceeded("system_drop_keyspace", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("system_drop_keyspace", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String system_update_keyspace(KsDef ks_def)
+          throws InvalidRequestException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.system_update_keyspace(ks_def);
+        connector.callSucceeded("system_update_keyspace", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("system_update_keyspace", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public String system_update_column_family(CfDef cf_def)
+          throws InvalidRequestException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        String result = client.system_update_column_family(cf_def);
+        connector.callSucceeded("system_update_column_family", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("system_update_column_family", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public CqlResult execute_cql_query(ByteBuffer query, Compression compression)
+          throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        CqlResult result = client.execute_cql_query(query, compression);
+        connector.callSucceeded("execute_cql_query", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("execute_cql_query", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("execute_cql_query", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("execute_cql_query", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public CqlResult execute_cql3_query(ByteBuffer query, Compression compression, ConsistencyLevel consistency)
+          throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        CqlResult result = client.execute_cql3_query(query, compression, consistency);
+        connector.callSucceeded("execute_cql3_query", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("execute_cql3_query", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("execute_cql3_query", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("execute_cql3_query", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public CqlPreparedResult prepare_cql_query(ByteBuffer query, Compression compression)
+          throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        CqlPreparedResult result = client.prepare_cql_query(query, compression);
+        connector.callSucceeded("prepare_cql_query", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("prepare_cql_query", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public CqlPreparedResult prepare_cql3_query(ByteBuffer query, Compression compression)
+          throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        CqlPreparedResult result = client.prepare_cql3_query(query, compression);
+        connector.callSucceeded("prepare_cql3_query", System.nanoTime() - start);
+        return result;
+      } catch (TTransportException e) {
+        if (!connector.retry("prepare_cql3_query", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public CqlResult execute_prepared_cql_query(int itemId, List<ByteBuffer> values)
+          throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        CqlResult result = client.execute_prepared_cql_query(itemId, values);
+        connector.callSucceeded("execute_prepared_cql_query", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("execute_prepared_cql_query", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("execute_prepared_cql_query", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("execute_prepared_cql_query", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  public CqlResult execute_prepared_cql3_query(int itemId, List<ByteBuffer> values, ConsistencyLevel consistency)
+          throws InvalidRequestException, UnavailableException, TimedOutException, SchemaDisagreementException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        CqlResult result = client.execute_prepared_cql3_query(itemId, values, consistency);
+        connector.callSucceeded("execute_prepared_cql3_query", System.nanoTime() - start);
+        return result;
+      } catch (UnavailableException e) {
+        if (!connector.retry("execute_prepared_cql3_query", e, attempt)) {
+          throw e;
+        }
+      } catch (TimedOutException e) {
+        if (!connector.retry("execute_prepared_cql3_query", e, attempt)) {
+          throw e;
+        }
+      } catch (TTransportException e) {
+        if (!connector.retry("execute_prepared_cql3_query", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  @Override
+  @Deprecated
+  public void set_cql_version(String version) throws InvalidRequestException, TException {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        Cassandra.Iface client = connector.getClient();
+        long start = System.nanoTime();
+        client.set_cql_version(version);
+        connector.callSucceeded("set_cql_version", System.nanoTime() - start);
+        return;
+      } catch (TTransportException e) {
+        if (!connector.retry("set_cql_version", e, attempt)) {
+          throw e;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.apache.cassandra.thrift.EndpointDetails;
+import org.apache.cassandra.thrift.TokenRange;
+
+/**
+ * An immutable snapshot of the token ranges of a keyspace and the nodes that own them,
+ * as published by {@link RingTopologyService}.
+ */
+public final class RingTopology {
+
+  private final String keyspace;
+  private final long version;
+  private final long timestamp;
+  private final List<TokenRange> ranges;
+  private final List<String> endpoints;
+  private final Map<String, EndpointDetails> details;
+  private volatile String fingerprint;
+
+  /**
+   * @param keyspace keyspace the ring was described for
+   * @param version  increases every time the ring of the keyspace changes
+   * @param ranges   result of describe_ring, not modified afterwards
+   */
+  public RingTopology(String keyspace, long version, List<TokenRange> ranges) {
+    this.keyspace = keyspace;
+    this.version = version;
+    this.timestamp = System.currentTimeMillis();
+
+    List<TokenRange> sorted = new ArrayList<TokenRange>(ranges);
+    Collections.sort(sorted, new Comparator<TokenRange>() {
+      public int compare(TokenRange r1, TokenRange r2) {
+        return r1.start_token.compareTo(r2.start_token);
+      }
+    });
+    this.ranges = Collections.unmodifiableList(sorted);
+
+    Set<String> allEndpoints = new LinkedHashSet<String>();
+    Map<String, EndpointDetails> allDetails = new HashMap<String, EndpointDetails>();
+    for (TokenRange range : sorted) {
+      List<String> rangeEndpoints = TokenRouter.getEndpoints(range);
+      allEndpoints.addAll(rangeEndpoints);
+
+      if (range.endpoint_details != null) {
+        for (int i = 0; i < range.endpoint_details.size(); i++) {
+          EndpointDetails endpoint = range.endpoint_details.get(i);
+          // known by both gossip and rpc address
+          allDetails.put(endpoint.host, endpoint);
+          if (i < rangeEndpoints.size()) {
+            allDetails.put(rangeEndpoints.get(i), endpoint);
+          }
+        }
+      }
+    }
+    this.endpoints = Collections.unmodifiableList(new ArrayList<String>(allEndpoints));
+    this.details = Collections.unmodifiableMap(allDetails);
+  }
+
+  public String getKeyspace() {
+    return keyspace;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return time in millis the ring was described
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return the token ranges, ordered by start token
+   */
+  public List<TokenRange> getRanges() {
+    return ranges;
+  }
+
+  /**
+   * @return the rpc address of every node owning a range
+   */
+  public List<String> getEndpoints() {
+    return endpoints;
+  }
+
+  /**
+   * @param endpoint rpc or gossip address of a node
+   * @return the data center of the node, null if unknown
+   */
+  public String getDatacenter(String endpoint) {
+    EndpointDetails endpointDetails = details.get(endpoint);
+    return endpointDetails == null ? null : endpointDetails.datacenter;
+  }
+
+  /**
+   * @param endpoint rpc or gossip address of a node
+   * @return the rack of the node, null if unknown
+   */
+  public String getRack(String endpoint) {
+    EndpointDetails endpointDetails = details.get(endpoint);
+    return endpointDetails == null ? null : endpointDetails.rack;
+  }
+
+  /**
+   * Digest of the ranges and the nodes owning them. Unlike the version it is the same for the
+   * same ring in every JVM, so it can tell whether something computed from the ring elsewhere
+   * still holds.
+   *
+   * @return hex digest of the ring
+   */
+  public String getFingerprint() {
+    String result = fingerprint;
+    if (result == null) {
+      Hasher hasher = Hashing.md5().newHasher();
+      for (TokenRange range : ranges) {
+        hasher.putString(range.start_token, Charsets.UTF_8).putByte((byte) 0);
+        hasher.putString(range.end_token, Charsets.UTF_8).putByte((byte) 0);
+        for (String endpoint : TokenRouter.getEndpoints(range)) {
+          hasher.putString(endpoint, Charsets.UTF_8).putByte((byte) 0);
+        }
+        hasher.putByte((byte) 1);
+      }
+      result = hasher.hash().toString();
+      fingerprint = result;
+    }
+    return result;
+  }
+
+  /**
+   * @return true if the other snapshot has the same ranges on the same nodes
+   */
+  public boolean sameRing(RingTopology other) {
+    return other != null && ranges.equals(other.ranges);
+  }
+}
@@ -0,0 +1,480 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.thrift.EndpointDetails;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.SchemaDisagreementException;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the ring of every keyspace the clients in this JVM use, refreshed by a single daemon thread.
+ *
+ * The first lookup of a keyspace describes its ring synchronously. After that lookups return the
+ * last published {@link RingTopology} without touching the network, and the ring is described
+ * again in the background every cassandra.ring.refresh.interval milliseconds. A new snapshot is
+ * published, and listeners notified, only when the ring actually changed, so clients can tell a
+ * change by comparing snapshot identity.
+ *
+ * A null keyspace stands for the cluster itself: its ring is read from the system.local and
+ * system.peers tables, which needs neither a keyspace nor any schema change, and each range only
+ * lists the node owning it.
+ */
+public class RingTopologyService {
+
+  private static final Logger logger = LoggerFactory.getLogger(RingTopologyService.class);
+
+  private static final RingTopologyService instance = new RingTopologyService();
+
+  /**
+   * Rings not looked up for this many refresh intervals stop being refreshed.
+   */
+  private static final int IDLE_INTERVALS = 10;
+
+  /**
+   * Notified on the refresh thread when the ring of a keyspace changed.
+   */
+  public interface Listener {
+    void topologyChanged(RingTopology previous, RingTopology current);
+  }
+
+  /**
+   * Describes the ring of a keyspace through the given host. Only replaced in tests.
+   */
+  interface RingDescriber {
+    List<TokenRange> describeRing(String host, int port, String keyspace) throws CassandraException;
+  }
+
+  private static final RingDescriber THRIFT_DESCRIBER = new RingDescriber() {
+    public List<TokenRange> describeRing(String host, int port, String keyspace) throws CassandraException {
+      CassandraClientPool pool = CassandraClientPool.getInstance();
+      CassandraClientHolder holder = pool.borrow(host, port);
+      try {
+        if (keyspace != null) {
+          return holder.getClient().describe_ring(keyspace);
+        }
+        CqlResult local = holder.getClient().execute_cql3_query(
+                ByteBufferUtil.bytes(LOCAL_QUERY), Compression.NONE, ConsistencyLevel.ONE);
+        CqlResult peers = holder.getClient().execute_cql3_query(
+                ByteBufferUtil.bytes(PEERS_QUERY), Compression.NONE, ConsistencyLevel.ONE);
+        return readRing(host, local, peers);
+      } catch (InvalidRequestException e) {
+        throw new CassandraException(e);
+      } catch (UnavailableException e) {
+        throw new CassandraException(e);
+      } catch (TimedOutException e) {
+        throw new CassandraException(e);
+      } catch (SchemaDisagreementException e) {
+        throw new CassandraException(e);
+      } catch (TException e) {
+        pool.invalidate(holder);
+        throw new CassandraException(e);
+      } finally {
+        pool.release(holder);
+      }
+    }
+  };
+
+  static final String LOCAL_QUERY = "SELECT data_center, rack, tokens FROM system.local";
+  static final String PEERS_QUERY = "SELECT peer, rpc_address, data_center, rack, tokens FROM system.peers";
+
+  /**
+   * Tokens in numeric order when they are numbers, as the random and murmur3 partitioners' are.
+   */
+  private static final Comparator<String> TOKEN_ORDER = new Comparator<String>() {
+    public int compare(String t1, String t2) {
+      try {
+        return new BigInteger(t1).compareTo(new BigInteger(t2));
+      } catch (NumberFormatException e) {
+        return t1.compareTo(t2);
+      }
+    }
+  };
+
+  private final RingDescriber describer;
+  private final ConcurrentMap<String, Entry> rings = new ConcurrentHashMap<String, Entry>();
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  private volatile long refreshInterval = AbstractCassandraSerDe.DEFAULT_RING_REFRESH_INTERVAL;
+  private ScheduledExecutorService refresher;
+
+  RingTopologyService(RingDescriber describer) {
+    this.describer = describer;
+  }
+
+  private RingTopologyService() {
+    this(THRIFT_DESCRIBER);
+  }
+
+  /**
+   * @return the service shared by every client in this JVM
+   */
+  public static RingTopologyService getInstance() {
+    return instance;
+  }
+
+  /**
+   * Apply cassandra.ring.refresh.interval from the given configuration, if set.
+   * Takes effect for refreshes scheduled after the first lookup.
+   */
+  public void configure(Configuration conf) {
+    if (conf != null) {
+      refreshInterval = conf.getLong(AbstractCassandraSerDe.CASSANDRA_RING_REFRESH_INTERVAL, refreshInterval);
+    }
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Return the ring of the keyspace, describing it through the given host if it is not known yet.
+   *
+   * @param host     cassandra host to describe the ring through
+   * @param port     cassandra rpc port
+   * @param keyspace keyspace whose replica placement is wanted
+   * @return the latest snapshot of the ring
+   * @throws CassandraException if the ring is not known yet and cannot be described
+   */
+  public RingTopology getTopology(String host, int port, String keyspace) throws CassandraException {
+    String key = host + ":" + port + "/" + keyspace;
+    Entry entry = rings.get(key);
+
+    if (entry == null) {
+      Entry newEntry = new Entry(host, port, keyspace);
+      entry = rings.putIfAbsent(key, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+      }
+    }
+
+    entry.lastAccess = System.currentTimeMillis();
+    RingTopology topology = entry.topology;
+    if (topology != null) {
+      return topology;
+    }
+
+    synchronized (entry) {
+      if (entry.topology == null) {
+        refresh(entry);
+        startRefresher();
+      }
+      return entry.topology;
+    }
+  }
+
+  /**
+   * Return the ring of the keyspace if it is already known, without describing it.
+   *
+   * @param host     cassandra host the ring was described through
+   * @param port     cassandra rpc port
+   * @param keyspace keyspace whose replica placement is wanted, null for the nodes of the cluster
+   * @return the latest snapshot of the ring, null if it was not read yet
+   */
+  public RingTopology getKnownTopology(String host, int port, String keyspace) {
+    Entry entry = rings.get(host + ":" + port + "/" + keyspace);
+    if (entry == null) {
+      return null;
+    }
+
+    entry.lastAccess = System.currentTimeMillis();
+    return entry.topology;
+  }
+
+  /**
+   * Look the ring of the keyspace up in the background, so that it is known by the time it is
+   * needed. Failures are only logged, the next lookup will try again.
+   *
+   * @param host     cassandra host to describe the ring through
+   * @param port     cassandra rpc port
+   * @param keyspace keyspace whose replica placement is wanted, null for the nodes of the cluster
+   */
+  public void prefetch(final String host, final int port, final String keyspace) {
+    startRefresher().execute(new Runnable() {
+      public void run() {
+        try {
+          getTopology(host, port, keyspace);
+        } catch (CassandraException e) {
+          logger.debug("Unable to read the ring of " + describe(keyspace) + " through " + host, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Read the ring of the cluster from the rows of {@link #LOCAL_QUERY} and {@link #PEERS_QUERY}.
+   * Each token of a node ends the range that starts at the previous token of the ring.
+   *
+   * @param host  the host the tables were read from, which system.local describes
+   * @param local rows of system.local
+   * @param peers rows of system.peers
+   * @return the ranges of the ring, ordered by token
+   */
+  static List<TokenRange> readRing(String host, CqlResult local, CqlResult peers) {
+    Map<String, TokenRange> owners = new TreeMap<String, TokenRange>(TOKEN_ORDER);
+
+    if (local.isSetRows()) {
+      for (CqlRow row : local.getRows()) {
+        addNode(owners, host, host, row);
+      }
+    }
+    if (peers.isSetRows()) {
+      for (CqlRow row : peers.getRows()) {
+        String peer = getInet(row, "peer");
+        String rpcAddress = getInet(row, "rpc_address");
+        if (peer != null) {
+          // nodes listening on all interfaces advertise the wildcard address
+          addNode(owners, peer, rpcAddress == null || "0.0.0.0".equals(rpcAddress) ? peer : rpcAddress, row);
+        }
+      }
+    }
+
+    List<TokenRange> ranges = new ArrayList<TokenRange>(owners.size());
+    String previous = owners.isEmpty() ? null : ((TreeMap<String, TokenRange>) owners).lastKey();
+    for (Map.Entry<String, TokenRange> owner : owners.entrySet()) {
+      TokenRange range = owner.getValue();
+      range.setStart_token(previous);
+      ranges.add(range);
+      previous = owner.getKey();
+    }
+    return ranges;
+  }
+
+  private static void addNode(Map<String, TokenRange> owners, String endpoint, String rpcAddress, CqlRow row) {
+    EndpointDetails details = new EndpointDetails(endpoint, getString(row, "data_center"));
+    details.setRack(getString(row, "rack"));
+
+    for (String token : getStringSet(row, "tokens")) {
+      TokenRange range = new TokenRange(null, token, Collections.singletonList(endpoint));
+      range.setRpc_endpoints(Collections.singletonList(rpcAddress));
+      range.setEndpoint_details(Collections.singletonList(details));
+      owners.put(token, range);
+    }
+  }
+
+  private static ByteBuffer getValue(CqlRow row, String name) {
+    for (Column column : row.getColumns()) {
+      if (name.equals(toString(column.bufferForName())) && column.isSetValue()) {
+        return column.bufferForValue();
+      }
+    }
+    return null;
+  }
+
+  private static String getString(CqlRow row, String name) {
+    ByteBuffer value = getValue(row, name);
+    return value == null ? null : toString(value);
+  }
+
+  private static String toString(ByteBuffer bytes) {
+    return new String(ByteBufferUtil.getArray(bytes), Charsets.UTF_8);
+  }
+
+  private static String getInet(CqlRow row, String name) {
+    ByteBuffer value = getValue(row, name);
+    if (value == null || !value.hasRemaining()) {
+      return null;
+    }
+    try {
+      return InetAddress.getByAddress(ByteBufferUtil.getArray(value)).getHostAddress();
+    } catch (UnknownHostException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Decode a set of text: the number of elements, then each element, all prefixed by unsigned shorts.
+   */
+  private static List<String> getStringSet(CqlRow row, String name) {
+    ByteBuffer value = getValue(row, name);
+    List<String> elements = new ArrayList<String>();
+    if (value == null || !value.hasRemaining()) {
+      return elements;
+    }
+
+    ByteBuffer in = value.duplicate();
+    int count = in.getShort() & 0xFFFF;
+    for (int i = 0; i < count; i++) {
+      int length = in.getShort() & 0xFFFF;
+      ByteBuffer element = in.slice();
+      element.limit(length);
+      elements.add(toString(element));
+      in.position(in.position() + length);
+    }
+    return elements;
+  }
+
+  /**
+   * Describe the ring of every known keyspace again, keeping the previous snapshot of rings that
+   * cannot be described right now.
+   */
+  void refreshAll() {
+    long now = System.currentTimeMillis();
+
+    for (Entry entry : rings.values()) {
+      if (now - entry.lastAccess > IDLE_INTERVALS * refreshInterval) {
+        rings.remove(entry.key());
+        continue;
+      }
+
+      try {
+        synchronized (entry) {
+          refresh(entry);
+        }
+      } catch (CassandraException e) {
+        logger.warn("Unable to refresh the ring of " + describe(entry.keyspace) + ", keeping the previous one", e);
+      }
+    }
+  }
+
+  /**
+   * Describe the ring through the host it was first looked up with, or through any of the nodes
+   * of the previous snapshot if that host is down.
+   */
+  private void refresh(Entry entry) throws CassandraException {
+    RingTopology previous = entry.topology;
+
+    List<String> hosts = new ArrayList<String>();
+    hosts.add(entry.host);
+    if (previous != null) {
+      for (String endpoint : previous.getEndpoints()) {
+        if (!endpoint.equals(entry.host)) {
+          hosts.add(endpoint);
+        }
+      }
+    }
+
+    CassandraException lastError = null;
+    for (String host : hosts) {
+      if (host != entry.host && !HostStats.getInstance().tryAcquireProbe(host)) {
+        continue;
+      }
+      try {
+        List<TokenRange> ranges = describer.describeRing(host, entry.port, entry.keyspace);
+        publish(entry, previous, ranges);
+        return;
+      } catch (CassandraException e) {
+        lastError = e;
+      }
+    }
+    throw lastError;
+  }
+
+  private void publish(Entry entry, RingTopology previous, List<TokenRange> ranges) {
+    RingTopology current = new RingTopology(entry.keyspace, previous == null ? 1 : previous.getVersion() + 1, ranges);
+    if (current.sameRing(previous)) {
+      return;
+    }
+
+    entry.topology = current;
+    if (previous != null) {
+      logger.info("Ring of " + describe(entry.keyspace) + " changed, now at version " + current.getVersion());
+      for (Listener listener : listeners) {
+        try {
+          listener.topologyChanged(previous, current);
+        } catch (RuntimeException e) {
+          logger.warn("Ring topology listener failed", e);
+        }
+      }
+    }
+  }
+
+  private static String describe(String keyspace) {
+    return keyspace == null ? "the cluster" : keyspace;
+  }
+
+  private synchronized ScheduledExecutorService startRefresher() {
+    if (refresher != null) {
+      return refresher;
+    }
+
+    refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "cassandra-ring-refresher");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    refresher.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        try {
+          refreshAll();
+        } catch (Exception e) {
+          logger.warn("Error refreshing cassandra rings", e);
+        }
+      }
+    }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    return refresher;
+  }
+
+  private static class Entry {
+    final String host;
+    final int port;
+    final String keyspace;
+    volatile RingTopology topology;
+    volatile long lastAccess;
+
+    Entry(String host, int port, String keyspace) {
+      this.host = host;
+      this.port = port;
+      this.keyspace = keyspace;
+    }
+
+    String key() {
+      return host + ":" + port + "/" + keyspace;
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde2.lazy.LazyCassandraUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+
+/**
+ * A predicate that only holds for a known set of row keys: {@code key = 'a'}, {@code key IN ('a', 'b')}
+ * or an OR of those, alone or ANDed with other conditions. Such a predicate is answered by looking
+ * the keys up instead of scanning the ring.
+ *
+ * The keys are encoded like the storage handler writes them, as the cassandra type matching the
+ * Hive type of the key column, or with the validator of the key when it is known. A constant of
+ * another type than the key column is not pushed: Hive does not convert the constants of IN to the
+ * type of the column, and a key encoded as the wrong type would silently match nothing.
+ */
+public class RowKeyPredicate {
+
+  private final ExprNodeDesc pushedPredicate;
+  private final ExprNodeDesc residualPredicate;
+  private final List<ByteBuffer> keys;
+
+  private RowKeyPredicate(ExprNodeDesc pushedPredicate, ExprNodeDesc residualPredicate, List<ByteBuffer> keys) {
+    this.pushedPredicate = pushedPredicate;
+    this.residualPredicate = residualPredicate;
+    this.keys = keys;
+  }
+
+  /**
+   * Look for a condition on the row key among the conditions ANDed together in the predicate.
+   *
+   * @param predicate predicate of the query, may be null
+   * @param keyColumn name of the Hive column holding the row key, may be null
+   * @return the row key condition and the rest of the predicate, or null if the predicate does not
+   * restrict the row key to a set of keys
+   */
+  public static RowKeyPredicate analyze(ExprNodeDesc predicate, String keyColumn) {
+    return analyze(predicate, keyColumn, null);
+  }
+
+  /**
+   * Look for a condition on the row key among the conditions ANDed together in the predicate.
+   *
+   * @param predicate    predicate of the query, may be null
+   * @param keyColumn    name of the Hive column holding the row key, may be null
+   * @param keyValidator type the keys are stored as, null to encode them as the Hive type of the key column
+   * @return the row key condition and the rest of the predicate, or null if the predicate does not
+   * restrict the row key to a set of keys
+   */
+  public static RowKeyPredicate analyze(ExprNodeDesc predicate, String keyColumn, AbstractType<?> keyValidator) {
+    if (predicate == null || keyColumn == null) {
+      return null;
+    }
+
+    List<ExprNodeDesc> conditions = new ArrayList<ExprNodeDesc>();
+    collectConjuncts(predicate, conditions);
+
+    for (int i = 0; i < conditions.size(); i++) {
+      Set<ByteBuffer> keys = new LinkedHashSet<ByteBuffer>();
+      if (collectKeys(conditions.get(i), keyColumn, keyValidator, keys)) {
+        List<ExprNodeDesc> residual = new ArrayList<ExprNodeDesc>(conditions);
+        ExprNodeDesc pushed = residual.remove(i);
+        return new RowKeyPredicate(pushed, and(residual), new ArrayList<ByteBuffer>(keys));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the condition on the row key
+   */
+  public ExprNodeDesc getPushedPredicate() {
+    return pushedPredicate;
+  }
+
+  /**
+   * @return the other conditions of the predicate, null if there are none
+   */
+  public ExprNodeDesc getResidualPredicate() {
+    return residualPredicate;
+  }
+
+  /**
+   * @return the row keys the predicate holds for, without duplicates, in the order they appear
+   */
+  public List<ByteBuffer> getKeys() {
+    return keys;
+  }
+
+  private static void collectConjuncts(ExprNodeDesc expr, List<ExprNodeDesc> conjuncts) {
+    if (getUDF(expr) instanceof GenericUDFOPAnd) {
+      for (ExprNodeDesc child : expr.getChildren()) {
+        collectConjuncts(child, conjuncts);
+      }
+    } else {
+      conjuncts.add(expr);
+    }
+  }
+
+  /**
+   * Add the keys an equality, IN list or OR of those on the key column holds for.
+   *
+   * @return false if the expression is something else, keys may have been added then
+   */
+  private static boolean collectKeys(ExprNodeDesc expr, String keyColumn, AbstractType<?> keyValidator,
+                                     Set<ByteBuffer> keys) {
+    GenericUDF udf = getUDF(expr);
+    List<ExprNodeDesc> children = expr.getChildren();
+
+    if (udf instanceof GenericUDFOPOr) {
+      for (ExprNodeDesc child : children) {
+        if (!collectKeys(child, keyColumn, keyValidator, keys)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    List<ExprNodeDesc> values;
+    ExprNodeDesc column;
+    if (udf instanceof GenericUDFOPEqual) {
+      if (isKeyColumn(children.get(0), keyColumn)) {
+        column = children.get(0);
+        values = children.subList(1, 2);
+      } else if (isKeyColumn(children.get(1), keyColumn)) {
+        column = children.get(1);
+        values = children.subList(0, 1);
+      } else {
+        return false;
+      }
+    } else if (udf instanceof GenericUDFIn && isKeyColumn(children.get(0), keyColumn)) {
+      column = children.get(0);
+      values = children.subList(1, children.size());
+    } else {
+      return false;
+    }
+
+    for (ExprNodeDesc value : values) {
+      if (!(value instanceof ExprNodeConstantDesc) || !value.getTypeInfo().equals(column.getTypeInfo())) {
+        return false;
+      }
+      ByteBuffer key = toKey((ExprNodeConstantDesc) value, keyValidator);
+      if (key == null) {
+        return false;
+      }
+      keys.add(key);
+    }
+    return true;
+  }
+
+  /**
+   * Encode a constant with the validator of the key or, without one, the way
+   * {@link org.apache.hadoop.hive.cassandra.serde.TableMapping} encodes a value of its type.
+   *
+   * @return the encoded constant, null for nulls and values that cannot be encoded
+   */
+  static ByteBuffer toKey(ExprNodeConstantDesc constant, AbstractType<?> keyValidator) {
+    if (constant.getValue() == null || !(constant.getWritableObjectInspector() instanceof PrimitiveObjectInspector)) {
+      return null;
+    }
+
+    PrimitiveObjectInspector poi = (PrimitiveObjectInspector) constant.getWritableObjectInspector();
+    Object value = poi.getPrimitiveJavaObject(((ConstantObjectInspector) poi).getWritableConstantValue());
+    AbstractType<?> validator = keyValidator;
+    try {
+      if (validator == null) {
+        validator = LazyCassandraUtils.getCassandraType(poi);
+      }
+
+      if (validator instanceof BytesType) {
+        return value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : null;
+      } else if (value instanceof byte[]) {
+        return null;
+      } else if (value instanceof Date) {
+        // the validators parse timestamps as milliseconds, not in the format of java.sql.Timestamp
+        return validator.fromString(Long.toString(((Date) value).getTime()));
+      }
+      return validator.fromString(value.toString());
+    } catch (RuntimeException e) {
+      // no cassandra type for the Hive type, or a value the validator rejects
+      return null;
+    }
+  }
+
+  private static boolean isKeyColumn(ExprNodeDesc expr, String keyColumn) {
+    return expr instanceof ExprNodeColumnDesc && ((ExprNodeColumnDesc) expr).getColumn().equalsIgnoreCase(keyColumn);
+  }
+
+  private static GenericUDF getUDF(ExprNodeDesc expr) {
+    return expr instanceof ExprNodeGenericFuncDesc ? ((ExprNodeGenericFuncDesc) expr).getGenericUDF() : null;
+  }
+
+  private static ExprNodeDesc and(List<ExprNodeDesc> conditions) {
+    if (conditions.isEmpty()) {
+      return null;
+    }
+
+    ExprNodeDesc result = conditions.get(0);
+    for (int i = 1; i < conditions.size(); i++) {
+      result = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPAnd(),
+              Arrays.asList(result, conditions.get(i)));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,331 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.hadoop.hive.cassandra.ql.udf.UDFCassandraToken;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFOPNegative;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+
+/**
+ * A predicate bounding the token of the row key, {@code cassandra_token(key) BETWEEN a AND b} or
+ * comparisons of {@code cassandra_token(key)} with constants, alone or ANDed with other conditions.
+ * Such a predicate is answered by scanning only the part of the ring between the bounds.
+ *
+ * Only the Murmur3Partitioner is supported, its tokens are the bigints {@link UDFCassandraToken}
+ * returns. Like a cassandra token range, the bounds are a start token the range excludes and an end
+ * token it includes.
+ */
+public class TokenRangePredicate {
+
+  private static final String MURMUR3_PARTITIONER = Murmur3Partitioner.class.getName();
+
+  private final ExprNodeDesc pushedPredicate;
+  private final ExprNodeDesc residualPredicate;
+  private final long startToken;
+  private final long endToken;
+
+  TokenRangePredicate(ExprNodeDesc pushedPredicate, ExprNodeDesc residualPredicate, long startToken, long endToken) {
+    this.pushedPredicate = pushedPredicate;
+    this.residualPredicate = residualPredicate;
+    this.startToken = startToken;
+    this.endToken = endToken;
+  }
+
+  /**
+   * Look for bounds on the token of the row key among the conditions ANDed together in the predicate.
+   *
+   * @param predicate   predicate of the query, may be null
+   * @param keyColumn   name of the Hive column holding the row key, may be null
+   * @param partitioner partitioner of the table
+   * @return the token conditions and the rest of the predicate, or null if the predicate does not
+   * bound the token of the row key or the partitioner is not supported
+   */
+  public static TokenRangePredicate analyze(ExprNodeDesc predicate, String keyColumn, String partitioner) {
+    if (predicate == null || keyColumn == null || !MURMUR3_PARTITIONER.equals(partitioner)) {
+      return null;
+    }
+
+    List<ExprNodeDesc> conditions = new ArrayList<ExprNodeDesc>();
+    collectConjuncts(predicate, conditions);
+
+    List<ExprNodeDesc> pushed = new ArrayList<ExprNodeDesc>();
+    List<ExprNodeDesc> residual = new ArrayList<ExprNodeDesc>();
+    long[] bounds = {Long.MIN_VALUE, Long.MAX_VALUE};
+    for (ExprNodeDesc condition : conditions) {
+      if (addBounds(condition, keyColumn, bounds)) {
+        pushed.add(condition);
+      } else {
+        residual.add(condition);
+      }
+    }
+
+    if (pushed.isEmpty()) {
+      return null;
+    }
+    return new TokenRangePredicate(and(pushed), and(residual), bounds[0], bounds[1]);
+  }
+
+  /**
+   * @param predicate a pushed down predicate
+   * @return true if the predicate only bounds the token of a column, whichever column it is
+   */
+  public static boolean isTokenRange(ExprNodeDesc predicate) {
+    List<ExprNodeDesc> conditions = new ArrayList<ExprNodeDesc>();
+    collectConjuncts(predicate, conditions);
+    for (ExprNodeDesc condition : conditions) {
+      if (!addBounds(condition, null, new long[]{Long.MIN_VALUE, Long.MAX_VALUE})) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the token conditions
+   */
+  public ExprNodeDesc getPushedPredicate() {
+    return pushedPredicate;
+  }
+
+  /**
+   * @return the other conditions of the predicate, null if there are none
+   */
+  public ExprNodeDesc getResidualPredicate() {
+    return residualPredicate;
+  }
+
+  /**
+   * @return the token the range starts after
+   */
+  public long getStartToken() {
+    return startToken;
+  }
+
+  /**
+   * @return the last token of the range
+   */
+  public long getEndToken() {
+    return endToken;
+  }
+
+  /**
+   * @return true if no token satisfies the predicate
+   */
+  public boolean isEmpty() {
+    return startToken >= endToken;
+  }
+
+  /**
+   * Clip the token range of a split to the bounds. A range that wraps around the ring may
+   * intersect them twice, once on each side of the minimum token.
+   *
+   * @param split split computed by cassandra
+   * @return the parts of the split within the bounds, with their estimated rows in proportion
+   */
+  public List<ColumnFamilySplit> restrict(ColumnFamilySplit split) {
+    List<ColumnFamilySplit> result = new ArrayList<ColumnFamilySplit>(2);
+    long start = Long.parseLong(split.getStartToken());
+    long end = Long.parseLong(split.getEndToken());
+    if (start < end) {
+      addPart(split, start, end, start, end, result);
+    } else {
+      // (start, MAX] and (MIN, end]
+      addPart(split, start, end, start, Long.MAX_VALUE, result);
+      if (end != Long.MIN_VALUE) {
+        addPart(split, start, end, Long.MIN_VALUE, end, result);
+      }
+    }
+    return result;
+  }
+
+  private void addPart(ColumnFamilySplit split, long splitStart, long splitEnd, long start, long end,
+                       List<ColumnFamilySplit> parts) {
+    long partStart = Math.max(start, startToken);
+    long partEnd = Math.min(end, endToken);
+    if (partStart >= partEnd) {
+      return;
+    }
+
+    double width = (double) splitEnd - (double) splitStart;
+    if (width <= 0) {
+      width += Math.pow(2, 64);
+    }
+    double fraction = ((double) partEnd - (double) partStart) / width;
+    long length = (long) Math.ceil(split.getLength() * Math.min(1.0, fraction));
+    parts.add(new ColumnFamilySplit(Long.toString(partStart), Long.toString(partEnd), length, split.getLocations()));
+  }
+
+  private static void collectConjuncts(ExprNodeDesc expr, List<ExprNodeDesc> conjuncts) {
+    if (getUDF(expr) instanceof GenericUDFOPAnd) {
+      for (ExprNodeDesc child : expr.getChildren()) {
+        collectConjuncts(child, conjuncts);
+      }
+    } else {
+      conjuncts.add(expr);
+    }
+  }
+
+  /**
+   * Narrow the bounds to the tokens a comparison of the token of the key column with constants
+   * holds for.
+   *
+   * @param keyColumn name of the key column, null for any column
+   * @param bounds    exclusive start and inclusive end token, narrowed in place
+   * @return false if the expression is something else, the bounds are unchanged then
+   */
+  private static boolean addBounds(ExprNodeDesc expr, String keyColumn, long[] bounds) {
+    GenericUDF udf = getUDF(expr);
+    if (udf == null) {
+      return false;
+    }
+    List<ExprNodeDesc> children = expr.getChildren();
+
+    if (udf instanceof GenericUDFBetween) {
+      // BETWEEN has the NOT flag as first argument
+      Long low = getLong(children.get(2));
+      Long high = getLong(children.get(3));
+      if (!Boolean.FALSE.equals(getConstant(children.get(0))) || !isToken(children.get(1), keyColumn)
+              || low == null || high == null) {
+        return false;
+      }
+      narrow(bounds, low == Long.MIN_VALUE ? Long.MIN_VALUE : low - 1, high);
+      return true;
+    }
+
+    if (children.size() != 2) {
+      return false;
+    }
+    Long value;
+    boolean reversed;
+    if (isToken(children.get(0), keyColumn) && (value = getLong(children.get(1))) != null) {
+      reversed = false;
+    } else if (isToken(children.get(1), keyColumn) && (value = getLong(children.get(0))) != null) {
+      reversed = true;
+    } else {
+      return false;
+    }
+
+    long c = value;
+    boolean greater = udf instanceof GenericUDFOPGreaterThan || udf instanceof GenericUDFOPEqualOrGreaterThan;
+    boolean less = udf instanceof GenericUDFOPLessThan || udf instanceof GenericUDFOPEqualOrLessThan;
+    boolean inclusive = udf instanceof GenericUDFOPEqualOrGreaterThan || udf instanceof GenericUDFOPEqualOrLessThan;
+    if (reversed) {
+      // c < token(key) is token(key) > c
+      boolean swap = greater;
+      greater = less;
+      less = swap;
+    }
+
+    long before = c == Long.MIN_VALUE ? Long.MIN_VALUE : c - 1;
+    if (udf instanceof GenericUDFOPEqual) {
+      narrow(bounds, before, c);
+    } else if (greater) {
+      narrow(bounds, inclusive ? before : c, Long.MAX_VALUE);
+    } else if (less) {
+      if (!inclusive && c == Long.MIN_VALUE) {
+        // no token is lower than the minimum
+        narrow(bounds, Long.MIN_VALUE, Long.MIN_VALUE);
+      } else {
+        narrow(bounds, Long.MIN_VALUE, inclusive ? c : c - 1);
+      }
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private static void narrow(long[] bounds, long start, long end) {
+    bounds[0] = Math.max(bounds[0], start);
+    bounds[1] = Math.min(bounds[1], end);
+  }
+
+  /**
+   * @return true for a call of {@link UDFCassandraToken} on the key column
+   */
+  private static boolean isToken(ExprNodeDesc expr, String keyColumn) {
+    GenericUDF udf = getUDF(expr);
+    if (!(udf instanceof GenericUDFBridge)
+            || !UDFCassandraToken.class.getName().equals(((GenericUDFBridge) udf).getUdfClassName())
+            || expr.getChildren().size() != 1) {
+      return false;
+    }
+    ExprNodeDesc argument = expr.getChildren().get(0);
+    return argument instanceof ExprNodeColumnDesc
+            && (keyColumn == null || ((ExprNodeColumnDesc) argument).getColumn().equalsIgnoreCase(keyColumn));
+  }
+
+  private static Object getConstant(ExprNodeDesc expr) {
+    return expr instanceof ExprNodeConstantDesc ? ((ExprNodeConstantDesc) expr).getValue() : null;
+  }
+
+  /**
+   * @return the value of an integral constant, null for anything else
+   */
+  private static Long getLong(ExprNodeDesc expr) {
+    GenericUDF udf = getUDF(expr);
+    if (udf instanceof GenericUDFBridge
+            && UDFOPNegative.class.getName().equals(((GenericUDFBridge) udf).getUdfClassName())) {
+      // Hive parses -5 as the negation of 5
+      Long value = getLong(expr.getChildren().get(0));
+      return value == null ? null : -value;
+    }
+
+    Object value = getConstant(expr);
+    if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    }
+    return null;
+  }
+
+  private static GenericUDF getUDF(ExprNodeDesc expr) {
+    return expr instanceof ExprNodeGenericFuncDesc ? ((ExprNodeGenericFuncDesc) expr).getGenericUDF() : null;
+  }
+
+  private static ExprNodeDesc and(List<ExprNodeDesc> conditions) {
+    if (conditions.isEmpty()) {
+      return null;
+    }
+
+    ExprNodeDesc result = conditions.get(0);
+    for (int i = 1; i < conditions.size(); i++) {
+      result = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFOPAnd(),
+              Arrays.asList(result, conditions.get(i)));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.thrift.TokenRange;
+
+/**
+ * Maps row keys to the nodes that replicate them, using the token ranges returned by describe_ring.
+ */
+public class TokenRouter {
+
+  private final IPartitioner<?> partitioner;
+
+  /**
+   * End tokens of the ranges, in ring order.
+   */
+  private final List<Token<?>> endTokens;
+
+  /**
+   * Replicas of the range ending at the token with the same index.
+   */
+  private final List<List<String>> replicas;
+
+  public TokenRouter(IPartitioner<?> partitioner, List<TokenRange> ring) {
+    this.partitioner = partitioner;
+
+    final Token.TokenFactory<?> factory = partitioner.getTokenFactory();
+    List<TokenRange> sorted = new ArrayList<TokenRange>(ring);
+    Collections.sort(sorted, new Comparator<TokenRange>() {
+      public int compare(TokenRange r1, TokenRange r2) {
+        return TokenRouter.compare(factory.fromString(r1.end_token), factory.fromString(r2.end_token));
+      }
+    });
+
+    endTokens = new ArrayList<Token<?>>(sorted.size());
+    replicas = new ArrayList<List<String>>(sorted.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      endTokens.add(factory.fromString(sorted.get(i).end_token));
+      replicas.add(Collections.unmodifiableList(getEndpoints(sorted.get(i))));
+    }
+  }
+
+  /**
+   * @return the partitioner the keys are hashed with
+   */
+  public IPartitioner<?> getPartitioner() {
+    return partitioner;
+  }
+
+  /**
+   * @param key row key
+   * @return the replicas of the key, in the order describe_ring returned them; empty if the ring is unknown
+   */
+  public List<String> getReplicas(ByteBuffer key) {
+    return getReplicas(partitioner.getToken(key));
+  }
+
+  /**
+   * Find the range (start, end] the token falls into. The range with the lowest end token also
+   * holds the tokens past the highest end token, since the ring wraps around.
+   *
+   * @param token a token of this partitioner
+   * @return the replicas of the range owning the token
+   */
+  public List<String> getReplicas(Token<?> token) {
+    if (endTokens.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    int low = 0;
+    int high = endTokens.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compare(endTokens.get(mid), token);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return replicas.get(mid);
+      }
+    }
+
+    return replicas.get(low == endTokens.size() ? 0 : low);
+  }
+
+  /**
+   * Token only declares compareTo for tokens of its own type parameter, which is lost once the
+   * partitioner is known by class name only. Every token here comes from the same partitioner.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int compare(Token<?> t1, Token<?> t2) {
+    return ((Token) t1).compareTo(t2);
+  }
+
+  /**
+   * Nodes that listen for rpc on every interface report 0.0.0.0 as rpc endpoint;
+   * use their gossip address in that case.
+   */
+  static List<String> getEndpoints(TokenRange range) {
+    List<String> endpoints = new ArrayList<String>();
+    for (int i = 0; i < range.endpoints.size(); i++) {
+      String endpoint = range.endpoints.get(i);
+      if (range.rpc_endpoints != null && i < range.rpc_endpoints.size()
+              && !"0.0.0.0".equals(range.rpc_endpoints.get(i))) {
+        endpoint = range.rpc_endpoints.get(i);
+      }
+      endpoints.add(endpoint);
+    }
+    return endpoints;
+  }
+}
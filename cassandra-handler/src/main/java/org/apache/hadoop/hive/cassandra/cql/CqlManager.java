@@ -35,7 +35,7 @@ import org.apache.cassandra.thrift.UnavailableException;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.hadoop.hive.cassandra.CassandraClientHolder;
 import org.apache.hadoop.hive.cassandra.CassandraException;
-import org.apache.hadoop.hive.cassandra.CassandraProxyClient;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
 import org.apache.hadoop.hive.cassandra.serde.cql.CqlSerDe;
 import org.apache.hadoop.hive.metastore.MetaStoreUtils;
@@ -74,9 +74,6 @@ public class CqlManager {
   //Cassandra proxy client
   private CassandraClientHolder cch;
 
-  //Whether or not use framed connection
-  private boolean framedConnection;
-
   //table property
   private final Table tbl;
 
@@ -117,17 +114,17 @@ public class CqlManager {
   private void init() {
     this.keyspace = getCassandraKeyspace();
     this.columnFamilyName = getCassandraColumnFamily();
-    this.framedConnection = true;
   }
 
   /**
-   * Open connection to the cassandra server.
+   * Open connection to the cassandra server. Pooled connections always use the framed
+   * transport, the only one cassandra serves thrift on.
    *
    * @throws MetaException
    */
   public void openConnection() throws MetaException {
     try {
-      cch = new CassandraProxyClient(host, port, framedConnection, true).getClientHolder();
+      cch = CassandraClientPool.getInstance().borrow(host, port);
     } catch (CassandraException e) {
       throw new MetaException("Unable to connect to the server " + e.getMessage());
     }
@@ -138,7 +135,8 @@ public class CqlManager {
    */
   public void closeConnection() {
     if (cch != null) {
-      cch.close();
+      CassandraClientPool.getInstance().release(cch);
+      cch = null;
     }
   }
 
@@ -246,7 +244,7 @@ public class CqlManager {
    */
   public void createColumnFamily() throws MetaException {
     try {
-      cch.getClient().set_keyspace(keyspace);
+      cch.setKeyspace(keyspace);
         Properties properties = MetaStoreUtils.getSchema(tbl.getSd(), tbl.getSd(), tbl.getParameters(), tbl.getDbName(), tbl.getTableName(), tbl.getPartitionKeys());
 
         String columnsStr = (String) properties.get(hive_metastoreConstants.META_TABLE_COLUMNS);
@@ -314,6 +312,9 @@ public class CqlManager {
     } catch (TimedOutException e) {
         throw new MetaException("Unable to create column family '" + columnFamilyName + "'. Error:"
                 + e.getMessage());
+    } catch (CassandraException e) {
+        throw new MetaException("Unable to create column family '" + columnFamilyName + "'. Error:"
+                + e.getMessage());
     }
 
   }
@@ -29,7 +29,8 @@ import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.Hex;
 import org.apache.hadoop.hive.cassandra.CassandraClientHolder;
 import org.apache.hadoop.hive.cassandra.CassandraException;
-import org.apache.hadoop.hive.cassandra.CassandraProxyClient;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
+import org.apache.hadoop.hive.cassandra.input.cql.NativeCqlRecordReader;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
 import org.apache.hadoop.hive.ql.exec.ExprNodeConstantEvaluator;
 import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
@@ -79,7 +80,8 @@ public class CqlPushdownPredicate {
 
     Set<ColumnDef> indexedColumns = new HashSet<ColumnDef>();
 
-    final CassandraClientHolder client = new CassandraProxyClient(host, port, true, true).getClientHolder();
+    final CassandraClientPool pool = CassandraClientPool.getInstance();
+    final CassandraClientHolder client = pool.borrow(host, port);
     try {
       CqlResult result = client.getClient().execute_cql3_query(ByteBufferUtil.bytes(getIdxColQuery),
               Compression.NONE, ConsistencyLevel.ONE);
@@ -104,13 +106,107 @@ public class CqlPushdownPredicate {
     } catch (SchemaDisagreementException e) {
       throw new CassandraException(e);
     } catch (TException e) {
+      pool.invalidate(client);
       throw new CassandraException(e);
     } catch (CharacterCodingException e) {
       throw new CassandraException(e);
+    } finally {
+      pool.release(client);
     }
     return indexedColumns;
   }
 
+  /**
+   * Get the partition key columns of a column family from the schema tables.
+   *
+   * @param host
+   * @param port
+   * @param ksName keyspace name
+   * @param cfName column family name
+   * @return names of the partition key columns, "key" for column families created through thrift
+   * @throws CassandraException if a problem is encountered communicating with Cassandra
+   */
+  public static List<String> getPartitionKey(String host, int port, String ksName, String cfName) throws CassandraException {
+    List<String> partitionKey = NativeCqlRecordReader.parseAliases(
+            readColumnFamilySchema(host, port, ksName, cfName, "key_aliases"));
+    if (partitionKey.isEmpty()) {
+      partitionKey.add("key");
+    }
+    return partitionKey;
+  }
+
+  /**
+   * Get the partition key columns of a column family from the schema tables, followed by its
+   * clustering columns.
+   *
+   * @param host
+   * @param port
+   * @param ksName keyspace name
+   * @param cfName column family name
+   * @return names of the primary key columns
+   * @throws CassandraException if a problem is encountered communicating with Cassandra
+   */
+  public static List<String> getPrimaryKey(String host, int port, String ksName, String cfName) throws CassandraException {
+    List<String> primaryKey = getPartitionKey(host, port, ksName, cfName);
+    primaryKey.addAll(NativeCqlRecordReader.parseAliases(
+            readColumnFamilySchema(host, port, ksName, cfName, "column_aliases")));
+    return primaryKey;
+  }
+
+  /**
+   * Get the validator of the partition key of a column family from the schema tables, a
+   * CompositeType when the key has several columns.
+   *
+   * @param host
+   * @param port
+   * @param ksName keyspace name
+   * @param cfName column family name
+   * @return the type the partition keys are stored as
+   * @throws CassandraException if a problem is encountered communicating with Cassandra
+   */
+  public static AbstractType<?> getKeyValidator(String host, int port, String ksName, String cfName) throws CassandraException {
+    try {
+      return TypeParser.parse(ByteBufferUtil.string(readColumnFamilySchema(host, port, ksName, cfName, "key_validator")));
+    } catch (CharacterCodingException e) {
+      throw new CassandraException(e);
+    } catch (ConfigurationException e) {
+      throw new CassandraException(e);
+    } catch (SyntaxException e) {
+      throw new CassandraException(e);
+    }
+  }
+
+  private static ByteBuffer readColumnFamilySchema(String host, int port, String ksName, String cfName, String column)
+          throws CassandraException {
+    String query = String.format("select %s from system.schema_columnfamilies " +
+            "where keyspace_name='%s' and columnfamily_name = '%s';", column, ksName, cfName);
+
+    final CassandraClientPool pool = CassandraClientPool.getInstance();
+    final CassandraClientHolder client = pool.borrow(host, port);
+    try {
+      CqlResult result = client.getClient().execute_cql3_query(ByteBufferUtil.bytes(query),
+              Compression.NONE, ConsistencyLevel.ONE);
+      if (result.getRows().isEmpty()) {
+        throw new CassandraException("Column family " + ksName + "." + cfName + " does not exist");
+      }
+
+      return result.getRows().get(0).columns.get(0).value;
+    } catch (InvalidRequestException e) {
+      throw new CassandraException(e);
+    } catch (UnavailableException e) {
+      throw new CassandraException(e);
+    } catch (TimedOutException e) {
+      throw new CassandraException(e);
+    } catch (SchemaDisagreementException e) {
+      throw new CassandraException(e);
+    } catch (TException e) {
+      pool.invalidate(client);
+      throw new CassandraException(e);
+    } finally {
+      pool.release(client);
+    }
+  }
+
   /**
    * Serialize a set of ColumnDefs for indexed columns, so that
    * it can be written to Job configuration
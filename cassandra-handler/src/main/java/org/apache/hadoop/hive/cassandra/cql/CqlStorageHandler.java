@@ -26,8 +26,12 @@ import java.util.Set;
 
 import org.apache.cassandra.thrift.ColumnDef;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
 import org.apache.hadoop.hive.cassandra.CassandraException;
 import org.apache.hadoop.hive.cassandra.CassandraManager;
+import org.apache.hadoop.hive.cassandra.RingTopologyService;
+import org.apache.hadoop.hive.cassandra.RowKeyPredicate;
+import org.apache.hadoop.hive.cassandra.TokenRangePredicate;
 import org.apache.hadoop.hive.cassandra.input.cql.HiveCqlInputFormat;
 import org.apache.hadoop.hive.cassandra.output.cql.HiveCqlOutputFormat;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
@@ -54,6 +58,8 @@ import org.apache.hadoop.mapred.OutputFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Joiner;
+
 public class CqlStorageHandler
         implements HiveStorageHandler, HiveMetaHook, HiveStoragePredicateHandler {
 
@@ -89,6 +95,12 @@ public class CqlStorageHandler
     }
     jobProperties.put(AbstractCassandraSerDe.CASSANDRA_COL_MAPPING, columnInfo);
 
+    //Writers route rows by their partition key
+    String primaryKey = tableProperties.getProperty(CqlSerDe.CASSANDRA_COLUMN_FAMILY_PRIMARY_KEY);
+    if (primaryKey != null) {
+      jobProperties.put(CqlSerDe.CASSANDRA_COLUMN_FAMILY_PRIMARY_KEY, primaryKey);
+    }
+
     String host = configuration.get(AbstractCassandraSerDe.CASSANDRA_HOST);
     if (host == null) {
       host = tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_HOST, AbstractCassandraSerDe.DEFAULT_CASSANDRA_HOST);
@@ -106,7 +118,7 @@ public class CqlStorageHandler
     if (configuration.get(AbstractCassandraSerDe.CASSANDRA_PARTITIONER) == null) {
       jobProperties.put(AbstractCassandraSerDe.CASSANDRA_PARTITIONER,
               tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_PARTITIONER,
-                      "org.apache.cassandra.dht.Murmur3Partitioner"));
+                      AbstractCassandraSerDe.DEFAULT_CASSANDRA_PARTITIONER));
     } else {
       jobProperties.put(AbstractCassandraSerDe.CASSANDRA_PARTITIONER, configuration.get(AbstractCassandraSerDe.CASSANDRA_PARTITIONER));
     }
@@ -119,6 +131,22 @@ public class CqlStorageHandler
       jobProperties.put(AbstractCassandraSerDe.CASSANDRA_CONSISTENCY_LEVEL, configuration.get(AbstractCassandraSerDe.CASSANDRA_CONSISTENCY_LEVEL));
     }
 
+    if (configuration.get(AbstractCassandraSerDe.CASSANDRA_TRANSPORT) == null) {
+      jobProperties.put(AbstractCassandraSerDe.CASSANDRA_TRANSPORT,
+              tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_TRANSPORT,
+                      AbstractCassandraSerDe.DEFAULT_TRANSPORT));
+    } else {
+      jobProperties.put(AbstractCassandraSerDe.CASSANDRA_TRANSPORT, configuration.get(AbstractCassandraSerDe.CASSANDRA_TRANSPORT));
+    }
+
+    if (configuration.get(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT) == null) {
+      jobProperties.put(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT,
+              tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT,
+                      AbstractCassandraSerDe.DEFAULT_NATIVE_PORT));
+    } else {
+      jobProperties.put(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT, configuration.get(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT));
+    }
+
     if (configuration.get(AbstractCassandraSerDe.CASSANDRA_RANGE_BATCH_SIZE) == null) {
       jobProperties.put(AbstractCassandraSerDe.CASSANDRA_RANGE_BATCH_SIZE,
               tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_RANGE_BATCH_SIZE,
@@ -181,6 +209,27 @@ public class CqlStorageHandler
               configuration.get(AbstractCassandraSerDe.CASSANDRA_SLICE_PREDICATE_RANGE_REVERSED));
     }
 
+    for (String property : AbstractCassandraSerDe.CASSANDRA_SPLIT_PROPERTIES) {
+      String value = configuration.get(property, tableProperties.getProperty(property));
+      if (value != null) {
+        jobProperties.put(property, value);
+      }
+    }
+
+    for (String property : AbstractCassandraSerDe.CASSANDRA_READER_PROPERTIES) {
+      String value = configuration.get(property, tableProperties.getProperty(property));
+      if (value != null) {
+        jobProperties.put(property, value);
+      }
+    }
+
+    for (String property : AbstractCassandraSerDe.CASSANDRA_RETRY_PROPERTIES) {
+      String value = configuration.get(property, tableProperties.getProperty(property));
+      if (value != null) {
+        jobProperties.put(property, value);
+      }
+    }
+
     //Set the indexed column names - leave unset if we have problems determining them
     String indexedColumns = tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_INDEXED_COLUMNS);
     if (indexedColumns != null) {
@@ -195,6 +244,20 @@ public class CqlStorageHandler
       }
     }
 
+    //Set the key column names - readers select every column if they are unknown
+    String keyColumns = tableProperties.getProperty(AbstractCassandraSerDe.CASSANDRA_KEY_COLUMNS);
+    if (keyColumns == null) {
+      try {
+        keyColumns = Joiner.on(',').join(
+                CqlPushdownPredicate.getPrimaryKey(host, Integer.parseInt(port), keyspace, columnFamily));
+      } catch (CassandraException e) {
+        logger.info("Error determining cassandra key columns, will not include in JobConf", e);
+      }
+    }
+    if (keyColumns != null) {
+      jobProperties.put(AbstractCassandraSerDe.CASSANDRA_KEY_COLUMNS, keyColumns);
+    }
+
   }
 
   @Override
@@ -225,6 +288,8 @@ public class CqlStorageHandler
   @Override
   public void setConf(Configuration arg0) {
     this.configuration = arg0;
+    CassandraClientPool.getInstance().configure(arg0);
+    RingTopologyService.getInstance().configure(arg0);
   }
 
   @Override
@@ -323,6 +388,11 @@ public class CqlStorageHandler
    * matches the indexed columns. If there is no matching, we can't push down the predicate. For any matching column that
    * is found, we need to verify that there is at least one equal operator. If there is no equal operator, we can't push
    * down the predicate.
+   *
+   * When the partition key is a single column, a condition restricting it to a few values is pushed down instead of
+   * the indexed columns, the input format then selects those partitions rather than scanning the ring.
+   * Failing that, bounds on cassandra_token() of the partition key are pushed down, and only the splits of that part
+   * of the ring are scanned.
    */
   @Override
   public DecomposedPredicate decomposePredicate(JobConf jobConf, Deserializer deserializer, ExprNodeDesc predicate) {
@@ -332,6 +402,30 @@ public class CqlStorageHandler
       int port = jobConf.getInt(AbstractCassandraSerDe.CASSANDRA_PORT, Integer.parseInt(AbstractCassandraSerDe.DEFAULT_CASSANDRA_PORT));
       String ksName = cassandraSerde.getCassandraKeyspace();
       String cfName = cassandraSerde.getCassandraColumnFamily();
+
+      List<String> partitionKey = CqlPushdownPredicate.getPartitionKey(host, port, ksName, cfName);
+      if (partitionKey.size() == 1) {
+        RowKeyPredicate keyPredicate = RowKeyPredicate.analyze(predicate,
+                cassandraSerde.getHiveColumnName(partitionKey.get(0)),
+                CqlPushdownPredicate.getKeyValidator(host, port, ksName, cfName));
+        if (keyPredicate != null) {
+          DecomposedPredicate decomposedPredicate = new DecomposedPredicate();
+          decomposedPredicate.pushedPredicate = keyPredicate.getPushedPredicate();
+          decomposedPredicate.residualPredicate = keyPredicate.getResidualPredicate();
+          return decomposedPredicate;
+        }
+
+        TokenRangePredicate tokenRange = TokenRangePredicate.analyze(predicate,
+                cassandraSerde.getHiveColumnName(partitionKey.get(0)),
+                jobConf.get(AbstractCassandraSerDe.CASSANDRA_PARTITIONER, cassandraSerde.getCassandraPartitioner()));
+        if (tokenRange != null) {
+          DecomposedPredicate decomposedPredicate = new DecomposedPredicate();
+          decomposedPredicate.pushedPredicate = tokenRange.getPushedPredicate();
+          decomposedPredicate.residualPredicate = tokenRange.getResidualPredicate();
+          return decomposedPredicate;
+        }
+      }
+
       Set<ColumnDef> indexedColumns = CqlPushdownPredicate.getIndexedColumns(host, port, ksName, cfName);
       if (indexedColumns.isEmpty()) {
         return null;
@@ -0,0 +1,429 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.cql;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * A connection speaking version 1 of the native CQL binary protocol, by default on port 9042.
+ *
+ * Unlike a thrift connection it does not wait for a response before sending the next request:
+ * every request gets one of 128 stream ids, and a reader thread completes the future of each
+ * request as its response comes back, in whatever order the server answers. Sending blocks
+ * while all stream ids are in use.
+ *
+ * Only what the handler needs is implemented: QUERY, PREPARE and EXECUTE without authentication
+ * or compression.
+ */
+public class NativeConnection {
+
+  private static final Logger logger = LoggerFactory.getLogger(NativeConnection.class);
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Stream ids available to requests in protocol version 1.
+   */
+  public static final int MAX_STREAMS = 128;
+
+  private static final int REQUEST_VERSION = 0x01;
+  private static final int RESPONSE_VERSION = 0x81;
+
+  static final int ERROR = 0x00;
+  static final int STARTUP = 0x01;
+  static final int READY = 0x02;
+  static final int AUTHENTICATE = 0x03;
+  static final int QUERY = 0x07;
+  static final int RESULT = 0x08;
+  static final int PREPARE = 0x09;
+  static final int EXECUTE = 0x0A;
+
+  private final String host;
+  private final Socket socket;
+  private final DataOutputStream out;
+  private final DataInputStream in;
+  private final BlockingQueue<Integer> freeStreams = new ArrayBlockingQueue<Integer>(MAX_STREAMS);
+  private final AtomicReferenceArray<SettableFuture<NativeResult>> pending =
+          new AtomicReferenceArray<SettableFuture<NativeResult>>(MAX_STREAMS);
+  private final Thread reader;
+  private volatile IOException failure;
+
+  NativeConnection(String host, InputStream in, OutputStream out, Socket socket) {
+    this.host = host;
+    this.socket = socket;
+    this.in = new DataInputStream(in);
+    this.out = new DataOutputStream(out);
+    for (int i = 0; i < MAX_STREAMS; i++) {
+      freeStreams.add(i);
+    }
+
+    reader = new Thread(new Runnable() {
+      public void run() {
+        readResponses();
+      }
+    }, "cassandra-native-reader-" + host);
+    reader.setDaemon(true);
+  }
+
+  /**
+   * Connect and send the STARTUP message.
+   *
+   * @param host    cassandra host
+   * @param port    native transport port
+   * @param timeout connect timeout in millis
+   * @return a connection ready to take requests
+   * @throws IOException if the host cannot be reached or refuses the connection
+   */
+  public static NativeConnection connect(String host, int port, int timeout) throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.connect(new InetSocketAddress(host, port), timeout);
+      NativeConnection connection = new NativeConnection(host, new BufferedInputStream(socket.getInputStream()),
+              new BufferedOutputStream(socket.getOutputStream()), socket);
+      connection.start();
+      return connection;
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  void start() throws IOException {
+    reader.start();
+
+    ByteBuffer body = ByteBuffer.allocate(64);
+    writeStringMap(body, ImmutableMap.of("CQL_VERSION", "3.0.0"));
+    NativeResult ready = await(send(STARTUP, body));
+    if (ready.getKind() != NativeResult.READY) {
+      close();
+      throw new IOException("Authentication is not supported by the native transport of the cassandra handler");
+    }
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * @return false once the connection failed or was closed
+   */
+  public boolean isOpen() {
+    return failure == null;
+  }
+
+  /**
+   * Run a CQL statement.
+   *
+   * @param cql         statement
+   * @param consistency consistency level of the statement
+   * @return the future result
+   * @throws IOException if the connection is closed
+   */
+  public ListenableFuture<NativeResult> query(String cql, ConsistencyLevel consistency) throws IOException {
+    byte[] query = cql.getBytes(UTF8);
+    ByteBuffer body = ByteBuffer.allocate(4 + query.length + 2);
+    body.putInt(query.length).put(query);
+    body.putShort(getConsistencyCode(consistency));
+    return send(QUERY, body);
+  }
+
+  /**
+   * Prepare a CQL statement.
+   *
+   * @param cql statement with ? markers
+   * @return the future result, of kind {@link NativeResult#PREPARED}
+   * @throws IOException if the connection is closed
+   */
+  public ListenableFuture<NativeResult> prepare(String cql) throws IOException {
+    byte[] query = cql.getBytes(UTF8);
+    ByteBuffer body = ByteBuffer.allocate(4 + query.length);
+    body.putInt(query.length).put(query);
+    return send(PREPARE, body);
+  }
+
+  /**
+   * Execute a prepared statement.
+   *
+   * @param statementId id returned by {@link #prepare(String)}
+   * @param values      values of the markers, null for null
+   * @param consistency consistency level of the statement
+   * @return the future result
+   * @throws IOException if the connection is closed
+   */
+  public ListenableFuture<NativeResult> execute(byte[] statementId, List<ByteBuffer> values,
+                                                ConsistencyLevel consistency) throws IOException {
+    int length = 2 + statementId.length + 2 + 2;
+    for (ByteBuffer value : values) {
+      length += 4 + (value == null ? 0 : value.remaining());
+    }
+
+    ByteBuffer body = ByteBuffer.allocate(length);
+    body.putShort((short) statementId.length).put(statementId);
+    body.putShort((short) values.size());
+    for (ByteBuffer value : values) {
+      if (value == null) {
+        body.putInt(-1);
+      } else {
+        body.putInt(value.remaining()).put(value.duplicate());
+      }
+    }
+    body.putShort(getConsistencyCode(consistency));
+    return send(EXECUTE, body);
+  }
+
+  /**
+   * Wait for a result, turning failures back into the IOException they were raised with.
+   *
+   * @param future result of a request
+   * @return the result
+   * @throws IOException if the request failed
+   */
+  public static NativeResult await(Future<NativeResult> future) throws IOException {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Close the connection, failing the requests still waiting for a response.
+   */
+  public void close() {
+    fail(new IOException("Connection to " + host + " closed"));
+  }
+
+  private ListenableFuture<NativeResult> send(int opcode, ByteBuffer body) throws IOException {
+    checkOpen();
+
+    Integer stream = Uninterruptibles.takeUninterruptibly(freeStreams);
+    SettableFuture<NativeResult> future = SettableFuture.create();
+    pending.set(stream, future);
+
+    try {
+      synchronized (out) {
+        checkOpen();
+        out.writeByte(REQUEST_VERSION);
+        out.writeByte(0);
+        out.writeByte(stream);
+        out.writeByte(opcode);
+        out.writeInt(body.position());
+        out.write(body.array(), 0, body.position());
+        out.flush();
+      }
+    } catch (IOException e) {
+      fail(e);
+      // fail() may have run before the future was registered
+      if (pending.compareAndSet(stream, future, null)) {
+        future.setException(failure);
+        freeStreams.add(stream);
+      }
+    }
+    return future;
+  }
+
+  private void checkOpen() throws IOException {
+    IOException e = failure;
+    if (e != null) {
+      throw new IOException("Connection to " + host + " failed", e);
+    }
+  }
+
+  private void readResponses() {
+    try {
+      while (failure == null) {
+        int version = in.readUnsignedByte();
+        in.readUnsignedByte(); // flags, no compression or tracing requested
+        int stream = in.readByte();
+        int opcode = in.readUnsignedByte();
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+
+        if (version != RESPONSE_VERSION) {
+          throw new IOException("Unsupported native protocol version " + version + " from " + host);
+        }
+        if (stream < 0) {
+          // server pushed event, none registered for
+          continue;
+        }
+
+        SettableFuture<NativeResult> future = pending.getAndSet(stream, null);
+        freeStreams.add(stream);
+        if (future == null) {
+          logger.warn("Response for unknown stream " + stream + " from " + host);
+          continue;
+        }
+
+        try {
+          complete(future, opcode, ByteBuffer.wrap(body));
+        } catch (RuntimeException e) {
+          future.setException(new IOException("Malformed response from " + host, e));
+        }
+      }
+    } catch (EOFException e) {
+      fail(new IOException("Connection closed by " + host, e));
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private void complete(SettableFuture<NativeResult> future, int opcode, ByteBuffer body) {
+    switch (opcode) {
+      case READY:
+        future.set(NativeResult.ready());
+        break;
+      case AUTHENTICATE:
+        future.set(NativeResult.authenticate());
+        break;
+      case RESULT:
+        future.set(NativeResult.decode(body));
+        break;
+      case ERROR:
+        int code = body.getInt();
+        future.setException(new ServerError(host, code, readString(body)));
+        break;
+      default:
+        future.setException(new IOException("Unexpected opcode " + opcode + " from " + host));
+    }
+  }
+
+  private void fail(IOException e) {
+    synchronized (this) {
+      if (failure != null) {
+        return;
+      }
+      failure = e;
+    }
+
+    try {
+      if (socket != null) {
+        socket.close();
+      }
+    } catch (IOException ignored) {
+      // closing anyway
+    }
+
+    for (int i = 0; i < MAX_STREAMS; i++) {
+      SettableFuture<NativeResult> future = pending.getAndSet(i, null);
+      if (future != null) {
+        future.setException(e);
+        freeStreams.add(i);
+      }
+    }
+  }
+
+  static short getConsistencyCode(ConsistencyLevel consistency) {
+    switch (consistency) {
+      case ANY:
+        return 0x0000;
+      case ONE:
+        return 0x0001;
+      case TWO:
+        return 0x0002;
+      case THREE:
+        return 0x0003;
+      case QUORUM:
+        return 0x0004;
+      case ALL:
+        return 0x0005;
+      case LOCAL_QUORUM:
+        return 0x0006;
+      case EACH_QUORUM:
+        return 0x0007;
+      default:
+        throw new IllegalArgumentException("Consistency level " + consistency + " is not supported");
+    }
+  }
+
+  private static void writeStringMap(ByteBuffer body, Map<String, String> map) {
+    body.putShort((short) map.size());
+    for (Map.Entry<String, String> e : map.entrySet()) {
+      writeString(body, e.getKey());
+      writeString(body, e.getValue());
+    }
+  }
+
+  private static void writeString(ByteBuffer body, String s) {
+    byte[] bytes = s.getBytes(UTF8);
+    body.putShort((short) bytes.length).put(bytes);
+  }
+
+  static String readString(ByteBuffer body) {
+    int length = body.getShort() & 0xFFFF;
+    String s = new String(body.array(), body.arrayOffset() + body.position(), length, UTF8);
+    body.position(body.position() + length);
+    return s;
+  }
+
+  /**
+   * An error returned by the server.
+   */
+  public static class ServerError extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public static final int UNAVAILABLE = 0x1000;
+    public static final int OVERLOADED = 0x1001;
+    public static final int IS_BOOTSTRAPPING = 0x1002;
+    public static final int WRITE_TIMEOUT = 0x1100;
+    public static final int READ_TIMEOUT = 0x1200;
+    public static final int UNPREPARED = 0x2500;
+
+    private final int code;
+
+    public ServerError(String host, int code, String message) {
+      super("Error 0x" + Integer.toHexString(code) + " from " + host + ": " + message);
+      this.code = code;
+    }
+
+    public int getCode() {
+      return code;
+    }
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.cql;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A response of the native protocol: the result of a statement, or the answer to STARTUP.
+ *
+ * Rows keep their cells as views of the response body, nothing is copied.
+ */
+public class NativeResult {
+
+  public static final int VOID = 0x0001;
+  public static final int ROWS = 0x0002;
+  public static final int SET_KEYSPACE = 0x0003;
+  public static final int PREPARED = 0x0004;
+  public static final int SCHEMA_CHANGE = 0x0005;
+
+  /**
+   * Not results, the answers to STARTUP.
+   */
+  static final int READY = -1;
+  static final int AUTHENTICATE = -2;
+
+  private static final int GLOBAL_TABLES_SPEC = 0x0001;
+
+  private final int kind;
+  private List<String> columnNames = Collections.emptyList();
+  private List<ByteBuffer[]> rows = Collections.emptyList();
+  private byte[] preparedId;
+  private String keyspace;
+
+  private NativeResult(int kind) {
+    this.kind = kind;
+  }
+
+  static NativeResult ready() {
+    return new NativeResult(READY);
+  }
+
+  static NativeResult authenticate() {
+    return new NativeResult(AUTHENTICATE);
+  }
+
+  /**
+   * @param body body of a RESULT message
+   */
+  static NativeResult decode(ByteBuffer body) {
+    NativeResult result = new NativeResult(body.getInt());
+
+    switch (result.kind) {
+      case ROWS:
+        result.columnNames = readMetadata(body);
+        int rowCount = body.getInt();
+        int columnCount = result.columnNames.size();
+        result.rows = new ArrayList<ByteBuffer[]>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+          ByteBuffer[] row = new ByteBuffer[columnCount];
+          for (int j = 0; j < columnCount; j++) {
+            row[j] = readBytes(body);
+          }
+          result.rows.add(row);
+        }
+        break;
+      case SET_KEYSPACE:
+        result.keyspace = NativeConnection.readString(body);
+        break;
+      case PREPARED:
+        result.preparedId = new byte[body.getShort() & 0xFFFF];
+        body.get(result.preparedId);
+        result.columnNames = readMetadata(body);
+        break;
+      default:
+        // VOID and SCHEMA_CHANGE carry nothing we use
+    }
+    return result;
+  }
+
+  public int getKind() {
+    return kind;
+  }
+
+  /**
+   * @return names of the columns of the rows, or of the markers of a prepared statement
+   */
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  /**
+   * @return the rows, each cell a view of the response or null for a null cell
+   */
+  public List<ByteBuffer[]> getRows() {
+    return rows;
+  }
+
+  /**
+   * @return id to execute a prepared statement with
+   */
+  public byte[] getPreparedId() {
+    return preparedId;
+  }
+
+  public String getKeyspace() {
+    return keyspace;
+  }
+
+  private static List<String> readMetadata(ByteBuffer body) {
+    int flags = body.getInt();
+    int columnCount = body.getInt();
+
+    if ((flags & GLOBAL_TABLES_SPEC) != 0) {
+      NativeConnection.readString(body);
+      NativeConnection.readString(body);
+    }
+
+    List<String> names = new ArrayList<String>(columnCount);
+    for (int i = 0; i < columnCount; i++) {
+      if ((flags & GLOBAL_TABLES_SPEC) == 0) {
+        NativeConnection.readString(body);
+        NativeConnection.readString(body);
+      }
+      names.add(NativeConnection.readString(body));
+      skipType(body);
+    }
+    return names;
+  }
+
+  private static void skipType(ByteBuffer body) {
+    int id = body.getShort() & 0xFFFF;
+    switch (id) {
+      case 0x0000:
+        // custom type, named by class
+        NativeConnection.readString(body);
+        break;
+      case 0x0020:
+      case 0x0022:
+        // list and set, of one element type
+        skipType(body);
+        break;
+      case 0x0021:
+        // map
+        skipType(body);
+        skipType(body);
+        break;
+      default:
+        // native type, no parameters
+    }
+  }
+
+  private static ByteBuffer readBytes(ByteBuffer body) {
+    int length = body.getInt();
+    if (length < 0) {
+      return null;
+    }
+    ByteBuffer value = body.slice();
+    value.limit(length);
+    body.position(body.position() + length);
+    return value;
+  }
+}
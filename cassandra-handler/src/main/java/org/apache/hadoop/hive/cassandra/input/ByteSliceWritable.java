@@ -0,0 +1,140 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A cell value that points into the buffer it was read from instead of copying it. The bytes are
+ * {@link #getLength()} bytes of {@link #getArray()} starting at {@link #getOffset()}.
+ *
+ * Holders are meant to be reused: {@link #set(ByteBuffer)} repoints a holder at another buffer.
+ * Heap buffers, like the ones thrift returns, are not copied; any other buffer is copied into an
+ * array the holder keeps for the next time.
+ */
+public class ByteSliceWritable implements Writable {
+
+  private static final byte[] EMPTY = new byte[0];
+
+  private byte[] array = EMPTY;
+  private int offset;
+  private int length;
+  private byte[] owned = EMPTY;
+
+  public ByteSliceWritable() {
+  }
+
+  public ByteSliceWritable(ByteBuffer buffer) {
+    set(buffer);
+  }
+
+  /**
+   * Point at the remaining bytes of the buffer. The position of the buffer is left unchanged.
+   *
+   * @param buffer bytes of the cell, must not change while the holder is in use
+   */
+  public void set(ByteBuffer buffer) {
+    length = buffer.remaining();
+    if (buffer.hasArray()) {
+      array = buffer.array();
+      offset = buffer.arrayOffset() + buffer.position();
+    } else {
+      copy(buffer);
+    }
+  }
+
+  /**
+   * Copy the remaining bytes of the buffer into the array of the holder, for buffers that may
+   * change once the holder is handed out. The position of the buffer is left unchanged.
+   *
+   * @param buffer bytes of the cell
+   */
+  public void copy(ByteBuffer buffer) {
+    length = buffer.remaining();
+    array = ensureOwned(length);
+    offset = 0;
+    buffer.duplicate().get(array, 0, length);
+  }
+
+  /**
+   * @return the array holding the bytes, usually larger than the cell
+   */
+  public byte[] getArray() {
+    return array;
+  }
+
+  public int getOffset() {
+    return offset;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return a copy of the bytes, for callers that need them on their own
+   */
+  public BytesWritable toBytesWritable() {
+    BytesWritable copy = new BytesWritable();
+    copy.set(array, offset, length);
+    return copy;
+  }
+
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, length);
+    out.write(array, offset, length);
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    length = WritableUtils.readVInt(in);
+    array = ensureOwned(length);
+    offset = 0;
+    in.readFully(array, 0, length);
+  }
+
+  private byte[] ensureOwned(int size) {
+    if (owned.length < size) {
+      owned = new byte[size];
+    }
+    return owned;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(3 * length);
+    for (int i = offset; i < offset + length; i++) {
+      if (i > offset) {
+        sb.append(' ');
+      }
+      String num = Integer.toHexString(0xff & array[i]);
+      if (num.length() < 2) {
+        sb.append('0');
+      }
+      sb.append(num);
+    }
+    return sb.toString();
+  }
+}
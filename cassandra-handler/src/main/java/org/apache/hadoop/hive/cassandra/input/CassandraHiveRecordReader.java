@@ -20,11 +20,9 @@ package org.apache.hadoop.hive.cassandra.input;
 
 import org.apache.cassandra.db.IColumn;
 import org.apache.cassandra.db.SuperColumn;
-import org.apache.cassandra.hadoop.ColumnFamilyRecordReader;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.hadoop.hive.cassandra.serde.CassandraColumnSerDe;
 import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
@@ -33,33 +31,93 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 
-public class CassandraHiveRecordReader extends RecordReader<BytesWritable, MapWritable>
-  implements org.apache.hadoop.mapred.RecordReader<BytesWritable, MapWritable> {
+public class CassandraHiveRecordReader extends RecordReader<BytesWritable, CassandraRowWritable>
+  implements org.apache.hadoop.mapred.RecordReader<BytesWritable, CassandraRowWritable> {
   static final Logger LOG = LoggerFactory.getLogger(CassandraHiveRecordReader.class);
 
   private final boolean isTransposed;
-  private final ColumnFamilyRecordReader cfrr;
+  private final boolean zeroCopy;
+  private final RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>> cfrr;
   private Iterator<Map.Entry<ByteBuffer, IColumn>> columnIterator = null;
   private Map.Entry<ByteBuffer, IColumn> currentEntry;
   private Iterator<IColumn> subColumnIterator = null;
-  private BytesWritable currentKey = null;
-  private final MapWritable currentValue = new MapWritable();
-
-  public static final BytesWritable keyColumn = new BytesWritable(CassandraColumnSerDe.CASSANDRA_KEY_COLUMN.getBytes());
-  public static final BytesWritable columnColumn = new BytesWritable(CassandraColumnSerDe.CASSANDRA_COLUMN_COLUMN.getBytes());
-  public static final BytesWritable subColumnColumn = new BytesWritable(CassandraColumnSerDe.CASSANDRA_SUBCOLUMN_COLUMN.getBytes());
-  public static final BytesWritable valueColumn = new BytesWritable(CassandraColumnSerDe.CASSANDRA_VALUE_COLUMN.getBytes());
-
-
+  private final BytesWritable currentKey = new BytesWritable();
+  private final CassandraRowWritable currentValue;
+  private long pos;
+
+  // positions in the column mapping of every mapped column name
+  private final int size;
+  private final Map<ByteBuffer, int[]> positions = new HashMap<ByteBuffer, int[]>();
+  private final int[] keyPositions;
+  private final int[] columnPositions;
+  private final int[] subColumnPositions;
+  private final int[] valuePositions;
+
+  /**
+   * Bytes of a row of the wrapped reader, to bound how far a {@link PrefetchingRecordReader} reads ahead.
+   */
+  public static final PrefetchingRecordReader.Weigher<ByteBuffer, SortedMap<ByteBuffer, IColumn>> ROW_WEIGHER =
+      new PrefetchingRecordReader.Weigher<ByteBuffer, SortedMap<ByteBuffer, IColumn>>() {
+    public long weigh(ByteBuffer key, SortedMap<ByteBuffer, IColumn> columns) {
+      long size = key.remaining();
+      for (IColumn column : columns.values()) {
+        size += column.dataSize();
+      }
+      return size;
+    }
+  };
+
+  /**
+   * @param cfrr    reader of the rows, a ColumnFamilyRecordReader or a {@link MultiRangeRecordReader} of them
+   * @param columns the column mapping, the cells of each row are put at the position of their column;
+   *                a transposed mapping returns a row per column
+   */
+  public CassandraHiveRecordReader(RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>> cfrr, List<String> columns)
+  {
+    this(cfrr, columns, false);
+  }
 
-  public CassandraHiveRecordReader(ColumnFamilyRecordReader cfrr, boolean isTransposed)
+  /**
+   * In zero copy mode the cells are slices of the buffers thrift returned rather than copies.
+   * Either way the row holders are reused, so a row is only valid until the next one is read.
+   *
+   * @param cfrr     reader of the rows, a ColumnFamilyRecordReader or a {@link MultiRangeRecordReader} of them
+   * @param columns  the column mapping, the cells of each row are put at the position of their column;
+   *                 a transposed mapping returns a row per column
+   * @param zeroCopy true to expose the cells without copying them
+   */
+  public CassandraHiveRecordReader(RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>> cfrr, List<String> columns,
+                                   boolean zeroCopy)
   {
     this.cfrr = cfrr;
-    this.isTransposed = isTransposed;
+    this.isTransposed = CassandraColumnSerDe.isTransposed(columns);
+    this.zeroCopy = zeroCopy;
+    this.size = columns.size();
+    this.currentValue = new CassandraRowWritable(size);
+
+    for (int i = 0; i < size; i++) {
+      ByteBuffer name = ByteBuffer.wrap(columns.get(i).getBytes());
+      int[] previous = positions.get(name);
+      int[] indexes = previous == null ? new int[1] : Arrays.copyOf(previous, previous.length + 1);
+      indexes[indexes.length - 1] = i;
+      positions.put(name, indexes);
+    }
+    keyPositions = getPositions(CassandraColumnSerDe.CASSANDRA_KEY_COLUMN);
+    columnPositions = getPositions(CassandraColumnSerDe.CASSANDRA_COLUMN_COLUMN);
+    subColumnPositions = getPositions(CassandraColumnSerDe.CASSANDRA_SUBCOLUMN_COLUMN);
+    valuePositions = getPositions(CassandraColumnSerDe.CASSANDRA_VALUE_COLUMN);
+  }
+
+  private int[] getPositions(String column)
+  {
+    return positions.get(ByteBuffer.wrap(column.getBytes()));
   }
 
   @Override
@@ -73,32 +131,34 @@ public class CassandraHiveRecordReader extends RecordReader<BytesWritable, MapWr
   }
 
   @Override
-  public MapWritable createValue() {
-    return new MapWritable();
+  public CassandraRowWritable createValue() {
+    return new CassandraRowWritable(size);
   }
 
   @Override
   public long getPos() throws IOException {
-    return cfrr.getPos();
+    return pos;
   }
 
   @Override
   public float getProgress() throws IOException {
-    return cfrr.getProgress();
+    try {
+      return cfrr.getProgress();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
   }
 
   @Override
-  public boolean next(BytesWritable key, MapWritable value) throws IOException {
+  public boolean next(BytesWritable key, CassandraRowWritable value) throws IOException {
 
-    if (!nextKeyValue()) {
+    // the row is read straight into the value hive passed in
+    if (!readRow(value)) {
       return false;
     }
 
     key.set(getCurrentKey());
 
-    value.clear();
-    value.putAll(getCurrentValue());
-
     return true;
   }
 
@@ -108,22 +168,72 @@ public class CassandraHiveRecordReader extends RecordReader<BytesWritable, MapWr
   }
 
   @Override
-  public MapWritable getCurrentValue() {
+  public CassandraRowWritable getCurrentValue() {
     return currentValue;
   }
 
   @Override
   public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
-    cfrr.initialize(split, context);
+    try {
+      cfrr.initialize(split, context);
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private boolean nextRow() throws IOException {
+    try {
+      if (cfrr.nextKeyValue()) {
+        pos++;
+        return true;
+      }
+      return false;
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private ByteBuffer getRowKey() throws IOException {
+    try {
+      return cfrr.getCurrentKey();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
   }
 
-  private BytesWritable convertByteBuffer(ByteBuffer val)
+  private SortedMap<ByteBuffer, IColumn> getRowColumns() throws IOException {
+    try {
+      return cfrr.getCurrentValue();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void setCurrentKey(ByteBuffer key)
   {
-    return new BytesWritable(ByteBufferUtil.getArray(val));
+    if (key.hasArray()) {
+      currentKey.set(key.array(), key.arrayOffset() + key.position(), key.remaining());
+    } else {
+      byte[] bytes = ByteBufferUtil.getArray(key);
+      currentKey.set(bytes, 0, bytes.length);
+    }
+  }
+
+  private void put(CassandraRowWritable row, int[] indexes, ByteBuffer value)
+  {
+    if (indexes != null) {
+      for (int index : indexes) {
+        row.set(index, value, zeroCopy);
+      }
+    }
   }
 
   @Override
   public boolean nextKeyValue() throws IOException {
+    return readRow(currentValue);
+  }
+
+  private boolean readRow(CassandraRowWritable row) throws IOException {
 
     boolean next = false;
 
@@ -134,9 +244,9 @@ public class CassandraHiveRecordReader extends RecordReader<BytesWritable, MapWr
       // see DSP-465 note below
       while (true) {
         if ((columnIterator == null || !columnIterator.hasNext()) && (subColumnIterator == null || !subColumnIterator.hasNext())) {
-          next = cfrr.nextKeyValue();
+          next = nextRow();
           if (next) {
-            columnIterator = cfrr.getCurrentValue().entrySet().iterator();
+            columnIterator = getRowColumns().entrySet().iterator();
             subColumnIterator = null;
             currentEntry = null;
           } else {
@@ -150,8 +260,9 @@ public class CassandraHiveRecordReader extends RecordReader<BytesWritable, MapWr
         }
 
         if (next) {
-          currentKey = convertByteBuffer(cfrr.getCurrentKey());
-          currentValue.clear();
+          ByteBuffer rowKey = getRowKey();
+          setCurrentKey(rowKey);
+          row.clear();
           Map.Entry<ByteBuffer, IColumn> entry = currentEntry;
 
           if (subColumnIterator == null || !subColumnIterator.hasNext()) {
@@ -169,10 +280,10 @@ public class CassandraHiveRecordReader extends RecordReader<BytesWritable, MapWr
           boolean superColumn = entry.getValue() instanceof SuperColumn;
 
           // rowKey
-          currentValue.put(keyColumn, currentKey);
+          put(row, keyPositions, rowKey);
 
           // column name
-          currentValue.put(columnColumn, convertByteBuffer(currentEntry.getValue().name()));
+          put(row, columnPositions, currentEntry.getValue().name());
 
           // SubColumn?
           if (superColumn) {
@@ -183,51 +294,48 @@ public class CassandraHiveRecordReader extends RecordReader<BytesWritable, MapWr
             IColumn subCol = subColumnIterator.next();
 
             // sub-column name
-            currentValue.put(subColumnColumn, convertByteBuffer(subCol.name()));
+            put(row, subColumnPositions, subCol.name());
 
             // value
-            currentValue.put(valueColumn, convertByteBuffer(subCol.value()));
+            put(row, valuePositions, subCol.value());
 
           } else {
             // no supercol, just value
-            currentValue.put(valueColumn, convertByteBuffer(currentEntry.getValue().value()));
+            put(row, valuePositions, currentEntry.getValue().value());
           }
         }
 
         break; //exit ghost row loop
       }
     } else { //untransposed
-        next = cfrr.nextKeyValue();
+        next = nextRow();
 
-        currentValue.clear();
+        row.clear();
 
         if (next) {
-            currentKey = convertByteBuffer(cfrr.getCurrentKey());
+            ByteBuffer rowKey = getRowKey();
+            setCurrentKey(rowKey);
 
             // rowKey
-            currentValue.put(keyColumn, currentKey);
-            populateMap(cfrr.getCurrentValue(), currentValue);
+            put(row, keyPositions, rowKey);
+            populateRow(getRowColumns(), row);
         }
     }
 
     return next;
   }
 
-  private void populateMap(SortedMap<ByteBuffer, IColumn> cvalue, MapWritable value)
+  private void populateRow(SortedMap<ByteBuffer, IColumn> cvalue, CassandraRowWritable row)
   {
     for (Map.Entry<ByteBuffer, IColumn> e : cvalue.entrySet())
     {
-      ByteBuffer k = e.getKey();
-      IColumn    v = e.getValue();
+      IColumn v = e.getValue();
 
       if (!v.isLive()) {
         continue;
       }
 
-      BytesWritable newKey   = convertByteBuffer(k);
-      BytesWritable newValue = convertByteBuffer(v.value());
-
-      value.put(newKey, newValue);
+      put(row, positions.get(e.getKey()), v.value());
     }
   }
 }
@@ -0,0 +1,138 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A row as the record readers hand it to the serdes: one cell per column of the column mapping,
+ * in the order of the mapping, so the serde reads column i at index i without looking names up.
+ *
+ * The cell holders belong to the row and are reused by every row read into it. A cell is either
+ * a slice of the buffer the value was read from or a copy of it, see {@link #set(int, ByteBuffer, boolean)}.
+ */
+public class CassandraRowWritable implements Writable {
+
+  private ByteSliceWritable[] cells;
+  private boolean[] present;
+
+  public CassandraRowWritable() {
+    this(0);
+  }
+
+  /**
+   * @param size number of columns in the mapping
+   */
+  public CassandraRowWritable(int size) {
+    cells = new ByteSliceWritable[size];
+    present = new boolean[size];
+  }
+
+  /**
+   * @return number of columns of the row, present or not
+   */
+  public int size() {
+    return cells.length;
+  }
+
+  /**
+   * Mark every column absent, keeping the holders for the next row.
+   */
+  public void clear() {
+    Arrays.fill(present, false);
+  }
+
+  /**
+   * @param index   position of the column in the mapping
+   * @param value   bytes of the cell
+   * @param inPlace true to point at the buffer, which must then stay unchanged until the next row,
+   *                false to copy it
+   */
+  public void set(int index, ByteBuffer value, boolean inPlace) {
+    ByteSliceWritable cell = holder(index);
+    if (inPlace) {
+      cell.set(value);
+    } else {
+      cell.copy(value);
+    }
+    present[index] = true;
+  }
+
+  /**
+   * @param index position of the column in the mapping
+   * @return the cell, null if the row has no such column
+   */
+  public ByteSliceWritable get(int index) {
+    return index < present.length && present[index] ? cells[index] : null;
+  }
+
+  private ByteSliceWritable holder(int index) {
+    if (index >= cells.length) {
+      cells = Arrays.copyOf(cells, index + 1);
+      present = Arrays.copyOf(present, index + 1);
+    }
+    if (cells[index] == null) {
+      cells[index] = new ByteSliceWritable();
+    }
+    return cells[index];
+  }
+
+  public void write(DataOutput out) throws IOException {
+    WritableUtils.writeVInt(out, cells.length);
+    for (int i = 0; i < cells.length; i++) {
+      out.writeBoolean(present[i]);
+      if (present[i]) {
+        cells[i].write(out);
+      }
+    }
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    int size = WritableUtils.readVInt(in);
+    if (size != cells.length) {
+      cells = Arrays.copyOf(cells, size);
+      present = new boolean[size];
+    }
+    for (int i = 0; i < size; i++) {
+      present[i] = in.readBoolean();
+      if (present[i]) {
+        holder(i).readFields(in);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < cells.length; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(present[i] ? cells[i].toString() : "null");
+    }
+    return sb.append(']').toString();
+  }
+}
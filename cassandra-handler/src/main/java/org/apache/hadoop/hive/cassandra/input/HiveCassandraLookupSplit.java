@@ -0,0 +1,152 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.cassandra.TokenRouter;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A split reading a known set of row keys instead of token ranges, created when the query
+ * restricts the row key to a few values. The keys of a split share their replicas.
+ */
+public class HiveCassandraLookupSplit extends HiveCassandraStandardSplit {
+  private List<ByteBuffer> keys;
+  private String[] locations;
+
+  public HiveCassandraLookupSplit() {
+    keys = new ArrayList<ByteBuffer>();
+    locations = new String[0];
+  }
+
+  public HiveCassandraLookupSplit(List<ByteBuffer> keys, String[] locations, String columnsMapping, Path dummyPath) {
+    super(Collections.<ColumnFamilySplit>emptyList(), columnsMapping, dummyPath);
+    this.keys = keys;
+    this.locations = locations;
+  }
+
+  /**
+   * Group the keys by their replicas, at most maxKeys keys per split.
+   *
+   * @param keys           row keys to read
+   * @param router         replicas of the keys, null if the ring is unknown
+   * @param host           location of the splits when the ring is unknown
+   * @param maxKeys        keys per split
+   * @param columnsMapping column mapping of the table
+   * @param dummyPath      path of the table
+   * @return the splits, without the settings shared by every split of the table
+   */
+  public static List<HiveCassandraLookupSplit> create(List<ByteBuffer> keys, TokenRouter router, String host,
+          int maxKeys, String columnsMapping, Path dummyPath) {
+    Map<List<String>, List<ByteBuffer>> byReplicas = new LinkedHashMap<List<String>, List<ByteBuffer>>();
+    for (ByteBuffer key : keys) {
+      List<String> replicas = router == null ? Collections.<String>emptyList() : router.getReplicas(key);
+      if (replicas.isEmpty()) {
+        replicas = Collections.singletonList(host);
+      }
+
+      List<ByteBuffer> group = byReplicas.get(replicas);
+      if (group == null) {
+        group = new ArrayList<ByteBuffer>();
+        byReplicas.put(replicas, group);
+      }
+      group.add(key);
+    }
+
+    List<HiveCassandraLookupSplit> splits = new ArrayList<HiveCassandraLookupSplit>();
+    for (Map.Entry<List<String>, List<ByteBuffer>> entry : byReplicas.entrySet()) {
+      String[] replicas = entry.getKey().toArray(new String[entry.getKey().size()]);
+      List<ByteBuffer> group = entry.getValue();
+      for (int i = 0; i < group.size(); i += maxKeys) {
+        List<ByteBuffer> splitKeys = new ArrayList<ByteBuffer>(group.subList(i, Math.min(group.size(), i + maxKeys)));
+        splits.add(new HiveCassandraLookupSplit(splitKeys, replicas, columnsMapping, dummyPath));
+      }
+    }
+    return splits;
+  }
+
+  @Override
+  public void readFields(DataInput in) throws IOException {
+    super.readFields(in);
+    int count = WritableUtils.readVInt(in);
+    keys = new ArrayList<ByteBuffer>(count);
+    for (int i = 0; i < count; i++) {
+      byte[] key = new byte[WritableUtils.readVInt(in)];
+      in.readFully(key);
+      keys.add(ByteBuffer.wrap(key));
+    }
+    locations = new String[WritableUtils.readVInt(in)];
+    for (int i = 0; i < locations.length; i++) {
+      locations[i] = Text.readString(in);
+    }
+  }
+
+  @Override
+  public void write(DataOutput out) throws IOException {
+    super.write(out);
+    WritableUtils.writeVInt(out, keys.size());
+    for (ByteBuffer key : keys) {
+      WritableUtils.writeVInt(out, key.remaining());
+      ByteBufferUtil.write(key, out);
+    }
+    WritableUtils.writeVInt(out, locations.length);
+    for (String location : locations) {
+      Text.writeString(out, location);
+    }
+  }
+
+  @Override
+  public String[] getLocations() throws IOException {
+    return locations;
+  }
+
+  /**
+   * @return the number of keys, each holds at most one row
+   */
+  @Override
+  public long getRows() {
+    return keys.size();
+  }
+
+  /**
+   * @return the row keys to read
+   */
+  public List<ByteBuffer> getKeys() {
+    return keys;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + " " + keys.size() + " keys on " + Arrays.toString(locations);
+  }
+}
@@ -18,9 +18,11 @@
 
 package org.apache.hadoop.hive.cassandra.input;
 
+import org.apache.cassandra.db.IColumn;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.db.marshal.TypeParser;
+import org.apache.cassandra.dht.Murmur3Partitioner;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.SyntaxException;
 import org.apache.cassandra.hadoop.ColumnFamilyInputFormat;
@@ -32,8 +34,17 @@ import org.apache.cassandra.thrift.IndexExpression;
 import org.apache.cassandra.thrift.SlicePredicate;
 import org.apache.cassandra.thrift.SliceRange;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.cassandra.CassandraException;
 import org.apache.hadoop.hive.cassandra.CassandraPushdownPredicate;
+import org.apache.hadoop.hive.cassandra.ReplicaLocality;
+import org.apache.hadoop.hive.cassandra.RingTopology;
+import org.apache.hadoop.hive.cassandra.RingTopologyService;
+import org.apache.hadoop.hive.cassandra.RowKeyPredicate;
+import org.apache.hadoop.hive.cassandra.TokenRangePredicate;
+import org.apache.hadoop.hive.cassandra.TokenRouter;
+import org.apache.hadoop.hive.cassandra.cql.CqlPushdownPredicate;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
 import org.apache.hadoop.hive.cassandra.serde.CassandraColumnSerDe;
 import org.apache.hadoop.hive.ql.exec.Utilities;
@@ -41,9 +52,10 @@ import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
 import org.apache.hadoop.hive.ql.index.IndexSearchCondition;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
@@ -54,13 +66,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 
-public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWritable, MapWritable>
-        implements org.apache.hadoop.mapred.InputFormat<BytesWritable, MapWritable> {
+public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWritable, CassandraRowWritable>
+        implements org.apache.hadoop.mapred.InputFormat<BytesWritable, CassandraRowWritable> {
 
     static final Logger LOG = LoggerFactory.getLogger(HiveCassandraStandardColumnInputFormat.class);
 
@@ -68,9 +87,10 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
     private final ColumnFamilyInputFormat cfif = new ColumnFamilyInputFormat();
 
     @Override
-    public RecordReader<BytesWritable, MapWritable> getRecordReader(InputSplit split,
+    public RecordReader<BytesWritable, CassandraRowWritable> getRecordReader(InputSplit split,
                                                                     JobConf jobConf, final Reporter reporter) throws IOException {
         HiveCassandraStandardSplit cassandraSplit = (HiveCassandraStandardSplit) split;
+        cassandraSplit.configure(jobConf);
 
         List<String> columns = CassandraColumnSerDe.parseColumnMapping(cassandraSplit.getColumnMapping());
         isTransposed = CassandraColumnSerDe.isTransposed(columns);
@@ -82,7 +102,6 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
             throw new IOException("Cannot read more columns than the given table contains.");
         }
 
-        org.apache.cassandra.hadoop.ColumnFamilySplit cfSplit = cassandraSplit.getSplit();
         Job job = new Job(jobConf);
 
         TaskAttemptContext tac = new TaskAttemptContext(job.getConfiguration(), new TaskAttemptID()) {
@@ -94,7 +113,14 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
 
         SlicePredicate predicate = new SlicePredicate();
 
-        if (isTransposed || readColIDs.size() == columns.size() || readColIDs.size() == 0) {
+        // untransposed rows only need the mapped columns; naming them reads them all however wide the row
+        // is, where a slice range stops at cassandra.slice.predicate.size columns
+        int iKey = columns.indexOf(CassandraColumnSerDe.CASSANDRA_KEY_COLUMN);
+        boolean wholeRow = readColIDs.size() == columns.size() || readColIDs.size() == 0;
+        List<ByteBuffer> columnNames = isTransposed ? null
+                : getColumnNames(iKey, columns, wholeRow ? allColumnIDs(columns) : readColIDs);
+
+        if (isTransposed || (wholeRow && columnNames.isEmpty())) {
             SliceRange range = new SliceRange();
             AbstractType comparator = BytesType.instance;
 
@@ -119,8 +145,7 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
             range.setCount(cassandraSplit.getSlicePredicateSize());
             predicate.setSlice_range(range);
         } else {
-            int iKey = columns.indexOf(CassandraColumnSerDe.CASSANDRA_KEY_COLUMN);
-            predicate.setColumn_names(getColumnNames(iKey, columns, readColIDs));
+            predicate.setColumn_names(columnNames);
         }
 
 
@@ -143,13 +168,67 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
             ConfigHelper.setInputSplitSize(tac.getConfiguration(), cassandraSplit.getSplitSize());
 
             LOG.info("Validators : " + tac.getConfiguration().get(CassandraColumnSerDe.CASSANDRA_VALIDATOR_TYPE));
-            List<IndexExpression> indexExpr = parseFilterPredicate(jobConf);
-            if (indexExpr != null) {
-                //We have pushed down a filter from the Hive query, we can use this against secondary indexes
-                ConfigHelper.setInputRange(tac.getConfiguration(), indexExpr);
+
+            org.apache.hadoop.mapreduce.RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>> rowReader;
+            ColumnFamilySplit cfSplit = null;
+            if (cassandraSplit instanceof HiveCassandraLookupSplit) {
+                // the pushed down filter is the row key condition the keys come from
+                HiveCassandraLookupSplit lookup = (HiveCassandraLookupSplit) cassandraSplit;
+                rowReader = new MultigetRecordReader(lookup.getKeys(), lookup.getLocations());
+            } else {
+                cfSplit = cassandraSplit.getSplit();
+                List<IndexExpression> indexExpr = parseFilterPredicate(jobConf);
+                if (indexExpr != null) {
+                    //We have pushed down a filter from the Hive query, we can use this against secondary indexes
+                    ConfigHelper.setInputRange(tac.getConfiguration(), indexExpr);
+                }
+
+                final long widePageBytes = wideRows && canPage(jobConf, columns)
+                        ? jobConf.getLong(AbstractCassandraSerDe.CASSANDRA_WIDEROW_PAGE_BYTES,
+                                AbstractCassandraSerDe.DEFAULT_WIDEROW_PAGE_BYTES)
+                        : 0;
+                MultiRangeRecordReader.ReaderFactory<ByteBuffer, SortedMap<ByteBuffer, IColumn>> factory =
+                        new MultiRangeRecordReader.ReaderFactory<ByteBuffer, SortedMap<ByteBuffer, IColumn>>() {
+                    public org.apache.hadoop.mapreduce.RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>> create() {
+                        if (widePageBytes > 0) {
+                            return new WideRowRecordReader(widePageBytes);
+                        }
+                        return new ColumnFamilyRecordReader();
+                    }
+                };
+
+                int scans = jobConf.getInt(AbstractCassandraSerDe.CASSANDRA_SCAN_THREADS,
+                        AbstractCassandraSerDe.DEFAULT_SCAN_THREADS);
+                List<List<ColumnFamilySplit>> groups = scans > 1
+                        ? subdivide(cassandraSplit.getRanges(), scans, cassandraSplit.getPartitioner())
+                        : Collections.singletonList(cassandraSplit.getRanges());
+
+                if (groups.size() > 1) {
+                    // each group of sub-ranges is scanned by a thread of its own, into one stream of rows
+                    List<org.apache.hadoop.mapreduce.RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>>> scanners =
+                            new ArrayList<org.apache.hadoop.mapreduce.RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>>>();
+                    for (List<ColumnFamilySplit> group : groups) {
+                        scanners.add(new MultiRangeRecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>>(group, factory));
+                    }
+                    rowReader = new PrefetchingRecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>>(scanners,
+                            getPrefetchBytes(jobConf), CassandraHiveRecordReader.ROW_WEIGHER);
+                } else if (cassandraSplit.getRanges().size() > 1) {
+                    rowReader = new MultiRangeRecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>>(cassandraSplit.getRanges(),
+                            factory);
+                } else {
+                    rowReader = factory.create();
+                }
+            }
+
+            if (!(rowReader instanceof PrefetchingRecordReader)
+                    && jobConf.getBoolean(AbstractCassandraSerDe.CASSANDRA_PREFETCH, AbstractCassandraSerDe.DEFAULT_PREFETCH)) {
+                rowReader = new PrefetchingRecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>>(rowReader,
+                        getPrefetchBytes(jobConf), CassandraHiveRecordReader.ROW_WEIGHER);
             }
 
-            CassandraHiveRecordReader rr = new CassandraHiveRecordReader(new ColumnFamilyRecordReader(), isTransposed);
+            boolean zeroCopy = jobConf.getBoolean(AbstractCassandraSerDe.CASSANDRA_ZERO_COPY,
+                    AbstractCassandraSerDe.DEFAULT_ZERO_COPY);
+            CassandraHiveRecordReader rr = new CassandraHiveRecordReader(rowReader, columns, zeroCopy);
 
             rr.initialize(cfSplit, tac);
 
@@ -170,9 +249,6 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
         int sliceRangeSize = jobConf.getInt(
                 AbstractCassandraSerDe.CASSANDRA_RANGE_BATCH_SIZE,
                 AbstractCassandraSerDe.DEFAULT_RANGE_BATCH_SIZE);
-        int splitSize = jobConf.getInt(
-                AbstractCassandraSerDe.CASSANDRA_SPLIT_SIZE,
-                AbstractCassandraSerDe.DEFAULT_SPLIT_SIZE);
         String cassandraColumnMapping = jobConf.get(AbstractCassandraSerDe.CASSANDRA_COL_MAPPING);
         int rpcPort = jobConf.getInt(AbstractCassandraSerDe.CASSANDRA_PORT, 9160);
         String host = jobConf.get(AbstractCassandraSerDe.CASSANDRA_HOST);
@@ -182,6 +258,32 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
             throw new IOException("cassandra.columns.mapping required for Cassandra Table.");
         }
 
+        List<String> mapping = CassandraColumnSerDe.parseColumnMapping(cassandraColumnMapping);
+        List<ByteBuffer> keys = null;
+        if (jobConf.get(TableScanDesc.FILTER_EXPR_CONF_STR) != null) {
+            try {
+                AbstractType<?> keyValidator = CassandraColumnSerDe.parseKeyValidator(
+                        jobConf.get(CassandraColumnSerDe.CASSANDRA_VALIDATOR_TYPE), mapping);
+                if (keyValidator == null) {
+                    keyValidator = CqlPushdownPredicate.getKeyValidator(host, rpcPort, ks, cf);
+                }
+                keys = getLookupKeys(jobConf, mapping, CassandraColumnSerDe.CASSANDRA_KEY_COLUMN, keyValidator);
+            } catch (SerDeException e) {
+                throw new IOException(e);
+            } catch (CassandraException e) {
+                throw new IOException(e);
+            }
+        }
+        if (keys != null) {
+            List<HiveCassandraLookupSplit> lookups = getLookupSplits(jobConf, keys, cassandraColumnMapping);
+            for (HiveCassandraLookupSplit lookup : lookups) {
+                lookup.configure(jobConf);
+                lookup.setSplitSize(lookup.getKeys().size());
+            }
+            return lookups.toArray(new InputSplit[lookups.size()]);
+        }
+        TokenRangePredicate tokenRange = getTokenRange(jobConf, mapping, CassandraColumnSerDe.CASSANDRA_KEY_COLUMN);
+
         SliceRange range = new SliceRange();
         range.setStart(new byte[0]);
         range.setFinish(new byte[0]);
@@ -196,32 +298,63 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
         ConfigHelper.setInputSlicePredicate(jobConf, predicate);
         ConfigHelper.setInputColumnFamily(jobConf, ks, cf);
         ConfigHelper.setRangeBatchSize(jobConf, sliceRangeSize);
-        ConfigHelper.setInputSplitSize(jobConf, splitSize);
+        long rowSize = SplitSizer.getRowSize(jobConf, host, rpcPort, ks, cf, slicePredicateSize);
+        final int rangeRows = SplitSizer.getRangeRows(jobConf, rowSize);
+        ConfigHelper.setInputSplitSize(jobConf, rangeRows);
 
         Job job = new Job(jobConf);
-        JobContext jobContext = new JobContext(job.getConfiguration(), job.getJobID());
+        final JobContext jobContext = new JobContext(job.getConfiguration(), job.getJobID());
 
         Path[] tablePaths = FileInputFormat.getInputPaths(jobContext);
-        List<org.apache.hadoop.mapreduce.InputSplit> splits = getSplits(jobContext);
-        InputSplit[] results = new InputSplit[splits.size()];
+        List<org.apache.hadoop.mapreduce.InputSplit> splits = SplitPlanCache.getInstance().getSplits(
+                jobConf, host, rpcPort, ks, cf, rangeRows, new SplitPlanCache.Planner() {
+            public List<org.apache.hadoop.mapreduce.InputSplit> plan() throws IOException {
+                return getSplits(jobContext);
+            }
+        });
+        splits = preferLocalReplicas(jobConf, host, rpcPort, ks, splits);
+        if (tokenRange != null) {
+            splits = restrictToTokenRange(tokenRange, splits);
+        }
+        splits = SplitSampler.sample(jobConf, splits);
+        List<List<ColumnFamilySplit>> combined = combineRanges(jobConf, splits,
+                SplitSizer.getSplitRows(rangeRows, numSplits, splits));
+        InputSplit[] results = new InputSplit[combined.size()];
 
-        for (int i = 0; i < splits.size(); ++i) {
+        for (int i = 0; i < combined.size(); ++i) {
             HiveCassandraStandardSplit csplit = new HiveCassandraStandardSplit(
-                    (ColumnFamilySplit) splits.get(i), cassandraColumnMapping, tablePaths[0]);
-            csplit.setKeyspace(ks);
-            csplit.setColumnFamily(cf);
-            csplit.setRangeBatchSize(sliceRangeSize);
-            csplit.setSplitSize(splitSize);
-            csplit.setHost(host);
-            csplit.setPort(rpcPort);
-            csplit.setSlicePredicateSize(slicePredicateSize);
-            csplit.setPartitioner(partitioner);
-            csplit.setColumnMapping(cassandraColumnMapping);
+                    combined.get(i), cassandraColumnMapping, tablePaths[0]);
+            csplit.configure(jobConf);
+            csplit.setSplitSize(rangeRows);
+            csplit.setRowSize(rowSize);
             results[i] = csplit;
         }
         return results;
     }
 
+    /**
+     * Wide rows are streamed by a {@link WideRowRecordReader} unless they have super columns, which
+     * get_paged_slice cannot page, or a slice range is set, which it cannot apply.
+     */
+    private static boolean canPage(JobConf jobConf, List<String> columns) {
+        return !columns.contains(CassandraColumnSerDe.CASSANDRA_SUBCOLUMN_COLUMN)
+                && isEmpty(jobConf.get(AbstractCassandraSerDe.CASSANDRA_SLICE_PREDICATE_RANGE_START))
+                && isEmpty(jobConf.get(AbstractCassandraSerDe.CASSANDRA_SLICE_PREDICATE_RANGE_FINISH))
+                && !"true".equals(jobConf.get(AbstractCassandraSerDe.CASSANDRA_SLICE_PREDICATE_RANGE_REVERSED));
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.equals("");
+    }
+
+    private static List<Integer> allColumnIDs(List<String> columns) {
+        List<Integer> ids = new ArrayList<Integer>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
     /**
      * Return a list of columns names to read from cassandra. The column defined as the key in the
      * column mapping
@@ -246,6 +379,282 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
         return results;
     }
 
+    /**
+     * Point the splits at the replicas in cassandra.local.dc, closest rack first, so that both the
+     * scheduler and the record readers keep the scans in that data center. Replicas in other data
+     * centers are kept only for splits without a local replica.
+     *
+     * @param jobConf job configuration
+     * @param host    cassandra host the ring is described through
+     * @param port    cassandra rpc port
+     * @param ks      keyspace the splits read
+     * @param splits  splits computed by cassandra
+     * @return the splits with their locations ordered, or unchanged if no local data center is set
+     */
+    public static List<org.apache.hadoop.mapreduce.InputSplit> preferLocalReplicas(JobConf jobConf, String host,
+            int port, String ks, List<org.apache.hadoop.mapreduce.InputSplit> splits) {
+        ReplicaLocality locality = ReplicaLocality.fromConf(jobConf);
+        if (!locality.isEnabled()) {
+            return splits;
+        }
+
+        RingTopology ring;
+        try {
+            RingTopologyService.getInstance().configure(jobConf);
+            ring = RingTopologyService.getInstance().getTopology(host, port, ks);
+        } catch (CassandraException e) {
+            LOG.warn("Unable to describe the ring of " + ks + ", split locations are not ordered by data center", e);
+            return splits;
+        }
+
+        List<org.apache.hadoop.mapreduce.InputSplit> localized =
+                new ArrayList<org.apache.hadoop.mapreduce.InputSplit>(splits.size());
+        for (org.apache.hadoop.mapreduce.InputSplit split : splits) {
+            ColumnFamilySplit cfSplit = (ColumnFamilySplit) split;
+            localized.add(new ColumnFamilySplit(cfSplit.getStartToken(), cfSplit.getEndToken(), cfSplit.getLength(),
+                    locality.orderLocations(cfSplit.getLocations(), ring)));
+        }
+        return localized;
+    }
+
+    /**
+     * Return the row keys a pushed down filter restricts the query to, encoded with the validator
+     * of the key.
+     *
+     * @param jobConf      job configuration, with the pushed down filter and the Hive column names
+     * @param mapping      cassandra columns the Hive columns map to, in order
+     * @param keyColumn    cassandra column holding the row key
+     * @param keyValidator type the keys are stored as, null to encode them as the Hive type of the key column
+     * @return the keys to look up, or null to scan the splits
+     */
+    public static List<ByteBuffer> getLookupKeys(JobConf jobConf, List<String> mapping, String keyColumn,
+            AbstractType<?> keyValidator) {
+        String filterExprSerialized = jobConf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+        String hiveKeyColumn = getHiveColumnName(jobConf, mapping, keyColumn);
+        if (filterExprSerialized == null || hiveKeyColumn == null) {
+            return null;
+        }
+
+        ExprNodeDesc filterExpr = Utilities.deserializeExpression(filterExprSerialized, jobConf);
+        RowKeyPredicate keyPredicate = RowKeyPredicate.analyze(filterExpr, hiveKeyColumn, keyValidator);
+        return keyPredicate == null ? null : keyPredicate.getKeys();
+    }
+
+    /**
+     * Return the token range a pushed down filter restricts the query to, when it bounds
+     * cassandra_token() of the row key, see {@link TokenRangePredicate}.
+     *
+     * @param jobConf   job configuration, with the pushed down filter and the Hive column names
+     * @param mapping   cassandra columns the Hive columns map to, in order
+     * @param keyColumn cassandra column holding the row key
+     * @return the token range to scan, or null to scan the whole ring
+     */
+    public static TokenRangePredicate getTokenRange(JobConf jobConf, List<String> mapping, String keyColumn) {
+        String filterExprSerialized = jobConf.get(TableScanDesc.FILTER_EXPR_CONF_STR);
+        String hiveKeyColumn = getHiveColumnName(jobConf, mapping, keyColumn);
+        if (filterExprSerialized == null || hiveKeyColumn == null) {
+            return null;
+        }
+
+        ExprNodeDesc filterExpr = Utilities.deserializeExpression(filterExprSerialized, jobConf);
+        return TokenRangePredicate.analyze(filterExpr, hiveKeyColumn, jobConf.get(
+                AbstractCassandraSerDe.CASSANDRA_PARTITIONER, AbstractCassandraSerDe.DEFAULT_CASSANDRA_PARTITIONER));
+    }
+
+    private static long getPrefetchBytes(JobConf jobConf) {
+        return jobConf.getLong(AbstractCassandraSerDe.CASSANDRA_PREFETCH_BYTES, AbstractCassandraSerDe.DEFAULT_PREFETCH_BYTES);
+    }
+
+    /**
+     * Deal the token ranges of a split to concurrent scans. With fewer ranges than scans, Murmur3
+     * ranges are first cut into equal sub-ranges. Consecutive sub-ranges of a range start with
+     * different replicas, so that the scans spread over them.
+     *
+     * @param ranges      token ranges of the split
+     * @param scans       number of concurrent scans wanted
+     * @param partitioner partitioner of the cluster
+     * @return the ranges of each scan, as many as there are scans or ranges, whichever is less
+     */
+    public static List<List<ColumnFamilySplit>> subdivide(List<ColumnFamilySplit> ranges, int scans, String partitioner) {
+        List<ColumnFamilySplit> pieces = ranges;
+        if (ranges.size() < scans && Murmur3Partitioner.class.getName().equals(partitioner)) {
+            int parts = (scans + ranges.size() - 1) / ranges.size();
+            pieces = new ArrayList<ColumnFamilySplit>();
+            for (ColumnFamilySplit range : ranges) {
+                pieces.addAll(cut(range, parts));
+            }
+        }
+
+        List<List<ColumnFamilySplit>> groups = new ArrayList<List<ColumnFamilySplit>>();
+        for (int i = 0; i < Math.min(scans, pieces.size()); i++) {
+            groups.add(new ArrayList<ColumnFamilySplit>());
+        }
+        for (int i = 0; i < pieces.size(); i++) {
+            groups.get(i % groups.size()).add(pieces.get(i));
+        }
+        return groups;
+    }
+
+    /**
+     * @return the Murmur3 range cut into parts of equal width, fewer if it is too narrow
+     */
+    static List<ColumnFamilySplit> cut(ColumnFamilySplit range, int parts) {
+        BigInteger start = new BigInteger(range.getStartToken());
+        BigInteger width = new BigInteger(range.getEndToken()).subtract(start);
+        if (width.signum() <= 0) {
+            // wraps around the ring
+            width = width.add(SplitSampler.RING_SIZE);
+        }
+        int count = (int) Math.min(parts, width.longValue() <= 0 ? parts : width.longValue());
+        BigInteger divisor = BigInteger.valueOf(count);
+
+        List<ColumnFamilySplit> result = new ArrayList<ColumnFamilySplit>(count);
+        String[] locations = range.getLocations();
+        String pieceStart = range.getStartToken();
+        for (int i = 0; i < count; i++) {
+            // longValue keeps the low 64 bits, wrapping the tokens around the ring
+            String pieceEnd = i == count - 1 ? range.getEndToken()
+                    : Long.toString(start.add(width.multiply(BigInteger.valueOf(i + 1)).divide(divisor)).longValue());
+            String[] rotated = new String[locations.length];
+            for (int j = 0; j < locations.length; j++) {
+                rotated[j] = locations[(i + j) % locations.length];
+            }
+            result.add(new ColumnFamilySplit(pieceStart, pieceEnd, (range.getLength() + count - 1) / count, rotated));
+            pieceStart = pieceEnd;
+        }
+        return result;
+    }
+
+    /**
+     * Clip the token ranges of the splits to the given range and drop those outside of it.
+     *
+     * @param tokenRange token range the query is restricted to
+     * @param splits     splits computed by cassandra
+     * @return the splits within the range
+     */
+    public static List<org.apache.hadoop.mapreduce.InputSplit> restrictToTokenRange(TokenRangePredicate tokenRange,
+            List<org.apache.hadoop.mapreduce.InputSplit> splits) {
+        List<org.apache.hadoop.mapreduce.InputSplit> restricted = new ArrayList<org.apache.hadoop.mapreduce.InputSplit>();
+        if (tokenRange.isEmpty()) {
+            return restricted;
+        }
+        for (org.apache.hadoop.mapreduce.InputSplit split : splits) {
+            restricted.addAll(tokenRange.restrict((ColumnFamilySplit) split));
+        }
+        LOG.info("Scanning " + restricted.size() + " of " + splits.size() + " splits for tokens in ("
+                + tokenRange.getStartToken() + ", " + tokenRange.getEndToken() + "]");
+        return restricted;
+    }
+
+    /**
+     * @return the name of the Hive column mapped to the cassandra column, or null if it is not mapped
+     */
+    private static String getHiveColumnName(JobConf jobConf, List<String> mapping, String column) {
+        String hiveColumns = jobConf.get(serdeConstants.LIST_COLUMNS);
+        if (hiveColumns == null) {
+            return null;
+        }
+
+        String[] names = hiveColumns.split(",");
+        for (int i = 0; i < mapping.size() && i < names.length; i++) {
+            if (mapping.get(i).equalsIgnoreCase(column)) {
+                return names[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create the splits looking up the given keys, grouped by replica and at most
+     * cassandra.input.split.size keys each.
+     *
+     * @param jobConf job configuration
+     * @param keys    row keys to read
+     * @param mapping column mapping of the table
+     * @return the splits, without the settings shared by every split of the table
+     */
+    public static List<HiveCassandraLookupSplit> getLookupSplits(JobConf jobConf, List<ByteBuffer> keys, String mapping)
+            throws IOException {
+        String host = jobConf.get(AbstractCassandraSerDe.CASSANDRA_HOST);
+        int port = jobConf.getInt(AbstractCassandraSerDe.CASSANDRA_PORT, 9160);
+        String ks = jobConf.get(AbstractCassandraSerDe.CASSANDRA_KEYSPACE_NAME);
+        int maxKeys = jobConf.getInt(AbstractCassandraSerDe.CASSANDRA_SPLIT_SIZE, AbstractCassandraSerDe.DEFAULT_SPLIT_SIZE);
+
+        TokenRouter router = null;
+        try {
+            RingTopologyService.getInstance().configure(jobConf);
+            RingTopology ring = RingTopologyService.getInstance().getTopology(host, port, ks);
+            router = new TokenRouter(FBUtilities.newPartitioner(jobConf.get(AbstractCassandraSerDe.CASSANDRA_PARTITIONER,
+                    AbstractCassandraSerDe.DEFAULT_CASSANDRA_PARTITIONER)), ring.getRanges());
+        } catch (CassandraException e) {
+            LOG.warn("Unable to describe the ring of " + ks + ", looking the keys up through " + host, e);
+        } catch (ConfigurationException e) {
+            throw new IOException(e);
+        }
+
+        Path tablePath = org.apache.hadoop.mapred.FileInputFormat.getInputPaths(jobConf)[0];
+        List<HiveCassandraLookupSplit> splits = HiveCassandraLookupSplit.create(keys, router, host,
+                Math.max(1, maxKeys), mapping, tablePath);
+        long rowSize = jobConf.getLong(AbstractCassandraSerDe.CASSANDRA_ROW_SIZE, AbstractCassandraSerDe.DEFAULT_ROW_SIZE);
+        for (HiveCassandraLookupSplit split : splits) {
+            split.setRowSize(rowSize);
+        }
+        LOG.info("Looking up " + keys.size() + " row keys in " + splits.size() + " splits instead of scanning " + ks);
+        return splits;
+    }
+
+    /**
+     * Group the token ranges of the splits so that each group holds about targetRows rows. With
+     * virtual nodes a ring has thousands of small ranges, and a task per range spends more time
+     * starting than reading. Only ranges on the same replicas are grouped, so that a group can
+     * still be read from a local replica, and they stay in ring order.
+     *
+     * @param jobConf    job configuration, cassandra.input.split.combine turns grouping off
+     * @param splits     splits computed by cassandra, one token range each
+     * @param targetRows estimated rows a group is closed at
+     * @return the ranges of each split to create
+     */
+    public static List<List<ColumnFamilySplit>> combineRanges(JobConf jobConf,
+            List<org.apache.hadoop.mapreduce.InputSplit> splits, long targetRows) {
+        List<List<ColumnFamilySplit>> groups = new ArrayList<List<ColumnFamilySplit>>();
+        boolean combine = jobConf.getBoolean(AbstractCassandraSerDe.CASSANDRA_SPLIT_COMBINE,
+                AbstractCassandraSerDe.DEFAULT_SPLIT_COMBINE);
+
+        Map<String, List<ColumnFamilySplit>> open = new LinkedHashMap<String, List<ColumnFamilySplit>>();
+        Map<String, Long> openRows = new HashMap<String, Long>();
+        for (org.apache.hadoop.mapreduce.InputSplit split : splits) {
+            ColumnFamilySplit range = (ColumnFamilySplit) split;
+            if (!combine) {
+                groups.add(Collections.singletonList(range));
+                continue;
+            }
+
+            String[] replicas = range.getLocations().clone();
+            Arrays.sort(replicas);
+            String key = Arrays.toString(replicas);
+
+            List<ColumnFamilySplit> group = open.get(key);
+            if (group == null) {
+                group = new ArrayList<ColumnFamilySplit>();
+                open.put(key, group);
+                openRows.put(key, 0L);
+            }
+            group.add(range);
+
+            long rows = openRows.get(key) + range.getLength();
+            if (rows >= targetRows) {
+                groups.add(group);
+                open.remove(key);
+                openRows.remove(key);
+            } else {
+                openRows.put(key, rows);
+            }
+        }
+
+        groups.addAll(open.values());
+        return groups;
+    }
+
     @Override
     public List<org.apache.hadoop.mapreduce.InputSplit> getSplits(JobContext context)
             throws IOException {
@@ -254,11 +663,13 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
 
 
     @Override
-    public org.apache.hadoop.mapreduce.RecordReader<BytesWritable, MapWritable> createRecordReader(
+    public org.apache.hadoop.mapreduce.RecordReader<BytesWritable, CassandraRowWritable> createRecordReader(
             org.apache.hadoop.mapreduce.InputSplit arg0, TaskAttemptContext tac) throws IOException,
             InterruptedException {
 
-        return new CassandraHiveRecordReader(new ColumnFamilyRecordReader(), isTransposed);
+        List<String> columns = CassandraColumnSerDe.parseColumnMapping(
+                tac.getConfiguration().get(AbstractCassandraSerDe.CASSANDRA_COL_MAPPING));
+        return new CassandraHiveRecordReader(new ColumnFamilyRecordReader(), columns);
     }
 
     /**
@@ -282,6 +693,10 @@ public class HiveCassandraStandardColumnInputFormat extends InputFormat<BytesWri
         }
 
         ExprNodeDesc filterExpr = Utilities.deserializeExpression(filterExprSerialized, jobConf);
+        if (TokenRangePredicate.isTokenRange(filterExpr)) {
+            // the splits are already restricted to the token range
+            return null;
+        }
         String encodedIndexedColumns = jobConf.get(AbstractCassandraSerDe.CASSANDRA_INDEXED_COLUMNS);
         Set<ColumnDef> indexedColumns = CassandraPushdownPredicate.deserializeIndexedColumns(encodedIndexedColumns);
         if (indexedColumns.isEmpty()) {
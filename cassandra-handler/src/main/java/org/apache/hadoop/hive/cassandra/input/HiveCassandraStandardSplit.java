@@ -21,21 +21,36 @@ package org.apache.hadoop.hive.cassandra.input;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.mapred.FileSplit;
 import org.apache.hadoop.mapred.InputSplit;
 
 @SuppressWarnings("deprecation")
 public class HiveCassandraStandardSplit extends FileSplit implements InputSplit{
-  private final ColumnFamilySplit split;
+  private static final int SAME_LOCATIONS = -1;
+  private static final byte LONG_TOKEN = 0;
+  private static final byte BIG_INTEGER_TOKEN = 1;
+  private static final byte STRING_TOKEN = 2;
+
+  private List<ColumnFamilySplit> ranges;
   private String columnMapping;
   private String keyspace;
   private String columnFamily;
   private int rangeBatchSize;
   private int slicePredicateSize;
   private int splitSize;
+  private long rowSize = 1;
   //added for 7.0
   private String partitioner;
   private int port;
@@ -44,53 +59,166 @@ public class HiveCassandraStandardSplit extends FileSplit implements InputSplit{
   public HiveCassandraStandardSplit() {
     super((Path) null, 0, 0, (String[]) null);
     columnMapping = "";
-    split  = new ColumnFamilySplit(null,null,null);
+    ranges = new ArrayList<ColumnFamilySplit>();
   }
 
   public HiveCassandraStandardSplit(ColumnFamilySplit split, String columnsMapping, Path dummyPath) {
+    this(Collections.singletonList(split), columnsMapping, dummyPath);
+  }
+
+  /**
+   * A split reading several token ranges one after the other. The ranges are expected to share
+   * their replicas, the locations of the split are those of the first range.
+   */
+  public HiveCassandraStandardSplit(List<ColumnFamilySplit> ranges, String columnsMapping, Path dummyPath) {
     super(dummyPath, 0, 0, (String[]) null);
-    this.split = split;
+    this.ranges = ranges;
     columnMapping = columnsMapping;
   }
 
+  /**
+   * Read the settings every split of the table shares from the job configuration. They are not
+   * serialized with the split, Hive sets the table properties in the job before a record reader
+   * is created.
+   *
+   * @param conf job configuration with the table properties
+   */
+  public void configure(Configuration conf) {
+    keyspace = conf.get(AbstractCassandraSerDe.CASSANDRA_KEYSPACE_NAME);
+    columnFamily = conf.get(AbstractCassandraSerDe.CASSANDRA_CF_NAME);
+    columnMapping = conf.get(AbstractCassandraSerDe.CASSANDRA_COL_MAPPING);
+    rangeBatchSize = conf.getInt(AbstractCassandraSerDe.CASSANDRA_RANGE_BATCH_SIZE,
+            AbstractCassandraSerDe.DEFAULT_RANGE_BATCH_SIZE);
+    slicePredicateSize = conf.getInt(AbstractCassandraSerDe.CASSANDRA_SLICE_PREDICATE_SIZE,
+            AbstractCassandraSerDe.DEFAULT_SLICE_PREDICATE_SIZE);
+    partitioner = conf.get(AbstractCassandraSerDe.CASSANDRA_PARTITIONER);
+    port = conf.getInt(AbstractCassandraSerDe.CASSANDRA_PORT, Integer.parseInt(AbstractCassandraSerDe.DEFAULT_CASSANDRA_PORT));
+    host = conf.get(AbstractCassandraSerDe.CASSANDRA_HOST);
+  }
+
+  /**
+   * Only what differs between the splits of a table is serialized, see {@link #configure}: the
+   * estimates and the token ranges with their locations, as variable length numbers. Ranges on the
+   * same replicas as the previous one do not repeat the locations.
+   */
   @Override
   public void readFields(DataInput in) throws IOException {
     super.readFields(in);
-    columnMapping = in.readUTF();
-    keyspace = in.readUTF();
-    columnFamily = in.readUTF();
-    splitSize = in.readInt();
-    rangeBatchSize = in.readInt();
-    slicePredicateSize = in.readInt();
-    partitioner = in.readUTF();
-    port = in.readInt();
-    host = in.readUTF();
-    split.readFields(in);
+    splitSize = WritableUtils.readVInt(in);
+    rowSize = WritableUtils.readVLong(in);
+
+    int count = WritableUtils.readVInt(in);
+    ranges = new ArrayList<ColumnFamilySplit>(count);
+    String[] locations = new String[0];
+    for (int i = 0; i < count; i++) {
+      String startToken = readToken(in);
+      String endToken = readToken(in);
+      long length = WritableUtils.readVLong(in);
+      int locationCount = WritableUtils.readVInt(in);
+      if (locationCount != SAME_LOCATIONS) {
+        locations = new String[locationCount];
+        for (int j = 0; j < locationCount; j++) {
+          locations[j] = Text.readString(in);
+        }
+      }
+      ranges.add(new ColumnFamilySplit(startToken, endToken, length, locations));
+    }
   }
 
   @Override
   public void write(DataOutput out) throws IOException {
     super.write(out);
-    out.writeUTF(columnMapping);
-    out.writeUTF(keyspace);
-    out.writeUTF(columnFamily);
-    out.writeInt(splitSize);
-    out.writeInt(rangeBatchSize);
-    out.writeInt(slicePredicateSize);
-    out.writeUTF(partitioner);
-    out.writeInt(port);
-    out.writeUTF(host);
-    split.write(out);
+    WritableUtils.writeVInt(out, splitSize);
+    WritableUtils.writeVLong(out, rowSize);
+
+    WritableUtils.writeVInt(out, ranges.size());
+    String[] previous = null;
+    for (ColumnFamilySplit range : ranges) {
+      writeToken(out, range.getStartToken());
+      writeToken(out, range.getEndToken());
+      WritableUtils.writeVLong(out, range.getLength());
+      String[] locations = range.getLocations();
+      if (Arrays.equals(locations, previous)) {
+        WritableUtils.writeVInt(out, SAME_LOCATIONS);
+      } else {
+        WritableUtils.writeVInt(out, locations.length);
+        for (String location : locations) {
+          Text.writeString(out, location);
+        }
+        previous = locations;
+      }
+    }
+  }
+
+  /**
+   * Write a token as a number when it is one, the Murmur3 and random partitioners have numeric
+   * tokens.
+   */
+  static void writeToken(DataOutput out, String token) throws IOException {
+    try {
+      long value = Long.parseLong(token);
+      if (Long.toString(value).equals(token)) {
+        out.writeByte(LONG_TOKEN);
+        WritableUtils.writeVLong(out, value);
+        return;
+      }
+    } catch (NumberFormatException e) {
+      // not a long
+    }
+    try {
+      BigInteger value = new BigInteger(token);
+      if (value.toString().equals(token)) {
+        byte[] bytes = value.toByteArray();
+        out.writeByte(BIG_INTEGER_TOKEN);
+        WritableUtils.writeVInt(out, bytes.length);
+        out.write(bytes);
+        return;
+      }
+    } catch (NumberFormatException e) {
+      // not a number
+    }
+    out.writeByte(STRING_TOKEN);
+    Text.writeString(out, token);
+  }
+
+  static String readToken(DataInput in) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case LONG_TOKEN:
+        return Long.toString(WritableUtils.readVLong(in));
+      case BIG_INTEGER_TOKEN:
+        byte[] bytes = new byte[WritableUtils.readVInt(in)];
+        in.readFully(bytes);
+        return new BigInteger(bytes).toString();
+      case STRING_TOKEN:
+        return Text.readString(in);
+      default:
+        throw new IOException("Unknown token type " + type);
+    }
   }
 
   @Override
   public String[] getLocations() throws IOException {
-    return split.getLocations();
+    return ranges.get(0).getLocations();
   }
 
+  /**
+   * @return the estimated bytes of the split, its estimated rows times the estimated row size
+   */
   @Override
   public long getLength() {
-    return split.getLength();
+    return getRows() * rowSize;
+  }
+
+  /**
+   * @return the rows cassandra estimates the token ranges of the split hold
+   */
+  public long getRows() {
+    long rows = 0;
+    for (ColumnFamilySplit range : ranges) {
+      rows += range.getLength();
+    }
+    return rows;
   }
 
   public String getKeyspace() {
@@ -125,8 +253,18 @@ public class HiveCassandraStandardSplit extends FileSplit implements InputSplit{
     this.slicePredicateSize = slicePredicateSize;
   }
 
+  /**
+   * @return the first token range of the split
+   */
   public ColumnFamilySplit getSplit() {
-    return split;
+    return ranges.get(0);
+  }
+
+  /**
+   * @return the token ranges of the split, in the order they are read
+   */
+  public List<ColumnFamilySplit> getRanges() {
+    return ranges;
   }
 
   public String getColumnMapping() {
@@ -173,4 +311,12 @@ public class HiveCassandraStandardSplit extends FileSplit implements InputSplit{
   public int getSplitSize() {
     return splitSize;
   }
+
+  public void setRowSize(long rowSize) {
+    this.rowSize = rowSize;
+  }
+
+  public long getRowSize() {
+    return rowSize;
+  }
 }
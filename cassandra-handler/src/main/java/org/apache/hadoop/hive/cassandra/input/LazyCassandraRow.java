@@ -26,8 +26,6 @@ import org.apache.hadoop.hive.serde2.lazy.objectinspector.LazyMapObjectInspector
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.LazySimpleStructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
-import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.MapWritable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,23 +37,20 @@ public class LazyCassandraRow extends LazyStruct {
   static final Logger LOG = LoggerFactory.getLogger(LazyCassandraRow.class);
 
   private List<String> cassandraColumns;
-  private List<BytesWritable> cassandraColumnsBB;
-  private MapWritable columnMap;
+  private CassandraRowWritable row;
   private ArrayList<Object> cachedList;
 
   public LazyCassandraRow(LazySimpleStructObjectInspector oi) {
     super(oi);
   }
 
-  public void init(MapWritable columnMap, List<String> cassandraColumns, List<BytesWritable> cassandraColumnsBB) {
-    this.columnMap = columnMap;
+  /**
+   * @param row              cells of the row, at the positions of their columns in the mapping
+   * @param cassandraColumns the column mapping
+   */
+  public void init(CassandraRowWritable row, List<String> cassandraColumns) {
+    this.row = row;
     this.cassandraColumns = cassandraColumns;
-    this.cassandraColumnsBB = cassandraColumnsBB;
-
-    // these should always be equal
-    if (cassandraColumns.size() != cassandraColumnsBB.size()) {
-      throw new IllegalStateException();
-    }
 
     setParsed(false);
   }
@@ -96,8 +91,9 @@ public class LazyCassandraRow extends LazyStruct {
     if (!getFieldInited()[fieldID]) {
       getFieldInited()[fieldID] = true;
       ByteArrayRef ref = null;
+      int start = 0;
+      int length = 0;
       String columnName = cassandraColumns.get(fieldID);
-      BytesWritable columnNameBB = cassandraColumnsBB.get(fieldID);
 
       LazyObject obj = getFields()[fieldID];
       if (columnName.endsWith(":")) {
@@ -107,17 +103,19 @@ public class LazyCassandraRow extends LazyStruct {
       } else {
         // user wants the value of a single column
 
-        BytesWritable columnValue = (BytesWritable) columnMap.get(columnNameBB);
+        ByteSliceWritable columnValue = row.get(fieldID);
 
         if (columnValue != null) {
           ref = new ByteArrayRef();
-          ref.setData(columnValue.getBytes());
+          ref.setData(columnValue.getArray());
+          start = columnValue.getOffset();
+          length = columnValue.getLength();
         } else {
           return null;
         }
       }
       if (ref != null) {
-        obj.init(ref, 0, ref.getData().length);
+        obj.init(ref, start, length);
       }
     }
     return getFields()[fieldID].getObject();
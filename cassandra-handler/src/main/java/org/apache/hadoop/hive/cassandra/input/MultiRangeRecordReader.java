@@ -0,0 +1,113 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * Reads the token ranges of a split combining several of them one after the other, each with a
+ * reader of its own. Only one range is open at a time.
+ */
+public class MultiRangeRecordReader<K, V> extends RecordReader<K, V> {
+
+  /**
+   * Creates the reader of one range.
+   */
+  public interface ReaderFactory<K, V> {
+    RecordReader<K, V> create() throws IOException;
+  }
+
+  private final List<ColumnFamilySplit> ranges;
+  private final ReaderFactory<K, V> factory;
+  private TaskAttemptContext context;
+  private RecordReader<K, V> current;
+  private int index = -1;
+
+  /**
+   * @param ranges  the ranges to read, in order
+   * @param factory creates the reader of each range
+   */
+  public MultiRangeRecordReader(List<ColumnFamilySplit> ranges, ReaderFactory<K, V> factory) {
+    this.ranges = ranges;
+    this.factory = factory;
+  }
+
+  /**
+   * @param split ignored, the ranges were given to the constructor
+   */
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+    this.context = context;
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    while (true) {
+      if (current == null) {
+        if (index + 1 >= ranges.size()) {
+          return false;
+        }
+        index++;
+        current = factory.create();
+        current.initialize(ranges.get(index), context);
+      }
+
+      if (current.nextKeyValue()) {
+        return true;
+      }
+
+      current.close();
+      current = null;
+    }
+  }
+
+  @Override
+  public K getCurrentKey() throws IOException, InterruptedException {
+    return current == null ? null : current.getCurrentKey();
+  }
+
+  @Override
+  public V getCurrentValue() throws IOException, InterruptedException {
+    return current == null ? null : current.getCurrentValue();
+  }
+
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    if (ranges.isEmpty()) {
+      return 1;
+    }
+    float done = index < 0 ? 0 : (current == null ? index + 1 : index + Math.min(current.getProgress(), 1));
+    return done / ranges.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (current != null) {
+      current.close();
+      current = null;
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.TypeParser;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.exceptions.SyntaxException;
+import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CounterColumn;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.NotFoundException;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.CassandraClientHolder;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
+import org.apache.hadoop.hive.cassandra.CassandraException;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a set of row keys with multiget_slice, cassandra.range.size keys per call, returning the
+ * rows like ColumnFamilyRecordReader does. Keys without columns are skipped.
+ *
+ * When the slice predicate is a slice range, a row that fills it is read on with get_slice, and
+ * each further slice is returned as a row of the same key, like the wide row iterator does.
+ */
+public class MultigetRecordReader extends RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MultigetRecordReader.class);
+
+  private final List<ByteBuffer> keys;
+  private final String[] locations;
+
+  private CassandraClientHolder holder;
+  private Cassandra.Iface client;
+  private ColumnParent parent;
+  private SlicePredicate predicate;
+  private ConsistencyLevel consistency;
+  private int batchSize;
+  private AbstractType<?> comparator;
+  private AbstractType<?> subComparator;
+
+  private int nextKey;
+  private final LinkedList<Row> rows = new LinkedList<Row>();
+  private Row current;
+  private long rowsRead;
+
+  /**
+   * @param keys      row keys to read
+   * @param locations hosts to read them from, tried in order
+   */
+  public MultigetRecordReader(List<ByteBuffer> keys, String[] locations) {
+    this.keys = keys;
+    this.locations = locations;
+  }
+
+  /**
+   * Connect to the first reachable location. The split is not used, the keys are those the
+   * reader was created with.
+   */
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    String keyspace = ConfigHelper.getInputKeyspace(conf);
+    int port = ConfigHelper.getInputRpcPort(conf);
+
+    List<String> hosts = new ArrayList<String>(Arrays.asList(locations));
+    hosts.add(ConfigHelper.getInputInitialAddress(conf));
+    CassandraException lastError = null;
+    for (String host : hosts) {
+      try {
+        holder = CassandraClientPool.getInstance().borrow(host, port, keyspace);
+        break;
+      } catch (CassandraException e) {
+        LOG.warn("Unable to connect to " + host + ":" + port, e);
+        lastError = e;
+      }
+    }
+    if (holder == null) {
+      throw new IOException(lastError);
+    }
+
+    open(holder.getClient(), conf);
+  }
+
+  /**
+   * Prepare to read through the given client, which has the keyspace set.
+   */
+  void open(Cassandra.Iface client, Configuration conf) throws IOException {
+    this.client = client;
+    parent = new ColumnParent(ConfigHelper.getInputColumnFamily(conf));
+    predicate = ConfigHelper.getInputSlicePredicate(conf);
+    consistency = ConsistencyLevel.valueOf(ConfigHelper.getReadConsistencyLevel(conf));
+    batchSize = Math.max(1, ConfigHelper.getRangeBatchSize(conf));
+
+    try {
+      readComparators(ConfigHelper.getInputKeyspace(conf), parent.getColumn_family());
+    } catch (NotFoundException e) {
+      throw new IOException(e);
+    } catch (InvalidRequestException e) {
+      throw new IOException(e);
+    } catch (TException e) {
+      invalidate();
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    try {
+      if (current != null && current.more) {
+        readSlice(current);
+      }
+      while (rows.isEmpty() && nextKey < keys.size()) {
+        readBatch();
+      }
+    } catch (InvalidRequestException e) {
+      throw new IOException(e);
+    } catch (UnavailableException e) {
+      throw new IOException(e);
+    } catch (TimedOutException e) {
+      throw new IOException(e);
+    } catch (TException e) {
+      invalidate();
+      throw new IOException(e);
+    }
+
+    current = rows.poll();
+    if (current == null) {
+      return false;
+    }
+    rowsRead++;
+    return true;
+  }
+
+  @Override
+  public ByteBuffer getCurrentKey() {
+    return current.key;
+  }
+
+  @Override
+  public SortedMap<ByteBuffer, IColumn> getCurrentValue() {
+    return current.columns;
+  }
+
+  @Override
+  public float getProgress() {
+    return keys.isEmpty() ? 1 : Math.min(1.0f, (float) nextKey / keys.size());
+  }
+
+  @Override
+  public void close() {
+    if (holder != null) {
+      CassandraClientPool.getInstance().release(holder);
+      holder = null;
+    }
+  }
+
+  /**
+   * @return rows returned so far, slices of wide rows counted separately
+   */
+  long getRowsRead() {
+    return rowsRead;
+  }
+
+  private void readBatch() throws TException, InvalidRequestException, UnavailableException, TimedOutException {
+    List<ByteBuffer> batch = keys.subList(nextKey, Math.min(keys.size(), nextKey + batchSize));
+    nextKey += batch.size();
+
+    Map<ByteBuffer, List<ColumnOrSuperColumn>> result = client.multiget_slice(batch, parent, predicate, consistency);
+    for (ByteBuffer key : batch) {
+      List<ColumnOrSuperColumn> columns = result.get(key);
+      if (columns != null && !columns.isEmpty()) {
+        rows.add(toRow(key, columns, predicate));
+      }
+    }
+  }
+
+  /**
+   * Read the slice of the row that follows the last column of the given one.
+   */
+  private void readSlice(Row previous) throws TException, InvalidRequestException, UnavailableException,
+          TimedOutException {
+    SliceRange range = predicate.getSlice_range();
+    SliceRange next = new SliceRange(previous.columns.lastKey(), range.bufferForFinish(), range.isReversed(),
+            range.getCount() + 1);
+    SlicePredicate nextPredicate = new SlicePredicate().setSlice_range(next);
+
+    List<ColumnOrSuperColumn> columns = client.get_slice(previous.key, parent, nextPredicate, consistency);
+    // the first column is the last one of the previous slice
+    if (columns.size() > 1) {
+      rows.addFirst(toRow(previous.key, columns.subList(1, columns.size()), nextPredicate));
+    }
+  }
+
+  private Row toRow(ByteBuffer key, List<ColumnOrSuperColumn> columns, SlicePredicate slice) {
+    SortedMap<ByteBuffer, IColumn> map = new TreeMap<ByteBuffer, IColumn>(comparator);
+    for (ColumnOrSuperColumn cosc : columns) {
+      IColumn column = unthriftify(cosc);
+      map.put(column.name(), column);
+    }
+    boolean more = slice.isSetSlice_range() && columns.size() >= predicate.getSlice_range().getCount();
+    return new Row(key, map, more);
+  }
+
+  private IColumn unthriftify(ColumnOrSuperColumn cosc) {
+    if (cosc.isSetCounter_column()) {
+      return unthriftifyCounter(cosc.counter_column);
+    } else if (cosc.isSetSuper_column()) {
+      org.apache.cassandra.db.SuperColumn sc = new org.apache.cassandra.db.SuperColumn(cosc.super_column.name, subComparator);
+      for (Column column : cosc.super_column.columns) {
+        sc.addColumn(unthriftifySimple(column));
+      }
+      return sc;
+    } else if (cosc.isSetCounter_super_column()) {
+      org.apache.cassandra.db.SuperColumn sc = new org.apache.cassandra.db.SuperColumn(cosc.counter_super_column.name, subComparator);
+      for (CounterColumn column : cosc.counter_super_column.columns) {
+        sc.addColumn(unthriftifyCounter(column));
+      }
+      return sc;
+    }
+    return unthriftifySimple(cosc.column);
+  }
+
+  private static IColumn unthriftifySimple(Column column) {
+    return new org.apache.cassandra.db.Column(column.name, column.value, column.timestamp);
+  }
+
+  private static IColumn unthriftifyCounter(CounterColumn column) {
+    return new org.apache.cassandra.db.Column(column.name, ByteBufferUtil.bytes(column.value), 0);
+  }
+
+  private void readComparators(String keyspace, String columnFamily) throws TException, NotFoundException,
+          InvalidRequestException, IOException {
+    comparator = BytesType.instance;
+    subComparator = BytesType.instance;
+
+    KsDef ksDef = client.describe_keyspace(keyspace);
+    for (CfDef cfDef : ksDef.getCf_defs()) {
+      if (cfDef.getName().equalsIgnoreCase(columnFamily)) {
+        try {
+          comparator = TypeParser.parse(cfDef.getComparator_type());
+          if (cfDef.isSetSubcomparator_type()) {
+            subComparator = TypeParser.parse(cfDef.getSubcomparator_type());
+          }
+        } catch (ConfigurationException e) {
+          throw new IOException(e);
+        } catch (SyntaxException e) {
+          throw new IOException(e);
+        }
+      }
+    }
+  }
+
+  private void invalidate() {
+    if (holder != null) {
+      CassandraClientPool.getInstance().invalidate(holder);
+      holder = null;
+    }
+  }
+
+  private static class Row {
+    final ByteBuffer key;
+    final SortedMap<ByteBuffer, IColumn> columns;
+    final boolean more;
+
+    Row(ByteBuffer key, SortedMap<ByteBuffer, IColumn> columns, boolean more) {
+      this.key = key;
+      this.columns = columns;
+      this.more = more;
+    }
+  }
+}
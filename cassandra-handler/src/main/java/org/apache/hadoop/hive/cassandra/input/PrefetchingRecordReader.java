@@ -0,0 +1,271 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads ahead of the consumer: a background thread pulls rows from the wrapped reader into a queue
+ * while the task processes the rows already read. The wrapped readers fetch a page of rows from
+ * cassandra each time they run out, so the next page is fetched while the current one is processed
+ * and neither the network nor the cpu sits idle.
+ *
+ * Several readers, of different parts of a split, can be read concurrently, a thread each. Their
+ * rows are interleaved in the order they arrive; the rows of one reader stay in order.
+ *
+ * The queue holds at most about budget bytes of rows, as estimated by the {@link Weigher}; a
+ * budget of at least two pages keeps a page in flight while a whole one is processed. The rows
+ * of the wrapped readers must not be reused by them, which is true of the readers of this package.
+ */
+public class PrefetchingRecordReader<K, V> extends RecordReader<K, V> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PrefetchingRecordReader.class);
+
+  /**
+   * Millis to wait for the reading threads to stop when closing.
+   */
+  static final long CLOSE_TIMEOUT = 10 * 1000L;
+
+  /**
+   * Estimates the memory a row takes.
+   */
+  public interface Weigher<K, V> {
+    long weigh(K key, V value);
+  }
+
+  private final List<RecordReader<K, V>> readers;
+  private final long budget;
+  private final Weigher<K, V> weigher;
+
+  private final LinkedList<Row<K, V>> queue = new LinkedList<Row<K, V>>();
+  private final float[] progress;
+  private final List<Thread> threads = new ArrayList<Thread>();
+  private long queued;
+  private int running;
+  private boolean closed;
+  private Throwable failure;
+  private Row<K, V> current;
+
+  /**
+   * @param reader  the reader to read ahead of
+   * @param budget  bytes of rows that may be waiting to be consumed
+   * @param weigher estimates the bytes of a row
+   */
+  public PrefetchingRecordReader(RecordReader<K, V> reader, long budget, Weigher<K, V> weigher) {
+    this(Collections.singletonList(reader), budget, weigher);
+  }
+
+  /**
+   * @param readers the readers to read concurrently, all initialized with the same split
+   * @param budget  bytes of rows that may be waiting to be consumed
+   * @param weigher estimates the bytes of a row
+   */
+  public PrefetchingRecordReader(List<RecordReader<K, V>> readers, long budget, Weigher<K, V> weigher) {
+    this.readers = readers;
+    this.budget = budget;
+    this.weigher = weigher;
+    this.progress = new float[readers.size()];
+  }
+
+  /**
+   * Initializes the wrapped readers in the calling thread, then starts reading ahead.
+   */
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+    for (RecordReader<K, V> reader : readers) {
+      reader.initialize(split, context);
+    }
+
+    synchronized (queue) {
+      running = readers.size();
+    }
+    for (int i = 0; i < readers.size(); i++) {
+      final int index = i;
+      Thread thread = new Thread(new Runnable() {
+        public void run() {
+          readAhead(index);
+        }
+      }, "cassandra-prefetch-" + i);
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  private void readAhead(int index) {
+    RecordReader<K, V> reader = readers.get(index);
+    try {
+      while (reader.nextKeyValue()) {
+        K key = reader.getCurrentKey();
+        V value = reader.getCurrentValue();
+        long weight = weigher.weigh(key, value);
+        float readerProgress = reader.getProgress();
+
+        synchronized (queue) {
+          // a row larger than the budget is still let through on its own
+          while (!closed && !queue.isEmpty() && queued + weight > budget) {
+            queue.wait();
+          }
+          if (closed) {
+            return;
+          }
+          progress[index] = readerProgress;
+          queue.addLast(new Row<K, V>(key, value, weight, getReadProgress()));
+          queued += weight;
+          queue.notifyAll();
+        }
+      }
+      synchronized (queue) {
+        progress[index] = 1;
+      }
+    } catch (InterruptedException e) {
+      // closed
+    } catch (Throwable t) {
+      synchronized (queue) {
+        if (!closed) {
+          LOG.warn("Reading ahead failed", t);
+        }
+        if (failure == null) {
+          failure = t;
+        }
+      }
+    } finally {
+      synchronized (queue) {
+        running--;
+        queue.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * @return mean progress of the readers, holding the queue lock
+   */
+  private float getReadProgress() {
+    float sum = 0;
+    for (float p : progress) {
+      sum += p;
+    }
+    return progress.length == 0 ? 1 : sum / progress.length;
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    synchronized (queue) {
+      while (queue.isEmpty() && running > 0 && failure == null) {
+        queue.wait();
+      }
+      if (queue.isEmpty()) {
+        current = null;
+        if (failure instanceof IOException) {
+          throw (IOException) failure;
+        } else if (failure != null) {
+          throw new IOException(failure);
+        }
+        return false;
+      }
+      current = queue.removeFirst();
+      queued -= current.weight;
+      queue.notifyAll();
+      return true;
+    }
+  }
+
+  @Override
+  public K getCurrentKey() {
+    return current == null ? null : current.key;
+  }
+
+  @Override
+  public V getCurrentValue() {
+    return current == null ? null : current.value;
+  }
+
+  /**
+   * @return progress of the wrapped readers when the current row was read
+   */
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    synchronized (queue) {
+      if (current != null) {
+        return current.progress;
+      }
+      return running == 0 && queue.isEmpty() ? 1 : 0;
+    }
+  }
+
+  /**
+   * Stops reading ahead, waiting for pages being read to arrive, and closes the wrapped readers.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (queue) {
+      closed = true;
+      queue.clear();
+      queued = 0;
+      queue.notifyAll();
+    }
+    long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+    for (Thread thread : threads) {
+      try {
+        thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (thread.isAlive()) {
+        LOG.warn("Closing while still reading ahead in " + thread.getName());
+      }
+    }
+
+    IOException error = null;
+    for (RecordReader<K, V> reader : readers) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        error = e;
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  private static class Row<K, V> {
+    final K key;
+    final V value;
+    final long weight;
+    final float progress;
+
+    Row(K key, V value, long weight, float progress) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+      this.progress = progress;
+    }
+  }
+}
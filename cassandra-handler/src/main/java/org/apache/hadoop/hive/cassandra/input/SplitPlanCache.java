@@ -0,0 +1,308 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.cassandra.CassandraException;
+import org.apache.hadoop.hive.cassandra.RingTopology;
+import org.apache.hadoop.hive.cassandra.RingTopologyService;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reuses the splits planned for a column family, which otherwise cost a describe_splits call
+ * per token range on every query.
+ *
+ * Plans are keyed by keyspace, column family, split size and the fingerprint of the ring, so a
+ * plan is never reused once ranges move between nodes, and plans of a ring that changed are
+ * dropped as soon as the {@link RingTopologyService} notices. Plans expire after
+ * cassandra.split.cache.ttl milliseconds, since the sizes they are based on grow with the data.
+ * They are kept in memory, and also written to cassandra.split.cache.dir when set, so that
+ * separate Hive sessions can share them.
+ */
+public class SplitPlanCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SplitPlanCache.class);
+
+  private static final SplitPlanCache instance = new SplitPlanCache();
+
+  /**
+   * Plans kept in memory; the oldest are dropped beyond this.
+   */
+  static final int MAX_PLANS = 256;
+
+  /**
+   * Plans the splits when no cached plan can be used.
+   */
+  public interface Planner {
+    List<InputSplit> plan() throws IOException;
+  }
+
+  private final ConcurrentMap<String, Plan> plans = new ConcurrentHashMap<String, Plan>();
+
+  SplitPlanCache() {
+  }
+
+  /**
+   * @return the cache shared by every query in this JVM
+   */
+  public static SplitPlanCache getInstance() {
+    return instance;
+  }
+
+  static {
+    RingTopologyService.getInstance().addListener(new RingTopologyService.Listener() {
+      public void topologyChanged(RingTopology previous, RingTopology current) {
+        instance.invalidate(previous.getFingerprint());
+      }
+    });
+  }
+
+  /**
+   * Return the splits of a column family, from a plan made earlier for the same ring if there
+   * is one that has not expired.
+   *
+   * @param conf      job configuration
+   * @param host      cassandra host the ring is described through
+   * @param port      cassandra rpc port
+   * @param ks        keyspace
+   * @param cf        column family
+   * @param splitSize rows per split
+   * @param planner   plans the splits when needed
+   * @return the splits
+   * @throws IOException if the splits cannot be planned
+   */
+  public List<InputSplit> getSplits(Configuration conf, String host, int port, String ks, String cf,
+                                    int splitSize, Planner planner) throws IOException {
+    if (conf.getLong(AbstractCassandraSerDe.CASSANDRA_SPLIT_CACHE_TTL, AbstractCassandraSerDe.DEFAULT_SPLIT_CACHE_TTL) <= 0) {
+      return planner.plan();
+    }
+
+    RingTopology ring;
+    try {
+      RingTopologyService.getInstance().configure(conf);
+      ring = RingTopologyService.getInstance().getTopology(host, port, ks);
+    } catch (CassandraException e) {
+      LOG.warn("Unable to describe the ring of " + ks + ", planning the splits without the cache", e);
+      return planner.plan();
+    }
+
+    return getSplits(conf, ring, cf, splitSize, planner);
+  }
+
+  List<InputSplit> getSplits(Configuration conf, RingTopology ring, String cf, int splitSize, Planner planner)
+          throws IOException {
+    long ttl = conf.getLong(AbstractCassandraSerDe.CASSANDRA_SPLIT_CACHE_TTL, AbstractCassandraSerDe.DEFAULT_SPLIT_CACHE_TTL);
+    String key = ring.getKeyspace() + "/" + cf + "/" + splitSize + "/" + ring.getFingerprint();
+    long now = System.currentTimeMillis();
+
+    Plan plan = plans.get(key);
+    if (plan == null || plan.created + ttl <= now) {
+      plan = readPlan(conf, key, ring.getFingerprint(), now - ttl);
+    }
+
+    if (plan == null || plan.created + ttl <= now) {
+      List<ColumnFamilySplit> splits = new ArrayList<ColumnFamilySplit>();
+      for (InputSplit split : planner.plan()) {
+        splits.add((ColumnFamilySplit) split);
+      }
+      plan = new Plan(ring.getFingerprint(), now, splits);
+      writePlan(conf, key, plan);
+    } else if (LOG.isDebugEnabled()) {
+      LOG.debug("Reusing the " + plan.splits.size() + " splits planned for " + key);
+    }
+
+    put(key, plan, now - ttl);
+    return new ArrayList<InputSplit>(plan.splits);
+  }
+
+  /**
+   * Drop the plans made for the ring with the given fingerprint.
+   */
+  void invalidate(String fingerprint) {
+    for (Iterator<Plan> it = plans.values().iterator(); it.hasNext(); ) {
+      if (it.next().fingerprint.equals(fingerprint)) {
+        it.remove();
+      }
+    }
+  }
+
+  int size() {
+    return plans.size();
+  }
+
+  private void put(String key, Plan plan, long expiredBefore) {
+    plans.put(key, plan);
+    if (plans.size() <= MAX_PLANS) {
+      return;
+    }
+
+    String oldest = null;
+    long oldestCreated = Long.MAX_VALUE;
+    for (Iterator<Map.Entry<String, Plan>> it = plans.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, Plan> entry = it.next();
+      if (entry.getValue().created <= expiredBefore) {
+        it.remove();
+      } else if (entry.getValue().created < oldestCreated) {
+        oldest = entry.getKey();
+        oldestCreated = entry.getValue().created;
+      }
+    }
+    if (plans.size() > MAX_PLANS && oldest != null) {
+      plans.remove(oldest);
+    }
+  }
+
+  private static Path getPlanPath(Configuration conf, String key) {
+    String dir = conf.get(AbstractCassandraSerDe.CASSANDRA_SPLIT_CACHE_DIR);
+    if (dir == null || dir.isEmpty()) {
+      return null;
+    }
+    return new Path(dir, Hashing.md5().hashString(key, Charsets.UTF_8) + ".splits");
+  }
+
+  /**
+   * @return the plan stored for the key, null if there is none made after the given time
+   */
+  private Plan readPlan(Configuration conf, String key, String fingerprint, long expiredBefore) {
+    Path path = getPlanPath(conf, key);
+    if (path == null) {
+      return null;
+    }
+
+    try {
+      FileSystem fs = path.getFileSystem(conf);
+      if (!fs.exists(path)) {
+        return null;
+      }
+
+      FSDataInputStream in = fs.open(path);
+      try {
+        if (!key.equals(in.readUTF())) {
+          return null;
+        }
+        long created = in.readLong();
+        if (created <= expiredBefore) {
+          return null;
+        }
+        int count = in.readInt();
+        List<ColumnFamilySplit> splits = new ArrayList<ColumnFamilySplit>(count);
+        for (int i = 0; i < count; i++) {
+          splits.add(readSplit(in));
+        }
+        return new Plan(fingerprint, created, splits);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to read the split plan " + path, e);
+      return null;
+    }
+  }
+
+  private void writePlan(Configuration conf, String key, Plan plan) {
+    Path path = getPlanPath(conf, key);
+    if (path == null) {
+      return;
+    }
+
+    Path tmp = new Path(path.getParent(), "." + path.getName() + "." + System.nanoTime());
+    try {
+      FileSystem fs = path.getFileSystem(conf);
+      FSDataOutputStream out = fs.create(tmp, true);
+      try {
+        out.writeUTF(key);
+        out.writeLong(plan.created);
+        out.writeInt(plan.splits.size());
+        for (ColumnFamilySplit split : plan.splits) {
+          writeSplit(out, split);
+        }
+      } finally {
+        out.close();
+      }
+
+      // readers only ever see complete plans
+      fs.delete(path, false);
+      if (!fs.rename(tmp, path)) {
+        fs.delete(tmp, false);
+      }
+    } catch (IOException e) {
+      LOG.warn("Unable to write the split plan " + path, e);
+    }
+  }
+
+  /**
+   * Splits are written field by field, {@link ColumnFamilySplit#write} leaves out the length.
+   */
+  private static void writeSplit(DataOutput out, ColumnFamilySplit split) throws IOException {
+    out.writeUTF(split.getStartToken());
+    out.writeUTF(split.getEndToken());
+    out.writeLong(split.getLength());
+    String[] locations = split.getLocations();
+    out.writeInt(locations.length);
+    for (String location : locations) {
+      out.writeUTF(location);
+    }
+  }
+
+  private static ColumnFamilySplit readSplit(DataInput in) throws IOException {
+    String startToken = in.readUTF();
+    String endToken = in.readUTF();
+    long length = in.readLong();
+    String[] locations = new String[in.readInt()];
+    for (int i = 0; i < locations.length; i++) {
+      locations[i] = in.readUTF();
+    }
+    return new ColumnFamilySplit(startToken, endToken, length, locations);
+  }
+
+  private static class Plan {
+    final String fingerprint;
+    final long created;
+    final List<ColumnFamilySplit> splits;
+
+    Plan(String fingerprint, long created, List<ColumnFamilySplit> splits) {
+      this.fingerprint = fingerprint;
+      this.created = created;
+      this.splits = Collections.unmodifiableList(splits);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Samples a table by reading a deterministic part of its token ranges, for approximate answers at a
+ * fraction of the I/O. Hive does not hand TABLESAMPLE over to storage handlers, so the sample is
+ * configured instead:
+ *
+ * cassandra.input.sample.bucket x and cassandra.input.sample.buckets y deal the splits into y
+ * buckets in ring order and read bucket x, like TABLESAMPLE(BUCKET x OUT OF y).
+ *
+ * cassandra.input.sample.percent n reads n percent of the remaining splits, spread evenly over the
+ * ring, like TABLESAMPLE(n PERCENT). With cassandra.input.sample.truncate every split is read
+ * instead, but only the first n percent of its tokens. Keys are hashed to tokens, so this reads a
+ * uniform sample of the rows; it needs the Murmur3Partitioner, splits are chosen otherwise.
+ *
+ * The same ring gives the same splits in the same order, so the same sample is read every time.
+ */
+public class SplitSampler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SplitSampler.class);
+
+  static final BigInteger RING_SIZE = BigInteger.ONE.shiftLeft(64);
+
+  /**
+   * Precision of the fraction of a split kept when truncating.
+   */
+  private static final long PRECISION = 1000000L;
+
+  private SplitSampler() {
+  }
+
+  /**
+   * @param conf   job configuration
+   * @param splits splits computed by cassandra, in ring order
+   * @return the splits to read
+   * @throws IOException if the sample is not valid
+   */
+  public static List<InputSplit> sample(Configuration conf, List<InputSplit> splits) throws IOException {
+    int bucket = conf.getInt(AbstractCassandraSerDe.CASSANDRA_SAMPLE_BUCKET, 0);
+    int buckets = conf.getInt(AbstractCassandraSerDe.CASSANDRA_SAMPLE_BUCKETS, 0);
+    float percent = conf.getFloat(AbstractCassandraSerDe.CASSANDRA_SAMPLE_PERCENT,
+            AbstractCassandraSerDe.DEFAULT_SAMPLE_PERCENT);
+
+    List<InputSplit> sampled = splits;
+    if (buckets > 0) {
+      if (bucket < 1 || bucket > buckets) {
+        throw new IOException(AbstractCassandraSerDe.CASSANDRA_SAMPLE_BUCKET + " must be between 1 and "
+                + buckets + ", not " + bucket);
+      }
+      sampled = bucket(sampled, bucket, buckets);
+    }
+
+    if (percent < 100) {
+      if (percent <= 0) {
+        throw new IOException(AbstractCassandraSerDe.CASSANDRA_SAMPLE_PERCENT
+                + " must be more than 0, not " + percent);
+      }
+      boolean truncate = conf.getBoolean(AbstractCassandraSerDe.CASSANDRA_SAMPLE_TRUNCATE,
+              AbstractCassandraSerDe.DEFAULT_SAMPLE_TRUNCATE);
+      String partitioner = conf.get(AbstractCassandraSerDe.CASSANDRA_PARTITIONER,
+              AbstractCassandraSerDe.DEFAULT_CASSANDRA_PARTITIONER);
+      if (truncate && Murmur3Partitioner.class.getName().equals(partitioner)) {
+        sampled = truncate(sampled, percent / 100.0);
+      } else {
+        if (truncate) {
+          LOG.warn("Splits can only be truncated with the Murmur3Partitioner, sampling whole splits of " + partitioner);
+        }
+        sampled = choose(sampled, percent / 100.0);
+      }
+    }
+
+    if (sampled != splits) {
+      LOG.info("Sampling " + sampled.size() + " of " + splits.size() + " splits");
+    }
+    return sampled;
+  }
+
+  /**
+   * @return the splits of bucket x of y, 1 based, splits being dealt into buckets in order
+   */
+  static List<InputSplit> bucket(List<InputSplit> splits, int bucket, int buckets) {
+    List<InputSplit> result = new ArrayList<InputSplit>();
+    for (int i = bucket - 1; i < splits.size(); i += buckets) {
+      result.add(splits.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * @return the given fraction of the splits, evenly spread, at least one
+   */
+  static List<InputSplit> choose(List<InputSplit> splits, double fraction) {
+    List<InputSplit> result = new ArrayList<InputSplit>();
+    for (int i = 0; i < splits.size(); i++) {
+      if (Math.floor((i + 1) * fraction) > Math.floor(i * fraction)) {
+        result.add(splits.get(i));
+      }
+    }
+    if (result.isEmpty() && !splits.isEmpty()) {
+      result.add(splits.get(0));
+    }
+    return result;
+  }
+
+  /**
+   * @return the splits cut to the given fraction of their Murmur3 tokens, from their start token
+   */
+  static List<InputSplit> truncate(List<InputSplit> splits, double fraction) {
+    BigInteger kept = BigInteger.valueOf(Math.max(1, Math.round(fraction * PRECISION)));
+    List<InputSplit> result = new ArrayList<InputSplit>(splits.size());
+    for (InputSplit split : splits) {
+      ColumnFamilySplit range = (ColumnFamilySplit) split;
+      BigInteger start = new BigInteger(range.getStartToken());
+      BigInteger width = new BigInteger(range.getEndToken()).subtract(start);
+      if (width.signum() <= 0) {
+        // wraps around the ring
+        width = width.add(RING_SIZE);
+      }
+      BigInteger keptWidth = width.multiply(kept).divide(BigInteger.valueOf(PRECISION)).max(BigInteger.ONE);
+      // longValue keeps the low 64 bits, wrapping the end token around the ring
+      long end = start.add(keptWidth).longValue();
+      long length = (long) Math.ceil(range.getLength() * fraction);
+      result.add(new ColumnFamilySplit(range.getStartToken(), Long.toString(end), length, range.getLocations()));
+    }
+    return result;
+  }
+}
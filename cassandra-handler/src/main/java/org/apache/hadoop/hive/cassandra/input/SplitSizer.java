@@ -0,0 +1,217 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.KeyRange;
+import org.apache.cassandra.thrift.KeySlice;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.CassandraClientHolder;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
+import org.apache.hadoop.hive.cassandra.CassandraException;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sizes splits by bytes rather than rows. describe_splits_ex only estimates the rows of each
+ * token range, so the mean size of a row is sampled from the start of the ring, or taken from
+ * cassandra.input.row.size when set. With cassandra.input.split.bytes set, splits aim for that
+ * many bytes instead of cassandra.input.split.size rows, and they are made smaller still when
+ * Hive asks for more splits than that would give.
+ */
+public class SplitSizer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SplitSizer.class);
+
+  /**
+   * Rows read to estimate the mean row size.
+   */
+  static final int SAMPLE_ROWS = 100;
+
+  private static final ConcurrentMap<String, Estimate> estimates = new ConcurrentHashMap<String, Estimate>();
+
+  private SplitSizer() {
+  }
+
+  /**
+   * Return the estimated mean size of the rows of a column family, as configured or sampled.
+   * Samples are reused for cassandra.split.cache.ttl milliseconds.
+   *
+   * @param conf               job configuration
+   * @param host               cassandra host to sample through
+   * @param port               cassandra rpc port
+   * @param ks                 keyspace
+   * @param cf                 column family
+   * @param slicePredicateSize columns read per row
+   * @return bytes per row, at least 1
+   */
+  public static long getRowSize(Configuration conf, String host, int port, String ks, String cf,
+                                int slicePredicateSize) {
+    long configured = conf.getLong(AbstractCassandraSerDe.CASSANDRA_ROW_SIZE, 0);
+    if (configured > 0) {
+      return configured;
+    }
+
+    long ttl = conf.getLong(AbstractCassandraSerDe.CASSANDRA_SPLIT_CACHE_TTL, AbstractCassandraSerDe.DEFAULT_SPLIT_CACHE_TTL);
+    String key = host + ":" + port + "/" + ks + "/" + cf;
+    long now = System.currentTimeMillis();
+    Estimate estimate = estimates.get(key);
+    if (estimate != null && estimate.sampled + ttl > now) {
+      return estimate.rowSize;
+    }
+
+    long rowSize;
+    try {
+      rowSize = sampleRowSize(host, port, ks, cf, slicePredicateSize);
+    } catch (CassandraException e) {
+      LOG.warn("Unable to sample the rows of " + ks + "." + cf + ", assuming "
+              + AbstractCassandraSerDe.DEFAULT_ROW_SIZE + " bytes per row", e);
+      return AbstractCassandraSerDe.DEFAULT_ROW_SIZE;
+    }
+
+    if (ttl > 0) {
+      estimates.put(key, new Estimate(rowSize, now));
+    }
+    return rowSize;
+  }
+
+  /**
+   * Return the rows cassandra should put in each token range it describes: those of
+   * cassandra.input.split.bytes when set, cassandra.input.split.size otherwise.
+   *
+   * @param conf    job configuration
+   * @param rowSize estimated bytes per row
+   * @return rows per token range, at least 1
+   */
+  public static int getRangeRows(Configuration conf, long rowSize) {
+    long targetBytes = conf.getLong(AbstractCassandraSerDe.CASSANDRA_SPLIT_BYTES, AbstractCassandraSerDe.DEFAULT_SPLIT_BYTES);
+    if (targetBytes <= 0) {
+      return Math.max(1, conf.getInt(AbstractCassandraSerDe.CASSANDRA_SPLIT_SIZE, AbstractCassandraSerDe.DEFAULT_SPLIT_SIZE));
+    }
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, targetBytes / Math.max(1, rowSize)));
+  }
+
+  /**
+   * Return the rows each split should hold so that there are at least numSplits of them.
+   *
+   * @param rangeRows rows per token range, the largest a split should hold
+   * @param numSplits splits Hive asks for, ignored when 1 or less
+   * @param ranges    token ranges described by cassandra
+   * @return rows per split, at least 1
+   */
+  public static long getSplitRows(int rangeRows, int numSplits, List<InputSplit> ranges) {
+    if (numSplits <= 1) {
+      return rangeRows;
+    }
+
+    long totalRows = 0;
+    for (InputSplit range : ranges) {
+      totalRows += ((ColumnFamilySplit) range).getLength();
+    }
+    long rows = (totalRows + numSplits - 1) / numSplits;
+    return Math.max(1, Math.min(rangeRows, rows));
+  }
+
+  private static long sampleRowSize(String host, int port, String ks, String cf, int slicePredicateSize)
+          throws CassandraException {
+    SlicePredicate predicate = new SlicePredicate().setSlice_range(
+            new SliceRange(ByteBuffer.wrap(new byte[0]), ByteBuffer.wrap(new byte[0]), false, slicePredicateSize));
+    KeyRange range = new KeyRange(SAMPLE_ROWS)
+            .setStart_key(new byte[0])
+            .setEnd_key(new byte[0]);
+
+    CassandraClientPool pool = CassandraClientPool.getInstance();
+    CassandraClientHolder holder = pool.borrow(host, port, ks);
+    try {
+      List<KeySlice> rows = holder.getClient().get_range_slices(
+              new ColumnParent(cf), predicate, range, ConsistencyLevel.ONE);
+      return meanRowSize(rows);
+    } catch (InvalidRequestException e) {
+      throw new CassandraException(e);
+    } catch (UnavailableException e) {
+      throw new CassandraException(e);
+    } catch (TimedOutException e) {
+      throw new CassandraException(e);
+    } catch (TException e) {
+      pool.invalidate(holder);
+      throw new CassandraException(e);
+    } finally {
+      pool.release(holder);
+    }
+  }
+
+  /**
+   * @return the mean bytes of the keys, column names and values of the rows, or the default row
+   * size when there are no rows
+   */
+  static long meanRowSize(List<KeySlice> rows) {
+    if (rows.isEmpty()) {
+      return AbstractCassandraSerDe.DEFAULT_ROW_SIZE;
+    }
+
+    long bytes = 0;
+    for (KeySlice row : rows) {
+      bytes += row.key.remaining();
+      for (ColumnOrSuperColumn cosc : row.columns) {
+        if (cosc.isSetColumn()) {
+          bytes += columnSize(cosc.column);
+        } else if (cosc.isSetCounter_column()) {
+          bytes += cosc.counter_column.name.remaining() + 8;
+        } else if (cosc.isSetSuper_column()) {
+          bytes += cosc.super_column.name.remaining();
+          for (Column column : cosc.super_column.columns) {
+            bytes += columnSize(column);
+          }
+        }
+      }
+    }
+    return Math.max(1, bytes / rows.size());
+  }
+
+  private static long columnSize(Column column) {
+    return column.name.remaining() + (column.value == null ? 0 : column.value.remaining());
+  }
+
+  private static class Estimate {
+    final long rowSize;
+    final long sampled;
+
+    Estimate(long rowSize, long sampled) {
+      this.rowSize = rowSize;
+      this.sampled = sampled;
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.TypeParser;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.exceptions.SyntaxException;
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.KeyRange;
+import org.apache.cassandra.thrift.KeySlice;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.NotFoundException;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.CassandraClientHolder;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
+import org.apache.hadoop.hive.cassandra.CassandraException;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the columns of a token range with get_paged_slice, whatever the width of its rows. Each
+ * page holds about a byte budget of columns: the number of columns asked for is adjusted to the
+ * size of the columns of the previous page. A page that ends inside a row is followed by one that
+ * starts at the last column read, so a row of any width is read completely in memory bounded by
+ * the budget.
+ *
+ * Each page of a row is returned as a row of the same key, like the wide row iterator of
+ * ColumnFamilyRecordReader does, so this suits transposed mappings, which return a row per column.
+ * Super column families cannot be paged this way.
+ */
+public class WideRowRecordReader extends RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WideRowRecordReader.class);
+
+  private final long pageBytes;
+
+  private CassandraClientHolder holder;
+  private Cassandra.Iface client;
+  private String columnFamily;
+  private ConsistencyLevel consistency;
+  private KeyRange filter;
+  private AbstractType<?> comparator;
+  private ColumnFamilySplit split;
+
+  private int count;
+  private ByteBuffer lastKey;
+  private ByteBuffer lastColumn;
+  private boolean exhausted;
+  private final LinkedList<Row> rows = new LinkedList<Row>();
+  private Row current;
+  private long keysRead;
+  private long pagesRead;
+
+  /**
+   * @param pageBytes bytes of columns to read per call
+   */
+  public WideRowRecordReader(long pageBytes) {
+    this.pageBytes = Math.max(1, pageBytes);
+  }
+
+  /**
+   * Connect to the first reachable replica of the split.
+   */
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    ColumnFamilySplit range = (ColumnFamilySplit) split;
+    String keyspace = ConfigHelper.getInputKeyspace(conf);
+    int port = ConfigHelper.getInputRpcPort(conf);
+
+    List<String> hosts = new ArrayList<String>(Arrays.asList(range.getLocations()));
+    hosts.add(ConfigHelper.getInputInitialAddress(conf));
+    CassandraException lastError = null;
+    for (String host : hosts) {
+      try {
+        holder = CassandraClientPool.getInstance().borrow(host, port, keyspace);
+        break;
+      } catch (CassandraException e) {
+        LOG.warn("Unable to connect to " + host + ":" + port, e);
+        lastError = e;
+      }
+    }
+    if (holder == null) {
+      throw new IOException(lastError);
+    }
+
+    open(holder.getClient(), conf, range);
+  }
+
+  /**
+   * Prepare to read the range through the given client, which has the keyspace set.
+   */
+  void open(Cassandra.Iface client, Configuration conf, ColumnFamilySplit split) throws IOException {
+    this.client = client;
+    this.split = split;
+    columnFamily = ConfigHelper.getInputColumnFamily(conf);
+    consistency = ConsistencyLevel.valueOf(ConfigHelper.getReadConsistencyLevel(conf));
+    filter = ConfigHelper.getInputKeyRange(conf);
+    // the first page is sized like those of the wide row iterator, later ones by the budget
+    count = Math.max(2, ConfigHelper.getRangeBatchSize(conf));
+
+    String comparatorType = conf.get(AbstractCassandraSerDe.CASSANDRA_CF_COMPARATOR);
+    if (comparatorType != null) {
+      comparator = parseComparator(comparatorType);
+      return;
+    }
+
+    try {
+      readComparator(ConfigHelper.getInputKeyspace(conf));
+    } catch (NotFoundException e) {
+      throw new IOException(e);
+    } catch (InvalidRequestException e) {
+      throw new IOException(e);
+    } catch (TException e) {
+      invalidate();
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    try {
+      while (rows.isEmpty() && !exhausted) {
+        readPage();
+      }
+    } catch (InvalidRequestException e) {
+      throw new IOException(e);
+    } catch (UnavailableException e) {
+      throw new IOException(e);
+    } catch (TimedOutException e) {
+      throw new IOException(e);
+    } catch (TException e) {
+      invalidate();
+      throw new IOException(e);
+    }
+
+    current = rows.poll();
+    return current != null;
+  }
+
+  @Override
+  public ByteBuffer getCurrentKey() {
+    return current.key;
+  }
+
+  @Override
+  public SortedMap<ByteBuffer, IColumn> getCurrentValue() {
+    return current.columns;
+  }
+
+  /**
+   * @return rows started so far against the estimated rows of the split
+   */
+  @Override
+  public float getProgress() {
+    if (exhausted && rows.isEmpty()) {
+      return 1;
+    }
+    return split == null || split.getLength() <= 0 ? 0 : Math.min(1.0f, (float) keysRead / split.getLength());
+  }
+
+  @Override
+  public void close() {
+    if (holder != null) {
+      CassandraClientPool.getInstance().release(holder);
+      holder = null;
+    }
+  }
+
+  /**
+   * @return columns asked for by the next call
+   */
+  int getPageSize() {
+    return count;
+  }
+
+  /**
+   * @return calls made so far
+   */
+  long getPagesRead() {
+    return pagesRead;
+  }
+
+  private void readPage() throws TException, InvalidRequestException, UnavailableException, TimedOutException {
+    KeyRange range = new KeyRange(count).setEnd_token(split.getEndToken());
+    if (filter != null && filter.isSetRow_filter()) {
+      range.setRow_filter(filter.getRow_filter());
+    }
+    if (lastKey == null) {
+      range.setStart_token(split.getStartToken());
+    } else {
+      // resume at the last column read, the start key is inclusive
+      range.setStart_key(lastKey);
+    }
+
+    List<KeySlice> page = client.get_paged_slice(columnFamily, range,
+            lastColumn == null ? ByteBufferUtil.EMPTY_BYTE_BUFFER : lastColumn, consistency);
+    pagesRead++;
+
+    int columns = 0;
+    long bytes = 0;
+    for (KeySlice slice : page) {
+      List<ColumnOrSuperColumn> sliceColumns = slice.getColumns();
+      columns += sliceColumns.size();
+
+      boolean resumed = lastKey != null && slice.key.equals(lastKey);
+      if (!resumed) {
+        keysRead++;
+      }
+      SortedMap<ByteBuffer, IColumn> map = new TreeMap<ByteBuffer, IColumn>(comparator);
+      for (ColumnOrSuperColumn cosc : sliceColumns) {
+        Column column = toColumn(cosc);
+        bytes += column.name.remaining() + (column.value == null ? 0 : column.value.remaining());
+        if (resumed && column.name.equals(lastColumn)) {
+          // the first column of a resumed row was the last of the previous page
+          continue;
+        }
+        map.put(column.name, new org.apache.cassandra.db.Column(column.name, column.value, column.timestamp));
+      }
+      if (!map.isEmpty()) {
+        rows.add(new Row(slice.key, map));
+      }
+    }
+
+    if (columns < count || page.isEmpty()) {
+      exhausted = true;
+      return;
+    }
+
+    KeySlice last = page.get(page.size() - 1);
+    lastKey = last.key;
+    lastColumn = toColumn(last.getColumns().get(last.getColumns().size() - 1)).name;
+
+    // size the next page to the budget, with room for the repeated column
+    long average = Math.max(1, bytes / columns);
+    count = (int) Math.max(2, Math.min(Integer.MAX_VALUE, pageBytes / average));
+  }
+
+  private static Column toColumn(ColumnOrSuperColumn cosc) {
+    if (cosc.isSetCounter_column()) {
+      return new Column(cosc.counter_column.name).setValue(ByteBufferUtil.bytes(cosc.counter_column.value));
+    }
+    return cosc.column;
+  }
+
+  /**
+   * Ask for the comparator of the column family, when the query was planned without it.
+   */
+  private void readComparator(String keyspace) throws TException, NotFoundException, InvalidRequestException,
+          IOException {
+    comparator = BytesType.instance;
+
+    KsDef ksDef = client.describe_keyspace(keyspace);
+    for (CfDef cfDef : ksDef.getCf_defs()) {
+      if (cfDef.getName().equalsIgnoreCase(columnFamily)) {
+        comparator = parseComparator(cfDef.getComparator_type());
+      }
+    }
+  }
+
+  private static AbstractType<?> parseComparator(String type) throws IOException {
+    try {
+      return TypeParser.parse(type);
+    } catch (ConfigurationException e) {
+      throw new IOException(e);
+    } catch (SyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void invalidate() {
+    if (holder != null) {
+      CassandraClientPool.getInstance().invalidate(holder);
+      holder = null;
+    }
+  }
+
+  private static class Row {
+    final ByteBuffer key;
+    final SortedMap<ByteBuffer, IColumn> columns;
+
+    Row(ByteBuffer key, SortedMap<ByteBuffer, IColumn> columns) {
+      this.key = key;
+      this.columns = columns;
+    }
+  }
+}
@@ -18,10 +18,9 @@
 
 package org.apache.hadoop.hive.cassandra.input.cql;
 
-import org.apache.cassandra.hadoop.cql3.CqlPagingRecordReader;
-import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.hive.cassandra.input.CassandraRowWritable;
+import org.apache.hadoop.hive.cassandra.input.PrefetchingRecordReader;
 import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
@@ -31,25 +30,89 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
-public class CqlHiveRecordReader extends RecordReader<MapWritableComparable, MapWritable>
-        implements org.apache.hadoop.mapred.RecordReader<MapWritableComparable, MapWritable> {
+public class CqlHiveRecordReader extends RecordReader<MapWritableComparable, CassandraRowWritable>
+        implements org.apache.hadoop.mapred.RecordReader<MapWritableComparable, CassandraRowWritable> {
 
   static final Logger LOG = LoggerFactory.getLogger(CqlHiveRecordReader.class);
 
   //private final boolean isTransposed;
-  private final CqlPagingRecordReader cfrr;
+  private final RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> cfrr;
   private Iterator<Map.Entry<String, ByteBuffer>> columnIterator = null;
   private Map.Entry<String, ByteBuffer> currentEntry;
   //private Iterator<IColumn> subColumnIterator = null;
-  private MapWritableComparable currentKey = null;
-  private final MapWritable currentValue = new MapWritable();
+  private final MapWritableComparable currentKey = new MapWritableComparable();
+  private final CassandraRowWritable currentValue;
+  private long pos;
+
+  private final boolean zeroCopy;
+  private final int size;
+  // the name and mapping positions of every column seen in this split
+  private final Map<String, Column> dictionary = new HashMap<String, Column>();
+
+  /**
+   * Bytes of a row of the wrapped reader, to bound how far a {@link PrefetchingRecordReader} reads ahead.
+   */
+  public static final PrefetchingRecordReader.Weigher<Map<String, ByteBuffer>, Map<String, ByteBuffer>> ROW_WEIGHER =
+          new PrefetchingRecordReader.Weigher<Map<String, ByteBuffer>, Map<String, ByteBuffer>>() {
+    public long weigh(Map<String, ByteBuffer> key, Map<String, ByteBuffer> value) {
+      return size(key) + size(value);
+    }
+
+    private long size(Map<String, ByteBuffer> columns) {
+      long size = 0;
+      for (ByteBuffer column : columns.values()) {
+        if (column != null) {
+          size += column.remaining();
+        }
+      }
+      return size;
+    }
+  };
+
+  /**
+   * @param cprr    reader of the CQL rows, the thrift based CqlPagingRecordReader or a {@link NativeCqlRecordReader}
+   * @param columns the column mapping, the cells of each row are put at the position of their column
+   */
+  public CqlHiveRecordReader(RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> cprr, List<String> columns) {
+    this(cprr, columns, false);
+  }
 
-  public CqlHiveRecordReader(CqlPagingRecordReader cprr) { //, boolean isTransposed) {
+  /**
+   * In zero copy mode the cells are slices of the buffers the rows were read from rather than
+   * copies. Either way the row holders are reused, so a row is only valid until the next one is read.
+   *
+   * @param cprr     reader of the CQL rows, the thrift based CqlPagingRecordReader or a {@link NativeCqlRecordReader}
+   * @param columns  the column mapping, the cells of each row are put at the position of their column
+   * @param zeroCopy true to expose the cells without copying them
+   */
+  public CqlHiveRecordReader(RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> cprr, List<String> columns,
+                             boolean zeroCopy) {
     this.cfrr = cprr;
-    //this.isTransposed = isTransposed;
+    this.zeroCopy = zeroCopy;
+    this.size = columns.size();
+    this.currentValue = new CassandraRowWritable(size);
+
+    for (int i = 0; i < size; i++) {
+      Column column = getColumn(columns.get(i));
+      int[] previous = column.positions;
+      column.positions = previous == null ? new int[1] : Arrays.copyOf(previous, previous.length + 1);
+      column.positions[column.positions.length - 1] = i;
+    }
+  }
+
+  private Column getColumn(String name) {
+    Column column = dictionary.get(name);
+    if (column == null) {
+      column = new Column(name);
+      dictionary.put(name, column);
+    }
+    return column;
   }
 
   @Override
@@ -63,35 +126,30 @@ public class CqlHiveRecordReader extends RecordReader<MapWritableComparable, Map
   }
 
   @Override
-  public MapWritable createValue() {
-    return new MapWritable();
+  public CassandraRowWritable createValue() {
+    return new CassandraRowWritable(size);
   }
 
   @Override
   public long getPos() throws IOException {
-    return cfrr.getPos();
+    return pos;
   }
 
   @Override
   public float getProgress() throws IOException {
-    return cfrr.getProgress();
+    try {
+      return cfrr.getProgress();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
   }
 
   public static int callCount = 0;
 
   @Override
-  public boolean next(MapWritableComparable key, MapWritable value) throws IOException {
-    if (!nextKeyValue()) {
-      return false;
-    }
-
-    key.clear();
-    key.putAll(getCurrentKey());
-
-    value.clear();
-    value.putAll(getCurrentValue());
-
-    return true;
+  public boolean next(MapWritableComparable key, CassandraRowWritable value) throws IOException {
+    // the row is read straight into the key and value hive passed in
+    return readRow(key, value);
   }
 
   @Override
@@ -100,51 +158,95 @@ public class CqlHiveRecordReader extends RecordReader<MapWritableComparable, Map
   }
 
   @Override
-  public MapWritable getCurrentValue() {
+  public CassandraRowWritable getCurrentValue() {
     return currentValue;
   }
 
   @Override
   public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
-    cfrr.initialize(split, context);
-  }
-
-  private BytesWritable convertByteBuffer(ByteBuffer val) {
-    if (val == null)
-        return new BytesWritable(new byte[0]);
-    return new BytesWritable(ByteBufferUtil.getArray(val));
+    try {
+      cfrr.initialize(split, context);
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
   }
 
   @Override
   public boolean nextKeyValue() throws IOException {
+    return readRow(currentKey, currentValue);
+  }
 
-    boolean next = false;
+  private boolean readRow(MapWritableComparable key, CassandraRowWritable row) throws IOException {
 
-    // In the case that we are transposing we create a fixed set of columns
-    // per cassandra column
-    next = cfrr.nextKeyValue();
+    boolean next = false;
 
-    currentValue.clear();
+    try {
+      next = cfrr.nextKeyValue();
 
-    if (next) {
-      currentKey = mapToMapWritable(cfrr.getCurrentKey());
+      row.clear();
 
-      // rowKey
-      currentValue.putAll(currentKey);
-      currentValue.putAll(mapToMapWritable(cfrr.getCurrentValue()));
-      //populateMap(cfrr.getCurrentValue(), currentValue);
+      if (next) {
+        pos++;
+        populateRow(cfrr.getCurrentKey(), row, key);
+        populateRow(cfrr.getCurrentValue(), row, null);
+      }
+    } catch (InterruptedException e) {
+      throw new IOException(e);
     }
 
     return next;
   }
 
-  private MapWritableComparable mapToMapWritable(Map<String, ByteBuffer> map) {
-    MapWritableComparable mw = new MapWritableComparable();
+  /**
+   * Put the cells at their positions in the row and, for the key columns, into the key, reusing
+   * the names of the dictionary and the value holders already in the key.
+   */
+  private void populateRow(Map<String, ByteBuffer> map, CassandraRowWritable row, MapWritableComparable key) {
     for (Map.Entry<String, ByteBuffer> e : map.entrySet()) {
-      if(e.getValue()!=null)
-        mw.put(new Text(e.getKey()), convertByteBuffer(e.getValue()));
+      Column column = getColumn(e.getKey());
+      ByteBuffer value = e.getValue();
+      if (value == null) {
+        if (key != null) {
+          key.remove(column.name);
+        }
+        continue;
+      }
+
+      if (column.positions != null) {
+        for (int index : column.positions) {
+          row.set(index, value, zeroCopy);
+        }
+      }
+
+      if (key != null) {
+        BytesWritable holder = (BytesWritable) key.get(column.name);
+        if (holder == null) {
+          holder = new BytesWritable();
+          key.put(column.name, holder);
+        }
+        set(holder, value);
+      }
+    }
+  }
+
+  private static void set(BytesWritable holder, ByteBuffer value) {
+    if (value.hasArray()) {
+      holder.set(value.array(), value.arrayOffset() + value.position(), value.remaining());
+    } else {
+      // emptied first, so that growing it does not copy the previous value
+      holder.setSize(0);
+      holder.setSize(value.remaining());
+      value.duplicate().get(holder.getBytes(), 0, value.remaining());
+    }
+  }
+
+  private static class Column {
+    final Text name;
+    int[] positions;
+
+    Column(String name) {
+      this.name = new Text(name);
     }
-    return mw;
   }
 
 /*  private void populateMap(Map<Map<String, ByteBuffer>, Map<String, ByteBuffer>> cvalue, MapWritable value) {
@@ -0,0 +1,301 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input.cql;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.SchemaDisagreementException;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.CassandraClientHolder;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
+import org.apache.hadoop.hive.cassandra.CassandraException;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads the CQL rows of a set of partitions, cassandra.range.size partitions per
+ * {@code SELECT ... WHERE key IN (...)}, returning them like
+ * {@link org.apache.cassandra.hadoop.cql3.CqlPagingRecordReader}: the primary key columns as key and
+ * the other columns as value. Only column families with a single partition key column are read
+ * this way.
+ */
+public class CqlLookupRecordReader extends RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CqlLookupRecordReader.class);
+
+  private final List<ByteBuffer> keys;
+  private final String[] locations;
+  private final List<String> columns;
+
+  private CassandraClientHolder holder;
+  private Cassandra.Iface client;
+  private ConsistencyLevel consistency;
+  private int batchSize;
+  private List<String> primaryKey;
+  private String select;
+  private final Map<Integer, Integer> statements = new HashMap<Integer, Integer>();
+
+  private int nextKey;
+  private Iterator<CqlRow> rows = Collections.<CqlRow>emptyList().iterator();
+  private Map<String, ByteBuffer> currentKey;
+  private Map<String, ByteBuffer> currentValue;
+
+  /**
+   * @param keys      partition keys to read
+   * @param locations hosts to read them from, tried in order
+   * @param columns   columns to read besides the primary key, all of them if empty
+   */
+  public CqlLookupRecordReader(List<ByteBuffer> keys, String[] locations, List<String> columns) {
+    this.keys = keys;
+    this.locations = locations;
+    this.columns = columns;
+  }
+
+  /**
+   * Connect to the first reachable location. The split is not used, the keys are those the
+   * reader was created with.
+   */
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    String keyspace = ConfigHelper.getInputKeyspace(conf);
+    int port = ConfigHelper.getInputRpcPort(conf);
+
+    List<String> hosts = new ArrayList<String>(Arrays.asList(locations));
+    hosts.add(ConfigHelper.getInputInitialAddress(conf));
+    CassandraException lastError = null;
+    for (String host : hosts) {
+      try {
+        holder = CassandraClientPool.getInstance().borrow(host, port, keyspace);
+        break;
+      } catch (CassandraException e) {
+        LOG.warn("Unable to connect to " + host + ":" + port, e);
+        lastError = e;
+      }
+    }
+    if (holder == null) {
+      throw new IOException(lastError);
+    }
+
+    open(holder.getClient(), conf);
+  }
+
+  /**
+   * Prepare to read through the given client.
+   */
+  void open(Cassandra.Iface client, Configuration conf) throws IOException {
+    this.client = client;
+    String keyspace = ConfigHelper.getInputKeyspace(conf);
+    String columnFamily = ConfigHelper.getInputColumnFamily(conf);
+    consistency = ConsistencyLevel.valueOf(ConfigHelper.getReadConsistencyLevel(conf));
+    batchSize = Math.max(1, ConfigHelper.getRangeBatchSize(conf));
+
+    final String schemaQuery = "SELECT key_aliases, column_aliases FROM system.schema_columnfamilies WHERE keyspace_name = '"
+            + keyspace + "' AND columnfamily_name = '" + columnFamily + "'";
+    CqlResult schema = execute(new Query() {
+      public CqlResult run() throws TException, InvalidRequestException, UnavailableException, TimedOutException,
+              SchemaDisagreementException {
+        return CqlLookupRecordReader.this.client.execute_cql3_query(ByteBufferUtil.bytes(schemaQuery),
+                Compression.NONE, ConsistencyLevel.ONE);
+      }
+    });
+    if (schema.getRows().isEmpty()) {
+      throw new IOException("Column family " + keyspace + "." + columnFamily + " does not exist");
+    }
+
+    List<Column> aliases = schema.getRows().get(0).getColumns();
+    List<String> partitionKey = NativeCqlRecordReader.parseAliases(aliases.get(0).value);
+    if (partitionKey.isEmpty()) {
+      partitionKey.add("key");
+    }
+    if (partitionKey.size() != 1) {
+      throw new IOException("Partitions of " + keyspace + "." + columnFamily
+              + " cannot be looked up, their key has several columns");
+    }
+    primaryKey = new ArrayList<String>(partitionKey);
+    primaryKey.addAll(NativeCqlRecordReader.parseAliases(aliases.get(1).value));
+
+    StringBuilder sb = new StringBuilder("SELECT ");
+    if (columns.isEmpty()) {
+      sb.append("*");
+    } else {
+      List<String> selected = new ArrayList<String>(primaryKey);
+      for (String column : columns) {
+        if (indexOfIgnoreCase(selected, column) < 0) {
+          selected.add(column);
+        }
+      }
+      for (int i = 0; i < selected.size(); i++) {
+        sb.append(i == 0 ? "" : ", ").append(selected.get(i));
+      }
+    }
+    sb.append(" FROM \"").append(keyspace).append("\".\"").append(columnFamily).append("\" WHERE ")
+            .append(partitionKey.get(0)).append(" IN (");
+    select = sb.toString();
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    while (!rows.hasNext()) {
+      if (nextKey >= keys.size()) {
+        return false;
+      }
+      readBatch();
+    }
+
+    CqlRow row = rows.next();
+    currentKey = new LinkedHashMap<String, ByteBuffer>();
+    currentValue = new LinkedHashMap<String, ByteBuffer>();
+    for (Column column : row.getColumns()) {
+      String name = new String(ByteBufferUtil.getArray(column.name), Charsets.UTF_8);
+      if (indexOfIgnoreCase(primaryKey, name) >= 0) {
+        currentKey.put(name, column.value);
+      } else {
+        currentValue.put(name, column.value);
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Map<String, ByteBuffer> getCurrentKey() {
+    return currentKey;
+  }
+
+  @Override
+  public Map<String, ByteBuffer> getCurrentValue() {
+    return currentValue;
+  }
+
+  @Override
+  public float getProgress() {
+    return keys.isEmpty() ? 1 : Math.min(1.0f, (float) nextKey / keys.size());
+  }
+
+  @Override
+  public void close() {
+    if (holder != null) {
+      CassandraClientPool.getInstance().release(holder);
+      holder = null;
+    }
+  }
+
+  private void readBatch() throws IOException {
+    final List<ByteBuffer> batch = keys.subList(nextKey, Math.min(keys.size(), nextKey + batchSize));
+    nextKey += batch.size();
+
+    final int statement = prepare(batch.size());
+    CqlResult result = execute(new Query() {
+      public CqlResult run() throws TException, InvalidRequestException, UnavailableException, TimedOutException,
+              SchemaDisagreementException {
+        return client.execute_prepared_cql3_query(statement, batch, consistency);
+      }
+    });
+    rows = result.getRows().iterator();
+  }
+
+  /**
+   * @return id of the statement selecting the given number of partitions
+   */
+  private int prepare(int count) throws IOException {
+    Integer id = statements.get(count);
+    if (id == null) {
+      StringBuilder sb = new StringBuilder(select);
+      for (int i = 0; i < count; i++) {
+        sb.append(i == 0 ? "?" : ", ?");
+      }
+      // the default limit of 10000 rows would cut off large partitions
+      String query = sb.append(") LIMIT ").append(Integer.MAX_VALUE).toString();
+      try {
+        id = client.prepare_cql3_query(ByteBufferUtil.bytes(query), Compression.NONE).getItemId();
+      } catch (InvalidRequestException e) {
+        throw new IOException(e);
+      } catch (TException e) {
+        invalidate();
+        throw new IOException(e);
+      }
+      statements.put(count, id);
+    }
+    return id;
+  }
+
+  private CqlResult execute(Query query) throws IOException {
+    try {
+      return query.run();
+    } catch (InvalidRequestException e) {
+      throw new IOException(e);
+    } catch (UnavailableException e) {
+      throw new IOException(e);
+    } catch (TimedOutException e) {
+      throw new IOException(e);
+    } catch (SchemaDisagreementException e) {
+      throw new IOException(e);
+    } catch (TException e) {
+      invalidate();
+      throw new IOException(e);
+    }
+  }
+
+  private void invalidate() {
+    if (holder != null) {
+      CassandraClientPool.getInstance().invalidate(holder);
+      holder = null;
+    }
+  }
+
+  private static int indexOfIgnoreCase(List<String> names, String name) {
+    for (int i = 0; i < names.size(); i++) {
+      if (names.get(i).equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private interface Query {
+    CqlResult run() throws TException, InvalidRequestException, UnavailableException, TimedOutException,
+            SchemaDisagreementException;
+  }
+}
@@ -20,6 +20,7 @@ package org.apache.hadoop.hive.cassandra.input.cql;
 
 import org.apache.cassandra.hadoop.ColumnFamilySplit;
 import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.hadoop.cql3.CqlConfigHelper;
 import org.apache.cassandra.hadoop.cql3.CqlPagingInputFormat;
 import org.apache.cassandra.hadoop.cql3.CqlPagingRecordReader;
 import org.apache.cassandra.thrift.ColumnDef;
@@ -28,8 +29,19 @@ import org.apache.cassandra.thrift.SlicePredicate;
 import org.apache.cassandra.thrift.SliceRange;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.cassandra.CassandraException;
 import org.apache.hadoop.hive.cassandra.CassandraPushdownPredicate;
+import org.apache.hadoop.hive.cassandra.TokenRangePredicate;
+import org.apache.hadoop.hive.cassandra.cql.CqlPushdownPredicate;
+import org.apache.hadoop.hive.cassandra.input.CassandraRowWritable;
+import org.apache.hadoop.hive.cassandra.input.HiveCassandraLookupSplit;
+import org.apache.hadoop.hive.cassandra.input.HiveCassandraStandardColumnInputFormat;
 import org.apache.hadoop.hive.cassandra.input.HiveCassandraStandardSplit;
+import org.apache.hadoop.hive.cassandra.input.MultiRangeRecordReader;
+import org.apache.hadoop.hive.cassandra.input.PrefetchingRecordReader;
+import org.apache.hadoop.hive.cassandra.input.SplitPlanCache;
+import org.apache.hadoop.hive.cassandra.input.SplitSampler;
+import org.apache.hadoop.hive.cassandra.input.SplitSizer;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
 import org.apache.hadoop.hive.cassandra.serde.CassandraColumnSerDe;
 import org.apache.hadoop.hive.cassandra.serde.cql.CqlSerDe;
@@ -39,7 +51,6 @@ import org.apache.hadoop.hive.ql.index.IndexSearchCondition;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
 import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
-import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
@@ -52,20 +63,23 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWritable>
-        implements org.apache.hadoop.mapred.InputFormat<MapWritableComparable, MapWritable> {
+public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, CassandraRowWritable>
+        implements org.apache.hadoop.mapred.InputFormat<MapWritableComparable, CassandraRowWritable> {
 
   static final Logger LOG = LoggerFactory.getLogger(HiveCqlInputFormat.class);
 
   private final CqlPagingInputFormat cfif = new CqlPagingInputFormat();
 
   @Override
-  public RecordReader<MapWritableComparable, MapWritable> getRecordReader(InputSplit split,
+  public RecordReader<MapWritableComparable, CassandraRowWritable> getRecordReader(InputSplit split,
                                                                 JobConf jobConf, final Reporter reporter) throws IOException {
     HiveCassandraStandardSplit cassandraSplit = (HiveCassandraStandardSplit) split;
+    cassandraSplit.configure(jobConf);
 
     List<String> columns = CqlSerDe.parseColumnMapping(cassandraSplit.getColumnMapping());
 
@@ -76,7 +90,6 @@ public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWr
       throw new IOException("Cannot read more columns than the given table contains.");
     }
 
-    ColumnFamilySplit cfSplit = cassandraSplit.getSplit();
     Job job = new Job(jobConf);
 
     TaskAttemptContext tac = new TaskAttemptContext(job.getConfiguration(), new TaskAttemptID()) {
@@ -106,13 +119,53 @@ public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWr
       ConfigHelper.setInputSplitSize(tac.getConfiguration(), cassandraSplit.getSplitSize());
 
       LOG.info("Validators : " + tac.getConfiguration().get(CassandraColumnSerDe.CASSANDRA_VALIDATOR_TYPE));
+
+      boolean zeroCopy = jobConf.getBoolean(AbstractCassandraSerDe.CASSANDRA_ZERO_COPY,
+              AbstractCassandraSerDe.DEFAULT_ZERO_COPY);
+
+      if (cassandraSplit instanceof HiveCassandraLookupSplit) {
+        // the pushed down filter is the partition key condition the keys come from
+        HiveCassandraLookupSplit lookup = (HiveCassandraLookupSplit) cassandraSplit;
+        CqlHiveRecordReader rr = new CqlHiveRecordReader(prefetch(jobConf, new CqlLookupRecordReader(lookup.getKeys(),
+                lookup.getLocations(), getReadColumns(columns, readColIDs))), columns, zeroCopy);
+        rr.initialize(null, tac);
+        return rr;
+      }
+
       List<IndexExpression> indexExpr = parseFilterPredicate(jobConf);
       if (indexExpr != null) {
         //We have pushed down a filter from the Hive query, we can use this against secondary indexes
         ConfigHelper.setInputRange(tac.getConfiguration(), indexExpr);
       }
 
-      CqlHiveRecordReader rr = new CqlHiveRecordReader(new CqlPagingRecordReader());
+      ColumnFamilySplit cfSplit = cassandraSplit.getSplit();
+      final boolean nativeTransport = AbstractCassandraSerDe.NATIVE_TRANSPORT.equalsIgnoreCase(
+              jobConf.get(AbstractCassandraSerDe.CASSANDRA_TRANSPORT))
+              && NativeCqlRecordReader.supports(cassandraSplit.getPartitioner());
+      final List<String> readColumns = getReadColumns(columns, readColIDs);
+      if (selectsNonKeyColumns(readColumns, jobConf.get(AbstractCassandraSerDe.CASSANDRA_KEY_COLUMNS))) {
+        // CqlPagingRecordReader selects the partition and clustering keys and then these columns
+        CqlConfigHelper.setInputColumns(tac.getConfiguration(), getInputColumns(readColumns));
+      }
+      MultiRangeRecordReader.ReaderFactory<Map<String, ByteBuffer>, Map<String, ByteBuffer>> factory =
+              new MultiRangeRecordReader.ReaderFactory<Map<String, ByteBuffer>, Map<String, ByteBuffer>>() {
+        public org.apache.hadoop.mapreduce.RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> create() {
+          if (nativeTransport) {
+            return new NativeCqlRecordReader(readColumns);
+          }
+          return new CqlPagingRecordReader();
+        }
+      };
+
+      org.apache.hadoop.mapreduce.RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> rowReader;
+      if (cassandraSplit.getRanges().size() > 1) {
+        rowReader = new MultiRangeRecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>>(
+                cassandraSplit.getRanges(), factory);
+      } else {
+        rowReader = factory.create();
+      }
+
+      CqlHiveRecordReader rr = new CqlHiveRecordReader(prefetch(jobConf, rowReader), columns, zeroCopy);
 
       rr.initialize(cfSplit, tac);
 
@@ -133,9 +186,6 @@ public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWr
     int sliceRangeSize = jobConf.getInt(
             AbstractCassandraSerDe.CASSANDRA_RANGE_BATCH_SIZE,
             AbstractCassandraSerDe.DEFAULT_RANGE_BATCH_SIZE);
-    int splitSize = jobConf.getInt(
-            AbstractCassandraSerDe.CASSANDRA_SPLIT_SIZE,
-            AbstractCassandraSerDe.DEFAULT_SPLIT_SIZE);
     String cassandraColumnMapping = jobConf.get(AbstractCassandraSerDe.CASSANDRA_COL_MAPPING);
     int rpcPort = jobConf.getInt(AbstractCassandraSerDe.CASSANDRA_PORT, 9160);
     String host = jobConf.get(AbstractCassandraSerDe.CASSANDRA_HOST);
@@ -145,6 +195,35 @@ public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWr
       throw new IOException("cassandra.columns.mapping required for Cassandra Table.");
     }
 
+    TokenRangePredicate tokenRange = null;
+    if (jobConf.get(TableScanDesc.FILTER_EXPR_CONF_STR) != null) {
+      List<String> partitionKey;
+      List<ByteBuffer> keys = null;
+      try {
+        partitionKey = CqlPushdownPredicate.getPartitionKey(host, rpcPort, ks, cf);
+        if (partitionKey.size() == 1) {
+          keys = HiveCassandraStandardColumnInputFormat.getLookupKeys(jobConf,
+                  CqlSerDe.parseColumnMapping(cassandraColumnMapping), partitionKey.get(0),
+                  CqlPushdownPredicate.getKeyValidator(host, rpcPort, ks, cf));
+        }
+      } catch (CassandraException e) {
+        throw new IOException(e);
+      }
+      if (keys != null) {
+        List<HiveCassandraLookupSplit> lookups = HiveCassandraStandardColumnInputFormat.getLookupSplits(
+                jobConf, keys, cassandraColumnMapping);
+        for (HiveCassandraLookupSplit lookup : lookups) {
+          lookup.configure(jobConf);
+          lookup.setSplitSize(lookup.getKeys().size());
+        }
+        return lookups.toArray(new InputSplit[lookups.size()]);
+      }
+      if (partitionKey.size() == 1) {
+        tokenRange = HiveCassandraStandardColumnInputFormat.getTokenRange(
+                jobConf, CqlSerDe.parseColumnMapping(cassandraColumnMapping), partitionKey.get(0));
+      }
+    }
+
     SliceRange range = new SliceRange();
     range.setStart(new byte[0]);
     range.setFinish(new byte[0]);
@@ -159,27 +238,35 @@ public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWr
     ConfigHelper.setInputSlicePredicate(jobConf, predicate);
     ConfigHelper.setInputColumnFamily(jobConf, ks, cf);
     ConfigHelper.setRangeBatchSize(jobConf, sliceRangeSize);
-    ConfigHelper.setInputSplitSize(jobConf, splitSize);
+    long rowSize = SplitSizer.getRowSize(jobConf, host, rpcPort, ks, cf, slicePredicateSize);
+    final int rangeRows = SplitSizer.getRangeRows(jobConf, rowSize);
+    ConfigHelper.setInputSplitSize(jobConf, rangeRows);
 
     Job job = new Job(jobConf);
-    JobContext jobContext = new JobContext(job.getConfiguration(), job.getJobID());
+    final JobContext jobContext = new JobContext(job.getConfiguration(), job.getJobID());
 
     Path[] tablePaths = FileInputFormat.getInputPaths(jobContext);
-    List<org.apache.hadoop.mapreduce.InputSplit> splits = getSplits(jobContext);
-    InputSplit[] results = new InputSplit[splits.size()];
+    List<org.apache.hadoop.mapreduce.InputSplit> splits = SplitPlanCache.getInstance().getSplits(
+            jobConf, host, rpcPort, ks, cf, rangeRows, new SplitPlanCache.Planner() {
+      public List<org.apache.hadoop.mapreduce.InputSplit> plan() throws IOException {
+        return getSplits(jobContext);
+      }
+    });
+    splits = HiveCassandraStandardColumnInputFormat.preferLocalReplicas(jobConf, host, rpcPort, ks, splits);
+    if (tokenRange != null) {
+      splits = HiveCassandraStandardColumnInputFormat.restrictToTokenRange(tokenRange, splits);
+    }
+    splits = SplitSampler.sample(jobConf, splits);
+    List<List<ColumnFamilySplit>> combined = HiveCassandraStandardColumnInputFormat.combineRanges(jobConf, splits,
+            SplitSizer.getSplitRows(rangeRows, numSplits, splits));
+    InputSplit[] results = new InputSplit[combined.size()];
 
-    for (int i = 0; i < splits.size(); ++i) {
+    for (int i = 0; i < combined.size(); ++i) {
       HiveCassandraStandardSplit csplit = new HiveCassandraStandardSplit(
-              (ColumnFamilySplit) splits.get(i), cassandraColumnMapping, tablePaths[0]);
-      csplit.setKeyspace(ks);
-      csplit.setColumnFamily(cf);
-      csplit.setRangeBatchSize(sliceRangeSize);
-      csplit.setSplitSize(splitSize);
-      csplit.setHost(host);
-      csplit.setPort(rpcPort);
-      csplit.setSlicePredicateSize(slicePredicateSize);
-      csplit.setPartitioner(partitioner);
-      csplit.setColumnMapping(cassandraColumnMapping);
+              combined.get(i), cassandraColumnMapping, tablePaths[0]);
+      csplit.configure(jobConf);
+      csplit.setSplitSize(rangeRows);
+      csplit.setRowSize(rowSize);
       results[i] = csplit;
     }
     return results;
@@ -206,6 +293,71 @@ public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWr
     return results;
   }
 
+  /**
+   * @return the reader, reading ahead in the background if the job asks for it
+   */
+  private org.apache.hadoop.mapreduce.RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> prefetch(
+          JobConf jobConf, org.apache.hadoop.mapreduce.RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> reader) {
+    if (!jobConf.getBoolean(AbstractCassandraSerDe.CASSANDRA_PREFETCH, AbstractCassandraSerDe.DEFAULT_PREFETCH)) {
+      return reader;
+    }
+    return new PrefetchingRecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>>(reader,
+            jobConf.getLong(AbstractCassandraSerDe.CASSANDRA_PREFETCH_BYTES, AbstractCassandraSerDe.DEFAULT_PREFETCH_BYTES),
+            CqlHiveRecordReader.ROW_WEIGHER);
+  }
+
+  /**
+   * @return names of the columns the query reads, empty if it reads all of them
+   */
+  static List<String> getReadColumns(List<String> columns, List<Integer> readColIDs) {
+    List<String> results = new ArrayList<String>();
+    if (readColIDs.size() == columns.size()) {
+      return results;
+    }
+
+    for (Integer i : readColIDs) {
+      results.add(columns.get(i.intValue()));
+    }
+    return results;
+  }
+
+  /**
+   * CqlPagingRecordReader selects the key columns followed by the other input columns, and
+   * builds an invalid query when there are none. Input columns are only worth setting when a
+   * column outside the key is read.
+   *
+   * @param readColumns columns the query reads, empty if it reads all of them
+   * @param keyColumns  comma separated key columns of the table, null if they are unknown
+   * @return true if the read columns hold a column that is known not to be a key column
+   */
+  static boolean selectsNonKeyColumns(List<String> readColumns, String keyColumns) {
+    if (keyColumns == null) {
+      return false;
+    }
+
+    List<String> keys = Arrays.asList(keyColumns.toLowerCase().split(","));
+    for (String column : readColumns) {
+      if (!keys.contains(column.toLowerCase())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the columns as the comma separated list of cassandra.input.columns
+   */
+  static String getInputColumns(List<String> readColumns) {
+    StringBuilder sb = new StringBuilder();
+    for (String column : readColumns) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(column);
+    }
+    return sb.toString();
+  }
+
   @Override
   public List<org.apache.hadoop.mapreduce.InputSplit> getSplits(JobContext context)
           throws IOException {
@@ -214,11 +366,13 @@ public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWr
 
 
   @Override
-  public org.apache.hadoop.mapreduce.RecordReader<MapWritableComparable, MapWritable> createRecordReader(
+  public org.apache.hadoop.mapreduce.RecordReader<MapWritableComparable, CassandraRowWritable> createRecordReader(
           org.apache.hadoop.mapreduce.InputSplit arg0, TaskAttemptContext tac) throws IOException,
           InterruptedException {
 
-    return new CqlHiveRecordReader(new CqlPagingRecordReader());
+    List<String> columns = CqlSerDe.parseColumnMapping(
+            tac.getConfiguration().get(AbstractCassandraSerDe.CASSANDRA_COL_MAPPING));
+    return new CqlHiveRecordReader(new CqlPagingRecordReader(), columns);
   }
 
   /**
@@ -242,6 +396,10 @@ public class HiveCqlInputFormat extends InputFormat<MapWritableComparable, MapWr
     }
 
     ExprNodeDesc filterExpr = Utilities.deserializeExpression(filterExprSerialized, jobConf);
+    if (TokenRangePredicate.isTokenRange(filterExpr)) {
+      // the splits are already restricted to the token range
+      return null;
+    }
     String encodedIndexedColumns = jobConf.get(AbstractCassandraSerDe.CASSANDRA_INDEXED_COLUMNS);
     Set<ColumnDef> indexedColumns = CassandraPushdownPredicate.deserializeIndexedColumns(encodedIndexedColumns);
     if (indexedColumns.isEmpty()) {
@@ -18,6 +18,8 @@
 
 package org.apache.hadoop.hive.cassandra.input.cql;
 
+import org.apache.hadoop.hive.cassandra.input.ByteSliceWritable;
+import org.apache.hadoop.hive.cassandra.input.CassandraRowWritable;
 import org.apache.hadoop.hive.cassandra.serde.CassandraLazyFactory;
 import org.apache.hadoop.hive.serde2.lazy.ByteArrayRef;
 import org.apache.hadoop.hive.serde2.lazy.LazyObject;
@@ -26,9 +28,6 @@ import org.apache.hadoop.hive.serde2.lazy.objectinspector.LazyMapObjectInspector
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.LazySimpleStructObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.StructField;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
-import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.MapWritable;
-import org.apache.hadoop.io.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,23 +39,20 @@ public class LazyCqlRow extends LazyStruct {
   static final Logger LOG = LoggerFactory.getLogger(LazyCqlRow.class);
 
   private List<String> cassandraColumns;
-  private List<Text> cassandraColumnsBB;
-  private MapWritable columnMap;
+  private CassandraRowWritable row;
   private ArrayList<Object> cachedList;
 
   public LazyCqlRow(LazySimpleStructObjectInspector oi) {
     super(oi);
   }
 
-  public void init(MapWritable columnMap, List<String> cassandraColumns, List<Text> cassandraColumnsBB) {
-    this.columnMap = columnMap;
+  /**
+   * @param row              cells of the row, at the positions of their columns in the mapping
+   * @param cassandraColumns the column mapping
+   */
+  public void init(CassandraRowWritable row, List<String> cassandraColumns) {
+    this.row = row;
     this.cassandraColumns = cassandraColumns;
-    this.cassandraColumnsBB = cassandraColumnsBB;
-
-    // these should always be equal
-    if (cassandraColumns.size() != cassandraColumnsBB.size()) {
-      throw new IllegalStateException();
-    }
 
     setParsed(false);
   }
@@ -97,7 +93,6 @@ public class LazyCqlRow extends LazyStruct {
     if (!getFieldInited()[fieldID]) {
       getFieldInited()[fieldID] = true;
       String columnName = cassandraColumns.get(fieldID);
-      Text columnNameText = cassandraColumnsBB.get(fieldID);
 
       LazyObject obj = getFields()[fieldID];
       if (columnName.endsWith(":")) {
@@ -106,14 +101,13 @@ public class LazyCqlRow extends LazyStruct {
         return null;
       } else {
         // user wants the value of a single column
-        BytesWritable columnValue = (BytesWritable) columnMap.get(columnNameText);
+        ByteSliceWritable columnValue = row.get(fieldID);
 
         if (columnValue != null) {
           final ByteArrayRef ref = new ByteArrayRef();
-          ref.setData(columnValue.getBytes());
-          // columnValue.getBytes() might have spare capacity; data is only
-          // valid up to columnValue.getLength()
-          obj.init(ref, 0, columnValue.getLength());
+          ref.setData(columnValue.getArray());
+          // the cell is only part of the array
+          obj.init(ref, columnValue.getOffset(), columnValue.getLength());
         } else {
           return null;
         }
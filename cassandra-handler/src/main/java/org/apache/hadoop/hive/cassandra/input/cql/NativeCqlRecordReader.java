@@ -0,0 +1,401 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.input.cql;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.cql.NativeConnection;
+import org.apache.hadoop.hive.cassandra.cql.NativeResult;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Reads the CQL rows of a split through the native protocol, returning them like
+ * {@link org.apache.cassandra.hadoop.cql3.CqlPagingRecordReader}: the primary key columns as key
+ * and the other columns as value.
+ *
+ * Rows are read in pages of cassandra.range.size rows ordered by token. Version 1 of the protocol
+ * cannot page inside a partition, so a partition cut off at the end of a page is read again in
+ * full by the next page, or on its own if it fills a page by itself. The next page is requested
+ * before the rows of the current one are handed out. Only the Murmur3 and Random partitioners
+ * are supported, their tokens can be written as CQL literals.
+ */
+public class NativeCqlRecordReader extends RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NativeCqlRecordReader.class);
+
+  private final List<String> columns;
+
+  private NativeConnection connection;
+  private ConsistencyLevel consistency;
+  private boolean murmur3;
+  private int pageSize;
+  private long expectedRows;
+  private long rowsRead;
+
+  private List<String> partitionKey;
+  private List<String> primaryKey;
+  private String select;
+
+  /**
+   * Token ranges (start, end] still to read, null for an open bound.
+   */
+  private final List<String[]> ranges = new ArrayList<String[]>();
+  private ListenableFuture<NativeResult> nextPage;
+  private String[] pageRange;
+  private List<ByteBuffer[]> rows = Collections.emptyList();
+  private Iterator<ByteBuffer[]> rowIterator = rows.iterator();
+  private List<String> rowColumns;
+
+  private Map<String, ByteBuffer> currentKey;
+  private Map<String, ByteBuffer> currentValue;
+
+  /**
+   * @param columns columns to read besides the primary key, all of them if empty
+   */
+  public NativeCqlRecordReader(List<String> columns) {
+    this.columns = columns;
+  }
+
+  /**
+   * @param partitioner partitioner class of the cluster
+   * @return true if the tokens of the partitioner can be written as CQL literals
+   */
+  public static boolean supports(String partitioner) {
+    return partitioner != null && (partitioner.endsWith("Murmur3Partitioner") || partitioner.endsWith(".RandomPartitioner"));
+  }
+
+  @Override
+  public void initialize(InputSplit split, TaskAttemptContext context) throws IOException {
+    Configuration conf = context.getConfiguration();
+    ColumnFamilySplit cfSplit = (ColumnFamilySplit) split;
+
+    String keyspace = ConfigHelper.getInputKeyspace(conf);
+    String columnFamily = ConfigHelper.getInputColumnFamily(conf);
+    murmur3 = ConfigHelper.getInputPartitioner(conf) instanceof Murmur3Partitioner;
+    pageSize = ConfigHelper.getRangeBatchSize(conf);
+    consistency = ConsistencyLevel.valueOf(ConfigHelper.getReadConsistencyLevel(conf));
+    expectedRows = cfSplit.getLength();
+
+    connection = connect(cfSplit.getLocations(), ConfigHelper.getInputInitialAddress(conf),
+            Integer.parseInt(conf.get(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT,
+                    AbstractCassandraSerDe.DEFAULT_NATIVE_PORT)));
+
+    readPrimaryKey(keyspace, columnFamily);
+
+    StringBuilder sb = new StringBuilder("SELECT ");
+    List<String> selected = new ArrayList<String>(primaryKey);
+    if (columns.isEmpty()) {
+      sb.append("*");
+    } else {
+      for (String column : columns) {
+        if (!containsIgnoreCase(selected, column)) {
+          selected.add(column);
+        }
+      }
+      sb.append(join(selected));
+    }
+    sb.append(", ").append(getTokenFunction()).append(" FROM ").append(quote(keyspace)).append(".")
+            .append(quote(columnFamily));
+    select = sb.toString();
+
+    ranges.addAll(splitRange(cfSplit.getStartToken(), cfSplit.getEndToken()));
+    requestNextPage();
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException {
+    while (!rowIterator.hasNext()) {
+      if (nextPage == null) {
+        return false;
+      }
+      fetchPage();
+    }
+
+    ByteBuffer[] row = rowIterator.next();
+    currentKey = new LinkedHashMap<String, ByteBuffer>();
+    currentValue = new LinkedHashMap<String, ByteBuffer>();
+    // the last column is the token
+    for (int i = 0; i < row.length - 1; i++) {
+      String name = rowColumns.get(i);
+      if (containsIgnoreCase(primaryKey, name)) {
+        currentKey.put(name, row[i]);
+      } else {
+        currentValue.put(name, row[i]);
+      }
+    }
+    rowsRead++;
+    return true;
+  }
+
+  @Override
+  public Map<String, ByteBuffer> getCurrentKey() {
+    return currentKey;
+  }
+
+  @Override
+  public Map<String, ByteBuffer> getCurrentValue() {
+    return currentValue;
+  }
+
+  @Override
+  public float getProgress() {
+    if (expectedRows <= 0) {
+      return 0;
+    }
+    return Math.min(1.0f, (float) rowsRead / expectedRows);
+  }
+
+  @Override
+  public void close() {
+    if (connection != null) {
+      connection.close();
+      connection = null;
+    }
+  }
+
+  /**
+   * Wait for the page requested last, keep the rows of complete partitions and request the next page.
+   */
+  private void fetchPage() throws IOException {
+    NativeResult result = NativeConnection.await(nextPage);
+    nextPage = null;
+    rowColumns = result.getColumnNames();
+    List<ByteBuffer[]> page = result.getRows();
+    String[] range = pageRange;
+
+    if (page.size() < pageSize) {
+      // the range is done
+      ranges.remove(0);
+    } else {
+      int cut = getLastPartitionStart(page);
+      if (cut > 0) {
+        // the last partition may go on, read it again with the next page
+        page = page.subList(0, cut);
+      } else {
+        // a single partition fills the page, read the whole of it
+        ByteBuffer[] first = page.get(0);
+        page = readPartition(first);
+        if (page.isEmpty()) {
+          // the partition was deleted meanwhile, go on after it
+          ranges.set(0, new String[]{getToken(first), range[1]});
+        }
+      }
+      if (!page.isEmpty()) {
+        ranges.set(0, new String[]{getToken(page.get(page.size() - 1)), range[1]});
+      }
+    }
+
+    requestNextPage();
+    rows = page;
+    rowIterator = rows.iterator();
+  }
+
+  private void requestNextPage() throws IOException {
+    if (ranges.isEmpty()) {
+      nextPage = null;
+      return;
+    }
+
+    pageRange = ranges.get(0);
+    StringBuilder sb = new StringBuilder(select);
+    String token = getTokenFunction();
+    if (pageRange[0] != null) {
+      sb.append(" WHERE ").append(token).append(" > ").append(pageRange[0]);
+    }
+    if (pageRange[1] != null) {
+      sb.append(pageRange[0] == null ? " WHERE " : " AND ").append(token).append(" <= ").append(pageRange[1]);
+    }
+    sb.append(" LIMIT ").append(pageSize);
+    nextPage = connection.query(sb.toString(), consistency);
+  }
+
+  /**
+   * @return all rows of the partition of the given row
+   */
+  private List<ByteBuffer[]> readPartition(ByteBuffer[] row) throws IOException {
+    StringBuilder sb = new StringBuilder(select).append(" WHERE ");
+    List<ByteBuffer> values = new ArrayList<ByteBuffer>(partitionKey.size());
+    for (int i = 0; i < partitionKey.size(); i++) {
+      sb.append(i == 0 ? "" : " AND ").append(quote(partitionKey.get(i))).append(" = ?");
+      values.add(row[indexOfIgnoreCase(rowColumns, partitionKey.get(i))]);
+    }
+    sb.append(" LIMIT ").append(Integer.MAX_VALUE);
+
+    byte[] id = NativeConnection.await(connection.prepare(sb.toString())).getPreparedId();
+    return NativeConnection.await(connection.execute(id, values, consistency)).getRows();
+  }
+
+  /**
+   * @return index of the first row of the last partition of the page
+   */
+  int getLastPartitionStart(List<ByteBuffer[]> page) {
+    int last = page.size() - 1;
+    ByteBuffer token = page.get(last)[page.get(last).length - 1];
+    int i = last;
+    while (i > 0 && token.equals(page.get(i - 1)[page.get(i - 1).length - 1])) {
+      i--;
+    }
+    return i;
+  }
+
+  private String getToken(ByteBuffer[] row) {
+    ByteBuffer token = row[row.length - 1];
+    return murmur3 ? Long.toString(token.getLong(token.position()))
+            : new BigInteger(ByteBufferUtil.getArray(token)).toString();
+  }
+
+  private String getTokenFunction() {
+    return "token(" + join(partitionKey) + ")";
+  }
+
+  /**
+   * Split a range (start, end] that wraps around the ring into ranges that do not.
+   *
+   * @return ranges as {start, end}, null for an open bound
+   */
+  static List<String[]> splitRange(String start, String end) {
+    BigInteger s = new BigInteger(start);
+    BigInteger e = new BigInteger(end);
+    int cmp = s.compareTo(e);
+
+    if (cmp < 0) {
+      return Collections.singletonList(new String[]{start, end});
+    } else if (cmp == 0) {
+      // the whole ring
+      return Collections.singletonList(new String[]{null, null});
+    }
+    return Arrays.asList(new String[]{start, null}, new String[]{null, end});
+  }
+
+  /**
+   * Read the partition and clustering columns of the column family from the schema tables.
+   */
+  private void readPrimaryKey(String keyspace, String columnFamily) throws IOException {
+    String query = "SELECT key_aliases, column_aliases FROM system.schema_columnfamilies WHERE keyspace_name = '"
+            + keyspace + "' AND columnfamily_name = '" + columnFamily + "'";
+    List<ByteBuffer[]> schema = NativeConnection.await(connection.query(query, ConsistencyLevel.ONE)).getRows();
+    if (schema.isEmpty()) {
+      throw new IOException("Column family " + keyspace + "." + columnFamily + " does not exist");
+    }
+
+    partitionKey = parseAliases(schema.get(0)[0]);
+    if (partitionKey.isEmpty()) {
+      partitionKey = Collections.singletonList("key");
+    }
+    primaryKey = new ArrayList<String>(partitionKey);
+    primaryKey.addAll(parseAliases(schema.get(0)[1]));
+  }
+
+  /**
+   * @param aliases a JSON list of names as stored in the schema tables, e.g. ["id","ts"]
+   */
+  public static List<String> parseAliases(ByteBuffer aliases) {
+    List<String> names = new ArrayList<String>();
+    if (aliases == null) {
+      return names;
+    }
+
+    String json = new String(ByteBufferUtil.getArray(aliases), Charsets.UTF_8).trim();
+    if (json.startsWith("[")) {
+      json = json.substring(1, json.length() - 1);
+    }
+    for (String name : json.split(",")) {
+      name = name.trim();
+      if (name.startsWith("\"") && name.endsWith("\"") && name.length() > 1) {
+        name = name.substring(1, name.length() - 1);
+      }
+      if (!name.isEmpty()) {
+        names.add(name);
+      }
+    }
+    return names;
+  }
+
+  private static NativeConnection connect(String[] locations, String initialAddress, int port) throws IOException {
+    List<String> hosts = new ArrayList<String>(Arrays.asList(locations));
+    if (initialAddress != null) {
+      hosts.add(initialAddress);
+    }
+
+    IOException lastError = null;
+    for (String host : hosts) {
+      try {
+        return NativeConnection.connect(host, port, (int) AbstractCassandraSerDe.DEFAULT_POOL_BORROW_TIMEOUT);
+      } catch (IOException e) {
+        LOG.warn("Unable to connect to " + host + ":" + port, e);
+        lastError = e;
+      }
+    }
+    throw lastError;
+  }
+
+  private static String join(List<String> names) {
+    StringBuilder sb = new StringBuilder();
+    for (String name : names) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(quote(name));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Quote an identifier as {@link org.apache.cassandra.hadoop.cql3.CqlPagingRecordReader} does.
+   */
+  static String quote(String identifier) {
+    return "\"" + identifier.replaceAll("\"", "\"\"") + "\"";
+  }
+
+  private static boolean containsIgnoreCase(List<String> names, String name) {
+    return indexOfIgnoreCase(names, name) >= 0;
+  }
+
+  private static int indexOfIgnoreCase(List<String> names, String name) {
+    for (int i = 0; i < names.size(); i++) {
+      if (names.get(i).equalsIgnoreCase(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
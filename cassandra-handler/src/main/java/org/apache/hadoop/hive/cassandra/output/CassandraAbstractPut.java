@@ -19,10 +19,13 @@
 package org.apache.hadoop.hive.cassandra.output;
 
 import org.apache.cassandra.thrift.*;
+import org.apache.hadoop.hive.cassandra.CassandraException;
 import org.apache.hadoop.hive.cassandra.CassandraProxyClient;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -31,6 +34,32 @@ import java.util.Map;
 
 public abstract class CassandraAbstractPut implements Put {
 
+  private static final Logger LOG = LoggerFactory.getLogger(CassandraAbstractPut.class);
+
+  /**
+   * Send the writes of the given client straight to a replica of each row, unless disabled with
+   * cassandra.write.token.aware. The ring is described with the partitioner of the job; if that
+   * fails the writes keep going through the connected node.
+   *
+   * @param client   cassandra client used by the writer
+   * @param keySpace cassandra key space written to
+   * @param jc       job configuration
+   */
+  public static void enableTokenAwareRouting(CassandraProxyClient client, String keySpace, JobConf jc) {
+    if (!jc.getBoolean(AbstractCassandraSerDe.CASSANDRA_TOKEN_AWARE_WRITES,
+            AbstractCassandraSerDe.DEFAULT_TOKEN_AWARE_WRITES)) {
+      return;
+    }
+
+    String partitioner = jc.get(AbstractCassandraSerDe.CASSANDRA_PARTITIONER,
+            AbstractCassandraSerDe.DEFAULT_CASSANDRA_PARTITIONER);
+    try {
+      client.enableTokenAwareRouting(keySpace, partitioner);
+    } catch (CassandraException e) {
+      LOG.warn("Unable to route writes to replicas, sending them through the connected node", e);
+    }
+  }
+
   /**
    * Parse batch mutation size from job configuration. If none is defined, return the default value 500.
    *
@@ -77,8 +106,11 @@ public abstract class CassandraAbstractPut implements Put {
       ConsistencyLevel flevel,
       Map<ByteBuffer, Map<String,List<Mutation>>> mutation_map) throws IOException {
     try {
-      client.getProxyConnection().set_keyspace(keySpace);
-      client.getProxyConnection().batch_mutate(mutation_map, flevel);
+      // Writers commit one row key at a time, route it to a replica of that key.
+      ByteBuffer key = mutation_map.size() == 1 ? mutation_map.keySet().iterator().next() : null;
+      Cassandra.Iface connection = client.getProxyConnection(key);
+      connection.set_keyspace(keySpace);
+      connection.batch_mutate(mutation_map, flevel);
     } catch (InvalidRequestException e) {
       throw new IOException(e);
     } catch (UnavailableException e) {
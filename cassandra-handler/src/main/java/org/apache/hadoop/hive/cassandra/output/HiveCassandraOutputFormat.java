@@ -21,7 +21,10 @@ package org.apache.hadoop.hive.cassandra.output;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.cassandra.CassandraException;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
+import org.apache.hadoop.hive.cassandra.ClientMetrics;
 import org.apache.hadoop.hive.cassandra.CassandraProxyClient;
+import org.apache.hadoop.hive.cassandra.RingTopologyService;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
 import org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter;
 import org.apache.hadoop.hive.ql.io.HiveOutputFormat;
@@ -44,16 +47,21 @@ public class HiveCassandraOutputFormat implements HiveOutputFormat<Text, Cassand
   @Override
   public RecordWriter getHiveRecordWriter(final JobConf jc, Path finalOutPath,
       Class<? extends Writable> valueClass, boolean isCompressed, Properties tableProperties,
-      Progressable progress) throws IOException {
+      final Progressable progress) throws IOException {
 
     final String cassandraKeySpace = jc.get(AbstractCassandraSerDe.CASSANDRA_KEYSPACE_NAME);
     final String cassandraHost = jc.get(AbstractCassandraSerDe.CASSANDRA_HOST);
     final int cassandraPort = Integer.parseInt(jc.get(AbstractCassandraSerDe.CASSANDRA_PORT));
 
+    final ClientMetrics.Snapshot metrics = ClientMetrics.getInstance().snapshot();
+    CassandraClientPool.getInstance().configure(jc);
+    RingTopologyService.getInstance().configure(jc);
     final CassandraProxyClient client;
     try {
       client = new CassandraProxyClient(
-        cassandraHost, cassandraPort, true, true);
+        cassandraHost, cassandraPort, true, CassandraProxyClient.getPolicy(jc));
+      client.setRetryPolicy(CassandraProxyClient.getRetryPolicy(jc));
+      CassandraAbstractPut.enableTokenAwareRouting(client, cassandraKeySpace, jc);
     } catch (CassandraException e) {
       throw new IOException(e);
     }
@@ -65,6 +73,7 @@ public class HiveCassandraOutputFormat implements HiveOutputFormat<Text, Cassand
         if (client != null) {
           client.close();
         }
+        metrics.publishChanges(progress);
       }
 
       @Override
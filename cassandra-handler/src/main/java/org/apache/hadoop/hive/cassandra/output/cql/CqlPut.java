@@ -23,6 +23,7 @@ import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.hadoop.hive.cassandra.CassandraProxyClient;
 import org.apache.hadoop.hive.cassandra.output.CassandraAbstractPut;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.hive.cassandra.serde.cql.CqlSerDe;
 import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.thrift.TException;
@@ -110,9 +111,49 @@ public class CqlPut extends CassandraAbstractPut implements Writable {
   @Override
   public void write(String keySpace, CassandraProxyClient client, JobConf jc) throws IOException {
     ConsistencyLevel flevel = getConsistencyLevel(jc);
+    List<ByteBuffer> values = new ArrayList<ByteBuffer>();
+    String query = getInsertStatement(jc, values);
 
-      List<ByteBuffer> values = new ArrayList<ByteBuffer>();
+      try {
+          //tODO check compression
+          Cassandra.Iface connection = client.getProxyConnection(getPartitionKey(jc));
+          connection.set_keyspace(keySpace);
+          CqlPreparedResult result = connection.prepare_cql3_query(ByteBufferUtil.bytes(query), Compression.NONE);
+          connection.execute_prepared_cql3_query(result.itemId, values, flevel);
+      } catch (InvalidRequestException e) {
+          throw new IOException(e);
+      } catch (TException e) {
+          throw new IOException(e);
+      } catch (UnavailableException e) {
+          throw new IOException(e);
+      } catch (TimedOutException e) {
+          throw new IOException(e);
+      } catch (SchemaDisagreementException e) {
+          throw new IOException(e);
+      }
+  }
 
+  /**
+   * Write this row through the native protocol. The write may still be in flight when this returns.
+   *
+   * @param writer native writer of the task
+   * @param jc     job configuration
+   * @throws IOException if this or an earlier write failed
+   */
+  public void write(NativeCqlWriter writer, JobConf jc) throws IOException {
+    List<ByteBuffer> values = new ArrayList<ByteBuffer>();
+    String query = getInsertStatement(jc, values);
+    writer.write(query, values, getConsistencyLevel(jc));
+  }
+
+  /**
+   * Build the INSERT statement of this row, with a marker for each column.
+   *
+   * @param jc     job configuration
+   * @param values receives the values of the markers
+   * @return the statement
+   */
+  String getInsertStatement(JobConf jc, List<ByteBuffer> values) {
       StringBuilder valuesBuilder = new StringBuilder(" VALUES (");
       StringBuilder queryBuilder = new StringBuilder("INSERT INTO ");
       queryBuilder.append(jc.get(AbstractCassandraSerDe.CASSANDRA_CF_NAME));
@@ -133,22 +174,74 @@ public class CqlPut extends CassandraAbstractPut implements Writable {
       valuesBuilder.append(")");
 
       queryBuilder.append(valuesBuilder);
+      return queryBuilder.toString();
+  }
 
-      try {
-          //tODO check compression
-          client.getProxyConnection().set_keyspace(keySpace);
-          CqlPreparedResult result = client.getProxyConnection().prepare_cql3_query(ByteBufferUtil.bytes(queryBuilder.toString()), Compression.NONE);
-          client.getProxyConnection().execute_prepared_cql3_query(result.itemId, values, flevel);
-      } catch (InvalidRequestException e) {
-          throw new IOException(e);
-      } catch (TException e) {
-          throw new IOException(e);
-      } catch (UnavailableException e) {
-          throw new IOException(e);
-      } catch (TimedOutException e) {
-          throw new IOException(e);
-      } catch (SchemaDisagreementException e) {
-          throw new IOException(e);
+  /**
+   * Serialize the partition key of this row the way cassandra does before hashing it: the
+   * value itself for a single column key, and each value prefixed with its length and followed
+   * by a zero byte for a composite key.
+   *
+   * @param jc job configuration holding cql.primarykey; the first column is the key if it is not set
+   * @return partition key, or null if a key column is missing from this row
+   */
+  ByteBuffer getPartitionKey(JobConf jc) {
+    List<String> keyColumns = getPartitionKeyColumns(jc.get(CqlSerDe.CASSANDRA_COLUMN_FAMILY_PRIMARY_KEY));
+    if (keyColumns.isEmpty()) {
+      return columns.isEmpty() ? null : ByteBuffer.wrap(columns.get(0).getValue());
+    }
+
+    byte[][] values = new byte[keyColumns.size()][];
+    int length = 0;
+    for (int i = 0; i < values.length; i++) {
+      for (CqlColumn column : columns) {
+        if (keyColumns.get(i).equalsIgnoreCase(new String(column.getColumn()))) {
+          values[i] = column.getValue();
+          break;
+        }
+      }
+      if (values[i] == null) {
+        return null;
+      }
+      length += values[i].length;
+    }
+
+    if (values.length == 1) {
+      return ByteBuffer.wrap(values[0]);
+    }
+
+    ByteBuffer key = ByteBuffer.allocate(length + 3 * values.length);
+    for (byte[] value : values) {
+      key.putShort((short) value.length);
+      key.put(value);
+      key.put((byte) 0);
+    }
+    key.flip();
+    return key;
+  }
+
+  /**
+   * Parse the partition key out of a primary key definition such as "id", "id, ts" or "(id, bucket), ts".
+   *
+   * @param primaryKey value of cql.primarykey, may be null
+   * @return the partition key columns, empty if no primary key is defined
+   */
+  static List<String> getPartitionKeyColumns(String primaryKey) {
+    List<String> keyColumns = new ArrayList<String>();
+    if (primaryKey == null || primaryKey.trim().isEmpty()) {
+      return keyColumns;
+    }
+
+    String key = primaryKey.trim();
+    if (key.startsWith("(")) {
+      int end = key.indexOf(')');
+      key = key.substring(1, end < 0 ? key.length() : end);
+      for (String column : key.split(",")) {
+        keyColumns.add(column.trim());
       }
+    } else {
+      keyColumns.add(key.split(",")[0].trim());
+    }
+    return keyColumns;
   }
-}
\ No newline at end of file
+}
@@ -21,7 +21,11 @@ package org.apache.hadoop.hive.cassandra.output.cql;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.cassandra.CassandraException;
+import org.apache.hadoop.hive.cassandra.CassandraClientPool;
+import org.apache.hadoop.hive.cassandra.ClientMetrics;
 import org.apache.hadoop.hive.cassandra.CassandraProxyClient;
+import org.apache.hadoop.hive.cassandra.RingTopologyService;
+import org.apache.hadoop.hive.cassandra.output.CassandraAbstractPut;
 import org.apache.hadoop.hive.cassandra.output.Put;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
 import org.apache.hadoop.hive.ql.exec.FileSinkOperator.RecordWriter;
@@ -45,16 +49,39 @@ public class HiveCqlOutputFormat implements HiveOutputFormat<Text, CqlPut>,
   @Override
   public RecordWriter getHiveRecordWriter(final JobConf jc, Path finalOutPath,
                                           Class<? extends Writable> valueClass, boolean isCompressed, Properties tableProperties,
-                                          Progressable progress) throws IOException {
+                                          final Progressable progress) throws IOException {
 
     final String cassandraKeySpace = jc.get(AbstractCassandraSerDe.CASSANDRA_KEYSPACE_NAME);
     final String cassandraHost = jc.get(AbstractCassandraSerDe.CASSANDRA_HOST);
     final int cassandraPort = Integer.parseInt(jc.get(AbstractCassandraSerDe.CASSANDRA_PORT));
 
+    if (AbstractCassandraSerDe.NATIVE_TRANSPORT.equalsIgnoreCase(jc.get(AbstractCassandraSerDe.CASSANDRA_TRANSPORT))) {
+      final NativeCqlWriter writer = NativeCqlWriter.open(jc, cassandraHost, cassandraKeySpace);
+
+      return new RecordWriter() {
+
+        @Override
+        public void close(boolean abort) throws IOException {
+          writer.close();
+        }
+
+        @Override
+        public void write(Writable w) throws IOException {
+          ((CqlPut) w).write(writer, jc);
+        }
+
+      };
+    }
+
+    final ClientMetrics.Snapshot metrics = ClientMetrics.getInstance().snapshot();
+    CassandraClientPool.getInstance().configure(jc);
+    RingTopologyService.getInstance().configure(jc);
     final CassandraProxyClient client;
     try {
       client = new CassandraProxyClient(
-              cassandraHost, cassandraPort, true, true);
+              cassandraHost, cassandraPort, true, CassandraProxyClient.getPolicy(jc));
+      client.setRetryPolicy(CassandraProxyClient.getRetryPolicy(jc));
+      CassandraAbstractPut.enableTokenAwareRouting(client, cassandraKeySpace, jc);
     } catch (CassandraException e) {
       throw new IOException(e);
     }
@@ -66,6 +93,7 @@ public class HiveCqlOutputFormat implements HiveOutputFormat<Text, CqlPut>,
         if (client != null) {
           client.close();
         }
+        metrics.publishChanges(progress);
       }
 
       @Override
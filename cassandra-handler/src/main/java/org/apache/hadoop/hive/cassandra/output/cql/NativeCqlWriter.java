@@ -0,0 +1,143 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.output.cql;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.hadoop.hive.cassandra.cql.NativeConnection;
+import org.apache.hadoop.hive.cassandra.cql.NativeResult;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapred.JobConf;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Writes rows through one native protocol connection without waiting for each write to be
+ * acknowledged. Up to cassandra.native.max.in.flight writes are outstanding at a time; the first
+ * failed write fails the next call to {@link #write} or {@link #close}.
+ */
+public class NativeCqlWriter {
+
+  private final NativeConnection connection;
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+  private final Map<String, byte[]> prepared = new HashMap<String, byte[]>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+  private final FutureCallback<NativeResult> callback = new FutureCallback<NativeResult>() {
+    public void onSuccess(NativeResult result) {
+      inFlight.release();
+    }
+
+    public void onFailure(Throwable t) {
+      failure.compareAndSet(null, t);
+      inFlight.release();
+    }
+  };
+
+  NativeCqlWriter(NativeConnection connection, int maxInFlight) {
+    this.connection = connection;
+    this.maxInFlight = Math.max(1, Math.min(maxInFlight, NativeConnection.MAX_STREAMS));
+    this.inFlight = new Semaphore(this.maxInFlight);
+  }
+
+  /**
+   * Connect to the native port of the host and use the keyspace.
+   *
+   * @param jc       job configuration
+   * @param host     cassandra host
+   * @param keySpace keyspace the writes go to
+   * @return a writer
+   * @throws IOException if the connection cannot be made
+   */
+  public static NativeCqlWriter open(JobConf jc, String host, String keySpace) throws IOException {
+    int port = Integer.parseInt(jc.get(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT,
+            AbstractCassandraSerDe.DEFAULT_NATIVE_PORT));
+    NativeConnection connection = NativeConnection.connect(host, port,
+            (int) AbstractCassandraSerDe.DEFAULT_POOL_BORROW_TIMEOUT);
+    try {
+      NativeConnection.await(connection.query("USE \"" + keySpace + "\"", ConsistencyLevel.ONE));
+    } catch (IOException e) {
+      connection.close();
+      throw e;
+    }
+
+    return new NativeCqlWriter(connection, jc.getInt(AbstractCassandraSerDe.CASSANDRA_NATIVE_MAX_IN_FLIGHT,
+            AbstractCassandraSerDe.DEFAULT_NATIVE_MAX_IN_FLIGHT));
+  }
+
+  /**
+   * Send a statement, preparing it the first time it is seen. Blocks only while the maximum
+   * number of writes is in flight.
+   *
+   * @param cql         statement with ? markers
+   * @param values      values of the markers
+   * @param consistency consistency level of the write
+   * @throws IOException if this or an earlier write failed
+   */
+  public void write(String cql, List<ByteBuffer> values, ConsistencyLevel consistency) throws IOException {
+    checkFailure();
+
+    byte[] id = prepared.get(cql);
+    if (id == null) {
+      id = NativeConnection.await(connection.prepare(cql)).getPreparedId();
+      prepared.put(cql, id);
+    }
+
+    inFlight.acquireUninterruptibly();
+    try {
+      Futures.addCallback(connection.execute(id, values, consistency), callback);
+    } catch (IOException e) {
+      inFlight.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Wait for the writes in flight and close the connection.
+   *
+   * @throws IOException if a write failed
+   */
+  public void close() throws IOException {
+    try {
+      inFlight.acquireUninterruptibly(maxInFlight);
+      inFlight.release(maxInFlight);
+      checkFailure();
+    } finally {
+      connection.close();
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable t = failure.get();
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    } else if (t != null) {
+      throw new IOException(t);
+    }
+  }
+}
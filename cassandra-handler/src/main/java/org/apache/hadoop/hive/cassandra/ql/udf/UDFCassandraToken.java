@@ -0,0 +1,67 @@
+/**
+ * Licensed to Tuplejump Software Pvt. Ltd. under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  Tuplejump Software Pvt. Ltd. licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.hive.cassandra.ql.udf;
+
+import java.nio.ByteBuffer;
+
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDF;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+@UDFType(deterministic = true)
+@Description(name = "cassandra_token",
+    value = "_FUNC_(key) - Returns the Murmur3Partitioner token of a row key",
+    extended = "Takes a string, int, bigint or binary row key, encoded like the storage handler\n" +
+                "stores it, and returns its token as a bigint. A condition on the token of the\n" +
+                "row key, like _FUNC_(key) BETWEEN a AND b, restricts the scan to that part of the ring.")
+
+public class UDFCassandraToken extends UDF {
+
+  private static final Murmur3Partitioner PARTITIONER = new Murmur3Partitioner();
+
+  private final LongWritable result = new LongWritable();
+
+  public LongWritable evaluate(Text key) {
+    return key == null ? null : token(ByteBuffer.wrap(key.getBytes(), 0, key.getLength()));
+  }
+
+  public LongWritable evaluate(BytesWritable key) {
+    return key == null ? null : token(ByteBuffer.wrap(key.getBytes(), 0, key.getLength()));
+  }
+
+  public LongWritable evaluate(IntWritable key) {
+    return key == null ? null : token(ByteBufferUtil.bytes(key.get()));
+  }
+
+  public LongWritable evaluate(LongWritable key) {
+    return key == null ? null : token(ByteBufferUtil.bytes(key.get()));
+  }
+
+  private LongWritable token(ByteBuffer key) {
+    result.set(PARTITIONER.getToken(key).token);
+    return result;
+  }
+
+}
@@ -56,6 +56,8 @@ public abstract class AbstractCassandraSerDe implements SerDe{
     public static final String CASSANDRA_PARTITIONER = "cassandra.partitioner"; // partitioner
     public static final String CASSANDRA_COL_MAPPING = "cassandra.columns.mapping";
     public static final String CASSANDRA_INDEXED_COLUMNS = "cassandra.indexed.columns";
+    public static final String CASSANDRA_KEY_COLUMNS = "cassandra.key.columns"; // partition and clustering key columns of a CQL table
+    public static final String CASSANDRA_CF_COMPARATOR = "cassandra.cf.comparator"; // comparator of a transposed column family
 
     public static final String CASSANDRA_BATCH_MUTATION_SIZE = "cassandra.batchmutate.size";
     public static final String CASSANDRA_SLICE_PREDICATE_COLUMN_NAMES = "cassandra.slice.predicate.column_names";
@@ -78,13 +80,98 @@ public abstract class AbstractCassandraSerDe implements SerDe{
     public static final String CASSANDRA_CONSISTENCY_LEVEL = "cassandra.consistency.level";
     public static final String CASSANDRA_THRIFT_MODE = "cassandra.thrift.mode";
 
+    public static final String CASSANDRA_CONNECTION_STRATEGY = "cassandra.connection.strategy"; // host selection policy
+    public static final String CASSANDRA_TOKEN_AWARE_WRITES = "cassandra.write.token.aware"; // send writes to a replica of the row
+
+    public static final String CASSANDRA_RING_REFRESH_INTERVAL = "cassandra.ring.refresh.interval"; // millis between ring refreshes
+    public static final String CASSANDRA_LOCAL_DC = "cassandra.local.dc"; // data center to read and write through
+    public static final String CASSANDRA_LOCAL_RACK = "cassandra.local.rack"; // preferred rack in the local data center
+
+    public static final String CASSANDRA_TRANSPORT = "cassandra.transport"; // thrift or native, for cql tables
+    public static final String CASSANDRA_NATIVE_PORT = "cassandra.native.port"; // port of the native protocol
+    public static final String CASSANDRA_NATIVE_MAX_IN_FLIGHT = "cassandra.native.max.in.flight"; // concurrent requests per native connection
+
+    public static final String CASSANDRA_RETRY_POLICY = "cassandra.retry.policy"; // class of the retry policy
+    public static final String CASSANDRA_RETRY_MAX_ATTEMPTS = "cassandra.retry.max.attempts"; // attempts per call
+    public static final String CASSANDRA_RETRY_BASE_DELAY = "cassandra.retry.base.delay"; // millis before the first retry
+    public static final String CASSANDRA_RETRY_MAX_DELAY = "cassandra.retry.max.delay"; // longest millis between two attempts
+    public static final String CASSANDRA_RETRY_MAX_TIME = "cassandra.retry.max.time"; // millis a call may spend retrying
+
+    /**
+     * Retry settings that can be set per table, in SERDEPROPERTIES or TBLPROPERTIES.
+     */
+    public static final String[] CASSANDRA_RETRY_PROPERTIES = {CASSANDRA_RETRY_POLICY, CASSANDRA_RETRY_MAX_ATTEMPTS,
+            CASSANDRA_RETRY_BASE_DELAY, CASSANDRA_RETRY_MAX_DELAY, CASSANDRA_RETRY_MAX_TIME};
+
+    public static final String CASSANDRA_SPLIT_COMBINE = "cassandra.input.split.combine"; // group small token ranges into splits of about split size rows
+    public static final String CASSANDRA_SPLIT_BYTES = "cassandra.input.split.bytes"; // bytes a split aims for, 0 to size splits by rows
+    public static final String CASSANDRA_ROW_SIZE = "cassandra.input.row.size"; // estimated bytes per row, sampled when not set
+    public static final String CASSANDRA_SAMPLE_PERCENT = "cassandra.input.sample.percent"; // percent of the ring read, like TABLESAMPLE(n PERCENT)
+    public static final String CASSANDRA_SAMPLE_BUCKET = "cassandra.input.sample.bucket"; // bucket x of the splits read, like TABLESAMPLE(BUCKET x OUT OF y)
+    public static final String CASSANDRA_SAMPLE_BUCKETS = "cassandra.input.sample.buckets"; // buckets y the splits are dealt into, 0 to read them all
+    public static final String CASSANDRA_SAMPLE_TRUNCATE = "cassandra.input.sample.truncate"; // sample percent of every split rather than percent of the splits
+
+    /**
+     * Split settings that can be set per table, in SERDEPROPERTIES or TBLPROPERTIES.
+     */
+    public static final String[] CASSANDRA_SPLIT_PROPERTIES = {CASSANDRA_SPLIT_COMBINE, CASSANDRA_SPLIT_BYTES,
+            CASSANDRA_ROW_SIZE, CASSANDRA_SAMPLE_PERCENT, CASSANDRA_SAMPLE_BUCKET, CASSANDRA_SAMPLE_BUCKETS,
+            CASSANDRA_SAMPLE_TRUNCATE};
+
+    public static final String CASSANDRA_ZERO_COPY = "cassandra.input.zero.copy"; // expose cells as slices of the buffers they were read from instead of copies
+    public static final String CASSANDRA_PREFETCH = "cassandra.input.prefetch"; // fetch the next page of rows in the background
+    public static final String CASSANDRA_PREFETCH_BYTES = "cassandra.input.prefetch.bytes"; // most bytes of rows read ahead
+    public static final String CASSANDRA_SCAN_THREADS = "cassandra.input.scan.threads"; // sub-ranges of a split scanned concurrently
+    public static final String CASSANDRA_WIDEROW_PAGE_BYTES = "cassandra.input.widerow.page.bytes"; // bytes of columns per wide row page
+
+    /**
+     * Record reader settings that can be set per table, in SERDEPROPERTIES or TBLPROPERTIES.
+     */
+    public static final String[] CASSANDRA_READER_PROPERTIES = {CASSANDRA_ZERO_COPY, CASSANDRA_PREFETCH,
+            CASSANDRA_PREFETCH_BYTES, CASSANDRA_SCAN_THREADS, CASSANDRA_WIDEROW_PAGE_BYTES};
+
+    public static final String CASSANDRA_SPLIT_CACHE_TTL = "cassandra.split.cache.ttl"; // millis split plans are reused, 0 to disable
+    public static final String CASSANDRA_SPLIT_CACHE_DIR = "cassandra.split.cache.dir"; // local or hdfs directory sharing split plans
+
+    public static final String CASSANDRA_POOL_MAX_PER_HOST = "cassandra.pool.max.per.host"; // connections per host
+    public static final String CASSANDRA_POOL_IDLE_TIMEOUT = "cassandra.pool.idle.timeout"; // millis before an idle connection is closed
+    public static final String CASSANDRA_POOL_BORROW_TIMEOUT = "cassandra.pool.borrow.timeout"; // millis to wait for a free connection
+    public static final String CASSANDRA_POOL_VALIDATION_INTERVAL = "cassandra.pool.validation.interval"; // millis idle before a connection is validated
+
     public static final int DEFAULT_SPLIT_SIZE = 64 * 1024;
     public static final int DEFAULT_RANGE_BATCH_SIZE = 1000;
     public static final int DEFAULT_SLICE_PREDICATE_SIZE = 1000;
     public static final String DEFAULT_CASSANDRA_HOST = "localhost";
     public static final String DEFAULT_CASSANDRA_PORT = "9160";
     public static final String DEFAULT_CONSISTENCY_LEVEL = "ONE";
+    public static final String DEFAULT_CASSANDRA_PARTITIONER = "org.apache.cassandra.dht.Murmur3Partitioner";
+    public static final boolean DEFAULT_TOKEN_AWARE_WRITES = true;
+    public static final String DEFAULT_CONNECTION_STRATEGY = "LATENCY_AWARE";
     public static final int DEFAULT_BATCH_MUTATION_SIZE = 500;
+    public static final int DEFAULT_POOL_MAX_PER_HOST = 16;
+    public static final long DEFAULT_POOL_IDLE_TIMEOUT = 60 * 1000L;
+    public static final long DEFAULT_POOL_BORROW_TIMEOUT = 30 * 1000L;
+    public static final long DEFAULT_POOL_VALIDATION_INTERVAL = 10 * 1000L;
+    public static final long DEFAULT_RING_REFRESH_INTERVAL = 60 * 1000L;
+    public static final boolean DEFAULT_SPLIT_COMBINE = true;
+    public static final long DEFAULT_SPLIT_BYTES = 0L;
+    public static final long DEFAULT_ROW_SIZE = 1024L;
+    public static final float DEFAULT_SAMPLE_PERCENT = 100f;
+    public static final boolean DEFAULT_SAMPLE_TRUNCATE = false;
+    public static final boolean DEFAULT_ZERO_COPY = false;
+    public static final boolean DEFAULT_PREFETCH = false;
+    public static final long DEFAULT_PREFETCH_BYTES = 64 * 1024 * 1024L;
+    public static final int DEFAULT_SCAN_THREADS = 1;
+    public static final long DEFAULT_WIDEROW_PAGE_BYTES = 4 * 1024 * 1024L;
+    public static final long DEFAULT_SPLIT_CACHE_TTL = 10 * 60 * 1000L;
+    public static final int DEFAULT_RETRY_MAX_ATTEMPTS = 10;
+    public static final long DEFAULT_RETRY_BASE_DELAY = 100L;
+    public static final long DEFAULT_RETRY_MAX_DELAY = 10 * 1000L;
+    public static final long DEFAULT_RETRY_MAX_TIME = 60 * 1000L;
+    public static final String DEFAULT_TRANSPORT = "thrift";
+    public static final String NATIVE_TRANSPORT = "native";
+    public static final String DEFAULT_NATIVE_PORT = "9042";
+    public static final int DEFAULT_NATIVE_MAX_IN_FLIGHT = 128;
     public static final String DELIMITER = ",";
 
     /* names of columns from SerdeParameters */
@@ -96,6 +183,7 @@ public abstract class AbstractCassandraSerDe implements SerDe{
     protected LazySimpleSerDe.SerDeParameters serdeParams;
     protected String cassandraKeyspace;
     protected String cassandraColumnFamily;
+    protected String cassandraPartitioner;
     protected List<Text> cassandraColumnNamesText;
 
     protected abstract void initCassandraSerDeParameters(Configuration job, Properties tbl, String serdeName)
@@ -197,6 +285,21 @@ public abstract class AbstractCassandraSerDe implements SerDe{
         return result;
     }
 
+    /**
+     * Parse the cassandra partitioner, set in the configuration or else in the table properties.
+     *
+     * @param job configuration
+     * @param tbl table properties
+     * @return class name of the partitioner, the default one if it is not set
+     */
+    protected String parseCassandraPartitioner(Configuration job, Properties tbl) {
+        String result = job == null ? null : job.get(CASSANDRA_PARTITIONER);
+        if (result == null) {
+            result = tbl.getProperty(CASSANDRA_PARTITIONER, DEFAULT_CASSANDRA_PARTITIONER);
+        }
+        return result;
+    }
+
     @Override
     public ObjectInspector getObjectInspector() throws SerDeException {
         return cachedObjectInspector;
@@ -243,4 +346,24 @@ public abstract class AbstractCassandraSerDe implements SerDe{
     public String getCassandraColumnFamily(){
         return cassandraColumnFamily;
     }
+
+    /**
+     * @return the class name of the cassandra partitioner of the table
+     */
+    public String getCassandraPartitioner(){
+        return cassandraPartitioner;
+    }
+
+    /**
+     * @param cassandraColumn a cassandra column of the column mapping, compared ignoring case
+     * @return the name of the Hive column mapped to it, or null if it is not mapped
+     */
+    public String getHiveColumnName(String cassandraColumn) {
+        for (int i = 0; i < cassandraColumnNames.size(); i++) {
+            if (cassandraColumnNames.get(i).equalsIgnoreCase(cassandraColumn)) {
+                return serdeParams.getColumnNames().get(i);
+            }
+        }
+        return null;
+    }
 }
@@ -30,6 +30,7 @@ import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.SyntaxException;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.input.CassandraRowWritable;
 import org.apache.hadoop.hive.cassandra.input.LazyCassandraRow;
 import org.apache.hadoop.hive.cassandra.output.CassandraPut;
 import org.apache.hadoop.hive.serde.serdeConstants;
@@ -40,8 +41,6 @@ import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
 import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
-import org.apache.hadoop.io.BytesWritable;
-import org.apache.hadoop.io.MapWritable;
 import org.apache.hadoop.io.Writable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,7 +72,6 @@ public class CassandraColumnSerDe extends AbstractCassandraSerDe {
     /* index of key column in results */
     protected int iKey;
     protected LazyCassandraRow cachedCassandraRow;
-    protected List<BytesWritable> cassandraColumnNamesBytes;
 
     @Override
     public void initialize(Configuration conf, Properties tbl) throws SerDeException {
@@ -100,12 +98,11 @@ public class CassandraColumnSerDe extends AbstractCassandraSerDe {
      */
     @Override
     public Object deserialize(Writable w) throws SerDeException {
-        if (!(w instanceof MapWritable)) {
-            throw new SerDeException(getClass().getName() + ": expects MapWritable not "+w.getClass().getName());
+        if (!(w instanceof CassandraRowWritable)) {
+            throw new SerDeException(getClass().getName() + ": expects CassandraRowWritable not "+w.getClass().getName());
         }
 
-        MapWritable columnMap = (MapWritable) w;
-        cachedCassandraRow.init(columnMap, cassandraColumnNames, cassandraColumnNamesBytes);
+        cachedCassandraRow.init((CassandraRowWritable) w, cassandraColumnNames);
         return cachedCassandraRow;
     }
 
@@ -127,13 +124,9 @@ public class CassandraColumnSerDe extends AbstractCassandraSerDe {
             throws SerDeException {
         cassandraKeyspace = parseCassandraKeyspace(tbl);
         cassandraColumnFamily = parseCassandraColumnFamily(tbl);
+        cassandraPartitioner = parseCassandraPartitioner(job, tbl);
         cassandraColumnNames = parseOrCreateColumnMapping(tbl);
 
-        cassandraColumnNamesBytes = new ArrayList<BytesWritable>();
-        for (String columnName : cassandraColumnNames) {
-            cassandraColumnNamesBytes.add(new BytesWritable(columnName.getBytes()));
-        }
-
         iKey = cassandraColumnNames.indexOf(CassandraColumnSerDe.CASSANDRA_KEY_COLUMN);
 
         serdeParams = LazySimpleSerDe.initSerdeParams(job, tbl, serdeName);
@@ -221,7 +214,7 @@ public class CassandraColumnSerDe extends AbstractCassandraSerDe {
      * @param columnList a list of column validator type in String format
      * @return a list of cassandra validator type
      */
-    private List<AbstractType> parseValidatorType(List<String> columnList)
+    private static List<AbstractType> parseValidatorType(List<String> columnList)
             throws SerDeException {
         List<AbstractType> types = new ArrayList<AbstractType>();
 
@@ -242,6 +235,32 @@ public class CassandraColumnSerDe extends AbstractCassandraSerDe {
         return types;
     }
 
+    /**
+     * @return the validator cassandra.cf.validatorType sets for the row key, null if the table sets none
+     */
+    public AbstractType<?> getKeyValidator() {
+        return iKey >= 0 && iKey < validatorType.size() ? validatorType.get(iKey) : null;
+    }
+
+    /**
+     * Parse the validator cassandra.cf.validatorType sets for the row key.
+     *
+     * @param validatorTypes value of cassandra.cf.validatorType, may be null
+     * @param columnMapping  cassandra columns the Hive columns map to, in order
+     * @return the validator of the row key, null if none is set
+     * @throws SerDeException if the validator type cannot be parsed
+     */
+    public static AbstractType<?> parseKeyValidator(String validatorTypes, List<String> columnMapping)
+            throws SerDeException {
+        int index = columnMapping.indexOf(CASSANDRA_KEY_COLUMN);
+        if (StringUtils.isBlank(validatorTypes) || index == -1) {
+            return null;
+        }
+
+        List<String> types = Arrays.asList(trim(validatorTypes.split(",")));
+        return index < types.size() ? parseValidatorType(types).get(index) : null;
+    }
+
     /**
      * Set the table mapping. We only support transposed mapping and regular table mapping for now.
      *
@@ -22,6 +22,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.BooleanType;
+import org.apache.cassandra.db.marshal.CounterColumnType;
+import org.apache.cassandra.db.marshal.DateType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
 import org.apache.hadoop.hive.serde2.lazy.CassandraLazyBinary;
 import org.apache.hadoop.hive.serde2.lazy.CassandraLazyBoolean;
 import org.apache.hadoop.hive.serde2.lazy.CassandraLazyDouble;
@@ -44,6 +50,7 @@ import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyDoubleOb
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyFloatObjectInspector;
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyIntObjectInspector;
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyLongObjectInspector;
+import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyPrimitiveObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyShortObjectInspector;
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyStringObjectInspector;
 import org.apache.hadoop.hive.serde2.lazy.objectinspector.primitive.LazyTimestampObjectInspector;
@@ -51,6 +58,7 @@ import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.Text;
 
 /**
@@ -137,7 +145,30 @@ public class CassandraLazyFactory {
       byte[] separator, int separatorIndex, Text nullSequence, boolean escaped,
       byte escapeChar) {
 
-      return new CassandraValidatorObjectInspector(validator);
+      ObjectInspector oi = createValidatorObjectInspector(typeInfo, validator);
+      return oi != null ? oi : new CassandraValidatorObjectInspector(validator);
+  }
+
+  /**
+   * The inspector of a column whose hive type is the natural one of its validator. Its lazy object,
+   * made by {@link #createLazyPrimitiveClass}, decodes the binary value of the validator directly.
+   *
+   * @return the inspector, or null if the column is read as the string of the validator
+   */
+  static ObjectInspector createValidatorObjectInspector(TypeInfo typeInfo, AbstractType<?> validator) {
+    if (validator instanceof Int32Type && TypeInfoFactory.intTypeInfo.equals(typeInfo)) {
+      return LazyPrimitiveObjectInspectorFactory.LAZY_INT_OBJECT_INSPECTOR;
+    } else if ((validator instanceof LongType || validator instanceof CounterColumnType)
+        && TypeInfoFactory.longTypeInfo.equals(typeInfo)) {
+      return LazyPrimitiveObjectInspectorFactory.LAZY_LONG_OBJECT_INSPECTOR;
+    } else if (validator instanceof DoubleType && TypeInfoFactory.doubleTypeInfo.equals(typeInfo)) {
+      return LazyPrimitiveObjectInspectorFactory.LAZY_DOUBLE_OBJECT_INSPECTOR;
+    } else if (validator instanceof DateType && TypeInfoFactory.timestampTypeInfo.equals(typeInfo)) {
+      return LazyPrimitiveObjectInspectorFactory.LAZY_TIMESTAMP_OBJECT_INSPECTOR;
+    } else if (validator instanceof BooleanType && TypeInfoFactory.booleanTypeInfo.equals(typeInfo)) {
+      return LazyPrimitiveObjectInspectorFactory.LAZY_BOOLEAN_OBJECT_INSPECTOR;
+    }
+    return null;
   }
 
   /**
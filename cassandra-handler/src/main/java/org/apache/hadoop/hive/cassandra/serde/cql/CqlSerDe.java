@@ -30,6 +30,7 @@ import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.SyntaxException;
 import org.apache.commons.lang.StringUtils;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.input.CassandraRowWritable;
 import org.apache.hadoop.hive.cassandra.input.cql.LazyCqlRow;
 import org.apache.hadoop.hive.cassandra.output.CassandraPut;
 import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
@@ -42,8 +43,6 @@ import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
 import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
-import org.apache.hadoop.io.MapWritable;
-import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,7 +54,6 @@ public class CqlSerDe extends AbstractCassandraSerDe {
     public static final String CASSANDRA_COLUMN_FAMILY_PRIMARY_KEY = "cql.primarykey";
 
     protected LazyCqlRow lazyCqlRow;
-    protected List<Text> cassandraColumnNamesText;
 
   public static final String CASSANDRA_VALIDATOR_TYPE = "cassandra.cf.validatorType"; // validator type
 
@@ -88,12 +86,11 @@ public class CqlSerDe extends AbstractCassandraSerDe {
    */
     @Override
     public Object deserialize(Writable w) throws SerDeException {
-        if (!(w instanceof MapWritable)) {
-            throw new SerDeException(getClass().getName() + ": expects MapWritable not " + w.getClass().getName());
+        if (!(w instanceof CassandraRowWritable)) {
+            throw new SerDeException(getClass().getName() + ": expects CassandraRowWritable not " + w.getClass().getName());
         }
 
-        MapWritable columnMap = (MapWritable) w;
-        lazyCqlRow.init(columnMap, cassandraColumnNames, cassandraColumnNamesText);
+        lazyCqlRow.init((CassandraRowWritable) w, cassandraColumnNames);
         return lazyCqlRow;
     }
 
@@ -116,13 +113,9 @@ public class CqlSerDe extends AbstractCassandraSerDe {
           throws SerDeException {
     cassandraKeyspace = parseCassandraKeyspace(tbl);
     cassandraColumnFamily = parseCassandraColumnFamily(tbl);
+    cassandraPartitioner = parseCassandraPartitioner(job, tbl);
     cassandraColumnNames = parseOrCreateColumnMapping(tbl);
 
-    cassandraColumnNamesText = new ArrayList<Text>();
-    for (String columnName : cassandraColumnNames) {
-      cassandraColumnNamesText.add(new Text(columnName));
-    }
-
     serdeParams = LazySimpleSerDe.initSerdeParams(job, tbl, serdeName);
 
     validatorType = parseOrCreateValidatorType(tbl);
@@ -0,0 +1,155 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.thrift.transport.TTransport;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CassandraClientPoolTest {
+
+  private AtomicInteger created;
+  private CassandraClientPool pool;
+
+  @Before
+  public void setUp() {
+    created = new AtomicInteger();
+    pool = new CassandraClientPool(new CassandraClientPool.ConnectionFactory() {
+      public CassandraClientHolder create(String host, int port) throws CassandraException {
+        created.incrementAndGet();
+        return new CassandraClientHolder(host, port, new FakeTransport());
+      }
+    });
+
+    Configuration conf = new Configuration();
+    conf.setInt(AbstractCassandraSerDe.CASSANDRA_POOL_MAX_PER_HOST, 2);
+    conf.setLong(AbstractCassandraSerDe.CASSANDRA_POOL_BORROW_TIMEOUT, 50);
+    conf.setLong(AbstractCassandraSerDe.CASSANDRA_POOL_VALIDATION_INTERVAL, Long.MAX_VALUE);
+    pool.configure(conf);
+  }
+
+  @Test
+  public void releasedConnectionIsReused() throws Exception {
+    CassandraClientHolder first = pool.borrow("host1", 9160);
+    pool.release(first);
+    CassandraClientHolder second = pool.borrow("host1", 9160);
+
+    assertSame(first, second);
+    assertEquals(1, created.get());
+    assertEquals(1, pool.getActiveCount("host1", 9160));
+  }
+
+  @Test
+  public void connectionsAreKeptPerHost() throws Exception {
+    CassandraClientHolder first = pool.borrow("host1", 9160);
+    pool.release(first);
+    CassandraClientHolder second = pool.borrow("host2", 9160);
+
+    assertNotSame(first, second);
+    assertEquals(2, created.get());
+    assertEquals(1, pool.getIdleCount("host1", 9160));
+  }
+
+  @Test
+  public void borrowTimesOutAtMaxPerHost() throws Exception {
+    pool.borrow("host1", 9160);
+    CassandraClientHolder second = pool.borrow("host1", 9160);
+
+    try {
+      pool.borrow("host1", 9160);
+      fail("expected the pool to be exhausted");
+    } catch (CassandraException e) {
+      // expected
+    }
+
+    pool.release(second);
+    assertSame(second, pool.borrow("host1", 9160));
+  }
+
+  @Test
+  public void sharedPoolOpensConnections() {
+    try {
+      // nothing listens on port 1
+      CassandraClientPool.getInstance().borrow("127.0.0.1", 1);
+      fail("expected the connection to be refused");
+    } catch (CassandraException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void closedConnectionIsNotReused() throws Exception {
+    CassandraClientHolder first = pool.borrow("host1", 9160);
+    pool.release(first);
+    first.close();
+
+    CassandraClientHolder second = pool.borrow("host1", 9160);
+    assertNotSame(first, second);
+    assertEquals(2, created.get());
+  }
+
+  @Test
+  public void invalidateFreesSlotOnce() throws Exception {
+    CassandraClientHolder first = pool.borrow("host1", 9160);
+    pool.borrow("host1", 9160);
+
+    pool.invalidate(first);
+    pool.release(first);
+    pool.invalidate(first);
+
+    assertEquals(1, pool.getActiveCount("host1", 9160));
+    assertEquals(0, pool.getIdleCount("host1", 9160));
+  }
+
+  @Test
+  public void idleConnectionsAreEvicted() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setLong(AbstractCassandraSerDe.CASSANDRA_POOL_IDLE_TIMEOUT, 0);
+    pool.configure(conf);
+
+    CassandraClientHolder first = pool.borrow("host1", 9160);
+    pool.release(first);
+    pool.evictIdle();
+
+    assertEquals(0, pool.getIdleCount("host1", 9160));
+    assertEquals(false, first.isOpen());
+  }
+
+  /**
+   * Transport that never touches the network.
+   */
+  private static class FakeTransport extends TTransport {
+    private boolean open;
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void open() {
+      open = true;
+    }
+
+    @Override
+    public void close() {
+      open = false;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) {
+      return 0;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+    }
+  }
+}
@@ -1,12 +1,54 @@
 package org.apache.hadoop.hive.cassandra;
 
+import org.apache.hadoop.hive.cassandra.cql.NativeConnectionTest;
+import org.apache.hadoop.hive.cassandra.input.CassandraHiveRecordReaderTest;
+import org.apache.hadoop.hive.cassandra.input.HiveCassandraLookupSplitTest;
+import org.apache.hadoop.hive.cassandra.input.HiveCassandraStandardSplitTest;
+import org.apache.hadoop.hive.cassandra.input.MultiRangeRecordReaderTest;
+import org.apache.hadoop.hive.cassandra.input.MultigetRecordReaderTest;
+import org.apache.hadoop.hive.cassandra.input.PrefetchingRecordReaderTest;
+import org.apache.hadoop.hive.cassandra.input.SplitPlanCacheTest;
+import org.apache.hadoop.hive.cassandra.input.SplitSamplerTest;
+import org.apache.hadoop.hive.cassandra.input.SplitSizerTest;
+import org.apache.hadoop.hive.cassandra.input.WideRowRecordReaderTest;
+import org.apache.hadoop.hive.cassandra.input.cql.CqlHiveRecordReaderTest;
+import org.apache.hadoop.hive.cassandra.input.cql.HiveCqlInputFormatTest;
+import org.apache.hadoop.hive.cassandra.input.cql.NativeCqlRecordReaderTest;
+import org.apache.hadoop.hive.cassandra.output.cql.NativeCqlWriterTest;
+import org.apache.hadoop.hive.cassandra.serde.CassandraLazyFactoryTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
         TestCassandraProxyClient.class,
+        CassandraClientPoolTest.class,
+        RetryingCassandraClientTest.class,
+        TokenRouterTest.class,
+        HostSelectionPolicyTest.class,
         CassandraPushdownPredicateTest.class,
-        CassandraClientHolderTest.class})
+        CassandraClientHolderTest.class,
+        RingTopologyServiceTest.class,
+        ReplicaLocalityTest.class,
+        ClientMetricsTest.class,
+        ExponentialBackoffRetryPolicyTest.class,
+        NativeConnectionTest.class,
+        NativeCqlRecordReaderTest.class,
+        NativeCqlWriterTest.class,
+        SplitPlanCacheTest.class,
+        MultiRangeRecordReaderTest.class,
+        HiveCassandraStandardSplitTest.class,
+        SplitSizerTest.class,
+        RowKeyPredicateTest.class,
+        HiveCassandraLookupSplitTest.class,
+        MultigetRecordReaderTest.class,
+        TokenRangePredicateTest.class,
+        SplitSamplerTest.class,
+        CassandraHiveRecordReaderTest.class,
+        CqlHiveRecordReaderTest.class,
+        PrefetchingRecordReaderTest.class,
+        WideRowRecordReaderTest.class,
+        HiveCqlInputFormatTest.class,
+        CassandraLazyFactoryTest.class})
 public class CassandraHandlerTestSuite {
 }
@@ -0,0 +1,139 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+
+public class ClientMetricsTest {
+
+  @Test
+  public void histogramBoundsPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      histogram.record(3000000L); // 3ms
+    }
+    histogram.record(900000000L); // 900ms
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(4.096, histogram.getPercentileMillis(50), 0.001);
+    assertEquals(4.096, histogram.getPercentileMillis(99), 0.001);
+    assertEquals(900, histogram.getPercentileMillis(100), 0.001);
+    assertEquals(900, histogram.getMaxMillis(), 0.001);
+    assertEquals(11.97, histogram.getMeanMillis(), 0.001);
+  }
+
+  @Test
+  public void countsCallsAndFailuresPerHostAndMethod() {
+    ClientMetrics metrics = new ClientMetrics(null);
+
+    metrics.recordCall("10.0.0.1", "get_slice", 2000000L);
+    metrics.recordCall("10.0.0.1", "batch_mutate", 5000000L);
+    metrics.recordFailure("10.0.0.1", "get_slice", new TimedOutException());
+    metrics.recordFailure("10.0.0.2", "get_slice", new TTransportException());
+    metrics.recordRetry("10.0.0.2");
+
+    assertEquals(2, metrics.getCount("10.0.0.1", ClientMetrics.Counter.CALLS));
+    assertEquals(1, metrics.getCount("10.0.0.1", ClientMetrics.Counter.TIMEOUTS));
+    assertEquals(0, metrics.getCount("10.0.0.1", ClientMetrics.Counter.TRANSPORT_ERRORS));
+    assertEquals(1, metrics.getCount("10.0.0.2", ClientMetrics.Counter.TRANSPORT_ERRORS));
+    assertEquals(1, metrics.getCount("10.0.0.2", ClientMetrics.Counter.RETRIES));
+    assertEquals(1, metrics.getLatency("10.0.0.1", "get_slice").getCount());
+    assertNull(metrics.getLatency("10.0.0.2", "batch_mutate"));
+  }
+
+  @Test
+  public void hostsAndMethodsAreRegisteredAsMXBeans() throws Exception {
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    ClientMetrics metrics = new ClientMetrics(server);
+
+    metrics.recordCall("10.0.0.1", "get_slice", 2000000L);
+    metrics.recordConnectionOpened("10.0.0.1");
+
+    ObjectName host = new ObjectName(ClientMetrics.DOMAIN + ":type=CassandraClient,host=\"10.0.0.1\"");
+    ObjectName method = new ObjectName(ClientMetrics.DOMAIN
+            + ":type=CassandraClient,host=\"10.0.0.1\",method=get_slice");
+    assertTrue(server.isRegistered(host));
+    assertEquals(1L, server.getAttribute(host, "ConnectionsOpened"));
+    assertEquals(1L, server.getAttribute(method, "Calls"));
+  }
+
+  @Test
+  public void snapshotsPublishOnlyTheChanges() {
+    ClientMetrics metrics = new ClientMetrics(null);
+    metrics.recordCall("10.0.0.1", "get_slice", 2000000L);
+
+    ClientMetrics.Snapshot snapshot = metrics.snapshot();
+    metrics.recordCall("10.0.0.1", "get_slice", 3000000L);
+    metrics.recordRetry("10.0.0.1");
+    RecordingReporter reporter = new RecordingReporter();
+    snapshot.publishChanges(reporter);
+
+    assertEquals(Long.valueOf(1), reporter.counters.get(ClientMetrics.COUNTER_GROUP + "/Calls"));
+    assertEquals(Long.valueOf(1), reporter.counters.get(ClientMetrics.COUNTER_GROUP + "/Retries"));
+    assertEquals(Long.valueOf(3), reporter.counters.get(ClientMetrics.COUNTER_GROUP + "/" + ClientMetrics.CALL_MILLIS));
+
+    reporter.counters.clear();
+    snapshot.publishChanges(reporter);
+    assertTrue(reporter.counters.isEmpty());
+  }
+
+  @Test
+  public void snapshotsDoNotAddCountersPerHost() {
+    ClientMetrics metrics = new ClientMetrics(null);
+    ClientMetrics.Snapshot snapshot = metrics.snapshot();
+    for (int i = 0; i < 100; i++) {
+      metrics.recordCall("10.0.0." + i, "get_slice", 1000000L);
+    }
+    RecordingReporter reporter = new RecordingReporter();
+    snapshot.publishChanges(reporter);
+
+    assertEquals(2, reporter.counters.size());
+    assertEquals(Long.valueOf(100), reporter.counters.get(ClientMetrics.COUNTER_GROUP + "/Calls"));
+    assertEquals(Long.valueOf(100), reporter.counters.get(ClientMetrics.COUNTER_GROUP + "/" + ClientMetrics.CALL_MILLIS));
+  }
+
+  private static class RecordingReporter implements Reporter {
+    final Map<String, Long> counters = new HashMap<String, Long>();
+
+    public void incrCounter(String group, String counter, long amount) {
+      Long previous = counters.get(group + "/" + counter);
+      counters.put(group + "/" + counter, (previous == null ? 0 : previous) + amount);
+    }
+
+    public void incrCounter(Enum<?> key, long amount) {
+      incrCounter(key.getDeclaringClass().getName(), key.name(), amount);
+    }
+
+    public void setStatus(String status) {
+    }
+
+    public Counters.Counter getCounter(Enum<?> name) {
+      return null;
+    }
+
+    public Counters.Counter getCounter(String group, String name) {
+      return null;
+    }
+
+    public InputSplit getInputSplit() {
+      return null;
+    }
+
+    public void progress() {
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+
+public class ExponentialBackoffRetryPolicyTest {
+
+  @Test
+  public void delaysDoubleWithJitterUpToTheMaximum() {
+    RetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 100, 1000, 60000, new Random(42));
+
+    long ceiling = 100;
+    for (int attempt = 1; attempt < 8; attempt++) {
+      long delay = policy.getRetryDelay(new TimedOutException(), attempt, 0);
+      assertTrue("attempt " + attempt + " waited " + delay, delay >= ceiling / 2 && delay <= ceiling);
+      ceiling = Math.min(ceiling * 2, 1000);
+    }
+  }
+
+  @Test
+  public void brokenConnectionsFailOverAtOnce() {
+    RetryPolicy policy = new ExponentialBackoffRetryPolicy(10, 100, 1000, 60000, new Random(42));
+
+    assertEquals(0, policy.getRetryDelay(new TTransportException(), 1, 0));
+    long delay = policy.getRetryDelay(new TTransportException(), 2, 0);
+    assertTrue(delay >= 50 && delay <= 100);
+    assertTrue(policy.getRetryDelay(new UnavailableException(), 1, 0) >= 50);
+  }
+
+  @Test
+  public void givesUpAfterMaxAttemptsOrTimeBudget() {
+    RetryPolicy policy = new ExponentialBackoffRetryPolicy(3, 100, 1000, 500, new Random(42));
+
+    assertTrue(policy.getRetryDelay(new TimedOutException(), 2, 0) > 0);
+    assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelay(new TimedOutException(), 3, 0));
+    assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelay(new TimedOutException(), 1, 480));
+  }
+
+  @Test
+  public void policyIsConfiguredFromTheJob() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setInt(AbstractCassandraSerDe.CASSANDRA_RETRY_MAX_ATTEMPTS, 2);
+
+    RetryPolicy policy = CassandraProxyClient.getRetryPolicy(conf);
+
+    assertTrue(policy instanceof ExponentialBackoffRetryPolicy);
+    assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelay(new TimedOutException(), 2, 0));
+
+    conf.set(AbstractCassandraSerDe.CASSANDRA_RETRY_POLICY, String.class.getName());
+    try {
+      CassandraProxyClient.getRetryPolicy(conf);
+      fail("expected an unknown policy class to be rejected");
+    } catch (CassandraException e) {
+      // expected
+    }
+  }
+
+  /**
+   * A node times out every call for two seconds. Retrying in a tight loop burns through all
+   * attempts within the brownout and fails the call, while backing off lets the call through
+   * once the node recovers, with fewer calls sent to the struggling node.
+   */
+  @Test
+  public void backingOffRidesOutABrownout() throws Exception {
+    RetryPolicy tightLoop = new RetryPolicy() {
+      public long getRetryDelay(Exception e, int attempt, long elapsedMillis) {
+        return attempt < 10 ? 0 : NO_RETRY;
+      }
+    };
+    BrownoutClient overloaded = new BrownoutClient(2000);
+    try {
+      new RetryingCassandraClient(new PolicyConnector(overloaded, tightLoop)).batch_mutate(null, ConsistencyLevel.ONE);
+      fail("expected the tight loop to give up during the brownout");
+    } catch (TimedOutException e) {
+      // expected
+    }
+    assertEquals(10, overloaded.calls);
+
+    BrownoutClient recovering = new BrownoutClient(2000);
+    RetryPolicy backoff = new ExponentialBackoffRetryPolicy(10, 100, 10000, 60000, new Random(42));
+    new RetryingCassandraClient(new PolicyConnector(recovering, backoff)).batch_mutate(null, ConsistencyLevel.ONE);
+
+    assertTrue("calls during the brownout: " + recovering.failedCalls, recovering.failedCalls <= 6);
+    assertEquals(recovering.failedCalls + 1, recovering.calls);
+  }
+
+  /**
+   * Times out every call until its clock, which calls and waits move forward, passes the end of the brownout.
+   */
+  private static class BrownoutClient extends Cassandra.Client {
+    private final long brownoutEnd;
+    long clock;
+    int calls;
+    int failedCalls;
+
+    BrownoutClient(long brownoutEnd) {
+      super(new TBinaryProtocol(new TMemoryBuffer(0)));
+      this.brownoutEnd = brownoutEnd;
+    }
+
+    @Override
+    public void batch_mutate(Map<ByteBuffer, Map<String, List<Mutation>>> mutation_map,
+                             ConsistencyLevel consistency_level) throws InvalidRequestException, TimedOutException, TException {
+      calls++;
+      clock += 5;
+      if (clock < brownoutEnd) {
+        failedCalls++;
+        throw new TimedOutException();
+      }
+    }
+  }
+
+  /**
+   * Applies a retry policy the way {@link CassandraProxyClient} does, waiting on the client's clock.
+   */
+  private static class PolicyConnector implements RetryingCassandraClient.Connector {
+    private final BrownoutClient client;
+    private final RetryPolicy policy;
+    private long firstFailure;
+
+    PolicyConnector(BrownoutClient client, RetryPolicy policy) {
+      this.client = client;
+      this.policy = policy;
+    }
+
+    public Cassandra.Iface getClient() {
+      return client;
+    }
+
+    public boolean retry(String method, Exception e, int attempt) {
+      if (attempt == 1) {
+        firstFailure = client.clock;
+      }
+      long delay = policy.getRetryDelay(e, attempt, client.clock - firstFailure);
+      if (delay < 0) {
+        return false;
+      }
+      client.clock += delay;
+      return true;
+    }
+
+    public void callSucceeded(String method, long latencyNanos) {
+    }
+
+    public String getKeyspace() {
+      return null;
+    }
+
+    public void keyspaceChanged(String keyspace) {
+    }
+  }
+}
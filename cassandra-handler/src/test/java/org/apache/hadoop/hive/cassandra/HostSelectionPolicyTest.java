@@ -0,0 +1,212 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.thrift.EndpointDetails;
+import org.apache.cassandra.thrift.TokenRange;
+import org.junit.After;
+import org.junit.Test;
+
+public class HostSelectionPolicyTest {
+
+  private static final List<TokenRange> RING = Arrays.asList(
+          range("0", "100", "10.0.0.1", "10.0.0.2"),
+          range("100", "200", "10.0.0.2", "10.0.0.3"),
+          range("200", "0", "10.0.0.3", "10.0.0.1"));
+
+  @After
+  public void tearDown() {
+    HostStats.getInstance().clear();
+  }
+
+  @Test
+  public void roundRobinMovesAwayFromTheFailedHost() throws Exception {
+    HostSelectionPolicy policy = new CassandraProxyClient.RoundRobinOption(RING);
+
+    String host = "10.0.0.1";
+    for (int i = 0; i < 6; i++) {
+      String next = policy.getNextServer(host);
+      assertFalse(host.equals(next));
+      host = next;
+    }
+  }
+
+  @Test
+  public void randomMovesAwayFromTheFailedHost() throws Exception {
+    HostSelectionPolicy policy = new CassandraProxyClient.RandomizerOption(RING);
+
+    for (int i = 0; i < 20; i++) {
+      assertFalse("10.0.0.2".equals(policy.getNextServer("10.0.0.2")));
+    }
+  }
+
+  @Test
+  public void latencyAwarePicksTheFastestHealthyHost() throws Exception {
+    HostStats stats = HostStats.getInstance();
+    stats.recordLatency("10.0.0.1", 1000000L);
+    stats.recordLatency("10.0.0.2", 50000000L);
+    stats.recordLatency("10.0.0.3", 5000000L);
+
+    HostSelectionPolicy policy = new CassandraProxyClient.LatencyAwareOption(RING);
+    assertEquals("10.0.0.3", policy.getNextServer("10.0.0.1"));
+    assertEquals(Arrays.asList("10.0.0.1", "10.0.0.3", "10.0.0.2"),
+            policy.orderReplicas(Arrays.asList("10.0.0.2", "10.0.0.3", "10.0.0.1")));
+  }
+
+  @Test
+  public void latencyAwareSkipsHostsWithOpenBreaker() throws Exception {
+    HostStats stats = HostStats.getInstance();
+    stats.recordLatency("10.0.0.2", 1000000L);
+    stats.recordLatency("10.0.0.3", 9000000L);
+    for (int i = 0; i < HostStats.FAILURE_THRESHOLD; i++) {
+      stats.recordError("10.0.0.2");
+    }
+
+    assertFalse(stats.isAvailable("10.0.0.2"));
+    HostSelectionPolicy policy = new CassandraProxyClient.LatencyAwareOption(RING);
+    assertEquals("10.0.0.3", policy.getNextServer("10.0.0.1"));
+    assertEquals(Arrays.asList("10.0.0.3", "10.0.0.2"),
+            policy.orderReplicas(Arrays.asList("10.0.0.2", "10.0.0.3")));
+  }
+
+  @Test
+  public void hostIsPickedAgainOnceTheBreakerExpires() throws Exception {
+    HostStats stats = HostStats.getInstance();
+    stats.recordLatency("10.0.0.2", 1000000L);
+    stats.recordLatency("10.0.0.3", 50000000L);
+    long openedAt = System.currentTimeMillis() - HostStats.MIN_OPEN_MILLIS;
+    for (int i = 0; i < HostStats.FAILURE_THRESHOLD; i++) {
+      stats.recordError("10.0.0.2", openedAt);
+    }
+
+    // choosing a host asks the breaker several times without using up the probe
+    HostSelectionPolicy policy = new CassandraProxyClient.LatencyAwareOption(RING);
+    assertEquals("10.0.0.2", policy.getNextServer("10.0.0.1"));
+    assertEquals("10.0.0.2", policy.getNextServer("10.0.0.1"));
+    assertEquals(Arrays.asList("10.0.0.2", "10.0.0.3"),
+            policy.orderReplicas(Arrays.asList("10.0.0.3", "10.0.0.2")));
+
+    assertTrue(stats.tryAcquireProbe("10.0.0.2"));
+    assertFalse(stats.tryAcquireProbe("10.0.0.2"));
+    assertFalse(stats.isAvailable("10.0.0.2"));
+
+    stats.recordLatency("10.0.0.2", 1000000L);
+    assertTrue(stats.tryAcquireProbe("10.0.0.2"));
+    assertTrue(stats.isAvailable("10.0.0.2"));
+  }
+
+  @Test
+  public void successClosesTheBreaker() {
+    HostStats stats = HostStats.getInstance();
+    for (int i = 0; i < HostStats.FAILURE_THRESHOLD; i++) {
+      stats.recordError("10.0.0.1");
+    }
+    assertFalse(stats.isAvailable("10.0.0.1"));
+    assertTrue(stats.getErrorRate("10.0.0.1") > 0);
+
+    stats.recordLatency("10.0.0.1", 1000000L);
+    assertTrue(stats.isAvailable("10.0.0.1"));
+  }
+
+  @Test
+  public void stickyStaysOnTheSameHost() throws Exception {
+    HostSelectionPolicy policy = new CassandraProxyClient.StickyOption();
+    policy.resetRing(RING);
+    assertNull(policy.getNextServer("10.0.0.1"));
+  }
+
+  @Test
+  public void failoverStaysInTheLocalDatacenter() throws Exception {
+    CassandraProxyClient.RingConnOption policy = new CassandraProxyClient.RoundRobinOption(withDatacenters(RING));
+    policy.setLocality(new ReplicaLocality("DC1", null));
+
+    for (int i = 0; i < 6; i++) {
+      assertEquals("10.0.0.2", policy.getNextServer("10.0.0.1"));
+      assertEquals("10.0.0.1", policy.getNextServer("10.0.0.2"));
+    }
+    assertTrue(policy.isLocal("10.0.0.1"));
+    assertFalse(policy.isLocal("10.0.0.3"));
+  }
+
+  @Test
+  public void failoverLeavesTheLocalDatacenterWhenItIsDown() throws Exception {
+    HostStats stats = HostStats.getInstance();
+    for (int i = 0; i < HostStats.FAILURE_THRESHOLD; i++) {
+      stats.recordError("10.0.0.2");
+    }
+
+    CassandraProxyClient.RingConnOption policy = new CassandraProxyClient.LatencyAwareOption(withDatacenters(RING));
+    policy.setLocality(new ReplicaLocality("DC1", null));
+
+    assertEquals("10.0.0.3", policy.getNextServer("10.0.0.1"));
+  }
+
+  @Test
+  public void replicasAreOrderedByDistance() {
+    CassandraProxyClient.RingConnOption policy = new CassandraProxyClient.RoundRobinOption(withDatacenters(RING));
+    policy.setLocality(new ReplicaLocality("DC1", "RAC2"));
+
+    assertEquals(Arrays.asList("10.0.0.2", "10.0.0.1", "10.0.0.3"),
+            policy.orderReplicas(Arrays.asList("10.0.0.3", "10.0.0.1", "10.0.0.2")));
+  }
+
+  @Test
+  public void firstConnectionAvoidsASlowOrBrokenSeed() {
+    RingTopology ring = new RingTopology(null, 0, RING);
+    HostSelectionPolicy roundRobin = new CassandraProxyClient.RoundRobinOption(RING);
+    assertEquals("10.0.0.2", CassandraProxyClient.chooseInitialHost("10.0.0.2", ring, roundRobin));
+
+    HostStats stats = HostStats.getInstance();
+    stats.recordLatency("10.0.0.1", 50000000L);
+    stats.recordLatency("10.0.0.2", 5000000L);
+    stats.recordLatency("10.0.0.3", 1000000L);
+    HostSelectionPolicy latencyAware = new CassandraProxyClient.LatencyAwareOption(RING);
+    assertEquals("10.0.0.3", CassandraProxyClient.chooseInitialHost("10.0.0.1", ring, latencyAware));
+
+    for (int i = 0; i < HostStats.FAILURE_THRESHOLD; i++) {
+      stats.recordError("10.0.0.2");
+    }
+    assertEquals("10.0.0.1", CassandraProxyClient.chooseInitialHost("10.0.0.2", ring, roundRobin));
+  }
+
+  @Test
+  public void firstConnectionStaysInTheLocalDatacenter() {
+    List<TokenRange> ranges = withDatacenters(RING);
+    CassandraProxyClient.RingConnOption policy = new CassandraProxyClient.LatencyAwareOption(ranges);
+    policy.setLocality(new ReplicaLocality("DC1", null));
+
+    String first = CassandraProxyClient.chooseInitialHost("10.0.0.3", new RingTopology(null, 0, ranges), policy);
+    assertTrue(policy.isLocal(first));
+  }
+
+  /**
+   * 10.0.0.1 and 10.0.0.2 in DC1, on racks RAC1 and RAC2; 10.0.0.3 in DC2.
+   */
+  static List<TokenRange> withDatacenters(List<TokenRange> ring) {
+    List<TokenRange> copy = new ArrayList<TokenRange>();
+    for (TokenRange original : ring) {
+      TokenRange range = new TokenRange(original);
+      copy.add(range);
+      for (String endpoint : range.endpoints) {
+        EndpointDetails details = endpoint.equals("10.0.0.3")
+                ? new EndpointDetails(endpoint, "DC2").setRack("RAC1")
+                : new EndpointDetails(endpoint, "DC1").setRack(endpoint.equals("10.0.0.1") ? "RAC1" : "RAC2");
+        range.addToEndpoint_details(details);
+      }
+    }
+    return copy;
+  }
+
+  private static TokenRange range(String start, String end, String... endpoints) {
+    TokenRange range = new TokenRange(start, end, Arrays.asList(endpoints));
+    range.setRpc_endpoints(Arrays.asList(endpoints));
+    return range;
+  }
+}
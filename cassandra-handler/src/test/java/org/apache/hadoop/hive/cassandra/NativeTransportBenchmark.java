@@ -0,0 +1,90 @@
+package org.apache.hadoop.hive.cassandra;
+
+import java.io.IOException;
+
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.hive.cassandra.output.cql.CqlColumn;
+import org.apache.hadoop.hive.cassandra.output.cql.CqlPut;
+import org.apache.hadoop.hive.cassandra.output.cql.NativeCqlWriter;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * Compares the write throughput of CqlPut over thrift with the native protocol writer, against
+ * the embedded cassandra of {@link BaseCassandraConnection}, whose src/test/resources/cassandra.yaml
+ * starts the native transport on port 9042.
+ *
+ * Run with: java -cp ... org.apache.hadoop.hive.cassandra.NativeTransportBenchmark [rows] [native port]
+ */
+public class NativeTransportBenchmark {
+
+  private static final String TABLE = "native_benchmark";
+
+  public static void main(String[] args) throws Exception {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    String nativePort = args.length > 1 ? args[1] : AbstractCassandraSerDe.DEFAULT_NATIVE_PORT;
+
+    BaseCassandraConnection connection = BaseCassandraConnection.getInstance();
+    connection.maybeStartServer();
+    CassandraProxyClient client = BaseCassandraConnection.client;
+
+    client.getProxyConnection().set_keyspace(connection.ksName);
+    client.getProxyConnection().execute_cql3_query(ByteBufferUtil.bytes("CREATE TABLE " + TABLE
+            + " (id int PRIMARY KEY, value text)"), Compression.NONE, ConsistencyLevel.ONE);
+
+    JobConf jc = new JobConf();
+    jc.set(AbstractCassandraSerDe.CASSANDRA_CF_NAME, TABLE);
+    jc.set(AbstractCassandraSerDe.CASSANDRA_CONSISTENCY_LEVEL, "ONE");
+    jc.set(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT, nativePort);
+
+    // warm up
+    writeThrift(client, connection.ksName, jc, rows / 10);
+    writeNative(connection.ksName, jc, rows / 10);
+
+    long start = System.nanoTime();
+    writeThrift(client, connection.ksName, jc, rows);
+    report("thrift", rows, System.nanoTime() - start);
+
+    start = System.nanoTime();
+    writeNative(connection.ksName, jc, rows);
+    report("native", rows, System.nanoTime() - start);
+
+    client.close();
+    System.exit(0);
+  }
+
+  private static void writeThrift(CassandraProxyClient client, String keyspace, JobConf jc, int rows) throws IOException {
+    for (int i = 0; i < rows; i++) {
+      row(i).write(keyspace, client, jc);
+    }
+  }
+
+  private static void writeNative(String keyspace, JobConf jc, int rows) throws IOException {
+    NativeCqlWriter writer = NativeCqlWriter.open(jc, "127.0.0.1", keyspace);
+    for (int i = 0; i < rows; i++) {
+      row(i).write(writer, jc);
+    }
+    writer.close();
+  }
+
+  private static CqlPut row(int id) {
+    CqlPut put = new CqlPut(ByteBufferUtil.bytes(id));
+    put.getColumns().add(column("id", ByteBufferUtil.getArray(ByteBufferUtil.bytes(id))));
+    put.getColumns().add(column("value", ("value " + id).getBytes()));
+    return put;
+  }
+
+  private static CqlColumn column(String name, byte[] value) {
+    CqlColumn column = new CqlColumn();
+    column.setColumnFamily(TABLE);
+    column.setColumn(name.getBytes());
+    column.setValue(value);
+    return column;
+  }
+
+  private static void report(String transport, int rows, long nanos) {
+    System.out.println(String.format("%-8s %10.0f rows/s", transport, rows / (nanos / 1e9)));
+  }
+}
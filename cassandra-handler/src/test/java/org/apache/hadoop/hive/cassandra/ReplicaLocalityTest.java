@@ -0,0 +1,64 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+public class ReplicaLocalityTest {
+
+  private final RingTopology ring = new RingTopology("ks", 1, HostSelectionPolicyTest.withDatacenters(ring(
+          "10.0.0.1", "10.0.0.2", "10.0.0.3")));
+
+  @Test
+  public void distanceFollowsDatacenterAndRack() {
+    ReplicaLocality locality = new ReplicaLocality("DC1", "RAC1");
+
+    assertEquals(ReplicaLocality.LOCAL_RACK, locality.getDistance("10.0.0.1", ring));
+    assertEquals(ReplicaLocality.LOCAL_DC, locality.getDistance("10.0.0.2", ring));
+    assertEquals(ReplicaLocality.REMOTE, locality.getDistance("10.0.0.3", ring));
+    assertEquals(ReplicaLocality.REMOTE, locality.getDistance("10.0.0.9", ring));
+  }
+
+  @Test
+  public void remoteLocationsAreDroppedWhenLocalOnesExist() {
+    ReplicaLocality locality = new ReplicaLocality("DC1", "RAC2");
+
+    assertArrayEquals(new String[]{"10.0.0.2", "10.0.0.1"},
+            locality.orderLocations(new String[]{"10.0.0.3", "10.0.0.1", "10.0.0.2"}, ring));
+  }
+
+  @Test
+  public void remoteLocationsAreKeptWhenNoLocalOneExists() {
+    ReplicaLocality locality = new ReplicaLocality("DC1", null);
+
+    assertArrayEquals(new String[]{"10.0.0.3"}, locality.orderLocations(new String[]{"10.0.0.3"}, ring));
+  }
+
+  @Test
+  public void disabledWithoutLocalDatacenter() {
+    ReplicaLocality locality = ReplicaLocality.fromConf(new Configuration(false));
+
+    assertFalse(locality.isEnabled());
+    String[] locations = {"10.0.0.3", "10.0.0.1"};
+    assertArrayEquals(locations, locality.orderLocations(locations, ring));
+  }
+
+  private static List<TokenRange> ring(String... endpoints) {
+    List<TokenRange> ranges = new ArrayList<TokenRange>();
+    for (int i = 0; i < endpoints.length; i++) {
+      TokenRange range = new TokenRange(String.valueOf(i * 100), String.valueOf((i + 1) * 100),
+              Arrays.asList(endpoints[i]));
+      range.setRpc_endpoints(Arrays.asList(endpoints[i]));
+      ranges.add(range);
+    }
+    return ranges;
+  }
+}
@@ -0,0 +1,127 @@
+package org.apache.hadoop.hive.cassandra;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * Measures the per call overhead of {@link RetryingCassandraClient} against the reflective proxy
+ * CassandraProxyClient used to hand out, both wrapping a client that does no I/O.
+ *
+ * Run with: java -cp ... org.apache.hadoop.hive.cassandra.RetryingCassandraClientBenchmark [iterations]
+ */
+public class RetryingCassandraClientBenchmark {
+
+  private static final Map<ByteBuffer, Map<String, List<Mutation>>> MUTATIONS =
+          Collections.emptyMap();
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+    final Cassandra.Client stub = new NoopClient();
+
+    final ReflectiveHandler handler = new ReflectiveHandler(stub);
+    final Cassandra.Iface retrying = new RetryingCassandraClient(
+            new RetryingCassandraClientTest.StubConnector(stub, 10));
+
+    Call reflective = new Call("reflective proxy") {
+      void run() throws Exception {
+        // CassandraProxyClient.getProxyConnection() built a new proxy on every call
+        Cassandra.Iface proxy = (Cassandra.Iface) Proxy.newProxyInstance(Cassandra.Client.class
+                .getClassLoader(), Cassandra.Client.class.getInterfaces(), handler);
+        proxy.batch_mutate(MUTATIONS, ConsistencyLevel.ONE);
+      }
+    };
+    Call typed = new Call("retrying client") {
+      void run() throws Exception {
+        retrying.batch_mutate(MUTATIONS, ConsistencyLevel.ONE);
+      }
+    };
+    Call direct = new Call("direct client") {
+      void run() throws Exception {
+        stub.batch_mutate(MUTATIONS, ConsistencyLevel.ONE);
+      }
+    };
+
+    // warm up
+    for (int round = 0; round < 3; round++) {
+      reflective.measure(iterations / 10);
+      typed.measure(iterations / 10);
+      direct.measure(iterations / 10);
+    }
+
+    for (Call call : new Call[]{reflective, typed, direct}) {
+      long nanos = call.measure(iterations);
+      System.out.println(String.format("%-18s %8.1f ns/call", call.name, (double) nanos / iterations));
+    }
+  }
+
+  private abstract static class Call {
+    final String name;
+
+    Call(String name) {
+      this.name = name;
+    }
+
+    abstract void run() throws Exception;
+
+    long measure(int iterations) throws Exception {
+      long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        run();
+      }
+      return System.nanoTime() - start;
+    }
+  }
+
+  private static class NoopClient extends Cassandra.Client {
+    NoopClient() {
+      super(new TBinaryProtocol(new TMemoryBuffer(0)));
+    }
+
+    @Override
+    public void batch_mutate(Map<ByteBuffer, Map<String, List<Mutation>>> mutation_map,
+                             ConsistencyLevel consistency_level) {
+    }
+  }
+
+  /**
+   * The dispatch loop of the former CassandraProxyClient.invoke().
+   */
+  private static class ReflectiveHandler implements InvocationHandler {
+    private final Cassandra.Client client;
+
+    ReflectiveHandler(Cassandra.Client client) {
+      this.client = client;
+    }
+
+    public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+      int tries = 0;
+      while (tries++ < 10) {
+        try {
+          return m.invoke(client, args);
+        } catch (InvocationTargetException e) {
+          if (!(e.getTargetException() instanceof UnavailableException ||
+                  e.getTargetException() instanceof TimedOutException ||
+                  e.getTargetException() instanceof TTransportException) || tries >= 10) {
+            throw e.getCause();
+          }
+        }
+      }
+      throw new CassandraException("Not able to connect to any server in the ring");
+    }
+  }
+}
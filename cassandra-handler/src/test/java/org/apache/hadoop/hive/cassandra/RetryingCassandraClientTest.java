@@ -0,0 +1,148 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+
+public class RetryingCassandraClientTest {
+
+  @Test
+  public void retriesTransportAndTimeoutErrors() throws Exception {
+    StubClient stub = new StubClient(new TTransportException("down"), new TimedOutException());
+    StubConnector connector = new StubConnector(stub, 10);
+
+    new RetryingCassandraClient(connector).batch_mutate(null, ConsistencyLevel.ONE);
+
+    assertEquals(3, stub.calls);
+    assertEquals(2, connector.retries);
+    assertEquals(1, connector.transportFailures);
+  }
+
+  @Test
+  public void givesUpAfterMaxAttempts() throws Exception {
+    StubClient stub = new StubClient(new TimedOutException(), new TimedOutException(), new TimedOutException());
+    StubConnector connector = new StubConnector(stub, 2);
+
+    try {
+      new RetryingCassandraClient(connector).batch_mutate(null, ConsistencyLevel.ONE);
+      fail("expected the timeout to be rethrown");
+    } catch (TimedOutException e) {
+      // expected
+    }
+    assertEquals(2, stub.calls);
+  }
+
+  @Test
+  public void doesNotRetryInvalidRequests() throws Exception {
+    StubClient stub = new StubClient(new InvalidRequestException("bad"));
+    StubConnector connector = new StubConnector(stub, 10);
+
+    try {
+      new RetryingCassandraClient(connector).batch_mutate(null, ConsistencyLevel.ONE);
+      fail("expected the invalid request to be rethrown");
+    } catch (InvalidRequestException e) {
+      // expected
+    }
+    assertEquals(1, stub.calls);
+    assertEquals(0, connector.retries);
+  }
+
+  @Test
+  public void skipsSettingTheCurrentKeyspace() throws Exception {
+    StubClient stub = new StubClient();
+    StubConnector connector = new StubConnector(stub, 10);
+    RetryingCassandraClient client = new RetryingCassandraClient(connector);
+
+    client.set_keyspace("ks");
+    client.set_keyspace("ks");
+
+    assertEquals(1, stub.calls);
+    assertEquals("ks", connector.keyspace);
+  }
+
+  /**
+   * Client that fails with the given errors, one per call, then succeeds.
+   */
+  static class StubClient extends Cassandra.Client {
+    private final Exception[] failures;
+    int calls;
+
+    StubClient(Exception... failures) {
+      super(new TBinaryProtocol(new TMemoryBuffer(0)));
+      this.failures = failures;
+    }
+
+    @Override
+    public void set_keyspace(String keyspace) {
+      calls++;
+    }
+
+    @Override
+    public void batch_mutate(Map<ByteBuffer, Map<String, List<Mutation>>> mutation_map,
+                             ConsistencyLevel consistency_level) throws InvalidRequestException, TimedOutException, TException {
+      if (calls < failures.length) {
+        Exception e = failures[calls++];
+        if (e instanceof InvalidRequestException) {
+          throw (InvalidRequestException) e;
+        } else if (e instanceof TimedOutException) {
+          throw (TimedOutException) e;
+        }
+        throw (TException) e;
+      }
+      calls++;
+    }
+  }
+
+  static class StubConnector implements RetryingCassandraClient.Connector {
+    private final Cassandra.Iface client;
+    private final int maxAttempts;
+    int retries;
+    int transportFailures;
+    String keyspace;
+
+    StubConnector(Cassandra.Iface client, int maxAttempts) {
+      this.client = client;
+      this.maxAttempts = maxAttempts;
+    }
+
+    public Cassandra.Iface getClient() {
+      return client;
+    }
+
+    public boolean retry(String method, Exception e, int attempt) {
+      if (e instanceof TTransportException) {
+        transportFailures++;
+      }
+      if (attempt < maxAttempts) {
+        retries++;
+        return true;
+      }
+      return false;
+    }
+
+    public void callSucceeded(String method, long latencyNanos) {
+    }
+
+    public String getKeyspace() {
+      return keyspace;
+    }
+
+    public void keyspaceChanged(String keyspace) {
+      this.keyspace = keyspace;
+    }
+  }
+}
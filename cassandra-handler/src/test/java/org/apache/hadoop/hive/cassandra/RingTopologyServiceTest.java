@@ -0,0 +1,213 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.thrift.EndpointDetails;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+public class RingTopologyServiceTest {
+
+  @Test
+  public void firstLookupDescribesTheRing() throws Exception {
+    StubDescriber describer = new StubDescriber(ring("10.0.0.1", "10.0.0.2"));
+    RingTopologyService service = new RingTopologyService(describer);
+
+    RingTopology topology = service.getTopology("10.0.0.1", 9160, "ks");
+
+    assertEquals(1, topology.getVersion());
+    assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), topology.getEndpoints());
+    assertSame(topology, service.getTopology("10.0.0.1", 9160, "ks"));
+    assertEquals(1, describer.calls);
+  }
+
+  @Test
+  public void unchangedRingKeepsTheSnapshot() throws Exception {
+    StubDescriber describer = new StubDescriber(ring("10.0.0.1", "10.0.0.2"), ring("10.0.0.1", "10.0.0.2"));
+    RingTopologyService service = new RingTopologyService(describer);
+    RecordingListener listener = new RecordingListener();
+    service.addListener(listener);
+
+    RingTopology topology = service.getTopology("10.0.0.1", 9160, "ks");
+    service.refreshAll();
+
+    assertSame(topology, service.getTopology("10.0.0.1", 9160, "ks"));
+    assertEquals(0, listener.changes.size());
+  }
+
+  @Test
+  public void changedRingIsPublishedAndNotified() throws Exception {
+    StubDescriber describer = new StubDescriber(ring("10.0.0.1", "10.0.0.2"), ring("10.0.0.1", "10.0.0.3"));
+    RingTopologyService service = new RingTopologyService(describer);
+    RecordingListener listener = new RecordingListener();
+    service.addListener(listener);
+
+    RingTopology previous = service.getTopology("10.0.0.1", 9160, "ks");
+    service.refreshAll();
+    RingTopology current = service.getTopology("10.0.0.1", 9160, "ks");
+
+    assertEquals(2, current.getVersion());
+    assertEquals(Arrays.asList("10.0.0.1", "10.0.0.3"), current.getEndpoints());
+    assertEquals(1, listener.changes.size());
+    assertSame(previous, listener.changes.get(0)[0]);
+    assertSame(current, listener.changes.get(0)[1]);
+  }
+
+  @Test
+  public void failedRefreshKeepsThePreviousSnapshot() throws Exception {
+    StubDescriber describer = new StubDescriber(ring("10.0.0.1", "10.0.0.2"));
+    RingTopologyService service = new RingTopologyService(describer);
+
+    RingTopology topology = service.getTopology("10.0.0.1", 9160, "ks");
+    service.refreshAll();
+
+    assertSame(topology, service.getTopology("10.0.0.1", 9160, "ks"));
+    // the seed and the other node of the ring were both tried
+    assertEquals(3, describer.calls);
+  }
+
+  @Test
+  public void firstLookupFailsWithoutAnyNode() {
+    RingTopologyService service = new RingTopologyService(new StubDescriber());
+    try {
+      service.getTopology("10.0.0.1", 9160, "ks");
+      fail("expected the lookup to fail");
+    } catch (CassandraException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void detailsAreKnownByRpcAndGossipAddress() {
+    TokenRange range = new TokenRange("0", "100", Arrays.asList("192.168.0.1"));
+    range.setRpc_endpoints(Arrays.asList("10.0.0.1"));
+    range.setEndpoint_details(Arrays.asList(new EndpointDetails("192.168.0.1", "DC1").setRack("RAC1")));
+
+    RingTopology topology = new RingTopology("ks", 1, Arrays.asList(range));
+
+    assertEquals("DC1", topology.getDatacenter("10.0.0.1"));
+    assertEquals("DC1", topology.getDatacenter("192.168.0.1"));
+    assertEquals("RAC1", topology.getRack("10.0.0.1"));
+    assertNull(topology.getDatacenter("10.0.0.9"));
+  }
+
+  @Test
+  public void clusterRingIsReadFromTheSystemTables() throws Exception {
+    CqlResult local = rows(row(column("data_center", text("DC1")), column("rack", text("RAC1")),
+            column("tokens", textSet("100", "-50"))));
+    CqlResult peers = rows(
+            row(column("peer", inet("192.168.0.2")), column("rpc_address", inet("10.0.0.2")),
+                    column("data_center", text("DC2")), column("rack", text("RAC2")), column("tokens", textSet("20"))),
+            row(column("peer", inet("192.168.0.3")), column("rpc_address", inet("0.0.0.0")),
+                    column("data_center", text("DC1")), column("rack", text("RAC1")), column("tokens", textSet("300"))));
+
+    List<TokenRange> ranges = RingTopologyService.readRing("10.0.0.1", local, peers);
+
+    assertEquals(4, ranges.size());
+    assertRange(ranges.get(0), "300", "-50", "10.0.0.1");
+    assertRange(ranges.get(1), "-50", "20", "10.0.0.2");
+    assertRange(ranges.get(2), "20", "100", "10.0.0.1");
+    assertRange(ranges.get(3), "100", "300", "192.168.0.3");
+
+    RingTopology topology = new RingTopology(null, 1, ranges);
+    assertEquals("DC2", topology.getDatacenter("10.0.0.2"));
+    assertEquals("DC2", topology.getDatacenter("192.168.0.2"));
+    assertEquals("RAC1", topology.getRack("10.0.0.1"));
+  }
+
+  private static void assertRange(TokenRange range, String start, String end, String rpcEndpoint) {
+    assertEquals(start, range.getStart_token());
+    assertEquals(end, range.getEnd_token());
+    assertEquals(Arrays.asList(rpcEndpoint), range.getRpc_endpoints());
+  }
+
+  private static CqlResult rows(CqlRow... rows) {
+    CqlResult result = new CqlResult(CqlResultType.ROWS);
+    result.setRows(Arrays.asList(rows));
+    return result;
+  }
+
+  private static CqlRow row(Column... columns) {
+    return new CqlRow(ByteBufferUtil.EMPTY_BYTE_BUFFER, Arrays.asList(columns));
+  }
+
+  private static Column column(String name, ByteBuffer value) {
+    return new Column(ByteBufferUtil.bytes(name)).setValue(value);
+  }
+
+  private static ByteBuffer text(String value) {
+    return ByteBufferUtil.bytes(value);
+  }
+
+  private static ByteBuffer inet(String address) throws Exception {
+    return ByteBuffer.wrap(InetAddress.getByName(address).getAddress());
+  }
+
+  private static ByteBuffer textSet(String... values) {
+    int size = 2;
+    for (String value : values) {
+      size += 2 + value.length();
+    }
+    ByteBuffer set = ByteBuffer.allocate(size);
+    set.putShort((short) values.length);
+    for (String value : values) {
+      set.putShort((short) value.length());
+      set.put(ByteBufferUtil.bytes(value));
+    }
+    set.flip();
+    return set;
+  }
+
+  private static List<TokenRange> ring(String... endpoints) {
+    List<TokenRange> ranges = new ArrayList<TokenRange>();
+    for (int i = 0; i < endpoints.length; i++) {
+      TokenRange range = new TokenRange(String.valueOf(i * 100), String.valueOf((i + 1) * 100),
+              Arrays.asList(endpoints[i]));
+      range.setRpc_endpoints(Arrays.asList(endpoints[i]));
+      ranges.add(range);
+    }
+    return ranges;
+  }
+
+  /**
+   * Returns the given rings, one per call, then fails.
+   */
+  private static class StubDescriber implements RingTopologyService.RingDescriber {
+    private final List<TokenRange>[] rings;
+    int calls;
+
+    StubDescriber(List<TokenRange>... rings) {
+      this.rings = rings;
+    }
+
+    public List<TokenRange> describeRing(String host, int port, String keyspace) throws CassandraException {
+      if (calls < rings.length) {
+        return rings[calls++];
+      }
+      calls++;
+      throw new CassandraException("Unable to describe ring through " + host);
+    }
+  }
+
+  private static class RecordingListener implements RingTopologyService.Listener {
+    final List<RingTopology[]> changes = new ArrayList<RingTopology[]>();
+
+    public void topologyChanged(RingTopology previous, RingTopology current) {
+      changes.add(new RingTopology[]{previous, current});
+    }
+  }
+}
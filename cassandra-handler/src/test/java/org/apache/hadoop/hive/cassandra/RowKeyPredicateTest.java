@@ -0,0 +1,141 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.db.marshal.DateType;
+import org.apache.cassandra.db.marshal.UUIDType;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.hive.cassandra.serde.CassandraColumnSerDe;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+public class RowKeyPredicateTest {
+
+  @Test
+  public void equalityOnTheKeyIsPushed() {
+    ExprNodeDesc predicate = call(new GenericUDFOPEqual(), column("id"), constant("a"));
+
+    RowKeyPredicate keyPredicate = RowKeyPredicate.analyze(predicate, "id");
+
+    assertEquals(Arrays.asList(ByteBufferUtil.bytes("a")), keyPredicate.getKeys());
+    assertEquals(predicate, keyPredicate.getPushedPredicate());
+    assertNull(keyPredicate.getResidualPredicate());
+  }
+
+  @Test
+  public void inListAndOrOfEqualitiesArePushed() {
+    ExprNodeDesc in = call(new GenericUDFIn(), column("id"), constant("a"), constant("b"), constant("a"));
+    assertEquals(Arrays.asList(ByteBufferUtil.bytes("a"), ByteBufferUtil.bytes("b")),
+            RowKeyPredicate.analyze(in, "id").getKeys());
+
+    ExprNodeDesc or = call(new GenericUDFOPOr(),
+            call(new GenericUDFOPEqual(), constant("c"), column("ID")),
+            call(new GenericUDFOPEqual(), column("id"), constant("d")));
+    assertEquals(Arrays.asList(ByteBufferUtil.bytes("c"), ByteBufferUtil.bytes("d")),
+            RowKeyPredicate.analyze(or, "id").getKeys());
+  }
+
+  @Test
+  public void otherConditionsAreLeftToHive() {
+    ExprNodeDesc other1 = call(new GenericUDFOPGreaterThan(), column("age"), constant(30));
+    ExprNodeDesc key = call(new GenericUDFOPEqual(), column("id", TypeInfoFactory.intTypeInfo), constant(42));
+    ExprNodeDesc other2 = call(new GenericUDFOPEqual(), column("name"), constant("x"));
+    ExprNodeDesc predicate = call(new GenericUDFOPAnd(), call(new GenericUDFOPAnd(), other1, key), other2);
+
+    RowKeyPredicate keyPredicate = RowKeyPredicate.analyze(predicate, "id");
+
+    assertEquals(Arrays.asList(ByteBufferUtil.bytes(42)), keyPredicate.getKeys());
+    assertEquals(key, keyPredicate.getPushedPredicate());
+    assertEquals(call(new GenericUDFOPAnd(), other1, other2).getExprString(),
+            keyPredicate.getResidualPredicate().getExprString());
+  }
+
+  @Test
+  public void predicatesNotLimitedToKnownKeysAreNotPushed() {
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFOPGreaterThan(), column("id"), constant("a")), "id"));
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFOPEqual(), column("name"), constant("a")), "id"));
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFOPEqual(), column("id"), column("name")), "id"));
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFOPOr(),
+            call(new GenericUDFOPEqual(), column("id"), constant("a")),
+            call(new GenericUDFOPEqual(), column("name"), constant("b"))), "id"));
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFOPEqual(), column("id"), constant("a")), null));
+  }
+
+  @Test
+  public void constantsOfAnotherTypeThanTheKeyAreNotPushed() {
+    // Hive leaves the constants of IN as they are written, 4 byte ints would never match 8 byte keys
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFIn(), column("id", TypeInfoFactory.longTypeInfo),
+            constant(1), constant(2)), "id"));
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFIn(), column("id"), constant(1), constant(2)), "id"));
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFOPEqual(), column("id"), constant(1)), "id"));
+
+    ExprNodeDesc longs = call(new GenericUDFIn(), column("id", TypeInfoFactory.longTypeInfo),
+            new ExprNodeConstantDesc(TypeInfoFactory.longTypeInfo, 1L));
+    assertEquals(Arrays.asList(ByteBufferUtil.bytes(1L)), RowKeyPredicate.analyze(longs, "id").getKeys());
+  }
+
+  @Test
+  public void keysAreEncodedWithTheKeyValidator() {
+    String uuid = "6ba7b810-9dad-11d1-80b4-00c04fd430c8";
+    ExprNodeDesc predicate = call(new GenericUDFOPEqual(), column("id"), constant(uuid));
+
+    assertEquals(Arrays.asList(UUIDType.instance.fromString(uuid)),
+            RowKeyPredicate.analyze(predicate, "id", UUIDType.instance).getKeys());
+    assertNull(RowKeyPredicate.analyze(call(new GenericUDFOPEqual(), column("id"), constant("not a uuid")), "id",
+            UUIDType.instance));
+
+    ExprNodeDesc timestamp = call(new GenericUDFOPEqual(), column("ts", TypeInfoFactory.timestampTypeInfo),
+            new ExprNodeConstantDesc(TypeInfoFactory.timestampTypeInfo, new Timestamp(1234567890123L)));
+    assertEquals(Arrays.asList(ByteBufferUtil.bytes(1234567890123L)),
+            RowKeyPredicate.analyze(timestamp, "ts", DateType.instance).getKeys());
+  }
+
+  @Test
+  public void keysOfThriftTablesUseTheKeyValidatorOfTheTable() throws Exception {
+    List<String> mapping = Arrays.asList("name", ":key");
+    ExprNodeDesc predicate = call(new GenericUDFOPEqual(), column("id"), constant("123"));
+
+    assertEquals(Arrays.asList(ByteBufferUtil.bytes(123L)), RowKeyPredicate.analyze(predicate, "id",
+            CassandraColumnSerDe.parseKeyValidator("UTF8Type, LongType", mapping)).getKeys());
+    assertNull(CassandraColumnSerDe.parseKeyValidator(null, mapping));
+    assertNull(CassandraColumnSerDe.parseKeyValidator("UTF8Type", mapping));
+  }
+
+  private static ExprNodeDesc column(String name) {
+    return column(name, TypeInfoFactory.stringTypeInfo);
+  }
+
+  private static ExprNodeDesc column(String name, TypeInfo type) {
+    return new ExprNodeColumnDesc(type, name, "t", false);
+  }
+
+  private static ExprNodeDesc constant(String value) {
+    return new ExprNodeConstantDesc(TypeInfoFactory.stringTypeInfo, value);
+  }
+
+  private static ExprNodeDesc constant(int value) {
+    return new ExprNodeConstantDesc(TypeInfoFactory.intTypeInfo, value);
+  }
+
+  private static ExprNodeDesc call(GenericUDF udf, ExprNodeDesc... children) {
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, udf,
+            new ArrayList<ExprNodeDesc>(Arrays.asList(children)));
+  }
+}
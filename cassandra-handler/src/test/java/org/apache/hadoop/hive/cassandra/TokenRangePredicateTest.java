@@ -0,0 +1,137 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.hive.cassandra.ql.udf.UDFCassandraToken;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFOPNegative;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class TokenRangePredicateTest {
+
+  private static final String MURMUR3 = Murmur3Partitioner.class.getName();
+
+  @Test
+  public void udfReturnsThePartitionerToken() {
+    assertEquals(new Murmur3Partitioner().getToken(ByteBufferUtil.bytes("row1")).token.longValue(),
+            new UDFCassandraToken().evaluate(new Text("row1")).get());
+  }
+
+  @Test
+  public void betweenBoundsTheTokens() {
+    ExprNodeDesc predicate = call(new GenericUDFBetween(), constant(false), token("id"), constant(-100), constant(100L));
+
+    TokenRangePredicate tokenRange = TokenRangePredicate.analyze(predicate, "id", MURMUR3);
+
+    assertEquals(-101, tokenRange.getStartToken());
+    assertEquals(100, tokenRange.getEndToken());
+    assertNull(tokenRange.getResidualPredicate());
+    assertTrue(TokenRangePredicate.isTokenRange(tokenRange.getPushedPredicate()));
+  }
+
+  @Test
+  public void comparisonsAreIntersectedAndOtherConditionsLeftToHive() {
+    ExprNodeDesc other = call(new GenericUDFOPEqual(), column("name"), constant("x"));
+    ExprNodeDesc predicate = call(new GenericUDFOPAnd(),
+            call(new GenericUDFOPAnd(), call(new GenericUDFOPLessThan(), negative(constant(50)), token("id")), other),
+            call(new GenericUDFOPEqualOrLessThan(), token("id"), constant(1000)));
+
+    TokenRangePredicate tokenRange = TokenRangePredicate.analyze(predicate, "id", MURMUR3);
+
+    assertEquals(-50, tokenRange.getStartToken());
+    assertEquals(1000, tokenRange.getEndToken());
+    assertEquals(other, tokenRange.getResidualPredicate());
+    assertFalse(TokenRangePredicate.isTokenRange(predicate));
+  }
+
+  @Test
+  public void otherPredicatesAreNotPushed() {
+    ExprNodeDesc onKey = call(new GenericUDFOPGreaterThan(), token("id"), constant(5));
+    assertNull(TokenRangePredicate.analyze(onKey, "name", MURMUR3));
+    assertNull(TokenRangePredicate.analyze(onKey, "id", RandomPartitioner.class.getName()));
+    assertNull(TokenRangePredicate.analyze(call(new GenericUDFOPGreaterThan(), column("id"), constant(5)), "id", MURMUR3));
+    assertNull(TokenRangePredicate.analyze(call(new GenericUDFOPGreaterThan(), token("id"), column("x")), "id", MURMUR3));
+    assertNull(TokenRangePredicate.analyze(
+            call(new GenericUDFBetween(), constant(true), token("id"), constant(1), constant(2)), "id", MURMUR3));
+  }
+
+  @Test
+  public void splitsAreClippedToTheRange() {
+    TokenRangePredicate tokenRange = new TokenRangePredicate(null, null, -100, 100);
+    String[] hosts = {"10.0.0.1"};
+
+    assertTrue(tokenRange.restrict(new ColumnFamilySplit("100", "200", 10, hosts)).isEmpty());
+
+    List<ColumnFamilySplit> inside = tokenRange.restrict(new ColumnFamilySplit("0", "400", 100, hosts));
+    assertEquals(1, inside.size());
+    assertEquals("0", inside.get(0).getStartToken());
+    assertEquals("100", inside.get(0).getEndToken());
+    assertEquals(25, inside.get(0).getLength());
+
+    // wraps around the ring, (50, MIN] and (MIN, -50]
+    List<ColumnFamilySplit> wrapping = tokenRange.restrict(new ColumnFamilySplit("50", "-50", 10, hosts));
+    assertEquals(2, wrapping.size());
+    assertEquals("50", wrapping.get(0).getStartToken());
+    assertEquals("100", wrapping.get(0).getEndToken());
+    assertEquals("-100", wrapping.get(1).getStartToken());
+    assertEquals("-50", wrapping.get(1).getEndToken());
+  }
+
+  @Test
+  public void contradictoryBoundsAreEmpty() {
+    ExprNodeDesc predicate = call(new GenericUDFOPAnd(),
+            call(new GenericUDFOPGreaterThan(), token("id"), constant(10)),
+            call(new GenericUDFOPLessThan(), token("id"), constant(5)));
+
+    assertTrue(TokenRangePredicate.analyze(predicate, "id", MURMUR3).isEmpty());
+  }
+
+  private static ExprNodeDesc token(String column) {
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.longTypeInfo,
+            new GenericUDFBridge("cassandra_token", false, UDFCassandraToken.class),
+            new ArrayList<ExprNodeDesc>(Arrays.asList(column(column))));
+  }
+
+  private static ExprNodeDesc negative(ExprNodeDesc value) {
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.intTypeInfo,
+            new GenericUDFBridge("-", true, UDFOPNegative.class),
+            new ArrayList<ExprNodeDesc>(Arrays.asList(value)));
+  }
+
+  private static ExprNodeDesc column(String name) {
+    return new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, name, "t", false);
+  }
+
+  private static ExprNodeDesc constant(Object value) {
+    return new ExprNodeConstantDesc(value);
+  }
+
+  private static ExprNodeDesc call(GenericUDF udf, ExprNodeDesc... children) {
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, udf,
+            new ArrayList<ExprNodeDesc>(Arrays.asList(children)));
+  }
+}
@@ -0,0 +1,55 @@
+package org.apache.hadoop.hive.cassandra;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.Test;
+
+public class TokenRouterTest {
+
+  private final TokenRouter router = new TokenRouter(new Murmur3Partitioner(), Arrays.asList(
+          range("0", "100", "10.0.0.3", "10.0.0.1"),
+          range("100", "-100", "10.0.0.1", "10.0.0.2"),
+          range("-100", "0", "10.0.0.2", "10.0.0.3")));
+
+  @Test
+  public void tokenMapsToRangeEndingAtOrAfterIt() {
+    assertEquals(Arrays.asList("10.0.0.2", "10.0.0.3"), router.getReplicas(new LongToken(-50L)));
+    assertEquals(Arrays.asList("10.0.0.2", "10.0.0.3"), router.getReplicas(new LongToken(0L)));
+    assertEquals(Arrays.asList("10.0.0.3", "10.0.0.1"), router.getReplicas(new LongToken(1L)));
+  }
+
+  @Test
+  public void tokensPastTheLastRangeWrapAround() {
+    assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), router.getReplicas(new LongToken(101L)));
+    assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), router.getReplicas(new LongToken(-101L)));
+  }
+
+  @Test
+  public void keysAreHashedWithThePartitioner() {
+    Murmur3Partitioner partitioner = new Murmur3Partitioner();
+    assertEquals(router.getReplicas(partitioner.getToken(ByteBufferUtil.bytes("key1"))),
+            router.getReplicas(ByteBufferUtil.bytes("key1")));
+  }
+
+  @Test
+  public void wildcardRpcAddressFallsBackToEndpoint() {
+    TokenRange range = range("0", "100", "10.0.0.1");
+    range.setRpc_endpoints(Arrays.asList("0.0.0.0"));
+
+    List<String> endpoints = TokenRouter.getEndpoints(range);
+    assertEquals(Arrays.asList("10.0.0.1"), endpoints);
+  }
+
+  private static TokenRange range(String start, String end, String... endpoints) {
+    TokenRange range = new TokenRange(start, end, Arrays.asList(endpoints));
+    range.setRpc_endpoints(Arrays.asList(endpoints));
+    return range;
+  }
+}
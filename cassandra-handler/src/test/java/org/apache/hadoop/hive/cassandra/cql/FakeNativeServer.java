@@ -0,0 +1,170 @@
+package org.apache.hadoop.hive.cassandra.cql;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Accepts one native protocol connection, answers STARTUP, then reads requests and writes the
+ * responses the test asks for.
+ */
+public class FakeNativeServer {
+
+  public static class Request {
+    public int stream;
+    public int opcode;
+    public byte[] body;
+
+    public boolean isPrepare() {
+      return opcode == NativeConnection.PREPARE;
+    }
+
+    public boolean isExecute() {
+      return opcode == NativeConnection.EXECUTE;
+    }
+  }
+
+  private final ServerSocket serverSocket;
+  private volatile Socket socket;
+  private DataInputStream in;
+  private DataOutputStream out;
+  private final CountDownLatch started = new CountDownLatch(1);
+
+  public FakeNativeServer() throws IOException {
+    serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    new Thread(new Runnable() {
+      public void run() {
+        try {
+          socket = serverSocket.accept();
+          in = new DataInputStream(socket.getInputStream());
+          out = new DataOutputStream(socket.getOutputStream());
+          respond(readRequests(1).get(0), NativeConnection.READY, new byte[0]);
+          started.countDown();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }).start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public void close() throws IOException {
+    if (socket != null) {
+      socket.close();
+    }
+    serverSocket.close();
+  }
+
+  /**
+   * Read the next requests, waiting for the client to be connected first.
+   */
+  public List<Request> read(int count) throws IOException {
+    try {
+      started.await();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+    return readRequests(count);
+  }
+
+  private List<Request> readRequests(int count) throws IOException {
+    List<Request> requests = new ArrayList<Request>();
+    for (int i = 0; i < count; i++) {
+      Request request = new Request();
+      in.readByte();
+      in.readByte();
+      request.stream = in.readByte();
+      request.opcode = in.readByte();
+      request.body = new byte[in.readInt()];
+      in.readFully(request.body);
+      requests.add(request);
+    }
+    return requests;
+  }
+
+  public void respondVoid(Request request) throws IOException {
+    respond(request, NativeConnection.RESULT, ByteBuffer.allocate(4).putInt(NativeResult.VOID).array());
+  }
+
+  public void respondPrepared(Request request, byte[] id) throws IOException {
+    ByteBuffer body = ByteBuffer.allocate(256);
+    body.putInt(NativeResult.PREPARED);
+    body.putShort((short) id.length).put(id);
+    body.putInt(0x0001).putInt(0);
+    putString(body, "ks");
+    putString(body, "cf");
+    respond(request, NativeConnection.RESULT, Arrays.copyOf(body.array(), body.position()));
+  }
+
+  public void respondRows(Request request, String value) throws IOException {
+    respondRows(request, Arrays.asList("c"), Collections.singletonList(new ByteBuffer[]{ByteBufferUtil.bytes(value)}));
+  }
+
+  /**
+   * Answer with rows of blob columns.
+   */
+  public void respondRows(Request request, List<String> columns, List<ByteBuffer[]> rows) throws IOException {
+    ByteBuffer body = ByteBuffer.allocate(4096);
+    body.putInt(NativeResult.ROWS);
+    body.putInt(0x0001).putInt(columns.size());
+    putString(body, "ks");
+    putString(body, "cf");
+    for (String column : columns) {
+      putString(body, column);
+      body.putShort((short) 0x0003);
+    }
+    body.putInt(rows.size());
+    for (ByteBuffer[] row : rows) {
+      for (ByteBuffer value : row) {
+        body.putInt(value.remaining()).put(value.duplicate());
+      }
+    }
+    respond(request, NativeConnection.RESULT, Arrays.copyOf(body.array(), body.position()));
+  }
+
+  /**
+   * @return the CQL text of a QUERY or PREPARE request
+   */
+  public static String getQuery(Request request) throws IOException {
+    ByteBuffer body = ByteBuffer.wrap(request.body);
+    byte[] query = new byte[body.getInt()];
+    body.get(query);
+    return new String(query, "UTF-8");
+  }
+
+  public void respondError(Request request, int code, String message) throws IOException {
+    ByteBuffer body = ByteBuffer.allocate(256);
+    body.putInt(code);
+    putString(body, message);
+    respond(request, NativeConnection.ERROR, Arrays.copyOf(body.array(), body.position()));
+  }
+
+  public synchronized void respond(Request request, int opcode, byte[] body) throws IOException {
+    out.writeByte(0x81);
+    out.writeByte(0);
+    out.writeByte(request.stream);
+    out.writeByte(opcode);
+    out.writeInt(body.length);
+    out.write(body);
+    out.flush();
+  }
+
+  private static void putString(ByteBuffer body, String s) throws IOException {
+    byte[] bytes = s.getBytes("UTF-8");
+    body.putShort((short) bytes.length).put(bytes);
+  }
+}
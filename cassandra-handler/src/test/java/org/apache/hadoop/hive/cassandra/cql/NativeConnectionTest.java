@@ -0,0 +1,92 @@
+package org.apache.hadoop.hive.cassandra.cql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class NativeConnectionTest {
+
+  private FakeNativeServer server;
+  private NativeConnection connection;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new FakeNativeServer();
+    connection = NativeConnection.connect("127.0.0.1", server.getPort(), 1000);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+    server.close();
+  }
+
+  @Test
+  public void responsesAreMatchedToRequestsByStream() throws Exception {
+    ListenableFuture<NativeResult> first = connection.query("SELECT a", ConsistencyLevel.ONE);
+    ListenableFuture<NativeResult> second = connection.query("SELECT b", ConsistencyLevel.ONE);
+
+    // answer the second request first
+    List<FakeNativeServer.Request> requests = server.read(2);
+    server.respondRows(requests.get(1), "b");
+    server.respondRows(requests.get(0), "a");
+
+    assertEquals("a", ByteBufferUtil.string(NativeConnection.await(first).getRows().get(0)[0]));
+    assertEquals("b", ByteBufferUtil.string(NativeConnection.await(second).getRows().get(0)[0]));
+  }
+
+  @Test
+  public void serverErrorsFailTheRequest() throws Exception {
+    ListenableFuture<NativeResult> future = connection.query("SELECT a", ConsistencyLevel.ONE);
+    server.respondError(server.read(1).get(0), NativeConnection.ServerError.UNAVAILABLE, "down");
+
+    try {
+      NativeConnection.await(future);
+      fail("expected the error to be raised");
+    } catch (NativeConnection.ServerError e) {
+      assertEquals(NativeConnection.ServerError.UNAVAILABLE, e.getCode());
+    }
+    assertEquals(true, connection.isOpen());
+  }
+
+  @Test
+  public void closingFailsPendingRequests() throws Exception {
+    ListenableFuture<NativeResult> future = connection.query("SELECT a", ConsistencyLevel.ONE);
+    connection.close();
+
+    try {
+      NativeConnection.await(future);
+      fail("expected the request to fail");
+    } catch (IOException e) {
+      // expected
+    }
+    assertFalse(connection.isOpen());
+  }
+
+  @Test
+  public void executeSendsTheBoundValues() throws Exception {
+    connection.execute(new byte[]{1, 2}, Arrays.asList(ByteBufferUtil.bytes("v"), null), ConsistencyLevel.QUORUM);
+
+    ByteBuffer body = ByteBuffer.wrap(server.read(1).get(0).body);
+    assertEquals(2, body.getShort());
+    body.position(body.position() + 2);
+    assertEquals(2, body.getShort());
+    assertEquals(1, body.getInt());
+    assertEquals('v', body.get());
+    assertEquals(-1, body.getInt());
+    assertEquals(0x0004, body.getShort());
+  }
+}
@@ -0,0 +1,208 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.cassandra.db.Column;
+import org.apache.cassandra.db.IColumn;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Test;
+
+public class CassandraHiveRecordReaderTest {
+
+  /**
+   * All the rows share one array, like the cells of a thrift frame.
+   */
+  private final byte[] frame = "k1c1v1k2c1v2".getBytes();
+
+  private static final List<String> COLUMNS = Arrays.asList(":key", "c1", "c2");
+  private static final List<String> TRANSPOSED = Arrays.asList(":key", ":column", ":value");
+
+  @Test
+  public void cellsAreCopiedByDefault() throws Exception {
+    CassandraHiveRecordReader reader = new CassandraHiveRecordReader(new RowReader(frame), COLUMNS);
+
+    assertTrue(reader.nextKeyValue());
+    CassandraRowWritable row = reader.getCurrentValue();
+    assertEquals("k1", string(reader.getCurrentKey()));
+    assertEquals("k1", string(row.get(0)));
+    assertEquals("v1", string(row.get(1)));
+    assertNotSame(frame, row.get(1).getArray());
+    assertNull(row.get(2));
+
+    assertTrue(reader.nextKeyValue());
+    assertEquals("v2", string(row.get(1)));
+    assertFalse(reader.nextKeyValue());
+  }
+
+  @Test
+  public void zeroCopyCellsPointIntoTheReadBuffers() throws Exception {
+    CassandraHiveRecordReader reader = new CassandraHiveRecordReader(new RowReader(frame), COLUMNS, true);
+
+    assertTrue(reader.nextKeyValue());
+    BytesWritable key = reader.getCurrentKey();
+    assertEquals("k1", string(key));
+    ByteSliceWritable value = reader.getCurrentValue().get(1);
+    assertSame(frame, value.getArray());
+    assertEquals(4, value.getOffset());
+    assertEquals(2, value.getLength());
+
+    assertTrue(reader.nextKeyValue());
+    assertEquals("k2", string(reader.getCurrentKey()));
+    ByteSliceWritable next = reader.getCurrentValue().get(1);
+    assertEquals(10, next.getOffset());
+
+    // the holders are reused
+    assertSame(key, reader.getCurrentKey());
+    assertSame(value, next);
+    assertFalse(reader.nextKeyValue());
+  }
+
+  @Test
+  public void rowsAreReadIntoTheGivenValue() throws Exception {
+    CassandraHiveRecordReader reader = new CassandraHiveRecordReader(new RowReader(frame), COLUMNS);
+    BytesWritable key = reader.createKey();
+    CassandraRowWritable value = reader.createValue();
+
+    assertTrue(reader.next(key, value));
+    assertEquals("k1", string(key));
+    assertEquals("v1", string(value.get(1)));
+    assertTrue(reader.next(key, value));
+    assertEquals("k2", string(key));
+    assertEquals("v2", string(value.get(1)));
+    assertFalse(reader.next(key, value));
+  }
+
+  @Test
+  public void transposedRows() throws Exception {
+    CassandraHiveRecordReader reader = new CassandraHiveRecordReader(new RowReader(frame), TRANSPOSED, true);
+
+    assertTrue(reader.nextKeyValue());
+    CassandraRowWritable row = reader.getCurrentValue();
+    assertEquals("k1", string(row.get(0)));
+    assertEquals("c1", string(row.get(1)));
+    assertEquals("v1", string(row.get(2)));
+
+    assertTrue(reader.nextKeyValue());
+    assertEquals("k2", string(row.get(0)));
+    assertEquals("v2", string(row.get(2)));
+    assertFalse(reader.nextKeyValue());
+  }
+
+  @Test
+  public void rowsSerializeTheirCells() throws Exception {
+    CassandraRowWritable row = new CassandraRowWritable(3);
+    row.set(0, ByteBuffer.wrap(frame, 0, 2), true);
+    row.set(2, ByteBuffer.wrap(frame, 4, 2), true);
+    DataOutputBuffer out = new DataOutputBuffer();
+    row.write(out);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    CassandraRowWritable read = new CassandraRowWritable();
+    read.readFields(in);
+
+    assertEquals(3, read.size());
+    assertEquals("k1", string(read.get(0)));
+    assertNull(read.get(1));
+    assertEquals("v1", string(read.get(2)));
+  }
+
+  @Test
+  public void slicesSerializeTheirBytesOnly() throws Exception {
+    ByteSliceWritable slice = new ByteSliceWritable(ByteBuffer.wrap(frame, 4, 2));
+    DataOutputBuffer out = new DataOutputBuffer();
+    slice.write(out);
+
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    ByteSliceWritable read = new ByteSliceWritable();
+    read.readFields(in);
+
+    assertEquals(3, out.getLength());
+    assertEquals("v1", string(read));
+    assertEquals("v1", string(read.toBytesWritable()));
+  }
+
+  @Test
+  public void directBuffersAreCopied() {
+    ByteBuffer direct = ByteBuffer.allocateDirect(2);
+    direct.put("v1".getBytes()).flip();
+    ByteSliceWritable slice = new ByteSliceWritable(direct);
+
+    assertEquals("v1", string(slice));
+    assertEquals(0, direct.position());
+  }
+
+  private static String string(BytesWritable bytes) {
+    return new String(bytes.getBytes(), 0, bytes.getLength());
+  }
+
+  private static String string(ByteSliceWritable slice) {
+    return new String(slice.getArray(), slice.getOffset(), slice.getLength());
+  }
+
+  /**
+   * Reads rows of one column laid out as key, column name and value, two bytes each.
+   */
+  private static class RowReader extends RecordReader<ByteBuffer, SortedMap<ByteBuffer, IColumn>> {
+    private final List<ByteBuffer> keys = new ArrayList<ByteBuffer>();
+    private final List<SortedMap<ByteBuffer, IColumn>> rows = new ArrayList<SortedMap<ByteBuffer, IColumn>>();
+    private int index = -1;
+
+    RowReader(byte[] frame) {
+      for (int i = 0; i < frame.length; i += 6) {
+        keys.add(ByteBuffer.wrap(frame, i, 2));
+        ByteBuffer name = ByteBuffer.wrap(frame, i + 2, 2);
+        SortedMap<ByteBuffer, IColumn> row = new TreeMap<ByteBuffer, IColumn>();
+        row.put(name, new Column(name, ByteBuffer.wrap(frame, i + 4, 2), 1L));
+        rows.add(row);
+      }
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) {
+    }
+
+    @Override
+    public boolean nextKeyValue() {
+      return ++index < rows.size();
+    }
+
+    @Override
+    public ByteBuffer getCurrentKey() {
+      return keys.get(index);
+    }
+
+    @Override
+    public SortedMap<ByteBuffer, IColumn> getCurrentValue() {
+      return rows.get(index);
+    }
+
+    @Override
+    public float getProgress() {
+      return (float) index / rows.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
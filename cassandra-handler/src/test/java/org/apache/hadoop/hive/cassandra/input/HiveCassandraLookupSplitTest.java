@@ -0,0 +1,91 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.dht.LongToken;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.cassandra.TokenRouter;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+public class HiveCassandraLookupSplitTest {
+
+  private static final Murmur3Partitioner PARTITIONER = new Murmur3Partitioner();
+
+  @Test
+  public void keysAreGroupedByReplicas() throws Exception {
+    List<ByteBuffer> keys = new ArrayList<ByteBuffer>();
+    for (int i = 0; i < 20; i++) {
+      keys.add(ByteBufferUtil.bytes("key" + i));
+    }
+    TokenRouter router = new TokenRouter(PARTITIONER, Arrays.asList(
+            range(Long.MIN_VALUE, 0, "10.0.0.1"), range(0, Long.MIN_VALUE, "10.0.0.2")));
+
+    List<HiveCassandraLookupSplit> splits = HiveCassandraLookupSplit.create(keys, router, "seed", 100, ":key", new Path("/tmp"));
+
+    assertEquals(2, splits.size());
+    int total = 0;
+    for (HiveCassandraLookupSplit split : splits) {
+      for (ByteBuffer key : split.getKeys()) {
+        assertEquals(router.getReplicas(key), Arrays.asList(split.getLocations()));
+      }
+      total += split.getKeys().size();
+    }
+    assertEquals(20, total);
+  }
+
+  @Test
+  public void splitsHoldAtMostMaxKeys() throws Exception {
+    List<ByteBuffer> keys = new ArrayList<ByteBuffer>();
+    for (int i = 0; i < 5; i++) {
+      keys.add(ByteBufferUtil.bytes(i));
+    }
+
+    List<HiveCassandraLookupSplit> splits = HiveCassandraLookupSplit.create(keys, null, "seed", 2, ":key", new Path("/tmp"));
+
+    assertEquals(3, splits.size());
+    assertArrayEquals(new String[]{"seed"}, splits.get(0).getLocations());
+    assertEquals(keys.subList(4, 5), splits.get(2).getKeys());
+  }
+
+  @Test
+  public void keysSurviveSerialization() throws Exception {
+    HiveCassandraLookupSplit split = new HiveCassandraLookupSplit(
+            Arrays.asList(ByteBufferUtil.bytes("a"), ByteBufferUtil.bytes("b")),
+            new String[]{"10.0.0.1", "10.0.0.2"}, ":key,value", new Path("/tmp"));
+    split.setKeyspace("ks");
+    split.setColumnFamily("cf");
+    split.setPartitioner(PARTITIONER.getClass().getName());
+    split.setHost("10.0.0.1");
+    split.setRowSize(100);
+
+    DataOutputBuffer out = new DataOutputBuffer();
+    split.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    HiveCassandraLookupSplit read = new HiveCassandraLookupSplit();
+    read.readFields(in);
+
+    assertEquals(split.getKeys(), read.getKeys());
+    assertArrayEquals(new String[]{"10.0.0.1", "10.0.0.2"}, read.getLocations());
+    assertEquals(2, read.getRows());
+    assertEquals(200, read.getLength());
+  }
+
+  private static TokenRange range(long start, long end, String endpoint) {
+    TokenRange range = new TokenRange(new LongToken(start).toString(), new LongToken(end).toString(),
+            Arrays.asList(endpoint));
+    range.setRpc_endpoints(Arrays.asList(endpoint));
+    return range;
+  }
+}
@@ -0,0 +1,193 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+public class HiveCassandraStandardSplitTest {
+
+  @Test
+  public void rangesOnTheSameReplicasAreCombined() {
+    List<InputSplit> splits = new ArrayList<InputSplit>();
+    splits.add(range("0", "10", 400, "10.0.0.1", "10.0.0.2"));
+    splits.add(range("10", "20", 400, "10.0.0.2", "10.0.0.3"));
+    splits.add(range("20", "30", 400, "10.0.0.2", "10.0.0.1"));
+    splits.add(range("30", "40", 400, "10.0.0.1", "10.0.0.2"));
+    splits.add(range("40", "50", 400, "10.0.0.1", "10.0.0.2"));
+
+    List<List<ColumnFamilySplit>> groups =
+            HiveCassandraStandardColumnInputFormat.combineRanges(new JobConf(false), splits, 1000);
+
+    assertEquals(3, groups.size());
+    assertEquals(Arrays.asList("0", "20", "30"), startTokens(groups.get(0)));
+    assertEquals(Arrays.asList("10"), startTokens(groups.get(1)));
+    assertEquals(Arrays.asList("40"), startTokens(groups.get(2)));
+  }
+
+  @Test
+  public void combiningCanBeTurnedOff() {
+    JobConf conf = new JobConf(false);
+    conf.setBoolean(AbstractCassandraSerDe.CASSANDRA_SPLIT_COMBINE, false);
+    List<InputSplit> splits = new ArrayList<InputSplit>();
+    splits.add(range("0", "10", 1, "10.0.0.1"));
+    splits.add(range("10", "20", 1, "10.0.0.1"));
+
+    assertEquals(2, HiveCassandraStandardColumnInputFormat.combineRanges(conf, splits, 1000).size());
+  }
+
+  @Test
+  public void rangesSurviveSerialization() throws Exception {
+    HiveCassandraStandardSplit split = new HiveCassandraStandardSplit(
+            Arrays.asList(range("0", "10", 400, "10.0.0.1"), range("20", "30", 300, "10.0.0.1")),
+            ":key,value", new Path("/tmp"));
+    split.setKeyspace("ks");
+    split.setColumnFamily("cf");
+    split.setPartitioner("org.apache.cassandra.dht.Murmur3Partitioner");
+    split.setHost("10.0.0.1");
+    split.setRowSize(100);
+
+    HiveCassandraStandardSplit read = roundTrip(split);
+
+    assertEquals(Arrays.asList("0", "20"), startTokens(read.getRanges()));
+    assertEquals("30", read.getRanges().get(1).getEndToken());
+    assertEquals(700, read.getRows());
+    assertEquals(70000, read.getLength());
+    assertArrayEquals(new String[]{"10.0.0.1"}, read.getLocations());
+    assertArrayEquals(new String[]{"10.0.0.1"}, read.getRanges().get(1).getLocations());
+  }
+
+  @Test
+  public void tableSettingsComeFromTheJob() throws Exception {
+    HiveCassandraStandardSplit split = new HiveCassandraStandardSplit(range("0", "10", 400, "10.0.0.1"),
+            ":key,value", new Path("/tmp"));
+    split.setColumnFamily("cf");
+
+    HiveCassandraStandardSplit read = roundTrip(split);
+    assertNull(read.getColumnFamily());
+
+    JobConf conf = new JobConf(false);
+    conf.set(AbstractCassandraSerDe.CASSANDRA_KEYSPACE_NAME, "ks");
+    conf.set(AbstractCassandraSerDe.CASSANDRA_CF_NAME, "cf");
+    conf.set(AbstractCassandraSerDe.CASSANDRA_COL_MAPPING, ":key,value");
+    conf.set(AbstractCassandraSerDe.CASSANDRA_HOST, "10.0.0.9");
+    read.configure(conf);
+
+    assertEquals("ks", read.getKeyspace());
+    assertEquals("cf", read.getColumnFamily());
+    assertEquals(":key,value", read.getColumnMapping());
+    assertEquals("10.0.0.9", read.getHost());
+    assertEquals(9160, read.getPort());
+    assertEquals(AbstractCassandraSerDe.DEFAULT_RANGE_BATCH_SIZE, read.getRangeBatchSize());
+  }
+
+  @Test
+  public void tokensOfEveryPartitionerAreEncoded() throws Exception {
+    List<ColumnFamilySplit> ranges = Arrays.asList(
+            range(Long.toString(Long.MIN_VALUE), "-42", 1, "10.0.0.1", "10.0.0.2"),
+            range("85070591730234615865843651857942052864", "170141183460469231731687303715884105728", 2, "10.0.0.2"),
+            range("6b6579", "0042", 3, "10.0.0.2"));
+    HiveCassandraStandardSplit split = new HiveCassandraStandardSplit(ranges, ":key", new Path("/tmp"));
+
+    HiveCassandraStandardSplit read = roundTrip(split);
+
+    for (int i = 0; i < ranges.size(); i++) {
+      assertEquals(ranges.get(i).getStartToken(), read.getRanges().get(i).getStartToken());
+      assertEquals(ranges.get(i).getEndToken(), read.getRanges().get(i).getEndToken());
+      assertEquals(ranges.get(i).getLength(), read.getRanges().get(i).getLength());
+      assertArrayEquals(ranges.get(i).getLocations(), read.getRanges().get(i).getLocations());
+    }
+  }
+
+  @Test
+  public void murmur3RangesAreCompact() throws Exception {
+    HiveCassandraStandardSplit split = new HiveCassandraStandardSplit(
+            range("-3074457345618258603", "3074457345618258602", 65536, "10.0.0.1", "10.0.0.2", "10.0.0.3"),
+            ":key,value", new Path("/tmp"));
+    DataOutputBuffer out = new DataOutputBuffer();
+    split.write(out);
+
+    // path, start and length of the file split, then 8 bytes per token and 10 per location
+    assertTrue("split is " + out.getLength() + " bytes", out.getLength() < 80);
+  }
+
+  @Test
+  public void murmur3RangesAreCutForConcurrentScans() {
+    List<List<ColumnFamilySplit>> scans = HiveCassandraStandardColumnInputFormat.subdivide(
+            Arrays.asList(range("-100", "200", 900, "10.0.0.1", "10.0.0.2", "10.0.0.3")), 3,
+            "org.apache.cassandra.dht.Murmur3Partitioner");
+
+    assertEquals(3, scans.size());
+    assertEquals(Arrays.asList("-100"), startTokens(scans.get(0)));
+    assertEquals(Arrays.asList("0"), startTokens(scans.get(1)));
+    assertEquals(Arrays.asList("100"), startTokens(scans.get(2)));
+    assertEquals("200", scans.get(2).get(0).getEndToken());
+    assertEquals(300, scans.get(1).get(0).getLength());
+    // each scan starts on another replica
+    assertEquals("10.0.0.1", scans.get(0).get(0).getLocations()[0]);
+    assertEquals("10.0.0.2", scans.get(1).get(0).getLocations()[0]);
+    assertEquals("10.0.0.3", scans.get(2).get(0).getLocations()[0]);
+  }
+
+  @Test
+  public void rangesWrappingTheRingAreCut() {
+    List<ColumnFamilySplit> pieces = HiveCassandraStandardColumnInputFormat.cut(
+            range(Long.toString(Long.MAX_VALUE - 9), Long.toString(Long.MIN_VALUE + 10), 20, "10.0.0.1"), 2);
+
+    assertEquals(2, pieces.size());
+    assertEquals(Long.toString(Long.MIN_VALUE), pieces.get(0).getEndToken());
+    assertEquals(Long.toString(Long.MIN_VALUE), pieces.get(1).getStartToken());
+  }
+
+  @Test
+  public void rangesAreDealtWithoutCuttingWhenThereAreEnough() {
+    List<ColumnFamilySplit> ranges = Arrays.asList(range("0", "10", 1, "10.0.0.1"), range("10", "20", 1, "10.0.0.1"),
+            range("20", "30", 1, "10.0.0.1"));
+
+    List<List<ColumnFamilySplit>> scans = HiveCassandraStandardColumnInputFormat.subdivide(ranges, 2,
+            "org.apache.cassandra.dht.Murmur3Partitioner");
+    assertEquals(2, scans.size());
+    assertEquals(Arrays.asList("0", "20"), startTokens(scans.get(0)));
+    assertEquals(Arrays.asList("10"), startTokens(scans.get(1)));
+
+    // only murmur3 tokens are cut
+    assertEquals(1, HiveCassandraStandardColumnInputFormat.subdivide(ranges.subList(0, 1), 4,
+            "org.apache.cassandra.dht.RandomPartitioner").size());
+  }
+
+  private static HiveCassandraStandardSplit roundTrip(HiveCassandraStandardSplit split) throws IOException {
+    DataOutputBuffer out = new DataOutputBuffer();
+    split.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    HiveCassandraStandardSplit read = new HiveCassandraStandardSplit();
+    read.readFields(in);
+    return read;
+  }
+
+  private static ColumnFamilySplit range(String start, String end, long rows, String... replicas) {
+    return new ColumnFamilySplit(start, end, rows, replicas);
+  }
+
+  private static List<String> startTokens(List<ColumnFamilySplit> ranges) {
+    List<String> tokens = new ArrayList<String>();
+    for (ColumnFamilySplit range : ranges) {
+      tokens.add(range.getStartToken());
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,111 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Test;
+
+public class MultiRangeRecordReaderTest {
+
+  @Test
+  public void rangesAreReadInOrderOneAtATime() throws Exception {
+    List<ColumnFamilySplit> ranges = Arrays.asList(range("0", "100"), range("100", "200"), range("200", "300"));
+    RangeReaderFactory factory = new RangeReaderFactory();
+    MultiRangeRecordReader<String, String> reader = new MultiRangeRecordReader<String, String>(ranges, factory);
+    reader.initialize(null, null);
+
+    List<String> keys = new ArrayList<String>();
+    while (reader.nextKeyValue()) {
+      keys.add(reader.getCurrentKey());
+      assertEquals(1, factory.open);
+    }
+    reader.close();
+
+    // the second range is empty
+    assertEquals(Arrays.asList("0-a", "0-b", "200-a", "200-b"), keys);
+    assertEquals(3, factory.created);
+    assertEquals(0, factory.open);
+    assertEquals(1f, reader.getProgress(), 0.001);
+  }
+
+  @Test
+  public void noRangesReadNothing() throws Exception {
+    MultiRangeRecordReader<String, String> reader =
+            new MultiRangeRecordReader<String, String>(new ArrayList<ColumnFamilySplit>(), new RangeReaderFactory());
+    reader.initialize(null, null);
+
+    assertFalse(reader.nextKeyValue());
+    assertEquals(1f, reader.getProgress(), 0.001);
+  }
+
+  private static ColumnFamilySplit range(String start, String end) {
+    return new ColumnFamilySplit(start, end, 10, new String[]{"10.0.0.1"});
+  }
+
+  private static class RangeReaderFactory implements MultiRangeRecordReader.ReaderFactory<String, String> {
+    int created;
+    int open;
+
+    public RecordReader<String, String> create() {
+      created++;
+      return new RangeReader(this);
+    }
+  }
+
+  /**
+   * Returns two keys for every range, except the one starting at 100.
+   */
+  private static class RangeReader extends RecordReader<String, String> {
+    private final RangeReaderFactory factory;
+    private final List<String> keys = new ArrayList<String>();
+    private int index = -1;
+
+    RangeReader(RangeReaderFactory factory) {
+      this.factory = factory;
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) {
+      factory.open++;
+      String start = ((ColumnFamilySplit) split).getStartToken();
+      if (!start.equals("100")) {
+        keys.add(start + "-a");
+        keys.add(start + "-b");
+      }
+    }
+
+    @Override
+    public boolean nextKeyValue() {
+      return ++index < keys.size();
+    }
+
+    @Override
+    public String getCurrentKey() {
+      return keys.get(index);
+    }
+
+    @Override
+    public String getCurrentValue() {
+      return keys.get(index);
+    }
+
+    @Override
+    public float getProgress() {
+      return keys.isEmpty() ? 1 : Math.min(1f, (float) index / keys.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+      factory.open--;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ColumnParent;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.SlicePredicate;
+import org.apache.cassandra.thrift.SliceRange;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.Test;
+
+public class MultigetRecordReaderTest {
+
+  @Test
+  public void readsKeysInBatchesAndSkipsMissingRows() throws Exception {
+    StubClient stub = new StubClient();
+    stub.put("a", 2);
+    stub.put("c", 1);
+    stub.put("d", 3);
+
+    MultigetRecordReader reader = new MultigetRecordReader(keys("a", "b", "c", "d"), new String[0]);
+    reader.open(stub, conf(new SlicePredicate().setSlice_range(
+            new SliceRange(ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, 100)), 2));
+
+    assertTrue(reader.nextKeyValue());
+    assertEquals("a", ByteBufferUtil.string(reader.getCurrentKey()));
+    assertEquals(2, reader.getCurrentValue().size());
+    assertTrue(reader.nextKeyValue());
+    assertEquals("c", ByteBufferUtil.string(reader.getCurrentKey()));
+    assertTrue(reader.nextKeyValue());
+    assertEquals("d", ByteBufferUtil.string(reader.getCurrentKey()));
+    assertEquals(3, reader.getCurrentValue().size());
+    assertFalse(reader.nextKeyValue());
+
+    assertEquals(2, stub.multigets);
+    assertEquals(0, stub.slices);
+    assertEquals(3, reader.getRowsRead());
+    assertEquals(1.0f, reader.getProgress(), 0.0f);
+  }
+
+  @Test
+  public void pagesThroughWideRows() throws Exception {
+    StubClient stub = new StubClient();
+    stub.put("a", 5);
+    stub.put("b", 1);
+
+    MultigetRecordReader reader = new MultigetRecordReader(keys("a", "b"), new String[0]);
+    reader.open(stub, conf(new SlicePredicate().setSlice_range(
+            new SliceRange(ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, 2)), 10));
+
+    List<String> rows = new ArrayList<String>();
+    while (reader.nextKeyValue()) {
+      StringBuilder row = new StringBuilder(ByteBufferUtil.string(reader.getCurrentKey())).append(':');
+      for (ByteBuffer name : reader.getCurrentValue().keySet()) {
+        row.append(ByteBufferUtil.string(name));
+      }
+      rows.add(row.toString());
+    }
+
+    assertEquals(Arrays.asList("a:c0c1", "a:c2c3", "a:c4", "b:c0"), rows);
+    assertEquals(1, stub.multigets);
+  }
+
+  private static Configuration conf(SlicePredicate predicate, int batchSize) {
+    Configuration conf = new Configuration();
+    ConfigHelper.setInputColumnFamily(conf, "ks", "cf");
+    ConfigHelper.setInputSlicePredicate(conf, predicate);
+    ConfigHelper.setRangeBatchSize(conf, batchSize);
+    ConfigHelper.setReadConsistencyLevel(conf, "ONE");
+    return conf;
+  }
+
+  private static List<ByteBuffer> keys(String... keys) {
+    List<ByteBuffer> result = new ArrayList<ByteBuffer>();
+    for (String key : keys) {
+      result.add(ByteBufferUtil.bytes(key));
+    }
+    return result;
+  }
+
+  /**
+   * Client serving rows of columns c0, c1, ... with UTF8 names.
+   */
+  static class StubClient extends Cassandra.Client {
+    private final Map<ByteBuffer, List<ColumnOrSuperColumn>> data = new HashMap<ByteBuffer, List<ColumnOrSuperColumn>>();
+    int multigets;
+    int slices;
+
+    StubClient() {
+      super(new TBinaryProtocol(new TMemoryBuffer(0)));
+    }
+
+    void put(String key, int columns) {
+      List<ColumnOrSuperColumn> row = new ArrayList<ColumnOrSuperColumn>();
+      for (int i = 0; i < columns; i++) {
+        Column column = new Column(ByteBufferUtil.bytes("c" + i)).setValue(ByteBufferUtil.bytes(i)).setTimestamp(1);
+        row.add(new ColumnOrSuperColumn().setColumn(column));
+      }
+      data.put(ByteBufferUtil.bytes(key), row);
+    }
+
+    @Override
+    public KsDef describe_keyspace(String keyspace) {
+      CfDef cfDef = new CfDef(keyspace, "cf").setComparator_type("UTF8Type");
+      return new KsDef(keyspace, "SimpleStrategy", Arrays.asList(cfDef));
+    }
+
+    @Override
+    public Map<ByteBuffer, List<ColumnOrSuperColumn>> multiget_slice(List<ByteBuffer> keys, ColumnParent parent,
+                                                                    SlicePredicate predicate, ConsistencyLevel level) {
+      multigets++;
+      Map<ByteBuffer, List<ColumnOrSuperColumn>> result = new HashMap<ByteBuffer, List<ColumnOrSuperColumn>>();
+      for (ByteBuffer key : keys) {
+        result.put(key, slice(key, predicate.getSlice_range()));
+      }
+      return result;
+    }
+
+    @Override
+    public List<ColumnOrSuperColumn> get_slice(ByteBuffer key, ColumnParent parent, SlicePredicate predicate,
+                                               ConsistencyLevel level) {
+      slices++;
+      return slice(key, predicate.getSlice_range());
+    }
+
+    private List<ColumnOrSuperColumn> slice(ByteBuffer key, SliceRange range) {
+      List<ColumnOrSuperColumn> result = new ArrayList<ColumnOrSuperColumn>();
+      List<ColumnOrSuperColumn> row = data.get(key);
+      if (row == null) {
+        return result;
+      }
+      for (ColumnOrSuperColumn cosc : row) {
+        if (result.size() < range.getCount()
+                && (!range.start.hasRemaining() || cosc.column.name.compareTo(range.start) >= 0)) {
+          result.add(cosc);
+        }
+      }
+      return result;
+    }
+  }
+}
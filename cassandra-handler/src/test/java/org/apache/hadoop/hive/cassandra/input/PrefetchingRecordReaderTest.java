@@ -0,0 +1,165 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Test;
+
+public class PrefetchingRecordReaderTest {
+
+  private static final PrefetchingRecordReader.Weigher<Integer, Integer> UNIT =
+          new PrefetchingRecordReader.Weigher<Integer, Integer>() {
+    public long weigh(Integer key, Integer value) {
+      return 1;
+    }
+  };
+
+  @Test
+  public void rowsAreReadInOrder() throws Exception {
+    CountingReader rows = new CountingReader(100, -1);
+    PrefetchingRecordReader<Integer, Integer> reader = new PrefetchingRecordReader<Integer, Integer>(rows, 10, UNIT);
+    reader.initialize(null, null);
+
+    List<Integer> keys = new ArrayList<Integer>();
+    while (reader.nextKeyValue()) {
+      keys.add(reader.getCurrentKey());
+      assertEquals(reader.getCurrentKey(), reader.getCurrentValue());
+    }
+    reader.close();
+
+    assertEquals(100, keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      assertEquals(i, keys.get(i).intValue());
+    }
+    assertEquals(1f, reader.getProgress(), 0.001);
+    assertTrue(rows.closed);
+  }
+
+  @Test
+  public void readsAheadUpToTheBudget() throws Exception {
+    CountingReader rows = new CountingReader(100, -1);
+    PrefetchingRecordReader<Integer, Integer> reader = new PrefetchingRecordReader<Integer, Integer>(rows, 10, UNIT);
+    reader.initialize(null, null);
+
+    assertTrue(reader.nextKeyValue());
+    waitFor(rows, 11);
+    Thread.sleep(50);
+    // the consumed row, a full queue and the row waiting for room
+    assertEquals(12, rows.read);
+
+    assertTrue(reader.nextKeyValue());
+    waitFor(rows, 13);
+    reader.close();
+    assertTrue(rows.closed);
+  }
+
+  @Test
+  public void failuresReachTheConsumerAfterTheRowsBefore() throws Exception {
+    PrefetchingRecordReader<Integer, Integer> reader =
+            new PrefetchingRecordReader<Integer, Integer>(new CountingReader(100, 3), 10, UNIT);
+    reader.initialize(null, null);
+
+    assertTrue(reader.nextKeyValue());
+    assertTrue(reader.nextKeyValue());
+    assertTrue(reader.nextKeyValue());
+    try {
+      reader.nextKeyValue();
+      fail("expected the read failure");
+    } catch (IOException e) {
+      assertEquals("down", e.getMessage());
+    }
+    reader.close();
+  }
+
+  @Test
+  public void readersAreScannedConcurrently() throws Exception {
+    List<RecordReader<Integer, Integer>> readers = new ArrayList<RecordReader<Integer, Integer>>();
+    for (int i = 0; i < 3; i++) {
+      readers.add(new CountingReader(100, -1));
+    }
+    PrefetchingRecordReader<Integer, Integer> reader = new PrefetchingRecordReader<Integer, Integer>(readers, 10, UNIT);
+    reader.initialize(null, null);
+
+    int[] seen = new int[100];
+    int rows = 0;
+    while (reader.nextKeyValue()) {
+      seen[reader.getCurrentKey()]++;
+      rows++;
+    }
+    reader.close();
+
+    assertEquals(300, rows);
+    for (int count : seen) {
+      assertEquals(3, count);
+    }
+    assertEquals(1f, reader.getProgress(), 0.001);
+    for (RecordReader<Integer, Integer> r : readers) {
+      assertTrue(((CountingReader) r).closed);
+    }
+  }
+
+  private static void waitFor(CountingReader rows, int read) throws InterruptedException {
+    for (int i = 0; i < 500 && rows.read < read; i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Returns the numbers up to size, failing at the given row.
+   */
+  private static class CountingReader extends RecordReader<Integer, Integer> {
+    private final int size;
+    private final int failAt;
+    volatile int read;
+    volatile boolean closed;
+
+    CountingReader(int size, int failAt) {
+      this.size = size;
+      this.failAt = failAt;
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) {
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+      if (read == failAt) {
+        throw new IOException("down");
+      }
+      if (read >= size) {
+        return false;
+      }
+      read++;
+      return true;
+    }
+
+    @Override
+    public Integer getCurrentKey() {
+      return read - 1;
+    }
+
+    @Override
+    public Integer getCurrentValue() {
+      return read - 1;
+    }
+
+    @Override
+    public float getProgress() {
+      return (float) read / size;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.thrift.TokenRange;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.RingTopology;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+public class SplitPlanCacheTest {
+
+  @Test
+  public void plansAreReusedForTheSameRing() throws Exception {
+    SplitPlanCache cache = new SplitPlanCache();
+    CountingPlanner planner = new CountingPlanner();
+    Configuration conf = new Configuration(false);
+
+    List<InputSplit> first = cache.getSplits(conf, ring("10.0.0.1", "10.0.0.2"), "cf", 1000, planner);
+    List<InputSplit> second = cache.getSplits(conf, ring("10.0.0.1", "10.0.0.2"), "cf", 1000, planner);
+
+    assertEquals(1, planner.calls);
+    assertEquals(first, second);
+    cache.getSplits(conf, ring("10.0.0.1", "10.0.0.2"), "cf", 500, planner);
+    cache.getSplits(conf, ring("10.0.0.1", "10.0.0.2"), "other", 1000, planner);
+    assertEquals(3, planner.calls);
+  }
+
+  @Test
+  public void changedRingIsPlannedAgain() throws Exception {
+    SplitPlanCache cache = new SplitPlanCache();
+    CountingPlanner planner = new CountingPlanner();
+    Configuration conf = new Configuration(false);
+    RingTopology previous = ring("10.0.0.1", "10.0.0.2");
+
+    cache.getSplits(conf, previous, "cf", 1000, planner);
+    cache.getSplits(conf, ring("10.0.0.1", "10.0.0.3"), "cf", 1000, planner);
+    assertEquals(2, planner.calls);
+
+    cache.invalidate(previous.getFingerprint());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void expiredPlansArePlannedAgain() throws Exception {
+    SplitPlanCache cache = new SplitPlanCache();
+    CountingPlanner planner = new CountingPlanner();
+    Configuration conf = new Configuration(false);
+    conf.setLong(AbstractCassandraSerDe.CASSANDRA_SPLIT_CACHE_TTL, 1);
+
+    cache.getSplits(conf, ring("10.0.0.1"), "cf", 1000, planner);
+    Thread.sleep(5);
+    cache.getSplits(conf, ring("10.0.0.1"), "cf", 1000, planner);
+
+    assertEquals(2, planner.calls);
+  }
+
+  @Test
+  public void plansAreSharedThroughTheCacheDirectory() throws Exception {
+    File dir = File.createTempFile("split-plans", "");
+    dir.delete();
+    dir.mkdirs();
+    Configuration conf = new Configuration();
+    conf.set(AbstractCassandraSerDe.CASSANDRA_SPLIT_CACHE_DIR, dir.toURI().toString());
+    CountingPlanner planner = new CountingPlanner();
+
+    try {
+      new SplitPlanCache().getSplits(conf, ring("10.0.0.1", "10.0.0.2"), "cf", 1000, planner);
+      List<InputSplit> read = new SplitPlanCache().getSplits(conf, ring("10.0.0.1", "10.0.0.2"), "cf", 1000, planner);
+
+      assertEquals(1, planner.calls);
+      assertEquals(2, read.size());
+      ColumnFamilySplit split = (ColumnFamilySplit) read.get(1);
+      assertEquals("100", split.getStartToken());
+      assertEquals("200", split.getEndToken());
+      assertEquals(1000, split.getLength());
+      assertArrayEquals(new String[]{"10.0.0.2"}, split.getLocations());
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  private static RingTopology ring(String... endpoints) {
+    List<TokenRange> ranges = new ArrayList<TokenRange>();
+    for (int i = 0; i < endpoints.length; i++) {
+      ranges.add(new TokenRange(String.valueOf(i * 100), String.valueOf((i + 1) * 100), Arrays.asList(endpoints[i])));
+    }
+    return new RingTopology("ks", 1, ranges);
+  }
+
+  /**
+   * Plans two splits and counts how often it was asked to.
+   */
+  private static class CountingPlanner implements SplitPlanCache.Planner {
+    int calls;
+
+    public List<InputSplit> plan() throws IOException {
+      calls++;
+      List<InputSplit> splits = new ArrayList<InputSplit>();
+      splits.add(new ColumnFamilySplit("0", "100", 1000, new String[]{"10.0.0.1"}));
+      splits.add(new ColumnFamilySplit("100", "200", 1000, new String[]{"10.0.0.2"}));
+      return splits;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.dht.RandomPartitioner;
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+public class SplitSamplerTest {
+
+  @Test
+  public void everySplitIsReadWithoutSample() throws Exception {
+    List<InputSplit> splits = splits(10);
+    assertSame(splits, SplitSampler.sample(new Configuration(false), splits));
+  }
+
+  @Test
+  public void bucketsDealSplitsInRingOrder() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setInt(AbstractCassandraSerDe.CASSANDRA_SAMPLE_BUCKET, 2);
+    conf.setInt(AbstractCassandraSerDe.CASSANDRA_SAMPLE_BUCKETS, 4);
+
+    List<InputSplit> sampled = SplitSampler.sample(conf, splits(10));
+
+    assertEquals(3, sampled.size());
+    assertEquals("100", ((ColumnFamilySplit) sampled.get(0)).getStartToken());
+    assertEquals("500", ((ColumnFamilySplit) sampled.get(1)).getStartToken());
+    assertEquals("900", ((ColumnFamilySplit) sampled.get(2)).getStartToken());
+  }
+
+  @Test
+  public void percentChoosesSplitsEvenly() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setFloat(AbstractCassandraSerDe.CASSANDRA_SAMPLE_PERCENT, 25);
+
+    List<InputSplit> sampled = SplitSampler.sample(conf, splits(8));
+
+    assertEquals(2, sampled.size());
+    assertEquals("300", ((ColumnFamilySplit) sampled.get(0)).getStartToken());
+    assertEquals("700", ((ColumnFamilySplit) sampled.get(1)).getStartToken());
+
+    conf.setFloat(AbstractCassandraSerDe.CASSANDRA_SAMPLE_PERCENT, 0.1f);
+    assertEquals(1, SplitSampler.sample(conf, splits(8)).size());
+  }
+
+  @Test
+  public void truncateKeepsTheStartOfEverySplit() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setFloat(AbstractCassandraSerDe.CASSANDRA_SAMPLE_PERCENT, 10);
+    conf.setBoolean(AbstractCassandraSerDe.CASSANDRA_SAMPLE_TRUNCATE, true);
+
+    List<InputSplit> splits = splits(3);
+    splits.add(new ColumnFamilySplit(Long.toString(Long.MAX_VALUE - 9), Long.toString(Long.MIN_VALUE + 90), 50,
+            new String[]{"h"}));
+    List<InputSplit> sampled = SplitSampler.sample(conf, splits);
+
+    assertEquals(4, sampled.size());
+    ColumnFamilySplit first = (ColumnFamilySplit) sampled.get(0);
+    assertEquals("0", first.getStartToken());
+    assertEquals("10", first.getEndToken());
+    assertEquals(10, first.getLength());
+    // wraps around the ring, 100 tokens wide
+    assertEquals(Long.toString(Long.MIN_VALUE), ((ColumnFamilySplit) sampled.get(3)).getEndToken());
+    assertEquals(5, sampled.get(3).getLength());
+  }
+
+  @Test
+  public void truncateNeedsMurmur3Tokens() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setFloat(AbstractCassandraSerDe.CASSANDRA_SAMPLE_PERCENT, 50);
+    conf.setBoolean(AbstractCassandraSerDe.CASSANDRA_SAMPLE_TRUNCATE, true);
+    conf.set(AbstractCassandraSerDe.CASSANDRA_PARTITIONER, RandomPartitioner.class.getName());
+
+    List<InputSplit> sampled = SplitSampler.sample(conf, splits(4));
+
+    assertEquals(2, sampled.size());
+    assertEquals("200", ((ColumnFamilySplit) sampled.get(0)).getEndToken());
+  }
+
+  @Test
+  public void invalidBucketsAreRejected() throws Exception {
+    Configuration conf = new Configuration(false);
+    conf.setInt(AbstractCassandraSerDe.CASSANDRA_SAMPLE_BUCKET, 5);
+    conf.setInt(AbstractCassandraSerDe.CASSANDRA_SAMPLE_BUCKETS, 4);
+
+    try {
+      SplitSampler.sample(conf, splits(10));
+      fail("expected the bucket to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Splits of 100 tokens and 100 rows each, starting at token 0.
+   */
+  private static List<InputSplit> splits(int count) {
+    List<InputSplit> splits = new ArrayList<InputSplit>();
+    for (int i = 0; i < count; i++) {
+      splits.add(new ColumnFamilySplit(Integer.toString(i * 100), Integer.toString((i + 1) * 100), 100,
+              new String[]{"h" + i}));
+    }
+    return splits;
+  }
+}
@@ -0,0 +1,73 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.KeySlice;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+public class SplitSizerTest {
+
+  @Test
+  public void rangesAreSizedByRowsUnlessBytesAreSet() {
+    Configuration conf = new Configuration(false);
+    conf.setInt(AbstractCassandraSerDe.CASSANDRA_SPLIT_SIZE, 5000);
+    assertEquals(5000, SplitSizer.getRangeRows(conf, 100));
+
+    conf.setLong(AbstractCassandraSerDe.CASSANDRA_SPLIT_BYTES, 64 * 1024 * 1024);
+    assertEquals(64 * 1024, SplitSizer.getRangeRows(conf, 1024));
+    assertEquals(64, SplitSizer.getRangeRows(conf, 1024 * 1024));
+    assertEquals(1, SplitSizer.getRangeRows(conf, 1024L * 1024 * 1024));
+  }
+
+  @Test
+  public void configuredRowSizeIsNotSampled() {
+    Configuration conf = new Configuration(false);
+    conf.setLong(AbstractCassandraSerDe.CASSANDRA_ROW_SIZE, 300);
+
+    assertEquals(300, SplitSizer.getRowSize(conf, "unreachable", 1, "ks", "cf", 100));
+  }
+
+  @Test
+  public void splitsAreMadeSmallerForTheSplitsHiveAsksFor() {
+    List<InputSplit> ranges = new ArrayList<InputSplit>();
+    for (int i = 0; i < 10; i++) {
+      ranges.add(new ColumnFamilySplit(Integer.toString(i), Integer.toString(i + 1), 1000, new String[]{"h"}));
+    }
+
+    assertEquals(64 * 1024, SplitSizer.getSplitRows(64 * 1024, 1, ranges));
+    assertEquals(2500, SplitSizer.getSplitRows(64 * 1024, 4, ranges));
+    assertEquals(1000, SplitSizer.getSplitRows(1000, 4, ranges));
+    assertEquals(1, SplitSizer.getSplitRows(1000, 100000, ranges));
+  }
+
+  @Test
+  public void meanRowSizeCountsKeysNamesAndValues() {
+    List<KeySlice> rows = Arrays.asList(
+            row("k1", column("a", "12345678"), column("b", "")),
+            row("k2", column("abc", "1234567890123")));
+
+    // (2 + 1 + 8 + 1) + (2 + 3 + 13) = 30 bytes for 2 rows
+    assertEquals(15, SplitSizer.meanRowSize(rows));
+    assertEquals(AbstractCassandraSerDe.DEFAULT_ROW_SIZE, SplitSizer.meanRowSize(new ArrayList<KeySlice>()));
+  }
+
+  private static KeySlice row(String key, ColumnOrSuperColumn... columns) {
+    return new KeySlice(ByteBufferUtil.bytes(key), Arrays.asList(columns));
+  }
+
+  private static ColumnOrSuperColumn column(String name, String value) {
+    Column column = new Column(ByteBufferUtil.bytes(name)).setValue(ByteBufferUtil.bytes(value)).setTimestamp(0);
+    return new ColumnOrSuperColumn().setColumn(column);
+  }
+}
@@ -0,0 +1,168 @@
+package org.apache.hadoop.hive.cassandra.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.cassandra.db.IColumn;
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.KeyRange;
+import org.apache.cassandra.thrift.KeySlice;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.junit.Test;
+
+public class WideRowRecordReaderTest {
+
+  private static final ColumnFamilySplit SPLIT = new ColumnFamilySplit("0", "100", 3, new String[0]);
+
+  @Test
+  public void readsEveryColumnOfWideRowsInPagesOfTheBudget() throws Exception {
+    StubClient stub = new StubClient();
+    stub.put("a", 3);
+    stub.put("b", 10000);
+    stub.put("c", 1);
+
+    // columns are 10 bytes, so after a first page of 20 columns a page of 500 bytes holds 50 of them
+    WideRowRecordReader reader = new WideRowRecordReader(500);
+    reader.open(stub, conf(20), SPLIT);
+
+    Map<String, Integer> columns = new TreeMap<String, Integer>();
+    int rows = 0;
+    while (reader.nextKeyValue()) {
+      String key = ByteBufferUtil.string(reader.getCurrentKey());
+      int expected = columns.containsKey(key) ? columns.get(key) : 0;
+      for (IColumn column : reader.getCurrentValue().values()) {
+        assertEquals(StubClient.name(expected), ByteBufferUtil.string(column.name()));
+        expected++;
+      }
+      columns.put(key, expected);
+      rows++;
+    }
+    reader.close();
+
+    assertEquals(3, columns.get("a").intValue());
+    assertEquals(10000, columns.get("b").intValue());
+    assertEquals(1, columns.get("c").intValue());
+    assertTrue("largest page was " + stub.largestPage + " columns", stub.largestPage <= 50);
+    assertTrue(rows >= 10000 / 50);
+    assertEquals(1.0f, reader.getProgress(), 0.0f);
+  }
+
+  @Test
+  public void pagesAreSizedToTheBudget() throws Exception {
+    StubClient stub = new StubClient();
+    stub.put("a", 1000);
+
+    WideRowRecordReader reader = new WideRowRecordReader(1000);
+    reader.open(stub, conf(10), SPLIT);
+    assertTrue(reader.nextKeyValue());
+
+    // 10 columns of 10 bytes in the first page
+    assertEquals(100, reader.getPageSize());
+  }
+
+  @Test
+  public void comparatorOfThePlanIsNotLookedUpAgain() throws Exception {
+    StubClient stub = new StubClient();
+    stub.put("a", 3);
+
+    Configuration conf = conf(10);
+    conf.set(AbstractCassandraSerDe.CASSANDRA_CF_COMPARATOR, "UTF8Type");
+    WideRowRecordReader reader = new WideRowRecordReader(1000);
+    reader.open(stub, conf, SPLIT);
+    assertTrue(reader.nextKeyValue());
+    assertEquals(3, reader.getCurrentValue().size());
+    assertEquals(0, stub.describes);
+
+    reader.open(stub, conf(10), SPLIT);
+    assertEquals(1, stub.describes);
+  }
+
+  private static Configuration conf(int batchSize) {
+    Configuration conf = new Configuration();
+    ConfigHelper.setInputColumnFamily(conf, "ks", "cf");
+    ConfigHelper.setRangeBatchSize(conf, batchSize);
+    ConfigHelper.setReadConsistencyLevel(conf, "ONE");
+    return conf;
+  }
+
+  /**
+   * Client paging through rows of columns c00000, c00001, ... of 10 bytes, whose keys sort like their tokens.
+   */
+  static class StubClient extends Cassandra.Client {
+    private final TreeMap<ByteBuffer, List<ColumnOrSuperColumn>> data = new TreeMap<ByteBuffer, List<ColumnOrSuperColumn>>();
+    int largestPage;
+    int describes;
+
+    StubClient() {
+      super(new TBinaryProtocol(new TMemoryBuffer(0)));
+    }
+
+    void put(String key, int columns) {
+      List<ColumnOrSuperColumn> row = new ArrayList<ColumnOrSuperColumn>();
+      for (int i = 0; i < columns; i++) {
+        Column column = new Column(ByteBufferUtil.bytes(name(i))).setValue(ByteBufferUtil.bytes(i)).setTimestamp(1);
+        row.add(new ColumnOrSuperColumn().setColumn(column));
+      }
+      data.put(ByteBufferUtil.bytes(key), row);
+    }
+
+    static String name(int i) {
+      return String.format("c%05d", i);
+    }
+
+    @Override
+    public KsDef describe_keyspace(String keyspace) {
+      describes++;
+      CfDef cfDef = new CfDef(keyspace, "cf").setComparator_type("UTF8Type");
+      return new KsDef(keyspace, "SimpleStrategy", Arrays.asList(cfDef));
+    }
+
+    @Override
+    public List<KeySlice> get_paged_slice(String columnFamily, KeyRange range, ByteBuffer startColumn,
+                                          ConsistencyLevel level) {
+      List<KeySlice> result = new ArrayList<KeySlice>();
+      Map<ByteBuffer, List<ColumnOrSuperColumn>> rows = range.isSetStart_key()
+              ? data.tailMap(range.start_key, true) : data;
+      int columns = 0;
+      boolean first = true;
+      for (Map.Entry<ByteBuffer, List<ColumnOrSuperColumn>> row : rows.entrySet()) {
+        List<ColumnOrSuperColumn> slice = new ArrayList<ColumnOrSuperColumn>();
+        boolean started = !first || !startColumn.hasRemaining();
+        for (ColumnOrSuperColumn cosc : row.getValue()) {
+          started = started || cosc.column.name.equals(startColumn);
+          if (started && columns < range.count) {
+            slice.add(cosc);
+            columns++;
+          }
+        }
+        first = false;
+        if (!slice.isEmpty()) {
+          result.add(new KeySlice(row.getKey(), slice));
+        }
+        if (columns >= range.count) {
+          break;
+        }
+      }
+      largestPage = Math.max(largestPage, columns);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.apache.hadoop.hive.cassandra.input.cql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hive.cassandra.input.ByteSliceWritable;
+import org.apache.hadoop.hive.cassandra.input.CassandraRowWritable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.junit.Test;
+
+public class CqlHiveRecordReaderTest {
+
+  private final byte[] frame = "k1a1k2a2".getBytes();
+
+  @Test
+  public void keysAndValuesGoToTheirColumns() throws Exception {
+    CqlHiveRecordReader reader = new CqlHiveRecordReader(new RowReader(frame), Arrays.asList("b", "id", "a"));
+    MapWritableComparable key = reader.createKey();
+    CassandraRowWritable value = reader.createValue();
+
+    assertTrue(reader.next(key, value));
+    assertEquals("k1", string(value.get(1)));
+    assertEquals("a1", string(value.get(2)));
+    assertNull(value.get(0));
+    assertEquals(1, key.size());
+    assertTrue(key.containsKey(new Text("id")));
+
+    assertTrue(reader.next(key, value));
+    assertEquals("a2", string(value.get(2)));
+    assertFalse(reader.next(key, value));
+  }
+
+  @Test
+  public void zeroCopyCellsPointIntoTheReadBuffers() throws Exception {
+    CqlHiveRecordReader reader = new CqlHiveRecordReader(new RowReader(frame), Arrays.asList("id", "a"), true);
+
+    assertTrue(reader.nextKeyValue());
+    ByteSliceWritable value = reader.getCurrentValue().get(1);
+    assertSame(frame, value.getArray());
+    assertEquals(2, value.getOffset());
+
+    assertTrue(reader.nextKeyValue());
+    assertSame(value, reader.getCurrentValue().get(1));
+    assertEquals(6, value.getOffset());
+  }
+
+  @Test
+  public void keyNamesAndHoldersAreReused() throws Exception {
+    CqlHiveRecordReader reader = new CqlHiveRecordReader(new RowReader(frame), Arrays.asList("id", "a"));
+    MapWritableComparable key = reader.createKey();
+    CassandraRowWritable value = reader.createValue();
+
+    assertTrue(reader.next(key, value));
+    Writable name = key.keySet().iterator().next();
+    BytesWritable holder = (BytesWritable) key.get(name);
+    assertEquals("k1", new String(holder.getBytes(), 0, holder.getLength()));
+
+    assertTrue(reader.next(key, value));
+    assertEquals(1, key.size());
+    assertSame(name, key.keySet().iterator().next());
+    assertSame(holder, key.get(name));
+    assertEquals("k2", new String(holder.getBytes(), 0, holder.getLength()));
+  }
+
+  private static String string(ByteSliceWritable slice) {
+    return new String(slice.getArray(), slice.getOffset(), slice.getLength());
+  }
+
+  /**
+   * Reads rows of a partition key "id" and a column "a", two bytes each, and a column "b" that is null.
+   */
+  private static class RowReader extends RecordReader<Map<String, ByteBuffer>, Map<String, ByteBuffer>> {
+    private final List<Map<String, ByteBuffer>> keys = new ArrayList<Map<String, ByteBuffer>>();
+    private final List<Map<String, ByteBuffer>> rows = new ArrayList<Map<String, ByteBuffer>>();
+    private int index = -1;
+
+    RowReader(byte[] frame) {
+      for (int i = 0; i < frame.length; i += 4) {
+        Map<String, ByteBuffer> key = new LinkedHashMap<String, ByteBuffer>();
+        key.put("id", ByteBuffer.wrap(frame, i, 2));
+        Map<String, ByteBuffer> row = new LinkedHashMap<String, ByteBuffer>();
+        row.put("a", ByteBuffer.wrap(frame, i + 2, 2));
+        row.put("b", null);
+        keys.add(key);
+        rows.add(row);
+      }
+    }
+
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) {
+    }
+
+    @Override
+    public boolean nextKeyValue() {
+      return ++index < rows.size();
+    }
+
+    @Override
+    public Map<String, ByteBuffer> getCurrentKey() {
+      return keys.get(index);
+    }
+
+    @Override
+    public Map<String, ByteBuffer> getCurrentValue() {
+      return rows.get(index);
+    }
+
+    @Override
+    public float getProgress() {
+      return (float) index / rows.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+}
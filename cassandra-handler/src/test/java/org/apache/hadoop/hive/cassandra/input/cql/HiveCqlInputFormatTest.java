@@ -0,0 +1,43 @@
+package org.apache.hadoop.hive.cassandra.input.cql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HiveCqlInputFormatTest {
+
+  @Test
+  public void projectedColumnsBecomeTheInputColumns() {
+    List<String> columns = new ArrayList<String>();
+    for (int i = 0; i < 40; i++) {
+      columns.add("c" + i);
+    }
+
+    List<String> read = HiveCqlInputFormat.getReadColumns(columns, Arrays.asList(3, 17));
+    assertEquals(Arrays.asList("c3", "c17"), read);
+    assertEquals("c3,c17", HiveCqlInputFormat.getInputColumns(read));
+  }
+
+  @Test
+  public void readingEveryColumnSelectsThemAll() {
+    List<String> columns = Arrays.asList("id", "a", "b");
+
+    assertTrue(HiveCqlInputFormat.getReadColumns(columns, Arrays.asList(0, 1, 2)).isEmpty());
+  }
+
+  @Test
+  public void keyOnlyProjectionsLeaveTheInputColumnsUnset() {
+    assertFalse(HiveCqlInputFormat.selectsNonKeyColumns(Arrays.asList("id"), "id"));
+    assertFalse(HiveCqlInputFormat.selectsNonKeyColumns(Arrays.asList("ID", "ts"), "id,ts"));
+    assertFalse(HiveCqlInputFormat.selectsNonKeyColumns(Arrays.asList("value"), null));
+    assertFalse(HiveCqlInputFormat.selectsNonKeyColumns(new ArrayList<String>(), "id"));
+
+    assertTrue(HiveCqlInputFormat.selectsNonKeyColumns(Arrays.asList("id", "value"), "id,ts"));
+  }
+}
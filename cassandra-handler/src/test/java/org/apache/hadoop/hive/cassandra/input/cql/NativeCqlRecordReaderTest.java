@@ -0,0 +1,127 @@
+package org.apache.hadoop.hive.cassandra.input.cql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.cassandra.hadoop.ColumnFamilySplit;
+import org.apache.cassandra.hadoop.ConfigHelper;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.cassandra.cql.FakeNativeServer;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.junit.Test;
+
+public class NativeCqlRecordReaderTest {
+
+  @Test
+  public void wrappingRangesAreSplit() {
+    List<String[]> ranges = NativeCqlRecordReader.splitRange("100", "-100");
+
+    assertEquals(2, ranges.size());
+    assertArrayEquals(new String[]{"100", null}, ranges.get(0));
+    assertArrayEquals(new String[]{null, "-100"}, ranges.get(1));
+    assertArrayEquals(new String[]{"-100", "100"}, NativeCqlRecordReader.splitRange("-100", "100").get(0));
+    assertArrayEquals(new String[]{null, null}, NativeCqlRecordReader.splitRange("0", "0").get(0));
+  }
+
+  @Test
+  public void aliasesAreParsedFromTheSchema() {
+    assertEquals(Arrays.asList("id", "ts"), NativeCqlRecordReader.parseAliases(ByteBufferUtil.bytes("[\"id\",\"ts\"]")));
+    assertTrue(NativeCqlRecordReader.parseAliases(ByteBufferUtil.bytes("[]")).isEmpty());
+    assertTrue(NativeCqlRecordReader.parseAliases(null).isEmpty());
+  }
+
+  @Test
+  public void lastPartitionOfAPageIsFound() {
+    NativeCqlRecordReader reader = new NativeCqlRecordReader(Collections.<String>emptyList());
+    List<ByteBuffer[]> page = Arrays.asList(row(1), row(2), row(3), row(3));
+    assertEquals(2, reader.getLastPartitionStart(page));
+
+    List<ByteBuffer[]> single = Arrays.asList(row(7), row(7));
+    assertEquals(0, reader.getLastPartitionStart(single));
+  }
+
+  @Test
+  public void onlyNumericTokensAreSupported() {
+    assertTrue(NativeCqlRecordReader.supports("org.apache.cassandra.dht.Murmur3Partitioner"));
+    assertTrue(NativeCqlRecordReader.supports("org.apache.cassandra.dht.RandomPartitioner"));
+    assertFalse(NativeCqlRecordReader.supports("org.apache.cassandra.dht.ByteOrderedPartitioner"));
+  }
+
+  @Test
+  public void identifiersAreQuoted() {
+    assertEquals("\"Id\"", NativeCqlRecordReader.quote("Id"));
+    assertEquals("\"a\"\"b\"", NativeCqlRecordReader.quote("a\"b"));
+  }
+
+  @Test
+  public void partitionDeletedWhileReadingEndsThePage() throws Exception {
+    FakeNativeServer server = new FakeNativeServer();
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Configuration conf = new Configuration();
+      ConfigHelper.setInputColumnFamily(conf, "Ks", "Cf");
+      ConfigHelper.setInputPartitioner(conf, "org.apache.cassandra.dht.Murmur3Partitioner");
+      ConfigHelper.setRangeBatchSize(conf, 2);
+      ConfigHelper.setReadConsistencyLevel(conf, "ONE");
+      conf.set(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT, Integer.toString(server.getPort()));
+      final NativeCqlRecordReader reader = new NativeCqlRecordReader(Arrays.asList("Value"));
+      final ColumnFamilySplit split = new ColumnFamilySplit("0", "100", 2, new String[]{"127.0.0.1"});
+      final TaskAttemptContext context = new TaskAttemptContext(conf, new TaskAttemptID());
+      Future<Boolean> reading = executor.submit(new Callable<Boolean>() {
+        public Boolean call() throws Exception {
+          reader.initialize(split, context);
+          return reader.nextKeyValue();
+        }
+      });
+
+      FakeNativeServer.Request schema = server.read(1).get(0);
+      server.respondRows(schema, Arrays.asList("key_aliases", "column_aliases"), Collections.singletonList(
+              new ByteBuffer[]{ByteBufferUtil.bytes("[\"Id\"]"), ByteBufferUtil.bytes("[]")}));
+
+      List<String> columns = Arrays.asList("Id", "Value", "token(Id)");
+      FakeNativeServer.Request page = server.read(1).get(0);
+      assertEquals("SELECT \"Id\", \"Value\", token(\"Id\") FROM \"Ks\".\"Cf\""
+              + " WHERE token(\"Id\") > 0 AND token(\"Id\") <= 100 LIMIT 2", FakeNativeServer.getQuery(page));
+      server.respondRows(page, columns, Arrays.asList(partitionRow(5), partitionRow(5)));
+
+      // the partition fills the page and is gone by the time it is read in full
+      FakeNativeServer.Request prepare = server.read(1).get(0);
+      assertTrue(prepare.isPrepare());
+      assertTrue(FakeNativeServer.getQuery(prepare).contains(" WHERE \"Id\" = ?"));
+      server.respondPrepared(prepare, new byte[]{1});
+      server.respondRows(server.read(1).get(0), columns, Collections.<ByteBuffer[]>emptyList());
+
+      FakeNativeServer.Request next = server.read(1).get(0);
+      assertTrue(FakeNativeServer.getQuery(next).contains("token(\"Id\") > 5 AND"));
+      server.respondRows(next, columns, Collections.<ByteBuffer[]>emptyList());
+
+      assertFalse(reading.get());
+      reader.close();
+    } finally {
+      executor.shutdownNow();
+      server.close();
+    }
+  }
+
+  private static ByteBuffer[] partitionRow(long token) {
+    return new ByteBuffer[]{ByteBufferUtil.bytes(1), ByteBufferUtil.bytes("value"), ByteBufferUtil.bytes(token)};
+  }
+
+  private static ByteBuffer[] row(long token) {
+    return new ByteBuffer[]{ByteBufferUtil.bytes("value"), ByteBufferUtil.bytes(token)};
+  }
+}
@@ -0,0 +1,136 @@
+package org.apache.hadoop.hive.cassandra.output.cql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.hive.cassandra.cql.FakeNativeServer;
+import org.apache.hadoop.hive.cassandra.cql.NativeConnection;
+import org.apache.hadoop.hive.cassandra.serde.AbstractCassandraSerDe;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NativeCqlWriterTest {
+
+  private static final String INSERT = "INSERT INTO t (id, value) VALUES (?, ?)";
+  private static final byte[] ID = {7, 9};
+
+  private FakeNativeServer server;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new FakeNativeServer();
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    server.close();
+  }
+
+  @Test
+  public void writesArePreparedOnceAndNotWaitedFor() throws Exception {
+    final NativeCqlWriter writer = open(4);
+    Future<Void> writing = write(writer, 3);
+
+    FakeNativeServer.Request prepare = server.read(1).get(0);
+    assertTrue(prepare.isPrepare());
+    server.respondPrepared(prepare, ID);
+
+    // every write is sent before the first one is acknowledged
+    List<FakeNativeServer.Request> executes = server.read(3);
+    writing.get();
+    for (FakeNativeServer.Request execute : executes) {
+      assertTrue(execute.isExecute());
+      ByteBuffer body = ByteBuffer.wrap(execute.body);
+      byte[] id = new byte[body.getShort()];
+      body.get(id);
+      assertArrayEquals(ID, id);
+      server.respondVoid(execute);
+    }
+    writer.close();
+  }
+
+  @Test
+  public void writesBeyondTheLimitWaitForAnAcknowledgement() throws Exception {
+    final NativeCqlWriter writer = open(2);
+    Future<Void> writing = write(writer, 3);
+
+    FakeNativeServer.Request prepare = server.read(1).get(0);
+    server.respondPrepared(prepare, ID);
+    List<FakeNativeServer.Request> executes = server.read(2);
+    Thread.sleep(50);
+    assertFalse(writing.isDone());
+
+    server.respondVoid(executes.get(0));
+    FakeNativeServer.Request last = server.read(1).get(0);
+    writing.get();
+
+    server.respondVoid(executes.get(1));
+    server.respondVoid(last);
+    writer.close();
+  }
+
+  @Test
+  public void failedWritesFailClose() throws Exception {
+    final NativeCqlWriter writer = open(4);
+    Future<Void> writing = write(writer, 1);
+
+    server.respondPrepared(server.read(1).get(0), ID);
+    FakeNativeServer.Request execute = server.read(1).get(0);
+    writing.get();
+    server.respondError(execute, NativeConnection.ServerError.WRITE_TIMEOUT, "timed out");
+
+    try {
+      writer.close();
+      fail("expected the failed write to be raised");
+    } catch (NativeConnection.ServerError e) {
+      assertEquals(NativeConnection.ServerError.WRITE_TIMEOUT, e.getCode());
+    }
+  }
+
+  /**
+   * Open a writer on the fake server, answering the USE statement.
+   */
+  private NativeCqlWriter open(int maxInFlight) throws Exception {
+    final JobConf jc = new JobConf();
+    jc.set(AbstractCassandraSerDe.CASSANDRA_NATIVE_PORT, String.valueOf(server.getPort()));
+    jc.setInt(AbstractCassandraSerDe.CASSANDRA_NATIVE_MAX_IN_FLIGHT, maxInFlight);
+
+    Future<NativeCqlWriter> opening = executor.submit(new Callable<NativeCqlWriter>() {
+      public NativeCqlWriter call() throws Exception {
+        return NativeCqlWriter.open(jc, "127.0.0.1", "ks");
+      }
+    });
+    server.respondVoid(server.read(1).get(0));
+    return opening.get();
+  }
+
+  private Future<Void> write(final NativeCqlWriter writer, final int rows) {
+    return executor.submit(new Callable<Void>() {
+      public Void call() throws Exception {
+        for (int i = 0; i < rows; i++) {
+          writer.write(INSERT, Arrays.asList(ByteBufferUtil.bytes(i), ByteBufferUtil.bytes("value " + i)),
+                  ConsistencyLevel.ONE);
+        }
+        return null;
+      }
+    });
+  }
+}
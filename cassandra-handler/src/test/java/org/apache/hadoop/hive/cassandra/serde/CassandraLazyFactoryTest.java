@@ -0,0 +1,65 @@
+package org.apache.hadoop.hive.cassandra.serde;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.BooleanType;
+import org.apache.cassandra.db.marshal.DateType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.hadoop.hive.serde2.lazy.ByteArrayRef;
+import org.apache.hadoop.hive.serde2.lazy.LazyObject;
+import org.apache.hadoop.hive.serde2.lazy.objectinspector.CassandraValidatorObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class CassandraLazyFactoryTest {
+
+  @Test
+  public void validatorsDecodeToTheirHiveTypes() {
+    assertEquals(42, read(TypeInfoFactory.intTypeInfo, Int32Type.instance, Int32Type.instance.decompose(42)));
+    assertEquals(1L << 40, read(TypeInfoFactory.longTypeInfo, LongType.instance, LongType.instance.decompose(1L << 40)));
+    assertEquals(2.5, read(TypeInfoFactory.doubleTypeInfo, DoubleType.instance, DoubleType.instance.decompose(2.5)));
+    assertEquals(true, read(TypeInfoFactory.booleanTypeInfo, BooleanType.instance, BooleanType.instance.decompose(true)));
+    assertEquals(1234567890123L, ((Date) read(TypeInfoFactory.timestampTypeInfo, DateType.instance,
+            DateType.instance.decompose(new Date(1234567890123L)))).getTime());
+  }
+
+  @Test
+  public void otherColumnsAreReadAsStrings() {
+    ObjectInspector oi = inspector(TypeInfoFactory.stringTypeInfo, Int32Type.instance);
+    assertTrue(oi instanceof CassandraValidatorObjectInspector);
+
+    LazyObject field = CassandraLazyFactory.createLazyObject(oi);
+    init(field, Int32Type.instance.decompose(42));
+    assertEquals("42", ((CassandraValidatorObjectInspector) oi).getPrimitiveJavaObject(field));
+  }
+
+  private static Object read(TypeInfo typeInfo, AbstractType validator, ByteBuffer value) {
+    PrimitiveObjectInspector oi = (PrimitiveObjectInspector) inspector(typeInfo, validator);
+    LazyObject field = CassandraLazyFactory.createLazyObject(oi);
+    init(field, value);
+    return oi.getPrimitiveJavaObject(field);
+  }
+
+  private static ObjectInspector inspector(TypeInfo typeInfo, AbstractType validator) {
+    return CassandraLazyFactory.createLazyObjectInspector(typeInfo, validator, new byte[]{1, 2, 3}, 1,
+            new Text("\\N"), false, (byte) 0);
+  }
+
+  private static void init(LazyObject field, ByteBuffer value) {
+    ByteArrayRef ref = new ByteArrayRef();
+    ref.setData(ByteBufferUtil.getArray(value));
+    field.init(ref, 0, value.remaining());
+  }
+}